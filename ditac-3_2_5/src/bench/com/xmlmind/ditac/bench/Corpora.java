@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.bench;
+
+import java.io.IOException;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.util.Console;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.SimpleConsole;
+
+/**
+ * Gives access to the DITA documents used by the benchmarks.
+ * <p>System property <tt>bench.corpus</tt> specifies a directory
+ * containing one subdirectory per corpus size: <tt>small/</tt>,
+ * <tt>medium/</tt> and <tt>large/</tt> (plus <tt>small_rng/</tt>, etc,
+ * for the RELAX NG variants). Each subdirectory contains a
+ * single DITA map or bookmap and all the topics referenced by this map.
+ * <p>The <tt>bench</tt> Ant target generates these corpora using
+ * {@link com.xmlmind.ditac.tool.CorpusGenerator}.
+ */
+public final class Corpora {
+    private Corpora() {}
+
+    /**
+     * Returns the directory containing the corpus having specified size.
+     */
+    public static File getDirectory(String size) {
+        return getDirectory(size, "dtd");
+    }
+
+    /**
+     * Returns the directory containing the corpus having specified size.
+     * Topics of the <tt>"dtd"</tt> corpus reference a DTD. Topics of
+     * the <tt>"rng"</tt> corpus, found in subdirectory
+     * <tt><i>size</i>_rng/</tt>, reference a RELAX NG schema.
+     */
+    public static File getDirectory(String size, String grammar) {
+        if ("rng".equals(grammar)) {
+            size = size + "_rng";
+        }
+
+        String location = System.getProperty("bench.corpus");
+        if (location == null) {
+            throw new IllegalStateException(
+                "system property \"bench.corpus\" has not been specified");
+        }
+
+        File dir = new File(location, size);
+        if (!dir.isDirectory()) {
+            throw new IllegalStateException("'" + dir +
+                                            "', no such directory");
+        }
+        return dir.getAbsoluteFile();
+    }
+
+    /**
+     * Returns the URL of the map found in specified corpus directory.
+     */
+    public static URL getMap(File dir)
+        throws IOException {
+        String[] baseNames = FileUtil.checkedList(dir);
+        Arrays.sort(baseNames);
+
+        for (String baseName : baseNames) {
+            if (baseName.endsWith(".ditamap") ||
+                baseName.endsWith(".bookmap")) {
+                return FileUtil.fileToURL(new File(dir, baseName));
+            }
+        }
+
+        throw new IOException("'" + dir + "' does not contain a map");
+    }
+
+    /**
+     * Returns the URL of the first <tt>.ditaval</tt> file found in specified
+     * corpus directory; <code>null</code> if there is no such file.
+     */
+    public static URL getDitaval(File dir)
+        throws IOException {
+        String[] baseNames = FileUtil.checkedList(dir);
+        Arrays.sort(baseNames);
+
+        for (String baseName : baseNames) {
+            if (baseName.endsWith(".ditaval")) {
+                return FileUtil.fileToURL(new File(dir, baseName));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URLs of all the topic files found in
+     * specified corpus directory, sorted by path.
+     */
+    public static URL[] listTopics(File dir)
+        throws IOException {
+        ArrayList<URL> list = new ArrayList<URL>();
+        listTopics(dir, list);
+
+        URL[] urls = new URL[list.size()];
+        return list.toArray(urls);
+    }
+
+    private static void listTopics(File dir, ArrayList<URL> list)
+        throws IOException {
+        File[] files = FileUtil.checkedListFiles(dir);
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listTopics(file, list);
+            } else if (file.getName().endsWith(".dita")) {
+                list.add(FileUtil.fileToURL(file));
+            }
+        }
+    }
+
+    /**
+     * Returns a console which only displays error messages.
+     */
+    public static ConsoleHelper createConsole() {
+        ConsoleHelper console = new ConsoleHelper(
+            new SimpleConsole("bench: ", true, Console.MessageType.ERROR));
+        console.setVerbosity(Console.MessageType.ERROR);
+        return console;
+    }
+
+    /**
+     * Creates a temporary directory.
+     */
+    public static File createTempDirectory()
+        throws IOException {
+        return FileUtil.createTempDirectory("ditac_bench", null);
+    }
+}
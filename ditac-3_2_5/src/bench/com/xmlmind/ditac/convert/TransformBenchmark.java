@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.preprocess.Chunking;
+import com.xmlmind.ditac.preprocess.Media;
+import com.xmlmind.ditac.preprocess.PreProcessor;
+import com.xmlmind.ditac.bench.Corpora;
+
+/**
+ * Transforms the preprocessed files of a corpus to XHTML or WebHelp
+ * pages, the same way as a <tt>ditac</tt> run does: 
+ * using {@link Converter#transform(URL, String[], File[], String)},
+ * which also creates the SAX parser, the URI resolver and passes the
+ * <tt>ditacListsURI</tt> parameter.
+ * <p>System property <tt>ditac.xsl.dir</tt> specifies the directory
+ * containing the XSL stylesheets. Defaults to <tt>../xsl</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class TransformBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"xhtml", "webhelp"})
+    public String format;
+
+    private URL transformURL;
+    private File[] preProcFiles;
+    private File outDir;
+    private ConsoleHelper console;
+    private StyleSheetCache styleSheetCache;
+
+    @Setup(Level.Trial)
+    public void setUp() 
+        throws Exception {
+        File xslDir = new File(System.getProperty("ditac.xsl.dir", "../xsl"));
+        File xslFile = new File(xslDir, format + "/" + format + ".xsl");
+        if (!xslFile.isFile()) {
+            throw new IllegalStateException("'" + xslFile + 
+                                            "', no such file");
+        }
+        transformURL = FileUtil.fileToURL(xslFile.getAbsoluteFile());
+
+        URL map = Corpora.getMap(Corpora.getDirectory(size));
+        outDir = Corpora.createTempDirectory();
+        console = Corpora.createConsole();
+
+        PreProcessor preProc = new PreProcessor(console);
+        preProc.setChunking(Chunking.AUTO);
+        preProc.setMedia(Media.SCREEN);
+        preProcFiles = preProc.process(new URL[] { map }, 
+                                       new File(outDir, "index.html"));
+        if (preProcFiles == null) {
+            throw new RuntimeException("cannot preprocess '" + map + "'");
+        }
+
+        styleSheetCache = new StyleSheetCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+        throws Exception {
+        FileUtil.deleteDir(outDir);
+    }
+
+    /**
+     * Compiles the stylesheet once per invocation, like a
+     * <tt>ditac</tt> run does.
+     */
+    @Benchmark
+    public void compileAndTransform() 
+        throws Exception {
+        transform(new StyleSheetCache());
+    }
+
+    /**
+     * Reuses the stylesheet compiled during the warmup, like a batch
+     * of conversions does.
+     */
+    @Benchmark
+    public void transform() 
+        throws Exception {
+        transform(styleSheetCache);
+    }
+
+    private void transform(StyleSheetCache cache) 
+        throws Exception {
+        Converter converter = new Converter(cache, console);
+        if (converter.transform(transformURL, /*params*/ null, 
+                                preProcFiles, "html") == null) {
+            throw new RuntimeException("cannot transform the files of '" +
+                                       outDir + "'");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.IOException;
+import java.io.File;
+import java.net.URL;
+import org.w3c.dom.Element;
+import com.xmlmind.util.Console;
+
+/**
+ * Gives the benchmarks access to the individual steps of
+ * the preprocessing.
+ */
+public final class BenchPreProcessor extends PreProcessor {
+    public BenchPreProcessor(Console console) {
+        super(console);
+    }
+
+    /**
+     * Loads the map, its keys and all the topics it references.
+     * This is the first half of {@link #process}.
+     */
+    public void load(URL mapURL, File outDir) 
+        throws IOException {
+        if (!process1(new URL[] { mapURL }, outDir, null)) {
+            throw new IOException("cannot load '" + mapURL + "'");
+        }
+    }
+
+    public KeySpaces getKeySpaces() {
+        return keySpaces;
+    }
+
+    public LoadedDocuments getLoadedDocuments() {
+        return loadedDocs;
+    }
+
+    public Element getMapElement() {
+        return mainMap.document.getDocumentElement();
+    }
+
+    public LoadedDocument[] getTopicDocuments() {
+        return getAllTopicDocuments();
+    }
+
+    public void filterTopics() {
+        filterTopics(getMapElement());
+    }
+}
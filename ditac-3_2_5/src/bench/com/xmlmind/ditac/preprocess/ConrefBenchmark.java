@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.bench.Corpora;
+
+/**
+ * Transcludes the conrefs of all the topics of a corpus.
+ * <p>ConrefIncluder modifies the topics in place, therefore the corpus
+ * is reloaded before each invocation. Hence the use of
+ * {@link Mode#SingleShotTime} rather than of {@link Mode#Throughput}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=10)
+@Measurement(iterations=20)
+@Fork(1)
+public class ConrefBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private File dir;
+    private File outDir;
+    private ConsoleHelper console;
+    private BenchPreProcessor preProc;
+
+    @Setup(Level.Trial)
+    public void setUp() 
+        throws Exception {
+        dir = Corpora.getDirectory(size);
+        outDir = Corpora.createTempDirectory();
+        console = Corpora.createConsole();
+    }
+
+    @Setup(Level.Invocation)
+    public void load() 
+        throws Exception {
+        preProc = new BenchPreProcessor(console);
+        preProc.load(Corpora.getMap(dir), outDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+        throws Exception {
+        FileUtil.deleteDir(outDir);
+    }
+
+    @Benchmark
+    public boolean transcludeTopics() 
+        throws Exception {
+        ConrefIncluder includer = 
+            new ConrefIncluder(preProc.getKeySpaces(), console);
+        return includer.process(preProc.getTopicDocuments());
+    }
+}
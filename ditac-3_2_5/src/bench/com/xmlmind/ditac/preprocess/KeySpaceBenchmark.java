@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.w3c.dom.Node;
+import org.w3c.dom.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.ditac.bench.Corpora;
+
+/**
+ * Resolves all the keys referenced by the topics of a corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class KeySpaceBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private File outDir;
+    private KeySpaces keySpaces;
+    private String[] keys;
+    private Element[] contexts;
+
+    @Setup(Level.Trial)
+    public void setUp() 
+        throws Exception {
+        File dir = Corpora.getDirectory(size);
+        outDir = Corpora.createTempDirectory();
+
+        BenchPreProcessor preProc = 
+            new BenchPreProcessor(Corpora.createConsole());
+        preProc.load(Corpora.getMap(dir), outDir);
+        keySpaces = preProc.getKeySpaces();
+
+        ArrayList<String> keyList = new ArrayList<String>();
+        ArrayList<Element> contextList = new ArrayList<Element>();
+
+        Iterator<LoadedDocument> iter = 
+            preProc.getLoadedDocuments().iterator();
+        while (iter.hasNext()) {
+            LoadedDocument loadedDoc = iter.next();
+            collectKeyrefs(loadedDoc.document.getDocumentElement(),
+                           keyList, contextList);
+        }
+
+        keys = keyList.toArray(new String[keyList.size()]);
+        contexts = contextList.toArray(new Element[contextList.size()]);
+    }
+
+    private static void collectKeyrefs(Element element, 
+                                       ArrayList<String> keyList,
+                                       ArrayList<Element> contextList) {
+        String keyref = element.getAttributeNS(null, "keyref");
+        if (keyref.length() == 0) {
+            keyref = element.getAttributeNS(null, "conkeyref");
+        }
+        if (keyref.length() > 0) {
+            int slash = keyref.indexOf('/');
+            keyList.add((slash < 0)? keyref : keyref.substring(0, slash));
+            contextList.add(element);
+        }
+
+        Node child = element.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                collectKeyrefs((Element) child, keyList, contextList);
+            }
+            child = child.getNextSibling();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+        throws Exception {
+        FileUtil.deleteDir(outDir);
+    }
+
+    @Benchmark
+    public void lookupKeys(Blackhole blackhole) {
+        for (int i = 0; i < keys.length; ++i) {
+            blackhole.consume(keySpaces.get(keys[i], contexts[i]));
+        }
+    }
+}
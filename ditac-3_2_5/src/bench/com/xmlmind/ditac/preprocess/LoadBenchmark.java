@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.LoadDocument;
+import com.xmlmind.ditac.bench.Corpora;
+
+/**
+ * Parses all the topics of a corpus. The topics either reference
+ * a DTD or a RELAX NG schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"dtd", "rng"})
+    public String grammar;
+
+    private URL[] topics;
+    private ConsoleHelper console;
+
+    @Setup(Level.Trial)
+    public void setUp() 
+        throws Exception {
+        File dir = Corpora.getDirectory(size, grammar);
+        topics = Corpora.listTopics(dir);
+        console = Corpora.createConsole();
+    }
+
+    @Benchmark
+    public void loadDocument(Blackhole blackhole) 
+        throws Exception {
+        for (URL topic : topics) {
+            blackhole.consume(LoadDocument.load(topic, false, console));
+        }
+    }
+
+    @Benchmark
+    public void loadAndProcess(Blackhole blackhole) 
+        throws Exception {
+        LoadedDocuments loadedDocs = new LoadedDocuments(null, console);
+        for (URL topic : topics) {
+            blackhole.consume(loadedDocs.load(topic, /*process*/ true));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.bench.Corpora;
+
+/**
+ * Preprocesses a whole corpus. Besides the steps measured separately
+ * by the other benchmarks, this includes link processing
+ * ({@link PreProcessor#processLinks}) and the generation of the index
+ * ({@link IndexTerms#addEntries}), which cannot be run in isolation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class PreProcessBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"single", "chunked"})
+    public String chunking;
+
+    private URL map;
+    private File outDir;
+    private ConsoleHelper console;
+
+    @Setup(Level.Trial)
+    public void setUp() 
+        throws Exception {
+        map = Corpora.getMap(Corpora.getDirectory(size));
+        outDir = Corpora.createTempDirectory();
+        console = Corpora.createConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() 
+        throws Exception {
+        FileUtil.deleteDir(outDir);
+    }
+
+    @Benchmark
+    public File[] preProcess() 
+        throws Exception {
+        PreProcessor preProc = new PreProcessor(console);
+        if ("single".equals(chunking)) {
+            preProc.setChunking(Chunking.SINGLE);
+            preProc.setMedia(Media.PRINT);
+        } else {
+            preProc.setChunking(Chunking.AUTO);
+            preProc.setMedia(Media.SCREEN);
+        }
+
+        File[] files = preProc.process(new URL[] { map }, 
+                                       new File(outDir, "out.html"));
+        if (files == null) {
+            throw new RuntimeException("cannot preprocess '" + map + "'");
+        }
+        return files;
+    }
+}
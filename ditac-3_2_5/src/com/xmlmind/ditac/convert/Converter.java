@@ -15,20 +15,28 @@ import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.zip.ZipOutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.xml.sax.InputSource;
-import org.xml.sax.EntityResolver;
 import org.xml.sax.XMLReader;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.Source;
+import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.transform.stream.StreamResult;
 import com.xmlmind.util.ThrowableUtil;
+import com.xmlmind.util.Base16;
 import com.xmlmind.util.SystemUtil;
 import com.xmlmind.util.ArrayUtil;
 import com.xmlmind.util.StringList;
@@ -38,11 +46,13 @@ import com.xmlmind.util.URLUtil;
 import com.xmlmind.util.XMLUtil;
 import com.xmlmind.util.Console;
 import com.xmlmind.util.Zip;
+import com.xmlmind.util.ZipWriter;
 import com.xmlmind.whc.Compiler;
 import com.xmlmind.ditac.util.AppUtil;
 import com.xmlmind.ditac.util.Resolve;
 import com.xmlmind.ditac.util.SimpleConsole;
 import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.PerfReport;
 import com.xmlmind.ditac.preprocess.Chunking;
 import com.xmlmind.ditac.preprocess.ResourceHandler;
 import com.xmlmind.ditac.preprocess.Filter;
@@ -74,6 +84,9 @@ public class Converter {
     private ConsoleHelper console;
     private ArrayList<FOConverter> foConverters;
     private File jhindexerExe;
+    private File fopExeFile;
+    private File fopConfigFile;
+    private boolean inProcessFOP;
     private File hhcExe;
 
     private PreProcessor preProc;
@@ -89,8 +102,24 @@ public class Converter {
     private URL[] inFiles;
     private boolean keepFO;
     private boolean addIndex;
+    private boolean writingManifest;
+    private long compressMinSize = -1;
+    private File perfReportFile;
+    private int perfTopCount = 10;
+    private int previewPort = -1;
 
     private File preProcTempDir;
+    private PerfReport perfReport;
+
+    // Parsers used to read .ditac files, reused from a transform to the
+    // other. Per thread because of -preview.
+    private final ThreadLocal<XMLReader> ditacReaders = 
+        new ThreadLocal<XMLReader>();
+
+    private ArrayList<Target> targets;
+
+    private static final String LOAD_EXTERNAL_DTD =
+        "http://apache.org/xml/features/nonvalidating/load-external-dtd";
 
     private static final String FRONT_BACK_MATTER_SPEC =
       "spec -> same_page [ ',' same_page ]*\n" +
@@ -253,23 +282,163 @@ public class Converter {
         if (exeFile == null) {
             return false;
         }
+        fopExeFile = exeFile;
+
+        File fopDir = exeFile.getParentFile();
+        if (inProcessFOP && FOPConverter.isFOPDir(fopDir)) {
+            registerInProcessFOConverter(
+                new FOPConverter(fopDir, Format.PS, fopConfigFile));
+            registerInProcessFOConverter(
+                new FOPConverter(fopDir, Format.PDF, fopConfigFile));
+            return true;
+        }
+
+        String options = "\" -q -r";
+        if (fopConfigFile != null) {
+            options += " -c \"" + fopConfigFile + "\"";
+        }
 
         StringBuilder buffer = new StringBuilder();
         buffer.append('"');
         buffer.append(exeFile);
-        buffer.append("\" -q -r -fo \"%I\" -ps \"%O\"");
+        buffer.append(options);
+        buffer.append(" -fo \"%I\" -ps \"%O\"");
 
         registerExternalFOConverter("FOP", Format.PS, buffer.toString());
 
         buffer = new StringBuilder();
         buffer.append('"');
         buffer.append(exeFile);
-        buffer.append("\" -q -r -fo \"%I\" -pdf \"%O\"");
+        buffer.append(options);
+        buffer.append(" -fo \"%I\" -pdf \"%O\"");
 
         registerExternalFOConverter("FOP", Format.PDF, buffer.toString());
         return true;
     }
 
+    private void registerInProcessFOConverter(FOConverter foConverter) {
+        console.debug(Msg.msg("registeringFOConverter", foConverter));
+
+        registerFOConverter(foConverter);
+    }
+
+    /**
+     * Specifies whether Apache FOP is to be run in the same Java VM as
+     * this converter, rather than by executing the <tt>fop</tt> 
+     * shell script. When this is the case, the XSL-FO generated by 
+     * the XSLT stylesheets is directly passed to FOP, without creating
+     * an intermediate XSL-FO file.
+     * <p>This requires the jars of the FOP distribution to be found
+     * where the <tt>fop</tt> shell script looks for them; that is, 
+     * in the subdirectories (<tt>build/</tt>, <tt>lib/</tt>, etc) of 
+     * the directory containing the <tt>fop</tt> shell script. 
+     * If this is not the case, FOP is executed as an external command.
+     * <p>Initial value is <code>false</code>.
+     * 
+     * @see #isInProcessFOP
+     * @see #registerFOP
+     */
+    public void setInProcessFOP(boolean inProcess) {
+        inProcessFOP = inProcess;
+        if (fopExeFile != null) {
+            // Register FOP again.
+            registerFOP(fopExeFile.getPath());
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if Apache FOP is to be run in the same 
+     * Java VM as this converter.
+     * 
+     * @see #setInProcessFOP
+     */
+    public boolean isInProcessFOP() {
+        return inProcessFOP;
+    }
+
+    /**
+     * Specifies the FOP configuration file (<tt>fop.xconf</tt>) used 
+     * to generate PDF and PostScript. This file is passed to the
+     * <tt>fop</tt> shell script using its <tt>-c</tt> option
+     * or to the in-process FOP (see {@link #setInProcessFOP}), so that
+     * both ways of running FOP give the same results.
+     * <p>Initial value is <code>null</code>: FOP uses its default
+     * configuration.
+     * 
+     * @see #getFOPConfigFile
+     * @see #registerFOP
+     */
+    public void setFOPConfigFile(File configFile) {
+        fopConfigFile = configFile;
+        if (fopExeFile != null) {
+            // Register FOP again.
+            registerFOP(fopExeFile.getPath());
+        }
+    }
+
+    /**
+     * Returns the FOP configuration file. May return <code>null</code>.
+     * 
+     * @see #setFOPConfigFile
+     */
+    public File getFOPConfigFile() {
+        return fopConfigFile;
+    }
+
+    /**
+     * Specifies whether a {@link Manifest} listing all the files
+     * contained in the output directory is to be saved in the output 
+     * directory after a successful conversion.
+     * <p>The files which have been regenerated with exactly the same
+     * content as the one recorded in the previous manifest keep their
+     * last modification date.
+     * <p>Initial value is <code>false</code>.
+     * 
+     * @see #isWritingManifest
+     */
+    public void setWritingManifest(boolean write) {
+        writingManifest = write;
+    }
+
+    /**
+     * Returns <code>true</code> if a {@link Manifest} is to be saved
+     * in the output directory after a successful conversion.
+     * 
+     * @see #setWritingManifest
+     */
+    public boolean isWritingManifest() {
+        return writingManifest;
+    }
+
+    /**
+     * Specifies whether a pre-compressed <tt>.gz</tt> sibling is to be
+     * created for each compressible file (HTML pages, CSS, JavaScript, 
+     * etc) contained in the output directory after a successful conversion.
+     * <p>A file is not compressed again if it has not been modified since
+     * its <tt>.gz</tt> sibling was created. Used in conjunction with
+     * {@link #setWritingManifest}, this means that only the pages which 
+     * have actually changed are compressed again.
+     * <p>Initial value is -1.
+     * 
+     * @param minSize files smaller than this size in bytes are not 
+     * compressed. A negative value means: do not create 
+     * <tt>.gz</tt> files.
+     * @see #getCompressMinSize
+     */
+    public void setCompressMinSize(long minSize) {
+        compressMinSize = minSize;
+    }
+
+    /**
+     * Returns the size in bytes below which an output file is not compressed;
+     * a negative value if <tt>.gz</tt> files are not to be created.
+     * 
+     * @see #setCompressMinSize
+     */
+    public long getCompressMinSize() {
+        return compressMinSize;
+    }
+
     /**
      * Convenience method: registers Antenna House Formatter with this
      * converter.
@@ -489,24 +658,64 @@ public class Converter {
             return 1;
         }
 
-        outFile = outFile.getAbsoluteFile();
-        File outDir = outFile.getParentFile();
-        if (!outDir.isDirectory()) {
-            console.info(Msg.msg("creatingOutputDir", outDir));
+        if (perfReportFile != null) {
+            perfReport = new PerfReport();
+            perfReport.setTopCount(perfTopCount);
+            preProc.setPerfReport(perfReport);
+        }
 
-            try {
-                FileUtil.checkedMkdirs(outDir);
-            } catch (IOException e) {
-                console.error(ThrowableUtil.reason(e));
-                return 2;
+        int exitCode;
+        if (targets != null) {
+            exitCode = runTargets();
+        } else if (previewPort >= 0) {
+            exitCode = runPreview();
+        } else {
+            exitCode = run();
+        }
+
+        if (perfReport != null) {
+            if (!savePerfReport() && exitCode == 0) {
+                exitCode = 10;
             }
+            perfReport = null;
         }
 
-        String outExtension = FileUtil.getExtension(outFile);
-        if (outExtension != null && 
-            (outExtension = outExtension.trim()).length() == 0) {
-            outExtension = null;
+        return exitCode;
+    }
+
+    private boolean savePerfReport() {
+        console.info(Msg.msg("savingPerfReport", perfReportFile));
+
+        // Not subject to the verbosity of the console.
+        console.console.showMessage(perfReport.toSummary(),
+                                    Console.MessageType.INFO);
+
+        try {
+            perfReport.save(perfReportFile);
+        } catch (IOException e) {
+            console.error(Msg.msg("cannotSavePerfReport", perfReportFile,
+                                  ThrowableUtil.reason(e)));
+            return false;
         }
+        return true;
+    }
+
+    private PerfReport.Measure beginPhase(String name) {
+        return (perfReport == null)? null : perfReport.begin(name);
+    }
+
+    private static void endPhase(PerfReport.Measure measure) {
+        if (measure != null) {
+            measure.end();
+        }
+    }
+
+    private int run() {
+        if (!checkOutputDirectory()) {
+            return 2;
+        }
+
+        String outExtension = getOutExtension();
 
         switch (format) {
         case JAVA_HELP:
@@ -516,7 +725,7 @@ public class Converter {
             if (outFile.getName().startsWith("_.")) {
                 String baseName = URLUtil.getBaseName(inFiles[0]);
                 baseName = FileUtil.setExtension(baseName, outExtension);
-                outFile = new File(outDir, baseName);
+                outFile = new File(outFile.getParentFile(), baseName);
             }
             break;
         }
@@ -538,6 +747,37 @@ public class Converter {
             return 0;
         }
 
+        return convert(preProcFiles, tocPreProcFile[0]);
+    }
+
+    private boolean checkOutputDirectory() {
+        outFile = outFile.getAbsoluteFile();
+        File outDir = outFile.getParentFile();
+        if (!outDir.isDirectory()) {
+            console.info(Msg.msg("creatingOutputDir", outDir));
+
+            try {
+                FileUtil.checkedMkdirs(outDir);
+            } catch (IOException e) {
+                console.error(ThrowableUtil.reason(e));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getOutExtension() {
+        String outExtension = FileUtil.getExtension(outFile);
+        if (outExtension != null && 
+            (outExtension = outExtension.trim()).length() == 0) {
+            outExtension = null;
+        }
+        return outExtension;
+    }
+
+    private int convert(File[] preProcFiles, File tocPreProcFile) {
+        String outExtension = getOutExtension();
+
         if (outExtension != null && 
             ("ditac".equalsIgnoreCase(outExtension) || 
              "ditac_lists".equalsIgnoreCase(outExtension))) {
@@ -552,8 +792,8 @@ public class Converter {
         }
 
         if (addIndex && 
-            tocPreProcFile[0] != null &&
-            !addIndex(tocPreProcFile[0], preProcFiles, outExtension)) {
+            tocPreProcFile != null &&
+            !addIndex(tocPreProcFile, preProcFiles, outExtension)) {
             cleanUp(preProcFiles);
             return 6;
         }
@@ -562,9 +802,84 @@ public class Converter {
             return 7;
         }
 
+        // Restores the last modification dates of the unchanged files,
+        // so these files are not compressed again.
+        if (writingManifest && !writeManifest()) {
+            return 8;
+        }
+
+        if (compressMinSize >= 0) {
+            PerfReport.Measure measure = beginPhase("compress");
+            if (!compressOutputFiles()) {
+                return 9;
+            }
+            endPhase(measure);
+
+            // Add the .gz files to the manifest.
+            if (writingManifest && !writeManifest()) {
+                return 8;
+            }
+        }
+
         return 0;
     }
 
+    private boolean compressOutputFiles() {
+        File outDir = outFile.getParentFile();
+
+        console.info(Msg.msg("compressingOutputFiles", outDir));
+
+        // Several conversions (see -target) may share the same output 
+        // directory.
+        synchronized (OUTPUT_DIR_LOCK) {
+            try {
+                int count = 
+                    PreCompressor.compressAll(outDir, compressMinSize, console);
+                console.verbose(Msg.msg("compressedFiles", count));
+            } catch (IOException e) {
+                console.error(Msg.msg("cannotCompressOutputFiles", outDir,
+                                      ThrowableUtil.reason(e)));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final Object OUTPUT_DIR_LOCK = new Object();
+
+    private boolean writeManifest() {
+        File outDir = outFile.getParentFile();
+        File manifestFile = new File(outDir, Manifest.FILE_NAME);
+
+        console.info(Msg.msg("writingManifest", manifestFile));
+        PerfReport.Measure measure = beginPhase("manifest");
+
+        // Several conversions (see -target) may share the same output 
+        // directory.
+        synchronized (OUTPUT_DIR_LOCK) {
+            Manifest previous = null;
+            if (manifestFile.isFile()) {
+                try {
+                    previous = Manifest.load(manifestFile);
+                } catch (IOException e) {
+                    console.warning(ThrowableUtil.reason(e));
+                }
+            }
+
+            try {
+                Manifest.create(outDir, previous, console).save(manifestFile);
+            } catch (IOException e) {
+                console.error(Msg.msg("cannotWriteManifest", manifestFile,
+                                      ThrowableUtil.reason(e)));
+                return false;
+            }
+        }
+
+        endPhase(measure);
+        return true;
+    }
+
     /**
      * Create and return a new {@link PreProcessor}.
      */
@@ -668,7 +983,9 @@ public class Converter {
 
             if (file.exists()) {
                 try {
-                    console.debug(Msg.msg("deletingFileOrDir", file));
+                    if (console.isShowing(Console.MessageType.DEBUG)) {
+                        console.debug(Msg.msg("deletingFileOrDir", file));
+                    }
 
                     FileUtil.deleteFileOrDir(file);
                 } catch (IOException e) {
@@ -698,127 +1015,419 @@ public class Converter {
     }
 
     // -----------------------------------------------------------------------
-    // Convert preprocessed files
+    // Multiple output files
     // -----------------------------------------------------------------------
-    
-    private boolean convert(File[] preProcFiles, String outExtension) {
-        switch (format) {
-        case XHTML:
-        case XHTML1_1:
-        case XHTML5:
-        case HTML:
-            return convertToHTMLForm(preProcFiles, outExtension);
-        case JAVA_HELP:
-            return convertToJavaHelp(preProcFiles, outExtension);
-        case HTML_HELP:
-            return convertToHTMLHelp(preProcFiles, outExtension);
-        case ECLIPSE_HELP:
-            return convertToEclipseHelp(preProcFiles, outExtension);
-        case WEB_HELP:
-        case WEB_HELP5:
-            return convertToWebHelp(preProcFiles, outExtension);
-        case EPUB:
-        case EPUB3:
-            return convertToEPUB(preProcFiles, outExtension);
-        default:
-            return convertToPrintForm(preProcFiles, outExtension);
-        }
-    }
 
-    // ------------------------------------
-    // convertToHTMLForm
-    // ------------------------------------
+    private static final class Target {
+        public final Format format;
+        public final File outFile;
+        public final ArrayList<String> params;
 
-    private boolean convertToHTMLForm(File[] preProcFiles, 
-                                      String outExtension) {
-        String styleSheetPath;
-        switch (format) {
-        case XHTML1_1:
-            styleSheetPath = "xhtml/xhtml1_1.xsl";
-            break;
-        case XHTML5:
-            styleSheetPath = "xhtml/xhtml5.xsl";
-            break;
-        case HTML:
-            styleSheetPath = "xhtml/html.xsl";
-            break;
-        default:
-            styleSheetPath = "xhtml/xhtml.xsl";
-            break;
-        }
-        URL transformURL = getStyleSheet(styleSheetPath);
-        if (transformURL == null) {
-            return false;
+        public Target(Format format, File outFile) {
+            this.format = format;
+            this.outFile = outFile;
+            params = new ArrayList<String>();
         }
+    }
 
-        if (!copyXSLResources(styleSheetPath, 
-                              preProcFiles[0].getParentFile())) {
-            return false;
+    private int runTargets() {
+        if (preprocess || dryRun) {
+            // Other targets are not relevant here.
+            return run();
         }
 
-        String[] params = styleSheetParams;
+        // One converter per target. All converters share the same
+        // PreProcessor, which is why preprocessing is done sequentially.
+        // The converters (this one included) forget it once they have 
+        // been preprocessed, so keep it here.
 
-        File[] transformedFiles = transform(transformURL, params,
-                                            preProcFiles, outExtension);
-        if (transformedFiles == null) {
-            return false;
+        final PreProcessor sharedPreProc = preProc;
+
+        ArrayList<Converter> converters = new ArrayList<Converter>();
+        converters.add(this);
+        for (Target target : targets) {
+            converters.add(newTargetConverter(target));
         }
 
-        return true;
-    }
+        ArrayList<Converter> standalones = new ArrayList<Converter>();
+        LinkedHashMap<String,ArrayList<Converter>> groups = 
+            new LinkedHashMap<String,ArrayList<Converter>>();
 
-    private URL getStyleSheet(String styleSheetPath) {
-        URL transformURL = styleSheetURL;
-        if (transformURL == null) {
-            transformURL = findStyleSheet(styleSheetPath);
-            if (transformURL == null) {
-                console.error(Msg.msg("xsltNotFound", styleSheetPath));
+        for (Converter converter : converters) {
+            if (!converter.checkOutputDirectory()) {
+                return 2;
             }
-        }
-        return transformURL;
-    }
 
-    private URL findStyleSheet(String styleSheetPath) {
-        URL transformURL = null;
+            switch (converter.format) {
+            case JAVA_HELP:
+            case HTML_HELP:
+            case EPUB:
+            case EPUB3:
+                // Preprocessed in a temporary directory of their own.
+                standalones.add(converter);
+                continue;
+            }
 
-        File installDir = AppUtil.findInstallDirectory();
+            String key = converter.getPreProcessKey();
+            ArrayList<Converter> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<Converter>();
+                groups.put(key, group);
+            }
 
-        if (pluginName != null) {
-            File pluginDir = AppUtil.findPluginDirectory(installDir);
-            if (pluginDir != null) {
-                File xslDir = new File(pluginDir,
-                                       pluginName + File.separator + "xsl");
-                if (xslDir.isDirectory()) {
-                    try {
-                        transformURL = 
-                            URLUtil.createURL(FileUtil.fileToURL(xslDir), 
-                                              styleSheetPath);
-                        if (!URLUtil.exists(transformURL)) {
-                            transformURL = null;
-                            // Fallback to stock XSLT stylesheet.
-                        }
-                    } catch (MalformedURLException ignored) {}
+            File outDir = converter.outFile.getParentFile();
+            for (Converter other : group) {
+                if (other.outFile.getParentFile().equals(outDir)) {
+                    console.error(Msg.msg("sameOutputDirectory", 
+                                          other.outFile, converter.outFile));
+                    return 1;
                 }
             }
-        }
 
-        if (transformURL == null) {
-            File xslDir = AppUtil.findXSLDirectory(installDir);
-            if (xslDir != null) {
-                try {
-                    transformURL = URLUtil.createURL(FileUtil.fileToURL(xslDir),
-                                                     styleSheetPath);
-                } catch (MalformedURLException ignored) {}
-            }
+            group.add(converter);
         }
 
-        return transformURL;
-    }
+        int threadCount = Math.min(converters.size() - standalones.size(),
+                                   Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = 
+            Executors.newFixedThreadPool(Math.max(1, threadCount));
+        ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        int exitCode = 0;
 
-    private URL findStyleSheetResources(String styleSheetPath) {
-        int pos = styleSheetPath.lastIndexOf('/');
-        if (pos < 0) {
-            return null;
+        try {
+            for (ArrayList<Converter> group : groups.values()) {
+                int code = preProcessGroup(sharedPreProc, group, executor,
+                                           results);
+                if (code != 0 && exitCode == 0) {
+                    exitCode = code;
+                }
+            }
+
+            // These ones are run in this thread while the conversions of 
+            // the groups are run in the background.
+            for (Converter converter : standalones) {
+                sharedPreProc.setMedia(converter.format.toMedia());
+                int code = converter.run();
+                if (code != 0 && exitCode == 0) {
+                    exitCode = code;
+                }
+            }
+
+            for (Future<Integer> result : results) {
+                int code;
+                try {
+                    code = result.get().intValue();
+                } catch (Exception e) {
+                    console.error(ThrowableUtil.reason(e));
+                    code = 5;
+                }
+                if (code != 0 && exitCode == 0) {
+                    exitCode = code;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        preProc = null; // Help GC.
+        return exitCode;
+    }
+
+    private Converter newTargetConverter(Target target) {
+        Converter converter = new Converter(styleSheetCache, console);
+
+        converter.foConverters = foConverters;
+        converter.jhindexerExe = jhindexerExe;
+        converter.fopExeFile = fopExeFile;
+        converter.fopConfigFile = fopConfigFile;
+        converter.inProcessFOP = inProcessFOP;
+        converter.hhcExe = hhcExe;
+
+        converter.preProc = preProc;
+        converter.validate = validate;
+        converter.pluginName = pluginName;
+        // A custom XSLT stylesheet is specific to the main output file.
+        converter.styleSheetURL = null;
+        converter.keepFO = keepFO;
+        converter.addIndex = addIndex;
+        converter.writingManifest = writingManifest;
+        converter.compressMinSize = compressMinSize;
+        converter.perfReport = perfReport;
+        converter.inFiles = inFiles;
+
+        converter.format = target.format;
+        converter.outFile = target.outFile;
+
+        int count = styleSheetParams.length;
+        String[] params = new String[count + target.params.size()];
+        System.arraycopy(styleSheetParams, 0, params, 0, count);
+        for (String param : target.params) {
+            params[count++] = param;
+        }
+        converter.styleSheetParams = params;
+
+        return converter;
+    }
+
+    /**
+     * Targets having the same key may share the same preprocessed files.
+     */
+    private String getPreProcessKey() {
+        String name = outFile.getName();
+
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(format.toMedia());
+        buffer.append('|');
+        buffer.append(FileUtil.setExtension(name, null));
+        buffer.append('|');
+        String extension = getOutExtension();
+        if (extension != null) {
+            buffer.append(extension.toLowerCase());
+        }
+        return buffer.toString();
+    }
+
+    private int preProcessGroup(PreProcessor sharedPreProc,
+                                ArrayList<Converter> group, 
+                                ExecutorService executor,
+                                ArrayList<Future<Integer>> results) {
+        Converter first = group.get(0);
+        int count = group.size();
+
+        // Record the resources copied to the output directory of the first
+        // target in order to copy them to the output directories of the
+        // other targets.
+
+        ResourceHandler resourceHandler = sharedPreProc.getResourceHandler();
+        ResourceRecorder recorder = null;
+        if (resourceHandler != null && count > 1) {
+            recorder = new ResourceRecorder(resourceHandler);
+            sharedPreProc.setResourceHandler(recorder);
+        }
+        sharedPreProc.setMedia(first.format.toMedia());
+
+        File[] tocPreProcFile = new File[1];
+        File[] preProcFiles;
+        try {
+            preProcFiles = first.preProcess(inFiles, first.outFile, 
+                                            tocPreProcFile);
+        } finally {
+            sharedPreProc.setResourceHandler(resourceHandler);
+        }
+        if (preProcFiles == null) {
+            return 3;
+        }
+
+        String lang = sharedPreProc.getDocLang();
+        String[] resourcePaths = 
+            (recorder == null)? null : recorder.getPaths();
+
+        // Copy all the files before starting any conversion because
+        // a conversion deletes the preprocessed files when done.
+
+        final File[][] files = new File[count][];
+        final File[] tocFiles = new File[count];
+        files[0] = preProcFiles;
+        tocFiles[0] = tocPreProcFile[0];
+
+        for (int i = 1; i < count; ++i) {
+            File outDir = group.get(i).outFile.getParentFile();
+
+            files[i] = copyPreProcFiles(preProcFiles, resourcePaths, outDir);
+            if (files[i] == null) {
+                first.cleanUp(preProcFiles);
+                for (int j = 1; j < i; ++j) {
+                    first.cleanUp(files[j]);
+                }
+                return 2;
+            }
+
+            if (tocPreProcFile[0] != null) {
+                tocFiles[i] = new File(outDir, tocPreProcFile[0].getName());
+            }
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final Converter converter = group.get(i);
+            converter.docLang = lang;
+            if (converter != this) {
+                // Help GC. this.preProc is cleared by runTargets.
+                converter.preProc = null;
+            }
+
+            final int index = i;
+            results.add(executor.submit(new Callable<Integer>() {
+                public Integer call() {
+                    return converter.convert(files[index], tocFiles[index]);
+                }
+            }));
+        }
+
+        return 0;
+    }
+
+    private File[] copyPreProcFiles(File[] preProcFiles, 
+                                    String[] resourcePaths, File outDir) {
+        File srcDir = preProcFiles[0].getParentFile();
+        File[] copies = new File[preProcFiles.length];
+
+        try {
+            for (int i = 0; i < preProcFiles.length; ++i) {
+                copies[i] = new File(outDir, preProcFiles[i].getName());
+
+                if (console.isShowing(Console.MessageType.DEBUG)) {
+                    console.debug(Msg.msg("copyingPreProcFile",
+                                          preProcFiles[i], copies[i]));
+                }
+                FileUtil.copyFile(preProcFiles[i], copies[i]);
+            }
+
+            if (resourcePaths != null) {
+                for (String path : resourcePaths) {
+                    File src = ResourceRecorder.toFile(srcDir, path);
+                    File dst = ResourceRecorder.toFile(outDir, path);
+
+                    File dstDir = dst.getParentFile();
+                    if (!dstDir.isDirectory()) {
+                        FileUtil.checkedMkdirs(dstDir);
+                    }
+
+                    if (console.isShowing(Console.MessageType.DEBUG)) {
+                        console.debug(Msg.msg("copyingPreProcFile", src,
+                                              dst));
+                    }
+                    FileUtil.copyFile(src, dst);
+                }
+            }
+        } catch (IOException e) {
+            console.error(ThrowableUtil.reason(e));
+            return null;
+        }
+
+        return copies;
+    }
+
+    // -----------------------------------------------------------------------
+    // Convert preprocessed files
+    // -----------------------------------------------------------------------
+    
+    private boolean convert(File[] preProcFiles, String outExtension) {
+        switch (format) {
+        case XHTML:
+        case XHTML1_1:
+        case XHTML5:
+        case HTML:
+            return convertToHTMLForm(preProcFiles, outExtension);
+        case JAVA_HELP:
+            return convertToJavaHelp(preProcFiles, outExtension);
+        case HTML_HELP:
+            return convertToHTMLHelp(preProcFiles, outExtension);
+        case ECLIPSE_HELP:
+            return convertToEclipseHelp(preProcFiles, outExtension);
+        case WEB_HELP:
+        case WEB_HELP5:
+            return convertToWebHelp(preProcFiles, outExtension);
+        case EPUB:
+        case EPUB3:
+            return convertToEPUB(preProcFiles, outExtension);
+        default:
+            return convertToPrintForm(preProcFiles, outExtension);
+        }
+    }
+
+    // ------------------------------------
+    // convertToHTMLForm
+    // ------------------------------------
+
+    private boolean convertToHTMLForm(File[] preProcFiles, 
+                                      String outExtension) {
+        String styleSheetPath = getHTMLStyleSheetPath();
+        URL transformURL = getStyleSheet(styleSheetPath);
+        if (transformURL == null) {
+            return false;
+        }
+
+        if (!copyXSLResources(styleSheetPath, 
+                              preProcFiles[0].getParentFile())) {
+            return false;
+        }
+
+        String[] params = styleSheetParams;
+
+        File[] transformedFiles = transform(transformURL, params,
+                                            preProcFiles, outExtension);
+        if (transformedFiles == null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private String getHTMLStyleSheetPath() {
+        switch (format) {
+        case XHTML1_1:
+            return "xhtml/xhtml1_1.xsl";
+        case XHTML5:
+            return "xhtml/xhtml5.xsl";
+        case HTML:
+            return "xhtml/html.xsl";
+        default:
+            return "xhtml/xhtml.xsl";
+        }
+    }
+
+    private URL getStyleSheet(String styleSheetPath) {
+        URL transformURL = styleSheetURL;
+        if (transformURL == null) {
+            transformURL = findStyleSheet(styleSheetPath);
+            if (transformURL == null) {
+                console.error(Msg.msg("xsltNotFound", styleSheetPath));
+            }
+        }
+        return transformURL;
+    }
+
+    private URL findStyleSheet(String styleSheetPath) {
+        URL transformURL = null;
+
+        File installDir = AppUtil.findInstallDirectory();
+
+        if (pluginName != null) {
+            File pluginDir = AppUtil.findPluginDirectory(installDir);
+            if (pluginDir != null) {
+                File xslDir = new File(pluginDir,
+                                       pluginName + File.separator + "xsl");
+                if (xslDir.isDirectory()) {
+                    try {
+                        transformURL = 
+                            URLUtil.createURL(FileUtil.fileToURL(xslDir), 
+                                              styleSheetPath);
+                        if (!URLUtil.exists(transformURL)) {
+                            transformURL = null;
+                            // Fallback to stock XSLT stylesheet.
+                        }
+                    } catch (MalformedURLException ignored) {}
+                }
+            }
+        }
+
+        if (transformURL == null) {
+            File xslDir = AppUtil.findXSLDirectory(installDir);
+            if (xslDir != null) {
+                try {
+                    transformURL = URLUtil.createURL(FileUtil.fileToURL(xslDir),
+                                                     styleSheetPath);
+                } catch (MalformedURLException ignored) {}
+            }
+        }
+
+        return transformURL;
+    }
+
+    private URL findStyleSheetResources(String styleSheetPath) {
+        int pos = styleSheetPath.lastIndexOf('/');
+        if (pos < 0) {
+            return null;
         }
 
         String path = styleSheetPath.substring(0, pos) + "/resources.list";
@@ -944,40 +1553,45 @@ public class Converter {
         }
     }
 
-    private File[] transform(URL transformURL, String[] params,
-                             File[] preProcFiles, String outExtension) {
-        // Pass required param "ditacListsURI" ---
+    /**
+     * Transforms all the <tt>.ditac</tt> files found in 
+     * <tt>preProcFiles</tt> using specified XSLT stylesheet.
+     * Required parameter "<tt>ditacListsURI</tt>" is automatically added
+     * to specified parameters.
+     * <p>Package-private in order to be measured by 
+     * <tt>TransformBenchmark</tt>.
+     *
+     * @return the transformed files or <code>null</code> if an error 
+     * occurred, in which case error messages are displayed on the console
+     */
+    /*package*/ File[] transform(URL transformURL, String[] params,
+                                 File[] preProcFiles, String outExtension) {
+        return transform(transformURL, params, preProcFiles, outExtension,
+                         null);
+    }
 
+    private File[] transform(URL transformURL, String[] params,
+                             File[] preProcFiles, String outExtension,
+                             SAXFOConverter foConverter) {
+        params = addDitacListsURI(params, preProcFiles);
         int count = preProcFiles.length;
-        for (int i = 0; i < count; ++i) {
-            File ditacFile = preProcFiles[i];
-
-            if (ditacFile.getPath().endsWith(".ditac_lists")) {
-                String ditacListsURI = 
-                    FileUtil.fileToURL(ditacFile).toExternalForm();
-
-                if (params == null) {
-                    params = new String[] { "ditacListsURI", ditacListsURI };
-                } else {
-                    String[] params2 = new String[2+params.length];
-                    params2[0] = "ditacListsURI";
-                    params2[1] = ditacListsURI;
-                    System.arraycopy(params, 0, params2, 2, params.length);
-                    params = params2;
-                }
-                break;
-            }
-        }
 
         // Transform all .ditac files ---
 
-        URIResolver uriResolver = Resolve.createURIResolver();
+        URIResolver uriResolver = createURIResolver();
         ErrorListener errorListener = new ConsoleErrorListener(console);
-        EntityResolver entityResolver = Resolve.createEntityResolver();
 
         File[] transformedFiles = new File[count];
         int j = 0;
 
+        String phaseName = null;
+        if (perfReport != null) {
+            phaseName = "transform " + URLUtil.getBaseName(transformURL);
+            if (foConverter != null) {
+                phaseName += " + " + foConverter.getProcessorName();
+            }
+        }
+
         for (int i = 0; i < count; ++i) {
             File ditacFile = preProcFiles[i];
 
@@ -985,10 +1599,12 @@ public class Converter {
                 File transformedFile = FileUtil.setExtension(ditacFile,
                                                              outExtension);
 
+                PerfReport.Measure measure = beginPhase(phaseName);
+                long start = (measure == null)? 0 : System.nanoTime();
                 try {
                     transform(transformURL, params, 
-                              ditacFile, transformedFile, 
-                              uriResolver, errorListener, entityResolver);
+                              ditacFile, transformedFile, foConverter,
+                              uriResolver, errorListener);
                 } catch (Exception e) {
                     console.error(Msg.msg("cannotTransform", 
                                           ditacFile, transformedFile, 
@@ -996,6 +1612,17 @@ public class Converter {
                                           ThrowableUtil.reason(e)));
                     return null;
                 }
+                if (measure != null) {
+                    measure.end(1, -1);
+
+                    String ditacName = ditacFile.getName();
+                    perfReport.addChunkCost(ditacName,
+                                            PerfReport.TRANSFORM_TIME,
+                                            System.nanoTime() - start);
+                    perfReport.addChunkCost(ditacName,
+                                            PerfReport.OUTPUT_BYTES,
+                                            transformedFile.length());
+                }
 
                 transformedFiles[j++] = transformedFile;
             }
@@ -1007,14 +1634,48 @@ public class Converter {
         return transformedFiles;
     }
 
+    /**
+     * Returns specified XSLT stylesheet parameters plus
+     * required parameter "<tt>ditacListsURI</tt>".
+     */
+    private static String[] addDitacListsURI(String[] params,
+                                             File[] preProcFiles) {
+        for (File ditacFile : preProcFiles) {
+            if (ditacFile.getPath().endsWith(".ditac_lists")) {
+                String ditacListsURI = 
+                    FileUtil.fileToURL(ditacFile).toExternalForm();
+
+                if (params == null) {
+                    params = new String[] { "ditacListsURI", ditacListsURI };
+                } else {
+                    String[] params2 = new String[2+params.length];
+                    params2[0] = "ditacListsURI";
+                    params2[1] = ditacListsURI;
+                    System.arraycopy(params, 0, params2, 2, params.length);
+                    params = params2;
+                }
+                break;
+            }
+        }
+        return params;
+    }
+
     private void transform(URL transformURL, String[] params, 
                            File inFile, File outFile, 
+                           SAXFOConverter foConverter,
                            URIResolver uriResolver, 
-                           ErrorListener errorListener,
-                           EntityResolver entityResolver) 
+                           ErrorListener errorListener) 
         throws Exception {
-        console.info(Msg.msg("transforming", inFile, outFile,
-                             URLUtil.toLabel(transformURL)));
+        if (!console.isShowing(Console.MessageType.INFO)) {
+            // Do not format the message for nothing.
+        } else if (foConverter == null) {
+            console.info(Msg.msg("transforming", inFile, outFile,
+                                 URLUtil.toLabel(transformURL)));
+        } else {
+            console.info(Msg.msg("transformingFO", inFile, outFile,
+                                 URLUtil.toLabel(transformURL),
+                                 foConverter.getProcessorName()));
+        }
 
         Transformer transformer = createTransformer(transformURL);
 
@@ -1029,20 +1690,33 @@ public class Converter {
 
         transformer.setErrorListener(errorListener);
 
-        XMLReader xmlReader = createXMLReader();
-        xmlReader.setEntityResolver(entityResolver);
-
+        // Saxon builds its tree directly from the events reported by
+        // this parser.
+        XMLReader xmlReader = getDitacReader();
         Source source = new SAXSource(
             xmlReader, 
             new InputSource(FileUtil.fileToURL(inFile).toExternalForm()));
 
         OutputStream outStream =
             new BufferedOutputStream(new FileOutputStream(outFile));
-        StreamResult sink = new StreamResult(outStream);
-        sink.setSystemId(FileUtil.fileToURL(outFile).toExternalForm());
         
         try {
+            Result sink;
+            if (foConverter == null) {
+                sink = new StreamResult(outStream);
+            } else {
+                sink = new SAXResult(
+                    foConverter.newContentHandler(outFile, outStream, 
+                                                  console));
+            }
+            sink.setSystemId(FileUtil.fileToURL(outFile).toExternalForm());
+
             transformer.transform(source, sink);
+        } catch (Exception e) {
+            // Do not reuse a parser which may have been left in 
+            // an inconsistent state.
+            ditacReaders.remove();
+            throw e;
         } finally {
             outStream.close();
         }
@@ -1058,11 +1732,50 @@ public class Converter {
         return styleSheetCache.newTransformer(transformURL, console);
     }
 
+    /**
+     * Returns the URI resolver used by <tt>doc()</tt> and 
+     * <tt>document()</tt>. The documents it loads are shared by 
+     * all the transforms using the same stylesheet cache.
+     */
+    private URIResolver createURIResolver() {
+        URIResolver uriResolver = Resolve.createURIResolver();
+        try {
+            if (styleSheetCache == null) {
+                styleSheetCache = new StyleSheetCache();
+            }
+            return styleSheetCache.newURIResolver(uriResolver, console);
+        } catch (Exception ignored) {
+            // Reported when creating the Transformer.
+            return uriResolver;
+        }
+    }
+
     protected XMLReader createXMLReader() 
         throws Exception {
         return XMLUtil.newSAXParser().getXMLReader();
     }
 
+    /**
+     * Returns the parser used by this thread to read <tt>.ditac</tt> files.
+     * <p>A <tt>.ditac</tt> file, written by the preprocessor, 
+     * never has a DOCTYPE and never references external entities, 
+     * therefore this parser has no entity resolver and
+     * does not attempt to load external DTDs.
+     */
+    private XMLReader getDitacReader() 
+        throws Exception {
+        XMLReader xmlReader = ditacReaders.get();
+        if (xmlReader == null) {
+            xmlReader = createXMLReader();
+            try {
+                xmlReader.setFeature(LOAD_EXTERNAL_DTD, false);
+            } catch (Exception ignored) {}
+
+            ditacReaders.set(xmlReader);
+        }
+        return xmlReader;
+    }
+
     // ------------------------------------
     // convertToPrintForm
     // ------------------------------------
@@ -1110,22 +1823,37 @@ public class Converter {
             params = params2;
         }
 
+        // Unless the XSL-FO files are to be kept, pipe the output of the
+        // XSLT stylesheet directly into the XSL-FO processor, if possible.
+
+        SAXFOConverter saxFOConverter = null;
+        if (foConverter instanceof SAXFOConverter && !keepFO) {
+            saxFOConverter = (SAXFOConverter) foConverter;
+            foExtension = outExtension;
+        }
+
         File[] transformedFiles = transform(transformURL, params,
-                                            preProcFiles, foExtension);
+                                            preProcFiles, foExtension,
+                                            saxFOConverter);
         if (transformedFiles == null) {
             return false;
         }
 
-        if (foConverter != null) {
+        if (foConverter != null && saxFOConverter == null) {
             for (int i = 0; i < transformedFiles.length; ++i) {
                 File transformedFile = transformedFiles[i];
 
                 File outFile =
                     FileUtil.setExtension(transformedFile, outExtension);
 
-                console.info(Msg.msg("convertingFO", transformedFile,
-                                     outFile, foProcessorName));
+                if (console.isShowing(Console.MessageType.INFO)) {
+                    console.info(Msg.msg("convertingFO", transformedFile,
+                                         outFile, foProcessorName));
+                }
 
+                PerfReport.Measure measure = 
+                    beginPhase("fo " + foProcessorName);
+                long start = (measure == null)? 0 : System.nanoTime();
                 try {
                     foConverter.convertFO(transformedFile, outFile,
                                           console);
@@ -1135,6 +1863,16 @@ public class Converter {
                                           ThrowableUtil.reason(t)));
                     return false;
                 }
+                if (measure != null) {
+                    measure.end(1, -1);
+
+                    // Part of the cost of transforming the chunk.
+                    File ditacFile = 
+                        FileUtil.setExtension(transformedFile, "ditac");
+                    perfReport.addChunkCost(ditacFile.getName(),
+                                            PerfReport.TRANSFORM_TIME,
+                                            System.nanoTime() - start);
+                }
             }
 
             if (!keepFO && !deleteFilesOrDirs(transformedFiles)) {
@@ -1440,14 +2178,8 @@ public class Converter {
             params2 = ArrayUtil.trimToSize(params2, k);
         }
 
-        File[] transformedFiles = transform(transformURL, params,
-                                            preProcFiles, outExtension);
-        if (transformedFiles == null) {
-            return false;
-        }
-
-        deleteFilesOrDirs(preProcFiles); // No longer needed.
-        
+        // Configure the Web Help Compiler before transforming the .ditac 
+        // files, so that an invalid parameter is reported at once.
         Compiler compiler = createWebHelpCompiler();
         if (docLang != null) {
             params2 = ArrayUtil.append(params2, "wh-default-language");
@@ -1460,6 +2192,14 @@ public class Converter {
             return false;
         }
 
+        File[] transformedFiles = transform(transformURL, params,
+                                            preProcFiles, outExtension);
+        if (transformedFiles == null) {
+            return false;
+        }
+
+        deleteFilesOrDirs(preProcFiles); // No longer needed.
+
         console.info(Msg.msg("compilingWebHelp"));
 
         File outDir = transformedFiles[0].getParentFile();
@@ -1469,6 +2209,7 @@ public class Converter {
             indexFile = null;
         }
 
+        PerfReport.Measure measure = beginPhase("webhelpCompile");
         boolean done = false;
         try {
             done = compiler.compile(transformedFiles, tocFile, indexFile, 
@@ -1477,6 +2218,9 @@ public class Converter {
             console.error(Msg.msg("cannotCompileWebHelp", 
                                   ThrowableUtil.reason(e)));
         }
+        if (measure != null) {
+            measure.end(transformedFiles.length, -1);
+        }
 
         if (done) {
             deleteFileOrDir(tocFile);
@@ -1551,8 +2295,6 @@ public class Converter {
         console.info(Msg.msg("creatingArchive", preProcTempDir, outFile));
 
         try {
-            savePackageFiles(preProcTempDir);
-            
             zipEPUB(preProcTempDir, outFile);
         } catch (IOException e) {
             console.error(Msg.msg("cannotCreateArchive", preProcTempDir, 
@@ -1573,42 +2315,50 @@ public class Converter {
     "  </rootfiles>\n" +
     "</container>\n";
 
-    private static void savePackageFiles(File outDir) 
-        throws IOException {
-        // Same for EPUB 2, 3.
-        File outFile = new File(outDir, "mimetype");
-        FileUtil.saveString("application/epub+zip", outFile, "US-ASCII");
-
-        File metaDir = new File(outDir, "META-INF");
-        if (metaDir.exists()) {
-            FileUtil.deleteFileOrDir(metaDir);
-        }
-        FileUtil.checkedMkdir(metaDir);
-
-        outFile = new File(metaDir, "container.xml");
-        FileUtil.saveString(CONTAINER_XML, outFile, "US-ASCII");
-    }
-
+    /**
+     * Creates EPUB archive <tt>zipFile</tt> containing the files found in
+     * <tt>srcDir</tt>.
+     * <p>If an error occurs, the partially written archive is deleted and
+     * the original exception is rethrown.
+     * <p>Note that the files to be archived are first written to
+     * <tt>srcDir</tt>. Writing them directly to the archive (that is,
+     * using a Saxon <tt>OutputURIResolver</tt>) is out of the scope of this
+     * method: the result documents of the EPUB stylesheets, the resource
+     * handler and the XSLT resources all need a real directory.
+     */
     private static void zipEPUB(File srcDir, File zipFile) 
         throws IOException {
-        Zip.Archive archive = 
-          new Zip.Archive(new ZipOutputStream(new FileOutputStream(zipFile)));
+        // The entries are compressed in parallel.
+        ZipWriter archive = new ZipWriter(zipFile, /*threadCount*/ 0);
+        boolean done = false;
         try {
-            archive.add(new File(srcDir, "mimetype"), srcDir, /*store*/ true);
+            // The package files, same for EPUB 2, 3, are added directly
+            // to the archive. The "mimetype" entry must be the first one
+            // and must not be compressed.
+            archive.add("application/epub+zip".getBytes("US-ASCII"),
+                        "mimetype", /*store*/ true);
+            archive.add(CONTAINER_XML.getBytes("US-ASCII"),
+                        "META-INF/container.xml", /*store*/ false);
 
             String[] baseNames = FileUtil.checkedList(srcDir);
             for (String baseName : baseNames) {
-                if (!"mimetype".equals(baseName)) {
+                if (!"mimetype".equals(baseName) && 
+                    !"META-INF".equals(baseName)) {
                     File file = new File(srcDir, baseName);
                     if (file.isDirectory()) {
-                        archive.addAll(file, null, srcDir);
+                        archive.addAll(file, srcDir);
                     } else {
-                        archive.add(file, srcDir);
+                        archive.add(file, baseName, /*store*/ false);
                     }
                 }
             }
-        } finally {
+
             archive.close();
+            done = true;
+        } finally {
+            if (!done) {
+                archive.abort();
+            }
         }
     }
 
@@ -1663,6 +2413,34 @@ public class Converter {
                 }
 
                 preProc.setChunking(chunking);
+            } else if ("-target".equals(arg)) {
+                if (l+2 >= args.length) {
+                    usage(null);
+                    return false;
+                }
+
+                Format targetFormat = parseFormat(args[l+1], false);
+                if (targetFormat == null) {
+                    return false;
+                }
+
+                if (targets == null) {
+                    targets = new ArrayList<Target>();
+                }
+                File targetFile = (new File(args[l+2])).getAbsoluteFile();
+                targets.add(new Target(targetFormat, targetFile));
+                l += 2;
+            } else if ("-tp".equals(arg) || "-targetparam".equals(arg)) {
+                if (l+2 >= args.length || targets == null) {
+                    usage(null);
+                    return false;
+                }
+
+                ArrayList<String> targetParams = 
+                    targets.get(targets.size()-1).params;
+                targetParams.add(args[l+1]);
+                targetParams.add(args[l+2]);
+                l += 2;
             } else if ("-f".equals(arg) || "-format".equals(arg)) {
                 if (l+1 >= args.length) {
                     usage(null);
@@ -1756,17 +2534,31 @@ public class Converter {
                     usage(Msg.msg("notAnURLOrFile", location));
                     return false;
                 }
-            } else if ("-fop".equals(arg)) {
+            } else if ("-fop".equals(arg)) {
+                if (l+1 >= args.length) {
+                    configUsage(null);
+                    return false;
+                }
+
+                String exe = args[++l];
+                if (!registerFOP(exe)) {
+                    configUsage(Msg.msg("notAnExeFile", args[l]));
+                    return false;
+                }
+            } else if ("-fopinprocess".equals(arg)) {
+                setInProcessFOP(true);
+            } else if ("-fopconf".equals(arg)) {
                 if (l+1 >= args.length) {
                     configUsage(null);
                     return false;
                 }
 
-                String exe = args[++l];
-                if (!registerFOP(exe)) {
-                    configUsage(Msg.msg("notAnExeFile", args[l]));
+                File configFile = (new File(args[++l])).getAbsoluteFile();
+                if (!configFile.isFile()) {
+                    configUsage(Msg.msg("notAFile", args[l]));
                     return false;
                 }
+                setFOPConfigFile(configFile);
             } else if ("-xep".equals(arg)) {
                 if (l+1 >= args.length) {
                     configUsage(null);
@@ -1848,6 +2640,23 @@ public class Converter {
             } else if ("-dryrun".equals(arg)) {
                 dryRun = true;
                 preProc.setDryRun(true);
+            } else if ("-streaming".equals(arg)) {
+                preProc.setStreaming(true);
+            } else if ("-maxloadeddocs".equals(arg)) {
+                if (l+1 >= args.length) {
+                    debugUsage(null);
+                    return false;
+                }
+
+                int max = -1;
+                try {
+                    max = Integer.parseInt(args[++l]);
+                } catch (NumberFormatException ignored) {}
+                if (max < 0) {
+                    debugUsage(Msg.msg("invalidCount", args[l]));
+                    return false;
+                }
+                preProc.setMaxLoadedDocuments(max);
             } else if ("-automap".equals(arg)) {
                 if (l+1 >= args.length) {
                     debugUsage(null);
@@ -1874,6 +2683,65 @@ public class Converter {
                 return false;
             } else if ("-addindex".equals(arg)) {
                 addIndex = true;
+            } else if ("-manifest".equals(arg)) {
+                writingManifest = true;
+            } else if ("-perfReport".equals(arg) ||
+                       "-perfreport".equals(arg)) {
+                if (l+1 >= args.length) {
+                    usage(null);
+                    return false;
+                }
+
+                perfReportFile = new File(args[++l]);
+            } else if ("-perfTop".equals(arg) ||
+                       "-perftop".equals(arg)) {
+                if (l+1 >= args.length) {
+                    usage(null);
+                    return false;
+                }
+
+                String value = args[++l];
+                int count = -1;
+                try {
+                    count = Integer.parseInt(value);
+                } catch (NumberFormatException ignored) {}
+                if (count < 0) {
+                    usage(Msg.msg("invalidCount", value));
+                    return false;
+                }
+                perfTopCount = count;
+            } else if ("-preview".equals(arg)) {
+                if (l+1 >= args.length) {
+                    usage(null);
+                    return false;
+                }
+
+                String value = args[++l];
+                int port = -1;
+                try {
+                    port = Integer.parseInt(value);
+                } catch (NumberFormatException ignored) {}
+                if (port < 0 || port > 65535) {
+                    usage(Msg.msg("invalidPort", value));
+                    return false;
+                }
+                previewPort = port;
+            } else if ("-gzip".equals(arg)) {
+                if (l+1 >= args.length) {
+                    usage(null);
+                    return false;
+                }
+
+                String value = args[++l];
+                long minSize = -1;
+                try {
+                    minSize = Long.parseLong(value);
+                } catch (NumberFormatException ignored) {}
+                if (minSize < 0) {
+                    usage(Msg.msg("invalidCount", value));
+                    return false;
+                }
+                compressMinSize = minSize;
             } else if ("-partrestartschapternumber".equals(arg)) {
                 // Not documented.
                 preProc.setPartRestartsChapterNumber(true);
@@ -1886,6 +2754,10 @@ public class Converter {
                         configUsage(null);
                     } else if ("debug".equals(option)) {
                         debugUsage(null);
+                    } else if ("batch".equals(option)) {
+                        batchUsage(null);
+                    } else if ("sync".equals(option)) {
+                        syncUsage(null);
                     } else {
                         usage(null);
                     }
@@ -2142,6 +3014,22 @@ public class Converter {
         console.error(msg);
     }
 
+    private void batchUsage(String error) {
+        String msg = Msg.msg("batchUsage");
+        if (error != null) {
+            msg = error + "\n" + msg;
+        }
+        console.error(msg);
+    }
+
+    private void syncUsage(String error) {
+        String msg = Msg.msg("syncUsage", Manifest.FILE_NAME);
+        if (error != null) {
+            msg = error + "\n" + msg;
+        }
+        console.error(msg);
+    }
+
     private String[] prependOptionsFile(String[] args) {
         for (int i = 0; i < args.length; ++i) {
             if ("-ignoreoptionsfile".equals(args[i])) {
@@ -2190,6 +3078,446 @@ public class Converter {
         return optionsFile;
     }
 
+    // -----------------------------------------------------------------------
+    // Batch mode
+    // -----------------------------------------------------------------------
+
+    /**
+     * Runs in the same Java<sup>TM</sup> VM all the conversions 
+     * specified in a batch file.
+     * <p>Each line of the batch file specifies a job. A job is specified
+     * using the same arguments as those of the <tt>ditac</tt> command-line
+     * utility (e.g. <tt>-p center-toc yes out/manual.html manual.ditamap</tt>).
+     * Blank lines and lines starting with <tt>#</tt> are ignored.
+     * <p>All the jobs share the same {@link StyleSheetCache}. The RELAX NG
+     * schemas, the XML catalogs and the sizes of the images are cached for 
+     * the whole lifetime of the Java VM anyway.
+     * <p>Each job has its own console. The messages displayed on
+     * this console are prefixed by "<tt>ditac[<i>N</i>]: </tt>", 
+     * where <i>N</i> is the line number of the job in the batch file.
+     *
+     * @param batchFile the batch file. Its encoding is the native encoding
+     * of the platform.
+     * @param maxJobs max. number of jobs run concurrently. 
+     * A value less than or equal to 0 means: the number of available
+     * processors.
+     * @param console used to report the outcome of each job.
+     * May be <code>null</code>.
+     * @return 0 if all the jobs have succeeded; the exit code of the first
+     * job (in batch file order) which failed otherwise.
+     * @exception IOException if the batch file cannot be read
+     */
+    public static int runBatch(File batchFile, int maxJobs, Console console)
+        throws IOException {
+        if (console == null) {
+            console = 
+                new SimpleConsole("ditac: ", true, Console.MessageType.INFO);
+        }
+
+        String[] lines = 
+            StringUtil.split(FileUtil.loadString(batchFile), '\n');
+
+        final StyleSheetCache cache = new StyleSheetCache();
+
+        ArrayList<Integer> jobLines = new ArrayList<Integer>();
+        ArrayList<Callable<Integer>> jobs = new ArrayList<Callable<Integer>>();
+
+        for (int i = 0; i < lines.length; ++i) {
+            String line = lines[i].trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            final int lineNumber = i+1;
+            final String[] jobArgs = StringUtil.splitArguments(line);
+
+            jobLines.add(lineNumber);
+            jobs.add(new Callable<Integer>() {
+                public Integer call() {
+                    Console jobConsole = 
+                        new SimpleConsole("ditac[" + lineNumber + "]: ", true,
+                                          Console.MessageType.INFO);
+                    Converter converter = new Converter(cache, jobConsole);
+
+                    autoRegisterFOConverters(converter);
+
+                    String[] args = converter.prependOptionsFile(jobArgs);
+                    if (args == null) {
+                        return 1;
+                    }
+
+                    return converter.run(args);
+                }
+            });
+        }
+
+        if (maxJobs <= 0) {
+            maxJobs = Runtime.getRuntime().availableProcessors();
+        }
+        int threadCount = Math.max(1, Math.min(maxJobs, jobs.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        int exitCode = 0;
+        try {
+            ArrayList<Future<Integer>> results = 
+                new ArrayList<Future<Integer>>();
+            for (Callable<Integer> job : jobs) {
+                results.add(executor.submit(job));
+            }
+
+            for (int i = 0; i < results.size(); ++i) {
+                int lineNumber = jobLines.get(i);
+
+                int code;
+                try {
+                    code = results.get(i).get().intValue();
+                } catch (Exception e) {
+                    console.showMessage(Msg.msg("jobFailed", lineNumber,
+                                                ThrowableUtil.reason(e)),
+                                        Console.MessageType.ERROR);
+                    code = 1;
+                }
+
+                if (code != 0) {
+                    console.showMessage(Msg.msg("jobExitCode", lineNumber, 
+                                                code),
+                                        Console.MessageType.ERROR);
+                    if (exitCode == 0) {
+                        exitCode = code;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return exitCode;
+    }
+
+    private static int runBatch(String[] args, Converter converter) {
+        int maxJobs = 0;
+
+        int l = 1;
+        for (; l < args.length; ++l) {
+            String arg = args[l];
+
+            if ("-jobs".equals(arg)) {
+                if (l+1 >= args.length) {
+                    converter.batchUsage(null);
+                    return 1;
+                }
+
+                String value = args[++l];
+                try {
+                    maxJobs = Integer.parseInt(value);
+                } catch (NumberFormatException ignored) {
+                    maxJobs = -1;
+                }
+                if (maxJobs < 0) {
+                    converter.batchUsage(Msg.msg("invalidCount", value));
+                    return 1;
+                }
+            } else {
+                if (arg.startsWith("-")) {
+                    converter.batchUsage(Msg.msg("unknownOption", arg));
+                    return 1;
+                }
+                break;
+            }
+        }
+
+        if (l != args.length-1) {
+            converter.batchUsage(null);
+            return 1;
+        }
+        File batchFile = new File(args[l]);
+
+        try {
+            return runBatch(batchFile, maxJobs, converter.console);
+        } catch (IOException e) {
+            converter.console.error(Msg.msg("cannotLoadBatchFile", batchFile,
+                                            ThrowableUtil.reason(e)));
+            return 1;
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Sync
+    // -----------------------------------------------------------------------
+
+    private static int runSync(String[] args, Converter converter) {
+        int l = 1;
+        for (; l < args.length; ++l) {
+            String arg = args[l];
+
+            if ("-v".equals(arg)) {
+                converter.console.setVerbosity(Console.MessageType.VERBOSE);
+            } else {
+                if (arg.startsWith("-")) {
+                    converter.syncUsage(Msg.msg("unknownOption", arg));
+                    return 1;
+                }
+                break;
+            }
+        }
+
+        if (l != args.length-2) {
+            converter.syncUsage(null);
+            return 1;
+        }
+
+        File srcDir = new File(args[l]);
+        File dstDir = new File(args[l+1]);
+        if (!srcDir.isDirectory()) {
+            converter.syncUsage(Msg.msg("notADirectory", srcDir));
+            return 1;
+        }
+
+        try {
+            Manifest.sync(srcDir, dstDir, converter.console);
+        } catch (IOException e) {
+            converter.console.error(Msg.msg("cannotSync", srcDir, dstDir,
+                                            ThrowableUtil.reason(e)));
+            return 2;
+        }
+
+        return 0;
+    }
+
+    // -----------------------------------------------------------------------
+    // runPreview
+    // -----------------------------------------------------------------------
+
+    private int runPreview() {
+        switch (format) {
+        case XHTML:
+        case XHTML1_1:
+        case XHTML5:
+        case HTML:
+            break;
+        default:
+            console.error(Msg.msg("cannotPreviewFormat", format));
+            return 1;
+        }
+
+        if (!checkOutputDirectory()) {
+            return 2;
+        }
+        File outDir = outFile.getParentFile();
+
+        String outExtension = getOutExtension();
+        if (outExtension == null ||
+            "ditac".equalsIgnoreCase(outExtension) || 
+            "ditac_lists".equalsIgnoreCase(outExtension)) {
+            console.error(Msg.msg("reservedExtension", outExtension));
+            return 4;
+        }
+
+        // Sources ---
+
+        ArrayList<File> dirList = new ArrayList<File>();
+        for (URL inFile : inFiles) {
+            File file = URLUtil.urlToFile(inFile);
+            if (file == null) {
+                console.warning(Msg.msg("cannotWatch", 
+                                        URLUtil.toLabel(inFile)));
+                continue;
+            }
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir.equals(outDir)) {
+                console.error(Msg.msg("previewInSourceDir", outDir));
+                return 2;
+            }
+            if (!dirList.contains(dir)) {
+                dirList.add(dir);
+            }
+        }
+        File[] sourceDirs = new File[dirList.size()];
+        dirList.toArray(sourceDirs);
+
+        HashMap<File,Long> sourceFiles = 
+            PreviewServer.listSourceFiles(sourceDirs, outDir);
+
+        // Preprocess once ---
+
+        File[] preProcFiles = preProcess(inFiles, outFile, null);
+        if (preProcFiles == null) {
+            return 3;
+        }
+
+        HashMap<String,String> preProcHashes = hashFiles(preProcFiles);
+        if (preProcHashes == null) {
+            return 3;
+        }
+
+        // Transform on demand ---
+
+        String styleSheetPath = getHTMLStyleSheetPath();
+        final URL transformURL = getStyleSheet(styleSheetPath);
+        if (transformURL == null) {
+            return 5;
+        }
+
+        if (!copyXSLResources(styleSheetPath, outDir)) {
+            return 5;
+        }
+
+        // The .ditac_lists file is always rewritten at the same location.
+        final String[] params = 
+            addDitacListsURI(styleSheetParams, preProcFiles);
+        final URIResolver uriResolver = createURIResolver();
+        final ErrorListener errorListener = new ConsoleErrorListener(console);
+
+        PreviewServer server = new PreviewServer(outDir, outExtension,
+                                                 outFile.getName(), console) {
+            protected boolean transform(File ditacFile, File transformedFile) {
+                try {
+                    Converter.this.transform(transformURL, params, 
+                                             ditacFile, transformedFile,
+                                             /*foConverter*/ null,
+                                             uriResolver, errorListener);
+                    return true;
+                } catch (Exception e) {
+                    console.error(Msg.msg("cannotTransform", 
+                                          ditacFile, transformedFile, 
+                                          transformURL,
+                                          ThrowableUtil.reason(e)));
+                    return false;
+                }
+            }
+        };
+
+        try {
+            server.start(previewPort);
+        } catch (IOException e) {
+            console.error(Msg.msg("cannotStartPreview", 
+                                  Integer.toString(previewPort),
+                                  ThrowableUtil.reason(e)));
+            return 11;
+        }
+
+        // Not subject to the verbosity of the console.
+        console.console.showMessage(Msg.msg("previewStarted", 
+                                            server.getIndexURL()),
+                                    Console.MessageType.INFO);
+
+        // Preprocess again when a source file is modified ---
+
+        try {
+            for (;;) {
+                Thread.sleep(1000);
+
+                HashMap<File,Long> sourceFiles2 = 
+                    PreviewServer.listSourceFiles(sourceDirs, outDir);
+                if (sourceFiles2.equals(sourceFiles)) {
+                    continue;
+                }
+                sourceFiles = sourceFiles2;
+
+                console.console.showMessage(Msg.msg("previewUpdating"),
+                                            Console.MessageType.INFO);
+
+                synchronized (server) {
+                    preProcFiles = preProcess(inFiles, outFile, null);
+                    if (preProcFiles == null) {
+                        // Errors displayed on the console. Fix the sources
+                        // and try again.
+                        server.invalidateAll();
+                        preProcHashes.clear();
+                        continue;
+                    }
+
+                    HashMap<String,String> preProcHashes2 = 
+                        hashFiles(preProcFiles);
+                    if (preProcHashes2 == null) {
+                        server.invalidateAll();
+                        preProcHashes.clear();
+                        continue;
+                    }
+
+                    invalidateChanged(preProcHashes, preProcHashes2, outDir,
+                                      server);
+                    preProcHashes = preProcHashes2;
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            server.stop();
+        }
+
+        return 0;
+    }
+
+    private HashMap<String,String> hashFiles(File[] files) {
+        HashMap<String,String> hashes = new HashMap<String,String>();
+        for (File file : files) {
+            try {
+                hashes.put(file.getName(), hashPreProcFile(file));
+            } catch (IOException e) {
+                console.error(ThrowableUtil.reason(e));
+                return null;
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * The IDs generated by the preprocessor are the same from one run to
+     * the other (see DITAUtil.generateID), therefore any difference
+     * between two versions of a preprocessed file is a real change.
+     */
+    private static String hashPreProcFile(File file)
+        throws IOException {
+        byte[] bytes = FileUtil.loadBytes(file);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (Exception shouldNotHappen) {
+            throw new IOException(shouldNotHappen.toString());
+        }
+        return Base16.encode(digest.digest(bytes));
+    }
+
+    private void invalidateChanged(HashMap<String,String> oldHashes,
+                                   HashMap<String,String> newHashes,
+                                   File outDir, PreviewServer server) {
+        // The lists (TOC, index, etc) are used to generate all the pages.
+        boolean allChanged = false;
+        for (String baseName : newHashes.keySet()) {
+            if (baseName.endsWith(".ditac_lists") &&
+                !newHashes.get(baseName).equals(oldHashes.get(baseName))) {
+                allChanged = true;
+                break;
+            }
+        }
+        if (allChanged) {
+            server.invalidateAll();
+        }
+
+        int changed = 0;
+        for (String baseName : oldHashes.keySet()) {
+            if (!newHashes.containsKey(baseName)) {
+                File ditacFile = new File(outDir, baseName);
+                server.invalidate(ditacFile);
+                ditacFile.delete();
+            }
+        }
+        for (String baseName : newHashes.keySet()) {
+            if (!newHashes.get(baseName).equals(oldHashes.get(baseName))) {
+                if (!allChanged) {
+                    server.invalidate(new File(outDir, baseName));
+                }
+                ++changed;
+            }
+        }
+
+        console.console.showMessage(Msg.msg("previewUpdated", changed,
+                                            newHashes.size()),
+                                    Console.MessageType.INFO);
+    }
+
     // -----------------------------------------------------------------------
     // main
     // -----------------------------------------------------------------------
@@ -2200,6 +3528,14 @@ public class Converter {
     public static void main(String[] args) {
         Converter converter = new Converter();
 
+        if (args.length > 0) {
+            if ("-batch".equals(args[0])) {
+                System.exit(runBatch(args, converter));
+            } else if ("-sync".equals(args[0])) {
+                System.exit(runSync(args, converter));
+            }
+        }
+
         autoRegisterFOConverters(converter);
 
         args = converter.prependOptionsFile(args);
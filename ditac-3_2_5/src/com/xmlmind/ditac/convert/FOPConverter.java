@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.ZipFile;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.util.XMLUtil;
+import com.xmlmind.util.Console;
+
+/**
+ * An implementation of {@link FOConverter} which runs Apache FOP
+ * in the same Java<sup>TM</sup> VM as the Converter.
+ * <p>The FOP classes are loaded from the same jars as the ones added 
+ * to the class path by the <tt>fop</tt> shell script: the jars found in 
+ * the subdirectories of the FOP distribution (<tt>build/</tt>, 
+ * <tt>lib/</tt>, <tt>target/</tt>, etc) and the hyphenation jars 
+ * listed in environment variable <tt>FOP_HYPHENATION_PATH</tt>.
+ * FOP is accessed by the means of reflection, hence FOP is not needed 
+ * to compile ditac.
+ * <p>The FopFactory (which caches fonts, images, etc) is shared by all
+ * the FOPConverters having the same FOP directory and the same 
+ * configuration file, as long as the output files are created 
+ * in the same directory.
+ */
+public final class FOPConverter implements SAXFOConverter {
+    /**
+     * The directory containing the FOP distribution;
+     * that is, the directory containing the <tt>fop</tt> shell script and
+     * the <tt>build/</tt> and <tt>lib/</tt> subdirectories.
+     */
+    public final File fopDir;
+
+    /**
+     * The format generated by this XSL-FO processor:
+     * {@link Format#PDF} or {@link Format#PS}.
+     */
+    public final Format targetFormat;
+
+    /**
+     * The FOP configuration file (<tt>fop.xconf</tt>) used to create 
+     * the FopFactory. May be <code>null</code>, in which case
+     * FOP uses its default configuration, exactly like the <tt>fop</tt>
+     * command when it is not passed the <tt>-c</tt> option.
+     */
+    public final File configFile;
+
+    private static HashMap<File,ClassLoader> classLoaders =
+        new HashMap<File,ClassLoader>();
+    private static HashMap<String,Object> fopFactories =
+        new HashMap<String,Object>();
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Constructs a FOPConverter fully initialized using specified
+     * arguments.
+     *
+     * @param fopDir the directory containing the FOP distribution
+     * @param targetFormat the format generated by FOP:
+     * {@link Format#PDF} or {@link Format#PS}
+     * @param configFile the FOP configuration file. 
+     * May be <code>null</code>.
+     * @see #isFOPDir
+     */
+    public FOPConverter(File fopDir, Format targetFormat, File configFile) {
+        this.fopDir = fopDir;
+        this.targetFormat = targetFormat;
+        this.configFile = configFile;
+    }
+
+    /**
+     * Returns <code>true</code> if specified directory contains
+     * a FOP distribution which can be used by a FOPConverter;
+     * <code>false</code> otherwise.
+     * <p>That is, one of the jars which would be added to the class path
+     * by the <tt>fop</tt> shell script contains the FOP API.
+     */
+    public static boolean isFOPDir(File dir) {
+        for (File jar : getJars(dir)) {
+            if (jar.isFile() && containsFOPAPI(jar)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsFOPAPI(File jarFile) {
+        try {
+            ZipFile zip = new ZipFile(jarFile);
+            try {
+                return (zip.getEntry("org/apache/fop/apps/" + 
+                                     "FopFactoryBuilder.class") != null);
+            } finally {
+                zip.close();
+            }
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    public String getProcessorName() {
+        return "FOP";
+    }
+
+    public Format getTargetFormat() {
+        return targetFormat;
+    }
+
+    public void convertFO(File inFile, File outFile, Console console)
+        throws Exception {
+        OutputStream out =
+            new BufferedOutputStream(new FileOutputStream(outFile));
+        try {
+            ContentHandler handler =
+                newContentHandler(inFile.getAbsoluteFile().getParentFile(),
+                                  out);
+
+            XMLReader xmlReader = XMLUtil.newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(
+                new InputSource(FileUtil.fileToURL(inFile).toExternalForm()));
+
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    public ContentHandler newContentHandler(File outFile, OutputStream out,
+                                            Console console)
+        throws Exception {
+        return newContentHandler(outFile.getAbsoluteFile().getParentFile(),
+                                 out);
+    }
+
+    private ContentHandler newContentHandler(File baseDir, OutputStream out)
+        throws Exception {
+        Object fopFactory = getFopFactory(baseDir);
+        ClassLoader loader = fopFactory.getClass().getClassLoader();
+
+        Object userAgent = invoke(fopFactory, "newFOUserAgent", null, null);
+
+        Class<?> userAgentClass =
+            loader.loadClass("org.apache.fop.apps.FOUserAgent");
+        Object fop = invoke(fopFactory, "newFop",
+                            new Class<?>[] {
+                                String.class, userAgentClass,
+                                OutputStream.class
+                            },
+                            new Object[] {
+                                (targetFormat == Format.PS)?
+                                    "application/postscript" :
+                                    "application/pdf",
+                                userAgent, out
+                            });
+
+        return (ContentHandler) invoke(fop, "getDefaultHandler", null, null);
+    }
+
+    private Object getFopFactory(File baseDir)
+        throws Exception {
+        String key = fopDir.getPath() + File.pathSeparatorChar +
+            baseDir.getPath() + File.pathSeparatorChar +
+            ((configFile == null)? "" : configFile.getPath());
+
+        synchronized (fopFactories) {
+            Object fopFactory = fopFactories.get(key);
+            if (fopFactory == null) {
+                ClassLoader loader = getClassLoader(fopDir);
+
+                Object builder;
+                if (configFile == null) {
+                    Class<?> builderClass = loader.loadClass(
+                        "org.apache.fop.apps.FopFactoryBuilder");
+                    builder = builderClass.getConstructor(URI.class)
+                        .newInstance(baseDir.toURI());
+                } else {
+                    // Same as "fop -c configFile".
+                    Class<?> parserClass = loader.loadClass(
+                        "org.apache.fop.apps.FopConfParser");
+                    Object parser = 
+                        parserClass.getConstructor(File.class, URI.class)
+                        .newInstance(configFile, baseDir.toURI());
+                    builder = invoke(parser, "getFopFactoryBuilder", 
+                                     null, null);
+                }
+
+                // Same as "fop -r".
+                invoke(builder, "setStrictFOValidation",
+                       new Class<?>[] { Boolean.TYPE },
+                       new Object[] { Boolean.FALSE });
+
+                fopFactory = invoke(builder, "build", null, null);
+                fopFactories.put(key, fopFactory);
+            }
+            return fopFactory;
+        }
+    }
+
+    private static ClassLoader getClassLoader(File fopDir)
+        throws Exception {
+        synchronized (classLoaders) {
+            ClassLoader loader = classLoaders.get(fopDir);
+            if (loader == null) {
+                ArrayList<File> jarList = getJars(fopDir);
+                int jarCount = jarList.size();
+                URL[] jars = new URL[jarCount];
+                for (int i = 0; i < jarCount; ++i) {
+                    jars[i] = FileUtil.fileToURL(jarList.get(i));
+                }
+                loader = new URLClassLoader(
+                    jars, FOPConverter.class.getClassLoader());
+                classLoaders.put(fopDir, loader);
+            }
+            return loader;
+        }
+    }
+
+    /**
+     * Returns the jars added to the class path by the <tt>fop</tt> shell
+     * script (<tt>fop.bat</tt> on Windows) found in specified directory.
+     */
+    private static ArrayList<File> getJars(File fopDir) {
+        ArrayList<File> jars = new ArrayList<File>();
+
+        // "$FOP_HOME/*/*.jar", which includes build/fop.jar, 
+        // build/fop-sandbox.jar and build/fop-hyph.jar.
+        File[] dirs = fopDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory()) {
+                    addJars(dir, jars);
+                }
+            }
+        }
+
+        String path = System.getenv("FOP_HYPHENATION_PATH");
+        if (path != null) {
+            for (String item : path.split(File.pathSeparator)) {
+                if ((item = item.trim()).length() > 0) {
+                    jars.add(new File(item));
+                }
+            }
+        }
+
+        return jars;
+    }
+
+    private static void addJars(File dir, ArrayList<File> jars) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".jar")) {
+                    jars.add(file);
+                }
+            }
+        }
+    }
+
+    private static Object invoke(Object object, String methodName,
+                                 Class<?>[] argTypes, Object[] args)
+        throws Exception {
+        Method method = object.getClass().getMethod(methodName, argTypes);
+        try {
+            return method.invoke(object, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a string representation of this FOPConverter
+     * which is useful when debugging.
+     */
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(getProcessorName());
+        buffer.append('[');
+        buffer.append(targetFormat);
+        buffer.append("]: in-process, \"");
+        buffer.append(fopDir);
+        buffer.append('"');
+        if (configFile != null) {
+            buffer.append(", \"");
+            buffer.append(configFile);
+            buffer.append('"');
+        }
+        return buffer.toString();
+    }
+}
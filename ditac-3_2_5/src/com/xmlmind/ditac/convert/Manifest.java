@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import com.xmlmind.util.Base16;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.util.StringUtil;
+import com.xmlmind.util.Console;
+
+/**
+ * Lists all the files contained in an output directory: their paths,
+ * sizes, last modification dates and SHA-256 digests.
+ * <p>Comparing the manifest of a freshly generated deliverable with
+ * the manifest of a previously published deliverable allows to publish
+ * just the files which have actually changed. See {@link #sync}.
+ */
+public final class Manifest {
+    /**
+     * The basename of the manifest file, which is saved in
+     * the output directory.
+     */
+    public static final String FILE_NAME = ".ditac_manifest";
+
+    /**
+     * A file listed in a manifest.
+     */
+    public static final class Item {
+        /**
+         * The path of the file, relative to the output directory.
+         * Uses '/' as a separator.
+         */
+        public final String path;
+
+        /**
+         * The size of the file in bytes.
+         */
+        public final long size;
+
+        /**
+         * The last modification date of the file.
+         */
+        public final long lastModified;
+
+        /**
+         * The SHA-256 digest of the content of the file,
+         * in hexadecimal form.
+         */
+        public final String hash;
+
+        public Item(String path, long size, long lastModified, String hash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        /**
+         * Returns <code>true</code> if specified file seems to have
+         * not been modified since this item has been recorded.
+         */
+        public boolean isUpToDate(File file) {
+            return (file.lastModified() == lastModified &&
+                    file.length() == size);
+        }
+    }
+
+    private TreeMap<String,Item> items;
+
+    private static final String HEADER = "# ditac manifest 1";
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Constructs an empty manifest.
+     */
+    public Manifest() {
+        items = new TreeMap<String,Item>();
+    }
+
+    /**
+     * Returns the number of files listed in this manifest.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Returns the item having specified path;
+     * <code>null</code> if there is no such item.
+     */
+    public Item get(String path) {
+        return items.get(path);
+    }
+
+    /**
+     * Adds specified item to this manifest, replacing the item
+     * having the same path, if any.
+     */
+    public void add(Item item) {
+        items.put(item.path, item);
+    }
+
+    /**
+     * Returns all the items of this manifest, sorted by path.
+     */
+    public Item[] getItems() {
+        Item[] list = new Item[items.size()];
+        return items.values().toArray(list);
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Loads specified manifest file.
+     *
+     * @exception IOException if an I/O problem occurs or if specified file
+     * is not a manifest file
+     */
+    public static Manifest load(File file)
+        throws IOException {
+        String[] lines =
+            StringUtil.split(FileUtil.loadString(file, "UTF-8"), '\n');
+        if (lines.length == 0 || !HEADER.equals(lines[0].trim())) {
+            throw new IOException(Msg.msg("notAManifest", file));
+        }
+
+        Manifest manifest = new Manifest();
+
+        for (int i = 1; i < lines.length; ++i) {
+            String line = lines[i];
+            if (line.length() == 0) {
+                continue;
+            }
+
+            // The path comes last because it may contain tabs.
+            String[] fields = splitFields(line);
+            if (fields == null) {
+                throw new IOException(Msg.msg("invalidManifestLine", file,
+                                              i+1));
+            }
+
+            try {
+                manifest.add(new Item(fields[3], Long.parseLong(fields[0]),
+                                      Long.parseLong(fields[1]), fields[2]));
+            } catch (NumberFormatException ignored) {
+                throw new IOException(Msg.msg("invalidManifestLine", file,
+                                              i+1));
+            }
+        }
+
+        return manifest;
+    }
+
+    private static String[] splitFields(String line) {
+        String[] fields = new String[4];
+        int start = 0;
+        for (int i = 0; i < 3; ++i) {
+            int tab = line.indexOf('\t', start);
+            if (tab < 0) {
+                return null;
+            }
+            fields[i] = line.substring(start, tab);
+            start = tab + 1;
+        }
+        fields[3] = line.substring(start);
+        return fields;
+    }
+
+    /**
+     * Saves this manifest to specified file.
+     *
+     * @exception IOException if an I/O problem occurs
+     */
+    public void save(File file)
+        throws IOException {
+        StringBuilder buffer = new StringBuilder(HEADER);
+        buffer.append('\n');
+
+        for (Item item : items.values()) {
+            buffer.append(item.size);
+            buffer.append('\t');
+            buffer.append(item.lastModified);
+            buffer.append('\t');
+            buffer.append(item.hash);
+            buffer.append('\t');
+            buffer.append(item.path);
+            buffer.append('\n');
+        }
+
+        FileUtil.saveString(buffer.toString(), file, "UTF-8");
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Creates the manifest of specified directory.
+     * <p>When a file has the same content as the one recorded in
+     * <tt>previous</tt>, the last modification date of this file is
+     * restored. That is, the file appears to have not been rewritten.
+     *
+     * @param dir the directory to be listed. Recursively traversed.
+     * Its manifest file, if any, is not listed.
+     * @param previous the previous manifest of the same directory.
+     * Used to avoid recomputing the digests of the files which have not
+     * been modified. May be <code>null</code>.
+     * @param console console on which progress messages are displayed.
+     * May be <code>null</code>.
+     * @return the manifest of specified directory
+     * @exception IOException if an I/O problem occurs
+     */
+    public static Manifest create(File dir, Manifest previous,
+                                  Console console)
+        throws IOException {
+        Manifest manifest = new Manifest();
+        int[] restored = new int[1];
+
+        addFiles(dir, "", previous, manifest, restored);
+
+        if (console != null && restored[0] > 0) {
+            console.showMessage(Msg.msg("unchangedFiles", restored[0]),
+                                Console.MessageType.VERBOSE);
+        }
+        return manifest;
+    }
+
+    private static void addFiles(File dir, String dirPath, Manifest previous,
+                                 Manifest manifest, int[] restored)
+        throws IOException {
+        File[] files = FileUtil.checkedListFiles(dir);
+        for (File file : files) {
+            String name = file.getName();
+            String path = dirPath + name;
+
+            if (file.isDirectory()) {
+                addFiles(file, path + "/", previous, manifest, restored);
+                continue;
+            }
+            if (dirPath.length() == 0 && FILE_NAME.equals(name)) {
+                continue;
+            }
+
+            Item old = (previous == null)? null : previous.get(path);
+            if (old != null && old.isUpToDate(file)) {
+                manifest.add(old);
+                continue;
+            }
+
+            String hash = hash(file);
+            long size = file.length();
+            long lastModified = file.lastModified();
+
+            if (old != null && old.size == size && old.hash.equals(hash)) {
+                // Rewritten, but same bytes.
+                if (file.setLastModified(old.lastModified)) {
+                    lastModified = file.lastModified();
+                    ++restored[0];
+                }
+            }
+
+            manifest.add(new Item(path, size, lastModified, hash));
+        }
+    }
+
+    /**
+     * Returns the SHA-256 digest of the content of specified file,
+     * in hexadecimal form.
+     *
+     * @exception IOException if an I/O problem occurs
+     */
+    public static String hash(File file)
+        throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (Exception shouldNotHappen) {
+            throw new IOException(shouldNotHappen.toString());
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[65536];
+            int count;
+            while ((count = in.read(bytes)) != -1) {
+                digest.update(bytes, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        return Base16.encode(digest.digest());
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Makes <tt>dstDir</tt> contain the same files as <tt>srcDir</tt> by
+     * copying to <tt>dstDir</tt> only the files which have changed and
+     * by deleting from <tt>dstDir</tt> the files which no longer exist
+     * in <tt>srcDir</tt>.
+     * <p>The manifest of <tt>srcDir</tt> is compared with the manifest 
+     * of <tt>dstDir</tt> (created if it does not exist). Once synchronized,
+     * <tt>dstDir</tt> contains an up-to-date manifest.
+     * <p>The manifest of <tt>srcDir</tt> is always recreated: the existing
+     * one, if any, is only used to avoid recomputing the digests of 
+     * the files which have not been modified since it was written.
+     * This file may be stale, for example because <tt>srcDir</tt> has 
+     * been regenerated by a conversion not asked to write a manifest.
+     *
+     * @param srcDir the source directory, typically the output directory of
+     * a conversion
+     * @param dstDir the destination directory. Created if it does not exist.
+     * @param console console on which progress messages are displayed.
+     * May be <code>null</code>.
+     * @exception IOException if an I/O problem occurs
+     */
+    public static void sync(File srcDir, File dstDir, Console console)
+        throws IOException {
+        File srcManifestFile = new File(srcDir, FILE_NAME);
+        Manifest srcManifest = 
+            create(srcDir,
+                   srcManifestFile.isFile()? load(srcManifestFile) : null,
+                   console);
+
+        Manifest dstManifest;
+        if (dstDir.isDirectory()) {
+            dstManifest = loadOrCreate(dstDir);
+        } else {
+            FileUtil.checkedMkdirs(dstDir);
+            dstManifest = new Manifest();
+        }
+
+        Manifest synced = new Manifest();
+        int copied = 0;
+        int deleted = 0;
+
+        for (Item srcItem : srcManifest.items.values()) {
+            File dstFile = toFile(dstDir, srcItem.path);
+
+            Item dstItem = dstManifest.get(srcItem.path);
+            if (dstItem != null &&
+                dstItem.hash.equals(srcItem.hash) &&
+                dstItem.isUpToDate(dstFile)) {
+                synced.add(dstItem);
+                continue;
+            }
+
+            File srcFile = toFile(srcDir, srcItem.path);
+            if (console != null) {
+                console.showMessage(Msg.msg("copyingFile", srcFile, dstFile),
+                                    Console.MessageType.VERBOSE);
+            }
+
+            File parentDir = dstFile.getParentFile();
+            if (!parentDir.isDirectory()) {
+                FileUtil.checkedMkdirs(parentDir);
+            }
+            FileUtil.copyFile(srcFile, dstFile, /*sameDate*/ true);
+            ++copied;
+
+            synced.add(new Item(srcItem.path, dstFile.length(),
+                                dstFile.lastModified(), srcItem.hash));
+        }
+
+        ArrayList<File> parentDirs = new ArrayList<File>();
+        for (Item dstItem : dstManifest.items.values()) {
+            if (srcManifest.get(dstItem.path) == null) {
+                File dstFile = toFile(dstDir, dstItem.path);
+                if (dstFile.isFile()) {
+                    if (console != null) {
+                        console.showMessage(Msg.msg("deletingFileOrDir",
+                                                    dstFile),
+                                            Console.MessageType.VERBOSE);
+                    }
+                    FileUtil.checkedDelete(dstFile);
+                    ++deleted;
+
+                    parentDirs.add(dstFile.getParentFile());
+                }
+            }
+        }
+
+        // Delete the directories left empty.
+        for (File parentDir : parentDirs) {
+            while (!parentDir.equals(dstDir) &&
+                   FileUtil.isEmptyDir(parentDir) &&
+                   parentDir.delete()) {
+                parentDir = parentDir.getParentFile();
+            }
+        }
+
+        synced.save(new File(dstDir, FILE_NAME));
+
+        if (console != null) {
+            console.showMessage(Msg.msg("syncDone", copied, deleted,
+                                        synced.size() - copied),
+                                Console.MessageType.INFO);
+        }
+    }
+
+    private static Manifest loadOrCreate(File dir)
+        throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (file.isFile()) {
+            return load(file);
+        } else {
+            return create(dir, null, null);
+        }
+    }
+
+    private static File toFile(File dir, String path) {
+        if (File.separatorChar != '/') {
+            path = path.replace('/', File.separatorChar);
+        }
+        return new File(dir, path);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.util.StringUtil;
+import com.xmlmind.util.Console;
+
+/**
+ * Creates a <tt>.gz</tt> sibling for each compressible file
+ * (HTML pages, CSS, JavaScript, etc) contained in an output directory,
+ * so that a Web server may directly serve the pre-compressed variant.
+ * <p>A <tt>.gz</tt> file has the same last modification date as
+ * the file it compresses. A file is not compressed again if its
+ * <tt>.gz</tt> sibling has the same last modification date.
+ * <p>The paths of the <tt>.gz</tt> files created by PreCompressor are
+ * recorded in {@link #LIST_FILE_NAME}. The <tt>.gz</tt> files recorded
+ * by a previous run into the same directory whose source file no longer
+ * exists (or is now too small to be compressed) are deleted. The other
+ * <tt>.gz</tt> files, for example those supplied by the user, are 
+ * never deleted.
+ */
+/*package*/ final class PreCompressor {
+    private static final String[] COMPRESSIBLE_EXTENSIONS = {
+        "css", "htm", "html", "js", "json", "ncx", "opf", "svg", "txt",
+        "xhtml", "xml"
+    };
+
+    /**
+     * The basename of the file, saved in the output directory, listing
+     * the <tt>.gz</tt> files created by PreCompressor.
+     */
+    public static final String LIST_FILE_NAME = ".ditac_compressed";
+
+    private static final String LIST_HEADER = "# ditac compressed files 1";
+
+    private PreCompressor() {}
+
+    /**
+     * Compresses the compressible files contained in specified directory.
+     *
+     * @param dir directory to be recursively traversed
+     * @param minSize files smaller than this size in bytes are not
+     * compressed
+     * @param console console on which progress messages are displayed
+     * @return the number of files which have actually been compressed
+     * @exception IOException if an I/O problem occurs
+     */
+    public static int compressAll(File dir, long minSize,
+                                  final Console console)
+        throws IOException {
+        File listFile = new File(dir, LIST_FILE_NAME);
+        HashSet<String> previous = loadList(listFile);
+
+        ArrayList<File> files = new ArrayList<File>();
+        TreeSet<String> compressed = new TreeSet<String>();
+        listFiles(dir, "", minSize, previous, files, compressed, console);
+
+        // Saved first: if the compression fails, the .gz files which
+        // have been created are nevertheless recorded as ours.
+        saveList(compressed, listFile);
+
+        if (files.size() == 0) {
+            return 0;
+        }
+
+        int threadCount = Math.min(files.size(),
+                                   Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            ArrayList<Future<Object>> results =
+                new ArrayList<Future<Object>>();
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call()
+                        throws IOException {
+                        compress(file, console);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Object> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause.toString());
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return files.size();
+    }
+
+    private static void listFiles(File dir, String dirPath, long minSize,
+                                  HashSet<String> previous,
+                                  ArrayList<File> files,
+                                  TreeSet<String> compressed, 
+                                  Console console)
+        throws IOException {
+        File[] list = FileUtil.checkedListFiles(dir);
+        for (File file : list) {
+            String path = dirPath + file.getName();
+
+            if (file.isDirectory()) {
+                listFiles(file, path + "/", minSize, previous, files,
+                          compressed, console);
+            } else if (isCompressible(file)) {
+                File gzFile = getCompressedFile(file);
+                String gzPath = path + ".gz";
+                if (file.length() >= minSize) {
+                    if (gzFile.lastModified() != file.lastModified()) {
+                        files.add(file);
+                    }
+                    // Otherwise, up to date.
+
+                    compressed.add(gzPath);
+                } else if (previous.contains(gzPath) && gzFile.isFile()) {
+                    // Would be served instead of the current file.
+                    deleteFile(gzFile, console);
+                }
+            } else if (previous.contains(path) && isOrphan(file)) {
+                deleteFile(file, console);
+            }
+        }
+    }
+
+    /**
+     * Returns the paths, relative to the output directory, of 
+     * the <tt>.gz</tt> files recorded in specified list file.
+     * Returns an empty set if this file does not exist or is not
+     * a list file.
+     */
+    private static HashSet<String> loadList(File listFile)
+        throws IOException {
+        HashSet<String> paths = new HashSet<String>();
+
+        if (listFile.isFile()) {
+            String[] lines = 
+                StringUtil.split(FileUtil.loadString(listFile, "UTF-8"), '\n');
+            if (lines.length > 0 && LIST_HEADER.equals(lines[0].trim())) {
+                for (int i = 1; i < lines.length; ++i) {
+                    String line = lines[i];
+                    if (line.length() > 0) {
+                        paths.add(line);
+                    }
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    private static void saveList(TreeSet<String> paths, File listFile)
+        throws IOException {
+        if (paths.size() == 0) {
+            if (listFile.isFile()) {
+                FileUtil.checkedDelete(listFile);
+            }
+            return;
+        }
+
+        StringBuilder buffer = new StringBuilder(LIST_HEADER);
+        buffer.append('\n');
+        for (String path : paths) {
+            buffer.append(path);
+            buffer.append('\n');
+        }
+
+        FileUtil.saveString(buffer.toString(), listFile, "UTF-8");
+    }
+
+    /**
+     * Returns <code>true</code> if specified file is the <tt>.gz</tt>
+     * sibling of a compressible file which no longer exists.
+     */
+    private static boolean isOrphan(File file) {
+        String name = file.getName();
+        if (!name.endsWith(".gz") || name.length() == 3) {
+            return false;
+        }
+
+        File srcFile = new File(file.getParentFile(),
+                                name.substring(0, name.length()-3));
+        return (isCompressible(srcFile) && !srcFile.exists());
+    }
+
+    private static void deleteFile(File file, Console console)
+        throws IOException {
+        if (console != null) {
+            console.showMessage(Msg.msg("deletingFileOrDir", file),
+                                Console.MessageType.VERBOSE);
+        }
+        FileUtil.checkedDelete(file);
+    }
+
+    private static boolean isCompressible(File file) {
+        String extension = FileUtil.getExtension(file);
+        if (extension == null) {
+            return false;
+        }
+        extension = extension.toLowerCase();
+
+        for (String compressible : COMPRESSIBLE_EXTENSIONS) {
+            if (compressible.equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File getCompressedFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".gz");
+    }
+
+    private static void compress(File file, Console console)
+        throws IOException {
+        File gzFile = getCompressedFile(file);
+        File tmpFile = new File(file.getParentFile(),
+                                file.getName() + ".gz.tmp");
+
+        if (console != null) {
+            console.showMessage(Msg.msg("compressingFile", file, gzFile),
+                                Console.MessageType.VERBOSE);
+        }
+
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(tmpFile),
+                                                65536) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+        try {
+            FileUtil.copyFile(file, out);
+            out.flush();
+        } finally {
+            out.close();
+        }
+
+        if (gzFile.exists()) {
+            FileUtil.checkedDelete(gzFile);
+        }
+        FileUtil.checkedRename(tmpFile, gzFile);
+
+        // This is how an up-to-date .gz file is detected.
+        FileUtil.checkedSetLastModified(gzFile, file.lastModified());
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.xmlmind.util.FileUtil;
+import com.xmlmind.util.ThrowableUtil;
+import com.xmlmind.util.Console;
+import com.xmlmind.ditac.util.ConsoleHelper;
+
+/**
+ * A Web server, listening on the loopback interface, which serves the files
+ * contained in an output directory and which transforms
+ * a <tt>.ditac</tt> file only when the corresponding page is requested.
+ * <p>A transformed page is kept until {@link #invalidate} is invoked for
+ * its <tt>.ditac</tt> file.
+ * <p>All requests are processed by a single thread. Synchronize on
+ * the server object in order to modify the output directory while
+ * the server is running.
+ */
+/*package*/ abstract class PreviewServer {
+    private final File outDir;
+    private final String outExtension;
+    private final String indexName;
+    private final ConsoleHelper console;
+
+    private HttpServer server;
+    private final HashSet<String> transformed;
+
+    private static final String[][] CONTENT_TYPES = {
+        { "html", "text/html; charset=UTF-8" },
+        { "htm", "text/html; charset=UTF-8" },
+        { "xhtml", "application/xhtml+xml" },
+        { "css", "text/css" },
+        { "js", "application/javascript" },
+        { "json", "application/json" },
+        { "xml", "application/xml" },
+        { "svg", "image/svg+xml" },
+        { "png", "image/png" },
+        { "gif", "image/gif" },
+        { "jpg", "image/jpeg" },
+        { "jpeg", "image/jpeg" },
+        { "txt", "text/plain; charset=UTF-8" }
+    };
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Constructs a server which has not yet been started.
+     *
+     * @param outDir the output directory containing the <tt>.ditac</tt>
+     * files
+     * @param outExtension the extension of the transformed pages
+     * (e.g. <tt>"html"</tt>)
+     * @param indexName the basename of the page served for "<tt>/</tt>"
+     * @param console console on which progress and error messages
+     * are displayed
+     */
+    public PreviewServer(File outDir, String outExtension, String indexName,
+                         ConsoleHelper console) {
+        this.outDir = outDir;
+        this.outExtension = outExtension;
+        this.indexName = indexName;
+        this.console = console;
+
+        transformed = new HashSet<String>();
+    }
+
+    /**
+     * Transforms specified <tt>.ditac</tt> file to specified page.
+     * Invoked with the lock of this server held.
+     *
+     * @return <code>true</code> if the transform has succeeded;
+     * <code>false</code> otherwise, after displaying an error message
+     */
+    protected abstract boolean transform(File ditacFile, File outFile);
+
+    /**
+     * Starts listening on specified port of the loopback interface.
+     *
+     * @exception IOException if the server cannot be started
+     */
+    public void start(int port)
+        throws IOException {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port),
+            /*backlog*/ 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange)
+                throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // A null executor means: processed by the dispatcher thread.
+        server.setExecutor(null);
+        server.start();
+    }
+
+    /**
+     * Returns the URL of the index page of this server.
+     */
+    public String getIndexURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" +
+            indexName;
+    }
+
+    /**
+     * Stops this server.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(/*delay*/ 0);
+            server = null;
+        }
+    }
+
+    /**
+     * Discards the page obtained by transforming specified
+     * <tt>.ditac</tt> file.
+     */
+    public synchronized void invalidate(File ditacFile) {
+        File outFile = getOutFile(ditacFile);
+
+        transformed.remove(outFile.getName());
+        if (outFile.isFile()) {
+            outFile.delete();
+        }
+    }
+
+    /**
+     * Discards all the transformed pages.
+     */
+    public synchronized void invalidateAll() {
+        for (String baseName : transformed) {
+            File outFile = new File(outDir, baseName);
+            if (outFile.isFile()) {
+                outFile.delete();
+            }
+        }
+        transformed.clear();
+    }
+
+    private File getOutFile(File ditacFile) {
+        return FileUtil.setExtension(ditacFile, outExtension);
+    }
+
+    // -----------------------------------------------------------------------
+
+    private synchronized void serve(HttpExchange exchange)
+        throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod()) &&
+            !"HEAD".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Method Not Allowed");
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        if (path == null || path.length() == 0 || "/".equals(path)) {
+            exchange.getResponseHeaders().set("Location", "/" + indexName);
+            exchange.sendResponseHeaders(302, -1);
+            return;
+        }
+
+        // Never serve anything outside the output directory.
+        if (path.indexOf("..") >= 0 || path.indexOf('\\') >= 0) {
+            sendError(exchange, 403, "Forbidden");
+            return;
+        }
+
+        File file = new File(outDir, path.substring(1).replace('/',
+                                                      File.separatorChar));
+        String baseName = file.getName();
+
+        String extension = FileUtil.getExtension(baseName);
+        if (extension != null &&
+            extension.equalsIgnoreCase(outExtension)) {
+            File ditacFile = FileUtil.setExtension(file, "ditac");
+            if (ditacFile.isFile() &&
+                (!transformed.contains(baseName) || !file.isFile())) {
+                long start = System.currentTimeMillis();
+
+                if (!transform(ditacFile, file)) {
+                    sendError(exchange, 500, "Internal Server Error");
+                    return;
+                }
+                transformed.add(baseName);
+
+                console.verbose(Msg.msg("previewTransformed", ditacFile,
+                                        System.currentTimeMillis()-start));
+            }
+        } else if ("ditac".equals(extension) ||
+                   "ditac_lists".equals(extension)) {
+            sendError(exchange, 404, "Not Found");
+            return;
+        }
+
+        if (!file.isFile()) {
+            sendError(exchange, 404, "Not Found");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type",
+                                          getContentType(extension));
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, file.length());
+        OutputStream out = exchange.getResponseBody();
+        try {
+            FileUtil.copyFile(file, out);
+        } catch (IOException e) {
+            console.warning(Msg.msg("cannotServeFile", file,
+                                    ThrowableUtil.reason(e)));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status,
+                                  String reason)
+        throws IOException {
+        byte[] bytes = (status + " " + reason + "\n").getBytes("US-ASCII");
+
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "text/plain; charset=US-ASCII");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String getContentType(String extension) {
+        if (extension != null) {
+            extension = extension.toLowerCase();
+
+            for (String[] pair : CONTENT_TYPES) {
+                if (pair[0].equals(extension)) {
+                    return pair[1];
+                }
+            }
+        }
+        return "application/octet-stream";
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Returns the last modification dates of all the files contained
+     * in specified directories.
+     *
+     * @param dirs the directories to be recursively traversed
+     * @param excludedDir a directory which is not to be traversed.
+     * May be <code>null</code>.
+     */
+    public static HashMap<File,Long> listSourceFiles(File[] dirs,
+                                                     File excludedDir) {
+        HashMap<File,Long> files = new HashMap<File,Long>();
+        for (File dir : dirs) {
+            listSourceFiles(dir, excludedDir, files);
+        }
+        return files;
+    }
+
+    private static void listSourceFiles(File dir, File excludedDir,
+                                        HashMap<File,Long> files) {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            return;
+        }
+
+        for (File file : list) {
+            if (file.isDirectory()) {
+                if (!file.equals(excludedDir)) {
+                    listSourceFiles(file, excludedDir, files);
+                }
+            } else {
+                files.put(file, Long.valueOf(file.lastModified()));
+            }
+        }
+    }
+}
@@ -10,13 +10,20 @@ package com.xmlmind.ditac.convert;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import com.xmlmind.util.FileUtil;
 import com.xmlmind.util.URIComponent;
 import com.xmlmind.util.URLUtil;
 import com.xmlmind.util.Console;
 import com.xmlmind.ditac.preprocess.Media;
-import com.xmlmind.ditac.preprocess.ResourceHandler;
+import com.xmlmind.ditac.preprocess.AsyncResourceHandler;
 
 /**
  * An implementation of ResourceHandler which simply copies 
@@ -26,18 +33,34 @@ import com.xmlmind.ditac.preprocess.ResourceHandler;
  * handleResource("file:/home/john/doc/img/logo.png", "/tmp", console)} copies
  * <tt>logo.png</tt> to <tt>/tmp/graphics</tt> and returns 
  * "<tt>graphics/logo.png</tt>".
+ * <p>The resources are copied in the background, by a small pool
+ * of threads. An existing file is never overwritten, but it is reused 
+ * as is if it already has the content of the resource.
  */
-public class ResourceCopier implements ResourceHandler {
+public class ResourceCopier implements AsyncResourceHandler {
     protected Media media;
     protected String resourcePath;
 
     protected HashMap<URL,String> urlToPath;
 
+    /**
+     * Maps the files created (or reused) by this ResourceCopier to 
+     * the URLs of the corresponding resources. Used to allocate 
+     * output filenames without having to query the file system.
+     */
+    protected HashMap<File,URL> fileToURL;
+
+    private ArrayList<Future<Object>> copies;
+
+    private static ThreadPoolExecutor copier;
+
     // -----------------------------------------------------------------------
 
     public ResourceCopier() {
         media = Media.SCREEN;
         urlToPath = new HashMap<URL,String>();
+        fileToURL = new HashMap<File,URL>();
+        copies = new ArrayList<Future<Object>>();
     }
 
     public void setMedia(Media media) {
@@ -66,6 +89,8 @@ public class ResourceCopier implements ResourceHandler {
 
     public void reset() {
         urlToPath.clear();
+        fileToURL.clear();
+        copies.clear();
     }
 
     public String handleResource(URL resourceURL, String resourceType, 
@@ -89,6 +114,7 @@ public class ResourceCopier implements ResourceHandler {
         }
 
         File outFile = null;
+        boolean copy = true;
 
         String rootName = FileUtil.setExtension(baseName, null);
         String extension = FileUtil.getExtension(baseName);
@@ -101,18 +127,38 @@ public class ResourceCopier implements ResourceHandler {
             path = joinPath(resourcePath, name);
 
             outFile = new File(outDir, path);
-            if (!outFile.isFile()) {
-                break;
+
+            URL otherURL = fileToURL.get(outFile);
+            if (otherURL != null) {
+                // Created by this ResourceCopier.
+                if (sameContent(otherURL, resourceURL)) {
+                    // Same resource, found in another location.
+                    copy = false;
+                    break;
+                }
+            } else {
+                if (!outFile.isFile()) {
+                    break;
+                }
+
+                if (isUpToDate(resourceURL, outFile)) {
+                    copy = false;
+                    break;
+                }
             }
         }
 
-        // Create the resource (hierarchy of) directory if needed to.
-        File resourceDir = outFile.getParentFile();
-        if (!resourceDir.isDirectory()) {
-            FileUtil.checkedMkdirs(resourceDir);
-        }
+        fileToURL.put(outFile, resourceURL);
 
-        copyResource(resourceURL, resourceType, isImage, outFile, console);
+        if (copy) {
+            // Create the resource (hierarchy of) directory if needed to.
+            File resourceDir = outFile.getParentFile();
+            if (!resourceDir.isDirectory()) {
+                FileUtil.checkedMkdirs(resourceDir);
+            }
+
+            scheduleCopy(resourceURL, resourceType, isImage, outFile, console);
+        }
 
         // The expected result is an URL and not a filename.
         if (File.separatorChar != '/' && 
@@ -126,6 +172,99 @@ public class ResourceCopier implements ResourceHandler {
         return path;
     }
 
+    /**
+     * Waits until all the resources passed to {@link #handleResource
+     * handleResource} have been copied.
+     */
+    public void finish(Console console)
+        throws Exception {
+        ArrayList<Future<Object>> list = copies;
+        copies = new ArrayList<Future<Object>>();
+
+        Exception error = null;
+        for (Future<Object> copy : list) {
+            try {
+                copy.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    Throwable cause = e.getCause();
+                    error = (cause instanceof Exception)? 
+                        (Exception) cause : e;
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void scheduleCopy(final URL resourceURL, final String resourceType,
+                              final boolean isImage, final File outFile,
+                              final Console console) {
+        copies.add(getCopier().submit(new Callable<Object>() {
+            public Object call()
+                throws Exception {
+                copyResource(resourceURL, resourceType, isImage, outFile, 
+                             console);
+                return null;
+            }
+        }));
+    }
+
+    private static synchronized ThreadPoolExecutor getCopier() {
+        if (copier == null) {
+            int threadCount = 
+                Math.min(4, Runtime.getRuntime().availableProcessors());
+
+            // Idle threads terminate. Therefore ResourceCopiers never 
+            // prevent the Java VM from exiting.
+            copier = 
+                new ThreadPoolExecutor(threadCount, threadCount, 
+                                       1L, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<Runnable>());
+            copier.allowCoreThreadTimeOut(true);
+        }
+        return copier;
+    }
+
+    private static boolean sameContent(URL url1, URL url2) {
+        if (url1.equals(url2)) {
+            return true;
+        }
+
+        File file1 = URLUtil.urlToFile(url1);
+        File file2 = URLUtil.urlToFile(url2);
+        if (file1 == null || file2 == null) {
+            return false;
+        }
+
+        try {
+            return FileUtil.contentEquals(file1, file2);
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if specified existing output file 
+     * already contains specified resource, as it would have been copied by 
+     * {@link #copyResource}; <code>false</code> otherwise.
+     * May be overridden by a resource converter.
+     */
+    protected boolean isUpToDate(URL resourceURL, File outFile) {
+        File srcFile = URLUtil.urlToFile(resourceURL);
+        if (srcFile == null) {
+            return false;
+        }
+
+        try {
+            return FileUtil.contentEquals(srcFile, outFile);
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
     /**
      * Returns <code>true</code> is specified resource is to be copied;
      * <code>false</code> otherwise. 
@@ -178,6 +317,8 @@ public class ResourceCopier implements ResourceHandler {
      * Copy specified resource to specified file, an INFO message 
      * being displayed on specified console. May be overridden by 
      * a resource converter.
+     * <p>Invoked in a background thread. Several resources may be
+     * copied concurrently.
      */
     protected void copyResource(URL resourceURL, String resourceType, 
                                 boolean isImage, File outFile, Console console) 
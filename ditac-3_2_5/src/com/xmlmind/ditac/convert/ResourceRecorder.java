@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import com.xmlmind.util.URIComponent;
+import com.xmlmind.util.Console;
+import com.xmlmind.ditac.preprocess.Media;
+import com.xmlmind.ditac.preprocess.AsyncResourceHandler;
+import com.xmlmind.ditac.preprocess.ResourceHandler;
+
+/**
+ * A ResourceHandler which delegates all its work to another ResourceHandler
+ * and which records the paths, relative to the output directory, 
+ * of the resources created by the other ResourceHandler.
+ * <p>Used to copy the preprocessed files to another output directory.
+ */
+/*package*/ final class ResourceRecorder implements AsyncResourceHandler {
+    public final ResourceHandler resourceHandler;
+    private LinkedHashSet<String> paths;
+
+    public ResourceRecorder(ResourceHandler resourceHandler) {
+        this.resourceHandler = resourceHandler;
+        paths = new LinkedHashSet<String>();
+    }
+
+    /**
+     * Returns the paths, relative to the output directory,
+     * of the resources created by the other ResourceHandler.
+     */
+    public String[] getPaths() {
+        String[] list = new String[paths.size()];
+        paths.toArray(list);
+        return list;
+    }
+
+    public void setMedia(Media media) {
+        resourceHandler.setMedia(media);
+    }
+
+    public Media getMedia() {
+        return resourceHandler.getMedia();
+    }
+
+    public void parseParameters(String parameters)
+        throws Exception {
+        resourceHandler.parseParameters(parameters);
+    }
+
+    public void reset()
+        throws Exception {
+        resourceHandler.reset();
+        paths.clear();
+    }
+
+    public String handleResource(URL resourceURL, String resourceType, 
+                                 boolean isImage, File outDir, Console console)
+        throws Exception {
+        String path = resourceHandler.handleResource(resourceURL, resourceType,
+                                                     isImage, outDir, console);
+        if (path != null && 
+            path.indexOf(':') < 0 && 
+            !path.startsWith("/")) {
+            paths.add(path);
+        }
+        return path;
+    }
+
+    public void finish(Console console)
+        throws Exception {
+        if (resourceHandler instanceof AsyncResourceHandler) {
+            ((AsyncResourceHandler) resourceHandler).finish(console);
+        }
+    }
+
+    /**
+     * Converts specified path, as returned by {@link #getPaths}, 
+     * to a file relative to specified directory.
+     */
+    public static File toFile(File dir, String path) {
+        path = URIComponent.decode(path);
+        if (File.separatorChar != '/') {
+            path = path.replace('/', File.separatorChar);
+        }
+        return new File(dir, path);
+    }
+}
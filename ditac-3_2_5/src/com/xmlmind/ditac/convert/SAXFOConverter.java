@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.File;
+import java.io.OutputStream;
+import org.xml.sax.ContentHandler;
+import com.xmlmind.util.Console;
+
+/**
+ * An {@link FOConverter} which can receive XSL-FO as a stream of SAX events.
+ * This allows the Converter to pipe the output of the XSLT stylesheets
+ * directly into the XSL-FO processor, without first creating 
+ * an XSL-FO file.
+ */
+public interface SAXFOConverter extends FOConverter {
+    /**
+     * Returns a SAX ContentHandler which converts the XSL-FO document 
+     * it receives to specified output stream.
+     * 
+     * @param outFile the output file. Relative URIs found in the XSL-FO
+     * document are resolved against the directory containing this file.
+     * @param out the output stream where the result of the conversion
+     * is to be written. This stream is opened and closed by the caller.
+     * @param console Console on which progress, trace, debug, etc, message
+     * can be displayed. May be <code>null</code>.
+     * @exception Exception if, for any reason, this operation fails
+     */
+    ContentHandler newContentHandler(File outFile, OutputStream out, 
+                                     Console console)
+        throws Exception;
+}
@@ -21,6 +21,7 @@ import javax.xml.transform.stream.StreamSource;
 import com.xmlmind.util.URLUtil;
 import com.xmlmind.util.Console;
 import com.xmlmind.ditac.xslt.ExtensionFunctions;
+import com.xmlmind.ditac.xslt.DocumentPool;
 import com.xmlmind.ditac.util.Resolve;
 
 /**
@@ -67,6 +68,7 @@ public final class StyleSheetCache {
 
     private HashMap<URL, Entry> urlToEntry;
     private TransformerFactory transformerFactory;
+    private DocumentPool documentPool;
 
     /**
      * Constructs an empty stylesheet cache.
@@ -74,6 +76,7 @@ public final class StyleSheetCache {
     public StyleSheetCache() {
         urlToEntry = new HashMap<URL, Entry>();
         transformerFactory = null;
+        documentPool = null;
     }
 
     /**
@@ -153,6 +156,31 @@ public final class StyleSheetCache {
         return entry.templates.newTransformer();
     }
 
+    /**
+     * Returns an URI resolver which is to be used by <tt>doc()</tt>
+     * and <tt>document()</tt> in the Transformers returned by
+     * {@link #newTransformer}.
+     * <p>The documents loaded using this URI resolver are parsed once
+     * and then shared by all these Transformers, until
+     * their files are modified.
+     *
+     * @param resolver the URI resolver used to resolve URIs
+     * (e.g. the one returned by {@link Resolve#createURIResolver}). 
+     * May be <code>null</code>.
+     * @param console console on which error messages are displayed.
+     * May be <code>null</code>.
+     * @return a new URI resolver
+     * @exception Exception if, for any reason, this operation fails
+     *
+     * @see DocumentPool#newURIResolver
+     */
+    public synchronized URIResolver newURIResolver(URIResolver resolver,
+                                                   Console console) 
+        throws Exception {
+        getTransformerFactory(console);
+        return documentPool.newURIResolver(resolver);
+    }
+
     private TransformerFactory getTransformerFactory(Console console) 
         throws Exception {
         if (transformerFactory == null) {
@@ -170,6 +198,8 @@ public final class StyleSheetCache {
             // For use by xsl:import and xsl:include.
             URIResolver uriResolver = Resolve.createURIResolver();
             transformerFactory.setURIResolver(uriResolver);
+
+            documentPool = new DocumentPool(transformerFactory);
         }
 
         // The console may change each time getTransformerFactory is invoked.
@@ -188,6 +218,9 @@ public final class StyleSheetCache {
      */
     public synchronized void clear(Console console) {
         urlToEntry.clear();
+        if (documentPool != null) {
+            documentPool.clear();
+        }
 
         if (console != null) {
             console.showMessage(Msg.msg("clearedCache"),
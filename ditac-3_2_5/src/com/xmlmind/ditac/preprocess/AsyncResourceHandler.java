@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import com.xmlmind.util.Console;
+
+/**
+ * A ResourceHandler which may process its resources in the background.
+ * <p>{@link #handleResource handleResource} immediately returns the URL of
+ * the processed resource, but the processed resource may not exist yet.
+ * The PreProcessor invokes {@link #finish} after having passed all
+ * the resources of a document to the AsyncResourceHandler.
+ */
+public interface AsyncResourceHandler extends ResourceHandler {
+    /**
+     * Waits until all the resources passed to
+     * {@link #handleResource handleResource} have been processed.
+     * Always invoked after a run, even when this run has failed.
+     *
+     * @param console Console on which progress, trace, debug, etc, message
+     * can be displayed. May be <code>null</code>.
+     * @exception Exception if, for any reason, the processing of a resource
+     * has failed
+     */
+    void finish(Console console)
+        throws Exception;
+}
@@ -8,10 +8,8 @@
  */
 package com.xmlmind.ditac.preprocess;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
 import static javax.xml.XMLConstants.XML_NS_URI;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
@@ -20,8 +18,6 @@ import com.xmlmind.util.ArrayUtil;
 import com.xmlmind.util.StringList;
 import com.xmlmind.util.StringUtil;
 import com.xmlmind.util.XMLText;
-import com.xmlmind.util.KeyValuePair;
-import com.xmlmind.util.LinearHashtable;
 import com.xmlmind.ditac.util.DOMUtil;
 import com.xmlmind.ditac.util.DITAUtil;
 
@@ -35,129 +31,215 @@ import com.xmlmind.ditac.util.DITAUtil;
             processRelatedLinks(relatedLinks);
         }
     }
-    
-    private static void processRelatedLinks(Element relatedLinks) {
-        Stack<LinearHashtable<String, Object>> stack =
-            new Stack<LinearHashtable<String, Object>>();
 
-        LinearHashtable<String, Object> push = 
-            new LinearHashtable<String, Object>(23);
-
-        // Cascading but not additive attributes.
-        String[] attrNames = {
-            "cascade",
-            "type", "role", "otherrole", "format", "scope",
-            "rev"
-        };
-
-        for (String attrName : attrNames) {
-            String localValue = getAttribute(relatedLinks, attrName);
+    // -----------------------------------------------------------------------
 
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                localValue = "";
+    /**
+     * The cascading attributes of a map or of a related-links element.
+     * An attribute is identified by its index in this table and 
+     * not by its name.
+     */
+    private static final class AttributeTable {
+        public final String[] qNames;
+        public final String[] namespaces;
+        public final String[] localNames;
+        public final boolean[] additive;
+
+        /**
+         * Constructs a table containing specified cascading but not additive
+         * attributes followed by specified filter attributes, all 
+         * of them being additive except <tt>rev</tt>.
+         */
+        public AttributeTable(String[] attrNames, String[] filterAttributes) {
+            int count = attrNames.length;
+            for (String attrName : filterAttributes) {
+                if (!"rev".equals(attrName)) {
+                    ++count;
+                }
             }
-            push.put(attrName, localValue);
-        }
 
-        // "deliveryTarget" which specializes "props" also cascades.
-        String[] attrNames2 = DITAUtil.getFilterAttributes(relatedLinks);
+            qNames = new String[count];
+            namespaces = new String[count];
+            localNames = new String[count];
+            additive = new boolean[count];
 
-        for (String attrName : attrNames2) {
-            if ("rev".equals(attrName)) {
-                // All select-atts except @rev are additive.
-                continue;
+            int i = 0;
+            for (String attrName : attrNames) {
+                add(i++, attrName, /*additive*/ false);
             }
 
-            String localValue = getAttribute(relatedLinks, attrName);
+            for (String attrName : filterAttributes) {
+                if ("rev".equals(attrName)) {
+                    // All select-atts except @rev are additive.
+                    continue;
+                }
+                add(i++, attrName, /*additive*/ true);
+            }
+        }
 
-            String[] pushedValue;
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                pushedValue = StringUtil.EMPTY_LIST;
+        private void add(int i, String qName, boolean isAdditive) {
+            qNames[i] = qName;
+            if (qName.startsWith("xml:")) {
+                namespaces[i] = XML_NS_URI;
+                localNames[i] = qName.substring(4);
             } else {
-                pushedValue = XMLText.splitList(localValue);
+                namespaces[i] = null;
+                localNames[i] = qName;
             }
+            additive[i] = isAdditive;
+        }
 
-            push.put(attrName, pushedValue);
+        public int indexOf(String qName) {
+            return StringList.indexOf(qNames, qName);
         }
 
-        checkOtherrole(relatedLinks, push);
+        public String getAttribute(Element element, int i) {
+            String value = element.getAttributeNS(namespaces[i], localNames[i]);
+            if (value != null && (value = value.trim()).length() == 0) {
+                value = null;
+            }
+            return value;
+        }
 
-        stack.push(push);
+        public void setAttribute(Element element, int i, String value) {
+            element.setAttributeNS(namespaces[i], qNames[i], value);
+        }
 
-        Node child = relatedLinks.getFirstChild();
-        while (child != null) {
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                Element childElement = (Element) child;
+        public void removeAttribute(Element element, int i) {
+            element.removeAttributeNS(namespaces[i], localNames[i]);
+        }
+    }
 
-                boolean isLink = DITAUtil.hasClass(childElement, "topic/link");
-                processRelatedLinks(childElement, isLink, stack);
+    /**
+     * Attribute "cascade" is always the first attribute of 
+     * an AttributeTable.
+     */
+    private static final int CASCADE = 0;
+
+    /**
+     * The values of the cascading attributes for an element 
+     * and its descendants.
+     * <p>A frame is never modified once created. Therefore an element 
+     * which does not specify any cascading attribute simply shares 
+     * the frame of its parent.
+     */
+    private static final class AttributeFrame {
+        public final AttributeTable table;
+
+        /**
+         * A String for a non-additive attribute, a String[] for 
+         * an additive attribute.
+         */
+        public final Object[] values;
+
+        /**
+         * Values as attribute values. An empty string means: no value.
+         */
+        public final String[] strings;
+
+        public AttributeFrame(AttributeTable table, 
+                              Object[] values, String[] strings) {
+            this.table = table;
+            this.values = values;
+            this.strings = strings;
+        }
+
+        public static AttributeFrame create(AttributeTable table,
+                                            Element element) {
+            int count = table.qNames.length;
+            Object[] values = new Object[count];
+            String[] strings = new String[count];
+
+            for (int i = 0; i < count; ++i) {
+                String localValue = table.getAttribute(element, i);
+
+                if (table.additive[i]) {
+                    values[i] = (localValue == null)? 
+                        StringUtil.EMPTY_LIST : XMLText.splitList(localValue);
+                } else {
+                    values[i] = (localValue == null)? "" : localValue;
+                }
+                strings[i] = toString(values[i]);
             }
 
-            child = child.getNextSibling();
+            return new AttributeFrame(table, values, strings);
         }
 
-        stack.pop();
-    }
+        public AttributeFrame set(int i, Object value) {
+            Object[] values2 = values.clone();
+            values2[i] = value;
 
-    private static String getAttribute(Element element, String qName) {
-        if (qName.startsWith("xml:")) {
-            return element.getAttributeNS(XML_NS_URI, qName.substring(4));
-        } else {
-            return element.getAttributeNS(null, qName);
-        }
-    }
+            String[] strings2 = strings.clone();
+            strings2[i] = toString(value);
 
-    private static void removeAttribute(Element element, String qName) {
-        if (qName.startsWith("xml:")) {
-            element.removeAttributeNS(XML_NS_URI, qName.substring(4));
-        } else {
-            element.removeAttributeNS(null, qName);
+            return new AttributeFrame(table, values2, strings2);
         }
-    }
 
-    private static void setAttribute(Element element, String qName, 
-                                     String value) {
-        if (qName.startsWith("xml:")) {
-            element.setAttributeNS(XML_NS_URI, qName, value);
-        } else {
-            element.setAttributeNS(null, qName, value);
+        private static String toString(Object value) {
+            if (value instanceof String) {
+                return (String) value;
+            } else {
+                return StringUtil.join(' ', (String[]) value);
+            }
         }
     }
 
-    private static void checkOtherrole(Element element,
-                                       LinearHashtable<String, Object> push) {
-        String otherrole = getAttribute(element, "otherrole");
-        if (otherrole != null && otherrole.length() == 0) {
-            otherrole = null;
-        }
+    // -----------------------------------------------------------------------
 
-        if (otherrole != null &&
-            !"other".equals(getAttribute(element, "role"))) {
-            if (push != null) {
-                push.put("otherrole", "");
+    private static void processRelatedLinks(Element relatedLinks) {
+        // Cascading but not additive attributes.
+        String[] attrNames = {
+            "cascade",
+            "type", "role", "otherrole", "format", "scope",
+            "rev"
+        };
+
+        // "deliveryTarget" which specializes "props" also cascades.
+        AttributeTable table = 
+            new AttributeTable(attrNames, 
+                               DITAUtil.getFilterAttributes(relatedLinks));
+
+        AttributeFrame frame = AttributeFrame.create(table, relatedLinks);
+
+        frame = checkOtherrole(relatedLinks, frame);
+
+        Node child = relatedLinks.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element childElement = (Element) child;
+
+                boolean isLink = DITAUtil.hasClass(childElement, "topic/link");
+                processRelatedLinks(childElement, isLink, frame);
             }
 
-            removeAttribute(element, "otherrole");
+            child = child.getNextSibling();
         }
     }
 
-    private static
-    void processRelatedLinks(Element element, boolean isLink,
-                             Stack<LinearHashtable<String, Object>> stack) {
-        LinearHashtable<String, Object> push = null;
-        if (!isLink) {
-            push = new LinearHashtable<String, Object>(23);
+    private static AttributeFrame checkOtherrole(Element element,
+                                                 AttributeFrame frame) {
+        AttributeTable table = frame.table;
+        int otherrole = table.indexOf("otherrole");
+
+        String value = element.getAttributeNS(null, "otherrole");
+        if (value != null && value.length() > 0 &&
+            !"other".equals(element.getAttributeNS(null, "role"))) {
+            frame = frame.set(otherrole, "");
+
+            table.removeAttribute(element, otherrole);
         }
 
-        cascadeAttributes(stack.peek(), element, /*updateElement*/ true, push);
+        return frame;
+    }
+
+    private static void processRelatedLinks(Element element, boolean isLink,
+                                            AttributeFrame top) {
+        AttributeFrame frame = 
+            cascadeAttributes(top, element, /*updateElement*/ true);
 
-        checkOtherrole(element, push);
+        frame = checkOtherrole(element, frame);
 
         if (!isLink) {
-            stack.push(push);
-
             Node child = element.getFirstChild();
             while (child != null) {
                 if (child.getNodeType() == Node.ELEMENT_NODE) {
@@ -167,7 +249,7 @@ import com.xmlmind.ditac.util.DITAUtil;
                     if (isLink ||
                         DITAUtil.hasClass(childElement,
                                           "topic/linklist", "topic/linkpool")) {
-                        processRelatedLinks(childElement, isLink, stack);
+                        processRelatedLinks(childElement, isLink, frame);
                     }
                     // SPECIFICITY: elements such as title, desc or linkinfo
                     // are considered as being integral part of their
@@ -177,70 +259,71 @@ import com.xmlmind.ditac.util.DITAUtil;
 
                 child = child.getNextSibling();
             }
-
-            stack.pop();
         }
     }
 
-    private static void cascadeAttributes(LinearHashtable<String,Object> top,
-                                         Element element,
-                                         boolean updateElement,
-                                         LinearHashtable<String,Object> push) {
-        String cascade = getAttribute(element, "cascade");
-        if (cascade == null || 
-            (cascade = cascade.trim()).length() == 0) {
-            cascade = (String) top.get("cascade");
+    /**
+     * Returns the frame to be used by the descendants of specified element.
+     * This is <code>top</code> itself when specified element does not
+     * change any cascaded value.
+     */
+    private static AttributeFrame cascadeAttributes(AttributeFrame top,
+                                                    Element element,
+                                                    boolean updateElement) {
+        AttributeTable table = top.table;
+
+        String cascade = table.getAttribute(element, CASCADE);
+        if (cascade == null) {
+            cascade = (String) top.values[CASCADE];
         }
         boolean nomerge = "nomerge".equals(cascade);
 
         // ---
 
-        Iterator<KeyValuePair<String, Object>> iter = top.entries();
-        while (iter.hasNext()) {
-            KeyValuePair<String, Object> e = iter.next();
+        Object[] values = null;
+        String[] strings = null;
 
-            String attrName = e.key;
-            Object cascadedValue = e.value;
+        final int count = table.qNames.length;
+        for (int i = 0; i < count; ++i) {
+            String localValue = table.getAttribute(element, i);
 
-            String localValue = getAttribute(element, attrName);
-
-            Object newCascadedValue;
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                newCascadedValue = cascadedValue;
-            } else {
-                if (cascadedValue instanceof String) {
-                    // Not additive.
+            if (localValue != null) {
+                Object newCascadedValue;
+                if (!table.additive[i]) {
                     newCascadedValue = localValue;
                 } else {
-                    // Additive.
                     if (nomerge) {
                         newCascadedValue = XMLText.splitList(localValue);
                     } else {
                         newCascadedValue = 
-                            addAttributeValues((String[]) cascadedValue,
+                            addAttributeValues((String[]) top.values[i],
                                                localValue);
                     }
                 }
-            }
 
-            if (push != null) {
-                push.put(attrName, newCascadedValue);
+                if (values == null) {
+                    // Copy on write.
+                    values = top.values.clone();
+                    strings = top.strings.clone();
+                }
+                values[i] = newCascadedValue;
+                strings[i] = AttributeFrame.toString(newCascadedValue);
             }
 
-            String newLocalValue;
-            if (newCascadedValue instanceof String) {
-                newLocalValue = (String) newCascadedValue;
-            } else {
-                newLocalValue =
-                    StringUtil.join(' ', (String[]) newCascadedValue);
-            }
-            if (newLocalValue.length() > 0) {
-                if (updateElement) {
-                    setAttribute(element, attrName, newLocalValue);
+            if (updateElement) {
+                String newLocalValue = 
+                    (strings == null)? top.strings[i] : strings[i];
+                if (newLocalValue.length() > 0) {
+                    table.setAttribute(element, i, newLocalValue);
                 }
             }
         }
+
+        if (values == null) {
+            return top;
+        } else {
+            return new AttributeFrame(table, values, strings);
+        }
     }
 
     private static String[] addAttributeValues(String[] attrValue,
@@ -318,17 +401,10 @@ import com.xmlmind.ditac.util.DITAUtil;
     };
 
     public static void processMap(Element map) {
-        Stack<LinearHashtable<String,Object>> stack =
-            new Stack<LinearHashtable<String,Object>>();
-
-        ArrayList<LinearHashtable<String,Object>> colspecs = 
-            new ArrayList<LinearHashtable<String,Object>>();
+        ArrayList<Object> colspecs = new ArrayList<Object>();
 
         // Cascaded attributes ---
 
-        LinearHashtable<String, Object> push1 = 
-            new LinearHashtable<String, Object>(37);
-
         // Cascading but not additive attributes.
         String[] attrNames = {
             "cascade",
@@ -339,69 +415,17 @@ import com.xmlmind.ditac.util.DITAUtil;
             "rev"
         };
 
-        for (String attrName : attrNames) {
-            String localValue = getAttribute(map, attrName);
-
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                localValue = "";
-            }
-            push1.put(attrName, localValue);
-        }
-
-        String[] attrNames2 = DITAUtil.getFilterAttributes(map);
-
-        for (String attrName : attrNames2) {
-            if ("rev".equals(attrName)) {
-                // All select-atts except @rev are additive.
-                continue;
-            }
-
-            String localValue = getAttribute(map, attrName);
-
-            String[] pushedValue;
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                pushedValue = StringUtil.EMPTY_LIST;
-            } else {
-                pushedValue = XMLText.splitList(localValue);
-            }
-
-            push1.put(attrName, pushedValue);
-        }
+        AttributeTable table = 
+            new AttributeTable(attrNames, DITAUtil.getFilterAttributes(map));
+        AttributeFrame attributes = AttributeFrame.create(table, map);
 
         // Cascaded elements ---
 
-        LinearHashtable<String, Object> push2 = 
-            new LinearHashtable<String, Object>(23);
-
         Element mapMeta = DITAUtil.findChildByClass(map, "map/topicmeta");
-
-        for (int k = 0; k < CASCADED_ELEMENTS.length; ++k) {
-            String c = CASCADED_ELEMENTS[k];
-            boolean single = CASCADED_ELEMENT_SINGLE[k];
-            
-            Element[] meta = findChildrenByClass(mapMeta, c);
-            if (meta.length == 0) {
-                if (single) {
-                    push2.put(c, Boolean.FALSE);
-                } else {
-                    push2.put(c, DOMUtil.NO_ELEMENTS);
-                }
-            } else {
-                if (single) {
-                    push2.put(c, meta[0]);
-                } else {
-                    addElements(push2, c, meta);
-                }
-            }
-        }
+        Object[] elements = createElementFrame(mapMeta);
 
         Document doc = map.getOwnerDocument();
 
-        stack.push(push1);
-        stack.push(push2);
-
         Node child = map.getFirstChild();
         while (child != null) {
             if (child.getNodeType() == Node.ELEMENT_NODE) {
@@ -413,15 +437,47 @@ import com.xmlmind.ditac.util.DITAUtil;
                 if (hasMeta ||
                     DITAUtil.hasClass(childElement, "map/relheader", 
                                       "map/relrow", "map/relcell")) {
-                    processMap(childElement, hasMeta, colspecs, stack, doc);
+                    processMap(childElement, hasMeta, colspecs, 
+                               attributes, elements, doc);
                 }
             }
 
             child = child.getNextSibling();
         }
+    }
 
-        stack.pop();
-        stack.pop();
+    /**
+     * Returns the values of the cascading metadata elements, indexed 
+     * like {@link #CASCADED_ELEMENTS}. Such value is an Element or 
+     * <code>Boolean.FALSE</code> for a single element and an Element[]
+     * for the other elements.
+     * <p>Like an AttributeFrame, an element frame is never modified 
+     * once created.
+     */
+    private static Object[] createElementFrame(Element meta) {
+        Object[] frame = new Object[CASCADED_ELEMENTS.length];
+
+        for (int k = 0; k < CASCADED_ELEMENTS.length; ++k) {
+            String c = CASCADED_ELEMENTS[k];
+            boolean single = CASCADED_ELEMENT_SINGLE[k];
+            
+            Element[] elements = findChildrenByClass(meta, c);
+            if (elements.length == 0) {
+                if (single) {
+                    frame[k] = Boolean.FALSE;
+                } else {
+                    frame[k] = DOMUtil.NO_ELEMENTS;
+                }
+            } else {
+                if (single) {
+                    frame[k] = elements[0];
+                } else {
+                    frame[k] = elements;
+                }
+            }
+        }
+
+        return frame;
     }
 
     private static Element findChildByClass(Element element, String cls) {
@@ -440,48 +496,33 @@ import com.xmlmind.ditac.util.DITAUtil;
         }
     }
 
-    private static void addElements(LinearHashtable<String, Object> push,
-                                    String cls, Element[] elements) {
-        Element[] list = (Element[]) push.get(cls);
-        if (list == null) {
-            push.put(cls, elements);
-        } else {
-            push.put(cls, ArrayUtil.insert(list, list.length, elements));
-        }
-    }
-
+    /**
+     * Cascades attributes and metadata elements to specified element
+     * and its descendants.
+     * <p><code>colspecs</code> contains, for each column of the reltable 
+     * being processed, the AttributeFrame and the element frame of its 
+     * relcolspec.
+     */
     private static 
-    void processMap(Element element, boolean hasMeta,
-                    List<LinearHashtable<String,Object>> colspecs,
-                    Stack<LinearHashtable<String,Object>> stack,
+    void processMap(Element element, boolean hasMeta, List<Object> colspecs,
+                    AttributeFrame topAttributes, Object[] topElements,
                     Document doc) {
-        int stackSize = stack.size();
-        LinearHashtable<String, Object> top1 = stack.get(stackSize-2);
-        LinearHashtable<String, Object> top2 = stack.get(stackSize-1);
-
         // Cascade attributes ---
 
-        LinearHashtable<String, Object> push1 = 
-            new LinearHashtable<String, Object>(37);
-
-        cascadeAttributes(top1, element, /*updateElement*/ true, push1);
+        AttributeFrame attributes = 
+            cascadeAttributes(topAttributes, element, /*updateElement*/ true);
 
         // Cascade elements ---
 
-        LinearHashtable<String, Object> push2 = 
-            new LinearHashtable<String, Object>(23);
-
-        cascadeElements(top2, element, hasMeta, push2, doc);
-
-        stack.push(push1);
-        stack.push(push2);
+        Object[] elements = cascadeElements(topElements, element, hasMeta, 
+                                            doc);
 
         boolean isReltable = false;
         if (DITAUtil.hasClass(element, "map/reltable")) {
             isReltable = true;
         } else if (DITAUtil.hasClass(element, "map/relcolspec")) {
-            colspecs.add(push1);
-            colspecs.add(push2);
+            colspecs.add(attributes);
+            colspecs.add(elements);
         }
 
         Node child = element.getFirstChild();
@@ -496,9 +537,11 @@ import com.xmlmind.ditac.util.DITAUtil;
                     DITAUtil.hasClass(childElement, "map/relcell", 
                                       "map/relheader")) {
                     if (isRow && colspecs.size() > 0) {
-                        processRelrow(childElement, colspecs, stack, doc);
+                        processRelrow(childElement, colspecs, 
+                                      attributes, elements, doc);
                     } else {
-                        processMap(childElement, hasMeta, colspecs, stack, doc);
+                        processMap(childElement, hasMeta, colspecs, 
+                                   attributes, elements, doc);
                     }
                 }
             }
@@ -509,26 +552,25 @@ import com.xmlmind.ditac.util.DITAUtil;
         if (isReltable) {
             colspecs.clear();
         }
-
-        stack.pop();
-        stack.pop();
     }
 
-    private static void cascadeElements(LinearHashtable<String,Object> top,
-                                        Element element, boolean hasMeta,
-                                        LinearHashtable<String,Object> push,
-                                        Document doc) {
-        Element meta = null;
-        if (hasMeta) {
-            meta = findChildByClass(element, "map/topicmeta");
+    /**
+     * Returns the element frame to be used by the descendants of specified 
+     * element. This is <code>top</code> itself when specified element does
+     * not change any cascaded value.
+     */
+    private static Object[] cascadeElements(Object[] top, Element element, 
+                                            boolean hasMeta, Document doc) {
+        if (!hasMeta) {
+            return top;
         }
 
-        Iterator<KeyValuePair<String, Object>> iter = top.entries();
-        while (iter.hasNext()) {
-            KeyValuePair<String, Object> e = iter.next();
+        Element meta = findChildByClass(element, "map/topicmeta");
+        Object[] frame = null;
 
-            String cls = e.key;
-            Object cascaded = e.value;
+        for (int k = 0; k < CASCADED_ELEMENTS.length; ++k) {
+            String cls = CASCADED_ELEMENTS[k];
+            Object cascaded = top[k];
 
             Object newCascaded;
             if (cascaded instanceof Element[]) {
@@ -546,7 +588,7 @@ import com.xmlmind.ditac.util.DITAUtil;
                     newCascaded = cascaded;
                 }
 
-                if (hasMeta && cascadedValueCount > 0) {
+                if (cascadedValueCount > 0) {
                     meta = ensureHasMeta(element, meta, doc);
 
                     Element before = DITAUtil.findChildByClass(
@@ -567,7 +609,7 @@ import com.xmlmind.ditac.util.DITAUtil;
                 } else {
                     newCascaded = cascaded;
 
-                    if (hasMeta && cascadedValue != null) {
+                    if (cascadedValue != null) {
                         meta = ensureHasMeta(element, meta, doc);
 
                         Element before = DITAUtil.findChildByClass(
@@ -579,8 +621,16 @@ import com.xmlmind.ditac.util.DITAUtil;
                 }
             }
 
-            push.put(cls, newCascaded);
+            if (newCascaded != cascaded) {
+                if (frame == null) {
+                    // Copy on write.
+                    frame = top.clone();
+                }
+                frame[k] = newCascaded;
+            }
         }
+
+        return (frame == null)? top : frame;
     }
     
     private static Element ensureHasMeta(Element element, Element meta,
@@ -617,30 +667,18 @@ import com.xmlmind.ditac.util.DITAUtil;
     }
 
     private static 
-    void processRelrow(Element element,
-                       List<LinearHashtable<String, Object>> colspecs,
-                       Stack<LinearHashtable<String, Object>> stack,
+    void processRelrow(Element element, List<Object> colspecs,
+                       AttributeFrame topAttributes, Object[] topElements,
                        Document doc) {
-        int stackSize = stack.size();
-        LinearHashtable<String, Object> top1 = stack.get(stackSize-2);
-        LinearHashtable<String, Object> top2 = stack.get(stackSize-1);
-
         // Cascade attributes ---
 
-        LinearHashtable<String, Object> push1 = 
-            new LinearHashtable<String, Object>(37);
-
-        cascadeAttributes(top1, element, /*updateElement*/ true, push1);
+        AttributeFrame attributes = 
+            cascadeAttributes(topAttributes, element, /*updateElement*/ true);
 
         // Cascade elements ---
 
-        LinearHashtable<String, Object> push2 = 
-            new LinearHashtable<String, Object>(23);
-
-        cascadeElements(top2, element, /*hasMeta*/ false, push2, doc);
-
-        stack.push(push1);
-        stack.push(push2);
+        Object[] elements = cascadeElements(topElements, element, 
+                                            /*hasMeta*/ false, doc);
 
         int column = 0;
 
@@ -650,37 +688,24 @@ import com.xmlmind.ditac.util.DITAUtil;
                 Element childElement = (Element) child;
 
                 if (DITAUtil.hasClass(childElement, "map/relcell")) {
-                    LinearHashtable<String, Object> topA = null;
-                    LinearHashtable<String, Object> topB = null;
-                    if (2*column+1 < colspecs.size()) {
-                        topA = colspecs.get(2*column);
-                        topB = colspecs.get(2*column+1);
-                    }
-
-                    if (topA != null) {
-                        LinearHashtable<String, Object> pushA = 
-                            new LinearHashtable<String, Object>(37);
-
-                        cascadeAttributes(topA, element, /*update*/ false, 
-                                          pushA);
-
-                        LinearHashtable<String, Object> pushB = 
-                            new LinearHashtable<String, Object>(23);
+                    AttributeFrame cellAttributes = attributes;
+                    Object[] cellElements = elements;
 
-                        cascadeElements(topB, element, /*hasMeta*/ false, 
-                                        pushB, doc);
-
-                        stack.push(pushA);
-                        stack.push(pushB);
+                    if (2*column+1 < colspecs.size()) {
+                        AttributeFrame topA = 
+                            (AttributeFrame) colspecs.get(2*column);
+                        Object[] topB = (Object[]) colspecs.get(2*column+1);
+
+                        cellAttributes = 
+                            cascadeAttributes(topA, element, 
+                                              /*updateElement*/ false);
+                        cellElements = 
+                            cascadeElements(topB, element, 
+                                            /*hasMeta*/ false, doc);
                     }
 
-                    processMap(childElement, /*hasMeta*/ false, 
-                               colspecs, stack, doc);
-
-                    if (topA != null) {
-                        stack.pop();
-                        stack.pop();
-                    }
+                    processMap(childElement, /*hasMeta*/ false, colspecs, 
+                               cellAttributes, cellElements, doc);
 
                     ++column;
                 }
@@ -688,9 +713,6 @@ import com.xmlmind.ditac.util.DITAUtil;
 
             child = child.getNextSibling();
         }
-
-        stack.pop();
-        stack.pop();
     }
 
     // -----------------------------------------------------------------------
@@ -708,17 +730,10 @@ import com.xmlmind.ditac.util.DITAUtil;
      * prior to the MaprefIncluder transclusion step.
      */
     public static void processMapref(Element mapref, Node[] nodeRange) {
-        Stack<LinearHashtable<String,Object>> stack =
-            new Stack<LinearHashtable<String,Object>>();
-
-        ArrayList<LinearHashtable<String,Object>> colspecs = new 
-            ArrayList<LinearHashtable<String,Object>>();
+        ArrayList<Object> colspecs = new ArrayList<Object>();
 
         // Cascaded attributes ---
 
-        LinearHashtable<String, Object> push1 = 
-            new LinearHashtable<String, Object>(37);
-
         // Do *not* cascade from map to map:
         // "format", "scope",
         // "xml:lang", "dir".
@@ -732,70 +747,19 @@ import com.xmlmind.ditac.util.DITAUtil;
             "rev"
         };
 
-        for (String attrName : attrNames) {
-            String localValue = getAttribute(mapref, attrName);
-
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                localValue = "";
-            }
-            push1.put(attrName, localValue);
-        }
-
-        String[] attrNames2 = DITAUtil.getFilterAttributes(mapref);
-
-        for (String attrName : attrNames2) {
-            if ("rev".equals(attrName)) {
-                // All select-atts except @rev are additive.
-                continue;
-            }
-
-            String localValue = getAttribute(mapref, attrName);
-
-            String[] pushedValue;
-            if (localValue == null || 
-                (localValue = localValue.trim()).length() == 0) {
-                pushedValue = StringUtil.EMPTY_LIST;
-            } else {
-                pushedValue = XMLText.splitList(localValue);
-            }
-
-            push1.put(attrName, pushedValue);
-        }
+        AttributeTable table = 
+            new AttributeTable(attrNames, 
+                               DITAUtil.getFilterAttributes(mapref));
+        AttributeFrame attributes = AttributeFrame.create(table, mapref);
 
         // Cascaded elements ---
 
-        LinearHashtable<String, Object> push2 = 
-            new LinearHashtable<String, Object>(23);
-
         Element maprefMeta = 
             DITAUtil.findChildByClass(mapref, "map/topicmeta");
-
-        for (int k = 0; k < CASCADED_ELEMENTS.length; ++k) {
-            String c = CASCADED_ELEMENTS[k];
-            boolean single = CASCADED_ELEMENT_SINGLE[k];
-            
-            Element[] meta = findChildrenByClass(maprefMeta, c);
-            if (meta.length == 0) {
-                if (single) {
-                    push2.put(c, Boolean.FALSE);
-                } else {
-                    push2.put(c, DOMUtil.NO_ELEMENTS);
-                }
-            } else {
-                if (single) {
-                    push2.put(c, meta[0]);
-                } else {
-                    addElements(push2, c, meta);
-                }
-            }
-        }
+        Object[] elements = createElementFrame(maprefMeta);
 
         Document doc = mapref.getOwnerDocument();
 
-        stack.push(push1);
-        stack.push(push2);
-
         for (Node node : nodeRange) {
             if (node.getNodeType() == Node.ELEMENT_NODE) {
                 Element element = (Element) node;
@@ -806,13 +770,11 @@ import com.xmlmind.ditac.util.DITAUtil;
                 if (hasMeta ||
                     DITAUtil.hasClass(element, "map/relheader", 
                                       "map/relrow", "map/relcell")) {
-                    processMap(element, hasMeta, colspecs, stack, doc);
+                    processMap(element, hasMeta, colspecs, 
+                               attributes, elements, doc);
                 }
             }
         }
-
-        stack.pop();
-        stack.pop();
     }
 
     // -----------------------------------------------------------------------
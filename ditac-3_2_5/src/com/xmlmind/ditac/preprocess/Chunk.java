@@ -8,7 +8,6 @@
  */
 package com.xmlmind.ditac.preprocess;
 
-import org.w3c.dom.Element;
 import com.xmlmind.util.ArrayUtil;
 
 /**
@@ -54,10 +53,10 @@ public final class Chunk {
     }
 
     public boolean containsEntry(ChunkEntry entry) {
-        Element element = entry.getElement();
-        if (element != null) {
+        String key = entry.getTopicKey();
+        if (key != null) {
             for (int i = 0; i < entries.length; ++i) {
-                if (entries[i].getElement() == element) {
+                if (key.equals(entries[i].getTopicKey())) {
                     return true;
                 }
             }
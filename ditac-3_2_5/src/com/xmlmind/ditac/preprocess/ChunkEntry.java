@@ -8,8 +8,10 @@
  */
 package com.xmlmind.ditac.preprocess;
 
+import java.net.URL;
 import org.w3c.dom.Element;
 import com.xmlmind.util.StringUtil;
+import com.xmlmind.util.URIComponent;
 
 /**
  * Not part of the public, documented, API.
@@ -32,25 +34,95 @@ public final class ChunkEntry {
     public final String role;
     public final String title; // Comes from navtitle. May be null.
     public final TOCType tocType;
-    public final LoadedTopic loadedTopic; // Null unless type=TOPIC.
+
+    // Locate the topic. Null unless type=TOPIC.
+    private final LoadedDocuments loadedDocs;
+    private final URL topicDocURL;
+    private final int[] topicPath;
+    private final String topicId;
+    private final String topicKey;
 
     // -----------------------------------------------------------------------
 
     public ChunkEntry(Chunk chunk, Type type, String[] number, String role, 
-                      String title, TOCType tocType, LoadedTopic loadedTopic) {
+                      String title, TOCType tocType, LoadedTopic loadedTopic,
+                      LoadedDocuments loadedDocs) {
         this.chunk = chunk;
         this.type = type;
         this.number = number;
         this.role = role;
         this.title = title;
         this.tocType = tocType;
-        this.loadedTopic = loadedTopic;
+
+        if (loadedTopic == null) {
+            this.loadedDocs = null;
+            topicDocURL = null;
+            topicPath = null;
+            topicId = null;
+            topicKey = null;
+        } else {
+            this.loadedDocs = loadedDocs;
+            topicDocURL = loadedTopic.getAncestorDocument().url;
+            topicPath = loadedTopic.getPath();
+            topicId = loadedTopic.topicId;
+
+            StringBuilder buffer = new StringBuilder();
+            buffer.append(topicDocURL.toExternalForm());
+            for (int i = 0; i < topicPath.length; ++i) {
+                buffer.append((i == 0)? '#' : '/');
+                buffer.append(topicPath[i]);
+            }
+            topicKey = buffer.toString();
+        }
+    }
+
+    /**
+     * Returns the topic referenced by this entry. Null unless type=TOPIC.
+     * <p>This topic is looked up each time this method is invoked because 
+     * its document may have been spilled to disk and then reloaded since
+     * the previous invocation. Therefore do not keep a reference to 
+     * the returned topic (or to its nodes) while other documents are being
+     * accessed, unless the document of this topic is pinned.
+     */
+    public LoadedTopic getLoadedTopic() {
+        if (topicDocURL == null) {
+            return null;
+        }
+
+        LoadedDocument loadedDoc = loadedDocs.get(topicDocURL);
+        return (loadedDoc == null)? null : loadedDoc.getTopic(topicPath);
     }
 
     public Element getElement() {
+        LoadedTopic loadedTopic = getLoadedTopic();
         return (loadedTopic == null)? null : loadedTopic.element;
     }
 
+    /**
+     * Returns the URL of the document containing the topic referenced by
+     * this entry. Null unless type=TOPIC.
+     */
+    public URL getTopicDocumentURL() {
+        return topicDocURL;
+    }
+
+    /**
+     * Returns the ID the topic referenced by this entry had when
+     * the chunks were created. Null unless type=TOPIC.
+     */
+    public String getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * Returns a string which identifies the topic referenced by this entry.
+     * Two entries referencing the same topic have equal keys. 
+     * Null unless type=TOPIC.
+     */
+    public String getTopicKey() {
+        return topicKey;
+    }
+
     @Override
     public String toString() {
         StringBuilder buffer = new StringBuilder();
@@ -83,9 +155,11 @@ public final class ChunkEntry {
             buffer.append(" TOC");
         }
 
-        if (loadedTopic != null) {
+        if (topicDocURL != null) {
             buffer.append(' ');
-            buffer.append(loadedTopic.element.getLocalName());
+            buffer.append(topicDocURL.toExternalForm());
+            buffer.append('#');
+            buffer.append(URIComponent.quoteFragment(topicId));
         }
     }
 }
@@ -571,7 +571,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                                String title, TOCType tocType,
                                LoadedTopic loadedTopic) {
         chunk.appendEntry(new ChunkEntry(chunk, type, number, role, title, 
-                                         tocType, loadedTopic));
+                                         tocType, loadedTopic, loadedDocs));
 
         // First chunk filled with entries is first chunk added to the list.
         //
@@ -10,6 +10,8 @@ package com.xmlmind.ditac.preprocess;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import static javax.xml.XMLConstants.XML_NS_URI;
@@ -30,6 +32,7 @@ import com.xmlmind.ditac.util.DITAUtil;
     private ConsoleHelper console;
 
     private LoadedDocuments docs;
+    private HashSet<URL> docURLs;
 
     // -----------------------------------------------------------------------
 
@@ -55,6 +58,7 @@ import com.xmlmind.ditac.util.DITAUtil;
 
     public void process(LoadedDocument[] loadedDocs) {
         docs = new LoadedDocuments(null, null);
+        docURLs = null;
 
         int loadedDocCount = loadedDocs.length;
         for (int i = 0; i < loadedDocCount; ++i) {
@@ -72,6 +76,29 @@ import com.xmlmind.ditac.util.DITAUtil;
         }
     }
 
+    /**
+     * Same as {@link #process(LoadedDocument[])} except that the documents 
+     * are specified by their URLs and obtained from <tt>loadedDocs</tt> 
+     * only when needed. This allows <tt>loadedDocs</tt> to spill them
+     * to disk.
+     */
+    public void process(URL[] urls, LoadedDocuments loadedDocs) {
+        docs = loadedDocs;
+        docURLs = new HashSet<URL>(Arrays.asList(urls));
+        DocumentStore store = loadedDocs.getDocumentStore();
+
+        for (URL url : urls) {
+            // Pinned because findTarget may cause other documents
+            // to be loaded.
+            store.pin(url);
+            try {
+                executeActions(loadedDocs.get(url).document, /*exec*/ true);
+            } finally {
+                store.unpin(url);
+            }
+        }
+    }
+
     private void executeActions(Node tree, boolean exec) {
         Node child = tree.getFirstChild();
         while (child != null) {
@@ -296,7 +323,16 @@ import com.xmlmind.ditac.util.DITAUtil;
             targetURL = URLUtil.setFragment(targetURL, null);
         }
 
-        LoadedDocument targetDoc = docs.get(targetURL);
+        LoadedDocument targetDoc = null;
+        if (docURLs == null) {
+            targetDoc = docs.get(targetURL);
+        } else if (docURLs.contains(targetURL)) {
+            // Like process(LoadedDocument[]), find the topics again: those
+            // of the stored document may have been found before the conrefs
+            // were pulled.
+            targetDoc = new LoadedDocument(targetURL, 
+                                           docs.get(targetURL).document);
+        }
         if (targetDoc == null) {
             console.warning(pushedElement, 
                             Msg.msg("targetDocNotLoaded", targetURL));
@@ -22,6 +22,18 @@ package com.xmlmind.ditac.preprocess;
     public static final String COPY_OF_NAME = "copyOf";
     public static final String COPY_OF_QNAME = DITAC_PREFIX + COPY_OF_NAME;
 
+    // Ordinals computed once by the preprocessor rather than by navigating
+    // the whole document in the XSLT stylesheets.
+    public static final String FN_NUMBER_NAME = "fnNumber";
+    public static final String FN_NUMBER_QNAME = DITAC_PREFIX + FN_NUMBER_NAME;
+
+    public static final String OL_START_NAME = "olStart";
+    public static final String OL_START_QNAME = DITAC_PREFIX + OL_START_NAME;
+
+    // The most specific token of the class attribute (e.g. "topic/p").
+    public static final String CLS_NAME = "cls";
+    public static final String CLS_QNAME = DITAC_PREFIX + CLS_NAME;
+
     public static final String KEY_SPACE_NAME = "keySpace";
     public static final String KEY_SPACE_QNAME = DITAC_PREFIX + KEY_SPACE_NAME;
     public static final String KEY_SPACE_START = KEY_SPACE_QNAME + "=\"";
@@ -9,8 +9,8 @@
 package com.xmlmind.ditac.preprocess;
 
 import java.net.URL;
-import java.util.Map;
-import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.HashSet;
 import static javax.xml.XMLConstants.XML_NS_URI;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
@@ -47,8 +47,7 @@ import com.xmlmind.ditac.util.DITAUtil;
             ++i;
         }
 
-        IdentityHashMap<Element, Element> processed = 
-            new IdentityHashMap<Element, Element>();
+        HashSet<String> processed = new HashSet<String>();
 
         processMap(map, metaAttributes, metaAttributeIsSingle, 
                    loadedDocs, processed);
@@ -58,7 +57,7 @@ import com.xmlmind.ditac.util.DITAUtil;
                                   String[] metaAttributes,
                                   boolean[] metaAttributeIsSingle, 
                                   LoadedDocuments loadedDocs,
-                                  Map<Element, Element> processed) {
+                                  Set<String> processed) {
         Node child = element.getFirstChild();
         while (child != null) {
             if (child.getNodeType() == Node.ELEMENT_NODE) {
@@ -91,15 +90,15 @@ import com.xmlmind.ditac.util.DITAUtil;
                         }
 
                         if (loadedTopic != null) {
-                            Element topic = loadedTopic.element;
-                            if (!processed.containsKey(topic)) {
+                            // Topics are identified by their hrefs 
+                            // rather than by their elements because
+                            // their documents may be spilled to disk.
+                            if (processed.add(loadedTopic.getHref())) {
                                 // A topic is processed once, even if it
                                 // is referenced in several topicrefs.
-                                processed.put(topic, topic);
-
                                 copyMeta(childElement, 
                                          metaAttributes, metaAttributeIsSingle, 
-                                         topic);
+                                         loadedTopic.element);
                             }
                         }
                     }
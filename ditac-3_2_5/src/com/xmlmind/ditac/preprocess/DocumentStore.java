@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+
+/**
+ * Where {@link LoadedDocuments} keeps the documents it has loaded.
+ * <p>URLs passed to the methods of this interface never have a fragment.
+ */
+/*package*/ interface DocumentStore {
+    /**
+     * Adds specified document to this store, replacing the document
+     * previously stored under the same URL, if any.
+     */
+    void put(URL url, LoadedDocument doc);
+
+    /**
+     * Returns the document stored under specified URL;
+     * <code>null</code> if there is no such document.
+     */
+    LoadedDocument get(URL url);
+
+    /**
+     * Removes the document stored under specified URL. Returns the removed
+     * document if any; <code>null</code> otherwise.
+     */
+    LoadedDocument remove(URL url);
+
+    /**
+     * Returns the number of documents contained in this store.
+     */
+    int size();
+
+    /**
+     * Returns the URLs of all the documents contained in this store,
+     * in the order they were first added to this store. Unlike 
+     * {@link #iterator}, this does not cause any document to be loaded.
+     */
+    URL[] getURLs();
+
+    /**
+     * Returns an iterator over all the documents contained in this store.
+     * The documents are returned in the order they were first added to 
+     * this store.
+     */
+    Iterator<LoadedDocument> iterator();
+
+    /**
+     * Returns the type of the document stored under specified URL;
+     * <code>null</code> if there is no such document. Unlike {@link #get},
+     * this does not cause the document to be loaded.
+     */
+    LoadedDocument.Type getType(URL url);
+
+    /**
+     * Loads in memory the document stored under specified URL, if any,
+     * and keeps it there until {@link #unpin} is invoked as many times
+     * as this method. To be invoked before a processing step which keeps
+     * references to this document (or to its nodes) while it accesses
+     * other documents contained in this store.
+     */
+    void pin(URL url);
+
+    /**
+     * Undoes the effect of a previous invocation of {@link #pin}.
+     * Once no longer pinned, the document may be spilled again.
+     */
+    void unpin(URL url);
+
+    /**
+     * Removes all documents from this store and releases the resources
+     * used by this store.
+     */
+    void dispose();
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Reports an I/O error from a method of this interface which cannot
+     * throw an <code>IOException</code>. {@link LoadedDocuments} and 
+     * {@link PreProcessor} turn it back into an <code>IOException</code>.
+     */
+    @SuppressWarnings("serial")
+    static final class StoreException extends RuntimeException {
+        public StoreException(String message, IOException cause) {
+            super(message, cause);
+        }
+
+        public IOException getIOException() {
+            IOException e = new IOException(getMessage());
+            e.initCause(getCause());
+            return e;
+        }
+    }
+}
@@ -22,10 +22,13 @@ import com.xmlmind.ditac.util.DOMUtil;
 import com.xmlmind.ditac.util.DITAUtil;
 import com.xmlmind.ditac.util.SimpleConsole;
 import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.PerfReport;
 
 /*package*/ abstract class Includer {
     protected KeySpaces keySpaces;
     protected ConsoleHelper console;
+    protected PerfReport perfReport;
+    protected LoadedDocuments sourceDocs;
 
     private Docs docs;
     private ArrayList<Doc> docList;
@@ -67,6 +70,36 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         return console;
     }
 
+    /**
+     * Specifies the report in which the number of inclusions resolved in
+     * each document is to be recorded. May be <code>null</code>, which is
+     * the default.
+     */
+    public void setPerfReport(PerfReport report) {
+        perfReport = report;
+    }
+
+    public PerfReport getPerfReport() {
+        return perfReport;
+    }
+
+    /**
+     * Specifies the documents already loaded by the caller. When 
+     * an inclusion references a topic document which is not being processed
+     * but which is contained in <tt>sourceDocs</tt>, a working copy of 
+     * this document is made rather than reloading it from disk. 
+     * May be <code>null</code>, which is the default.
+     * <p>This allows to process the topic documents in several batches,
+     * each batch referencing the topic documents of the other batches.
+     */
+    public void setSourceDocuments(LoadedDocuments sourceDocs) {
+        this.sourceDocs = sourceDocs;
+    }
+
+    public LoadedDocuments getSourceDocuments() {
+        return sourceDocs;
+    }
+
     public boolean process(LoadedDocument loadedDoc) 
         throws IOException {
         return process(new LoadedDocument[] { loadedDoc });
@@ -75,6 +108,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     public boolean process(LoadedDocument[] loadedDocs) 
         throws IOException {
         docs = new Docs(keySpaces, console);
+        docs.setPerfReport(perfReport);
         docList = new ArrayList<Doc>();
         processedDocCount = 0;
 
@@ -252,8 +286,13 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         boolean lastIteration = false;
         int iteration = 0;
 
+        // Do not format debug messages for nothing.
+        boolean debug = console.isShowing(Console.MessageType.DEBUG);
+
         for (; iteration < MAX_ITERATIONS; ++iteration) {
-            console.debug(Msg.msg("iteration", iteration));
+            if (debug) {
+                console.debug(Msg.msg("iteration", iteration));
+            }
 
             int remainDocCount = processedDocCount;
             int initialDocCount = docList.size();
@@ -263,15 +302,19 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 Doc doc = docList.get(j);
 
                 if (doc.processList.size() > 0) {
-                    console.debug(Msg.msg("processingDoc", doc.url, 
-                                          doc.processList.size()));
+                    if (debug) {
+                        console.debug(Msg.msg("processingDoc", doc.url, 
+                                              doc.processList.size()));
+                    }
 
                     if (process(doc, lastIteration)) {
                         ++changeCount;
                     }
 
-                    console.debug(Msg.msg("docProcessed", doc.url, 
-                                          doc.processList.size()));
+                    if (debug) {
+                        console.debug(Msg.msg("docProcessed", doc.url, 
+                                              doc.processList.size()));
+                    }
                 }
 
                 if (doc.processList.size() == 0) {
@@ -289,15 +332,19 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 Doc doc = docList.get(j);
 
                 if (doc.processList.size() > 0) {
-                    console.debug(Msg.msg("processingDoc", doc.url, 
-                                          doc.processList.size()));
+                    if (debug) {
+                        console.debug(Msg.msg("processingDoc", doc.url, 
+                                              doc.processList.size()));
+                    }
 
                     if (process(doc, lastIteration)) {
                         ++changeCount;
                     }
 
-                    console.debug(Msg.msg("docProcessed", doc.url, 
-                                          doc.processList.size()));
+                    if (debug) {
+                        console.debug(Msg.msg("docProcessed", doc.url, 
+                                              doc.processList.size()));
+                    }
                 }
             }
 
@@ -330,8 +377,10 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             }
         }
 
-        console.debug(Msg.msg("allDocsProcessed", 
-                              1+iteration, System.currentTimeMillis()-now));
+        if (debug) {
+            console.debug(Msg.msg("allDocsProcessed", 1+iteration,
+                                  System.currentTimeMillis()-now));
+        }
         return done;
     }
 
@@ -380,6 +429,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         // Replacement is a separate step because we don't want to invoke
         // fetchIncluded() on a document we are modifying.
 
+        int resolvedCount = 0;
+
         for (int i = 0; i < inclCount; ++i) {
             Incl incl = incls[i];
 
@@ -397,6 +448,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                     replaceNodes(replacement, incl.directiveElement);
 
                     error(incl, Msg.msg("inclusionLoop"));
+                } else {
+                    ++resolvedCount;
                 }
             }
 
@@ -431,6 +484,11 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             }
         }
 
+        if (perfReport != null && resolvedCount > 0) {
+            perfReport.addTopicCost(URLUtil.toLabel(doc.url),
+                                    PerfReport.CONREFS, resolvedCount);
+        }
+
         // Has something changed for this Doc?
 
         int addCount = doc.processList.size() - retryCount;
@@ -444,15 +502,25 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         throws IOException {
         Doc doc = (Doc) docs.get(url);
         if (doc == null) {
-            long now = System.currentTimeMillis();
-            String docLocation = URLUtil.toLabel(url);
-            console.verbose(Msg.msg("cachingDocument", docLocation));
+            long now = 0;
+            String docLocation = null;
+            boolean verbose = console.isShowing(Console.MessageType.VERBOSE);
+            if (verbose) {
+                now = System.currentTimeMillis();
+                docLocation = URLUtil.toLabel(url);
+                console.verbose(Msg.msg("cachingDocument", docLocation));
+            }
 
-            doc = (Doc) docs.load(url);
+            doc = copySourceDoc(url);
+            if (doc == null) {
+                doc = (Doc) docs.load(url);
+            }
             docList.add(doc);
 
-            console.verbose(Msg.msg("documentCached", docLocation, 
-                                    (System.currentTimeMillis()-now)));
+            if (verbose) {
+                console.verbose(Msg.msg("documentCached", docLocation, 
+                                        (System.currentTimeMillis()-now)));
+            }
 
             collectIncludes(/*parentInclId*/ null, doc.document, doc);
         }
@@ -460,6 +528,29 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         return doc;
     }
     
+    private Doc copySourceDoc(URL url) {
+        if (sourceDocs == null) {
+            return null;
+        }
+
+        LoadedDocument.Type type = 
+            sourceDocs.getDocumentStore().getType(URLUtil.setRawFragment(url,
+                                                                         null));
+        if (type != LoadedDocument.Type.TOPIC &&
+            type != LoadedDocument.Type.MULTI_TOPIC) {
+            return null;
+        }
+
+        Document sourceDoc = sourceDocs.get(url).document;
+
+        Document doc = DOMUtil.newDocument();
+        doc.setDocumentURI(sourceDoc.getDocumentURI());
+        doc.appendChild(doc.importNode(sourceDoc.getDocumentElement(),
+                                       /*deep*/ true));
+
+        return (Doc) docs.put(url, doc, /*process*/ false);
+    }
+
     protected static void copyUserData(Node from, Node to) {
         // Needed by MaprefIncluder only for some specific cases.
         // importNodes() automatically copies user data.
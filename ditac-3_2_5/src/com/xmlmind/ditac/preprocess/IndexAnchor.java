@@ -8,18 +8,14 @@
  */
 package com.xmlmind.ditac.preprocess;
 
-import org.w3c.dom.Element;
-
 /*package*/ class IndexAnchor {
-    public final Element source;
     public final String file;
 
     private String id;
 
     // -----------------------------------------------------------------------
 
-    public IndexAnchor(Element source, String file, String id) {
-        this.source = source;
+    public IndexAnchor(String file, String id) {
         this.file = file;
         setId(id);
     }
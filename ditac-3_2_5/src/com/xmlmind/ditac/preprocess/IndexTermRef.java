@@ -9,17 +9,17 @@
 package com.xmlmind.ditac.preprocess;
 
 import java.util.Arrays;
-import org.w3c.dom.Element;
+import com.xmlmind.ditac.util.NodeLocation;
 
 @SuppressWarnings("overrides")
 /*package*/ final class IndexTermRef {
-    public final Element source;
+    public final NodeLocation location;
     public final String[] term;
 
     // -----------------------------------------------------------------------
 
-    public IndexTermRef(Element source, String[] term) {
-        this.source = source;
+    public IndexTermRef(NodeLocation location, String[] term) {
+        this.location = location;
         this.term = term;
     }
 
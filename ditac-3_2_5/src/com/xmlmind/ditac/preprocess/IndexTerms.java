@@ -28,11 +28,13 @@ import com.xmlmind.ditac.util.DOMUtil;
 import com.xmlmind.ditac.util.DITAUtil;
 import com.xmlmind.ditac.util.SimpleConsole;
 import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.NodeLocation;
 
 /*package*/ final class IndexTerms implements Constants {
     private ConsoleHelper console;
     private HashMap<String, IndexTerm> indexTerms;
     private HashMap<String, IndexAnchorPair> startToAnchor;
+    private HashMap<IndexAnchorPair, ChunkEntry> anchorToEntry;
 
     // -----------------------------------------------------------------------
 
@@ -44,6 +46,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         setConsole(c);
         indexTerms = new HashMap<String, IndexTerm>();
         startToAnchor = new HashMap<String, IndexAnchorPair>();
+        anchorToEntry = new HashMap<IndexAnchorPair, ChunkEntry>();
     }
 
     public void setConsole(Console c) {
@@ -62,7 +65,15 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     // collect
     // -----------------------------------------------------------------------
 
-    public void collect(Element indexTermElement, String file) {
+    /**
+     * Collects specified indexterm.
+     * <p>The topic containing <tt>indexTermElement</tt> may be modified
+     * right away, but no reference to it is kept: <tt>entry</tt> is used to
+     * find this topic again, after all indexterms have been collected,
+     * in case this is needed.
+     */
+    public void collect(Element indexTermElement, String file,
+                        ChunkEntry entry) {
         ParsedIndexTerm parsed = parseIndexTerm(indexTermElement);
         if (parsed == null) {
             return;
@@ -80,7 +91,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 newIndexTerm = true;
             }
 
-            if (!merge(parsed, file, new String[] { parsed.term },
+            if (!merge(parsed, file, entry, new String[] { parsed.term },
                        indexTerm)) {
                 return;
             }
@@ -316,7 +327,9 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             nestedElement = childElement;
         }
 
-        return new IndexTermRef(element,
+        NodeLocation location = 
+            (NodeLocation) element.getUserData(NodeLocation.USER_DATA_KEY);
+        return new IndexTermRef(location,
                                 StringUtil.split(buffer.toString(), '\n'));
     }
 
@@ -338,7 +351,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     // --------------------------------------
 
     private boolean merge(ParsedIndexTerm parsed, String file, 
-                          String[] term, IndexTerm indexTerm) {
+                          ChunkEntry entry, String[] term, 
+                          IndexTerm indexTerm) {
         assert(parsed.term != null);
 
         // Add anchor ---
@@ -362,11 +376,11 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 }
 
                 IndexAnchorPair anchorPair = 
-                    new IndexAnchorPair(parsed.source, file, 
-                                        parsed.id, parsed.start);
+                    new IndexAnchorPair(file, anchorId(parsed), parsed.start);
                 indexTerm.addAnchor(anchorPair);
 
                 startToAnchor.put(parsed.start, anchorPair);
+                anchorToEntry.put(anchorPair, entry);
             } else {
                 if (parsedSubTermList != null) {
                     for (int i = 0; i < parsedSubTermList.length; ++i) {
@@ -377,8 +391,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                     }
                 }
                 if (addAnchor) {
-                    indexTerm.addAnchor(new IndexAnchor(parsed.source, 
-                                                        file, parsed.id));
+                    indexTerm.addAnchor(new IndexAnchor(file, 
+                                                        anchorId(parsed)));
                 }
                 // Otherwise parsed being a non-leaf has no anchor of its own.
             }
@@ -483,8 +497,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                         newSubTerm = true;
                     }
 
-                    if (!merge(parsedSubTerm, file, StringList.append(term, t),
-                               subTerm)) {
+                    if (!merge(parsedSubTerm, file, entry,
+                               StringList.append(term, t), subTerm)) {
                         continue;
                     }
 
@@ -509,10 +523,39 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                             Msg.msg("indexRangeStartNotFound", 
                                     parsed.end));
         } else {
-            anchorPair.setAnchor2(parsed.source, file, parsed.id);
+            anchorToEntry.remove(anchorPair);
+
+            String id2 = null;
+            if (isInProlog(parsed.source)) {
+                id2 = markEndOfTopic(findTopic(parsed.source));
+            }
+            if (id2 == null) {
+                id2 = parsed.id;
+            }
+            anchorPair.setAnchor2(file, id2);
         }
     }
 
+    private String anchorId(ParsedIndexTerm parsed) {
+        String id = null;
+        if (isInProlog(parsed.source)) {
+            id = markStartOfTopic(findTopic(parsed.source));
+        }
+        if (id == null) {
+            id = parsed.id;
+        }
+        return id;
+    }
+
+    private static boolean isInProlog(Element indexterm) {
+        return (DITAUtil.findAncestorByClass(indexterm,
+                                             "topic/prolog") != null);
+    }
+
+    private static Element findTopic(Element indexterm) {
+        return DITAUtil.findAncestorByClass(indexterm, "topic/topic");
+    }
+
     private static String termLabel(String[] term) {
         return StringUtil.join(" / ", term);
     }
@@ -609,7 +652,9 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         buffer.append(indexTerm.term);
         String term = buffer.toString();
 
-        termToId.put(term, DITAUtil.generateID(indexTerm));
+        // The ID of an index entry must be the same from one run to
+        // the other.
+        termToId.put(term, DITAUtil.generateID(term));
 
         IndexTerm[] subTermList = indexTerm.getSubTermList();
         if (subTermList != null) {
@@ -633,7 +678,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             doc.createElementNS(DITAC_NS_URI, "ditac:indexEntry");
         parent.appendChild(indexEntry);
 
-        DOMUtil.setXMLId(indexEntry, DITAUtil.generateID(indexTerm));
+        String id = termToId.get(StringUtil.join('\n', term));
+        DOMUtil.setXMLId(indexEntry, id);
 
         indexEntry.setAttributeNS(null, "term", indexTerm.term);
 
@@ -666,7 +712,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
                 if (anchor instanceof IndexAnchorPair) {
                     IndexAnchorPair anchorPair = (IndexAnchorPair) anchor;
-                    if (anchorPair.getSource2() != null) {
+                    if (anchorPair.getFile2() != null) {
                         indexAnchor.setAttributeNS(null, "number2", 
                                                    Integer.toString(++num));
                         indexAnchor.setAttributeNS(null, "file2", 
@@ -714,7 +760,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 for (int i = 0; i < seeList.length; ++i) {
                     IndexTermRef see = seeList[i];
 
-                    console.warning(see.source, 
+                    console.warning(see.location, 
                                     Msg.msg("seeOnNonLeafIndexTerm2", 
                                             termLabel(term)));
                 }
@@ -730,7 +776,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
         String redirectionId = termToId.get(redirection);
         if (redirectionId == null) {
-            console.warning(ref.source, 
+            console.warning(ref.location, 
                             Msg.msg("noSuchIndexTerm", termLabel(ref.term)));
         } else {
             seeAlso.setAttributeNS(null, "ref", redirectionId);
@@ -849,44 +895,28 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     }
 
     private void finishAnchors(IndexTerm indexTerm) {
+        // The anchors found in a prolog have already been moved to the
+        // start (or end) of their topics by merge and finishAnchorPair.
+
         IndexAnchor[] anchorList = indexTerm.getAnchorList();
         if (anchorList != null) {
             for (int i = 0; i < anchorList.length; ++i) {
                 IndexAnchor anchor = anchorList[i];
-                Element source = anchor.source;
-
-                if (DITAUtil.findAncestorByClass(source,
-                                                 "topic/prolog") != null) {
-                    String id = markStartOfTopic(source);
-                    if (id != null) {
-                        anchor.setId(id);
-                    }
-                }
 
                 if (anchor instanceof IndexAnchorPair) {
                     IndexAnchorPair anchorPair = (IndexAnchorPair) anchor;
-                    Element source2 = anchorPair.getSource2();
 
-                    if (source2 == null) {
+                    if (anchorPair.getFile2() == null) {
                         // LIMITATION: the implicit end of range is always
                         // after the last child of the topic, not including
                         // nested topics.
 
-                        String id2 = markEndOfTopic(source);
+                        ChunkEntry entry = anchorToEntry.remove(anchorPair);
+                        String id2 = (entry == null)? 
+                            null : markEndOfTopic(entry.getElement());
                         if (id2 != null) {
                             // A topic is never split between several files.
-                            anchorPair.setAnchor2(source, 
-                                                  anchorPair.file, id2);
-                        }
-                    } else {
-                        if (DITAUtil.findAncestorByClass(source2,
-                                                       "topic/prolog")!=null) {
-                            String id2 = markEndOfTopic(source2);
-                            if (id2 != null) {
-                                anchorPair.setAnchor2(source2, 
-                                                      anchorPair.getFile2(),
-                                                      id2);
-                            }
+                            anchorPair.setAnchor2(anchorPair.file, id2);
                         }
                     }
                 }
@@ -903,8 +933,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         }
     }
 
-    private String markStartOfTopic(Element indexterm) {
-        Element topic = DITAUtil.findAncestorByClass(indexterm, "topic/topic");
+    private String markStartOfTopic(Element topic) {
         if (topic == null) {
             // Should not happen.
             return null;
@@ -933,8 +962,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         return buffer.toString();
     }
 
-    private String markEndOfTopic(Element indexterm) {
-        Element topic = DITAUtil.findAncestorByClass(indexterm, "topic/topic");
+    private String markEndOfTopic(Element topic) {
         if (topic == null) {
             // Should not happen.
             return null;
@@ -46,6 +46,13 @@ public final class KeyDefinition
      */
     public final int fromChildKeySpace;
 
+    /**
+     * The order in which key definitions have been added to their key
+     * spaces. When several key definitions are found for the same key
+     * in the same key space, the one having the lowest rank wins.
+     */
+    /*package*/ final int rank;
+
     private boolean initQuickFields;
     private String href;
     private boolean isAbsoluteHref;
@@ -55,9 +62,15 @@ public final class KeyDefinition
     // -------------------------------------------------------------------
 
     public KeyDefinition(String key, Element element, int fromChildKeySpace) {
+        this(key, element, fromChildKeySpace, 0);
+    }
+
+    /*package*/ KeyDefinition(String key, Element element, 
+                              int fromChildKeySpace, int rank) {
         this.key = key;
         this.element = element;
         this.fromChildKeySpace = fromChildKeySpace;
+        this.rank = rank;
     }
 
     public String getAttribute(String ns, String localName) {
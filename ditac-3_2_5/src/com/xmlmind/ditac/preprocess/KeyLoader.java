@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Stack;
 import org.w3c.dom.Node;
 import org.w3c.dom.ProcessingInstruction;
@@ -38,9 +39,23 @@ import com.xmlmind.ditac.util.LoadDocument;
     private URL mapURL;
     private Document mapDoc;
     private Filters filters;
+    private int keyDefinitionCount;
 
     private static final int LAST_PASS = 9;
 
+    /**
+     * A key definition having a keyref which could not be resolved yet.
+     */
+    private static final class PendingKeyDefinition {
+        public final Element element;
+        public final KeySpace keySpace;
+
+        public PendingKeyDefinition(Element element, KeySpace keySpace) {
+            this.element = element;
+            this.keySpace = keySpace;
+        }
+    }
+
     // -----------------------------------------------------------------------
 
     public KeyLoader() {
@@ -109,7 +124,8 @@ import com.xmlmind.ditac.util.LoadDocument;
 
         // Add keys ---
 
-        int[] keyrefCount = new int[1];
+        ArrayList<PendingKeyDefinition> pending = 
+            new ArrayList<PendingKeyDefinition>();
         int prevKeyrefCount = -1;
         long now = System.currentTimeMillis();
         int iteration = 0;
@@ -122,24 +138,46 @@ import com.xmlmind.ditac.util.LoadDocument;
         keySpaceStack.push(keySpaces.rootKeySpace);
 
         for (int pass = 0; pass <= LAST_PASS; ++pass) {
-            console.debug(Msg.msg("iteration", iteration++));
+            if (console.isShowing(Console.MessageType.DEBUG)) {
+                console.debug(Msg.msg("iteration", iteration));
+            }
+            ++iteration;
+
+            if (pass == 0) {
+                // Only the first pass traverses the whole map. Next passes
+                // just retry, in document order, the key definitions
+                // having an unresolved keyref.
 
-            keyrefCount[0] = 0;
-            if (!collectKeys(map, loadedTopics, keySpaceStack,
-                             keySpaces, keyrefCount, (pass == LAST_PASS))) {
-                return null;
+                if (!collectKeys(map, loadedTopics, keySpaceStack,
+                                 keySpaces, pending)) {
+                    return null;
+                }
+            } else {
+                boolean lastPass = (pass == LAST_PASS);
+
+                ArrayList<PendingKeyDefinition> retried = pending;
+                pending = new ArrayList<PendingKeyDefinition>();
+
+                for (PendingKeyDefinition pkd : retried) {
+                    if (!doCollectKeys(pkd.element, pkd.keySpace, 
+                                       loadedTopics, keySpaces, 
+                                       pending, lastPass)) {
+                        return null;
+                    }
+                }
             }
 
-            if (keyrefCount[0] == 0) {
+            int keyrefCount = pending.size();
+            if (keyrefCount == 0) {
                 // Done.
                 break;
             }
 
-            if (keyrefCount[0] == prevKeyrefCount) {
+            if (keyrefCount == prevKeyrefCount) {
                 // No change. Next pass will be the last one.
                 pass = LAST_PASS-1;
             }
-            prevKeyrefCount = keyrefCount[0];
+            prevKeyrefCount = keyrefCount;
         }
 
         keySpaceStack.pop();
@@ -158,8 +196,7 @@ import com.xmlmind.ditac.util.LoadDocument;
                                 LoadedDocuments loadedTopics, 
                                 Stack<KeySpace> keySpaceStack,
                                 KeySpaces keySpaces,
-                                int[] keyrefCount, boolean lastPass) {
-
+                                ArrayList<PendingKeyDefinition> pending) {
         Node child = element.getFirstChild();
         while (child != null) {
             switch (child.getNodeType()) {
@@ -196,13 +233,15 @@ import com.xmlmind.ditac.util.LoadDocument;
                         return false;
                     }
 
-                    if (!doCollectKeys(childElement, loadedTopics,keySpaceStack,
-                                       keySpaces, keyrefCount, lastPass)) {
+                    if (DITAUtil.hasClass(childElement, "map/topicref") &&
+                        !doCollectKeys(childElement, keySpaceStack.peek(),
+                                       loadedTopics, keySpaces, 
+                                       pending, /*lastPass*/ false)) {
                         return false;
                     }
 
                     if (!collectKeys(childElement, loadedTopics, keySpaceStack,
-                                     keySpaces, keyrefCount, lastPass)) {
+                                     keySpaces, pending)) {
                         return false;
                     }
 
@@ -286,15 +325,19 @@ import com.xmlmind.ditac.util.LoadDocument;
         return keySpace;
     }
 
-    private boolean doCollectKeys(Element element, 
+    /**
+     * Processes specified topicref if it is a key definition.
+     * A key definition having a keyref which cannot be resolved yet
+     * is added to <code>pending</code>, unless <code>lastPass</code>
+     * is <code>true</code>.
+     */
+    private boolean doCollectKeys(Element element, KeySpace keySpace,
                                   LoadedDocuments loadedTopics, 
-                                  Stack<KeySpace> keySpaceStack,
                                   KeySpaces keySpaces,
-                                  int[] keyrefCount, boolean lastPass) {
-        String keyList;
-        if (DITAUtil.hasClass(element, "map/topicref") &&
-            (keyList = 
-             DITAUtil.getNonEmptyAttribute(element, null, "keys")) != null) {
+                                  ArrayList<PendingKeyDefinition> pending,
+                                  boolean lastPass) {
+        String keyList = DITAUtil.getNonEmptyAttribute(element, null, "keys");
+        if (keyList != null) {
             boolean add = true;
             boolean skip = false;
 
@@ -354,7 +397,8 @@ import com.xmlmind.ditac.util.LoadDocument;
                             // Do not add during this pass. 
                             // Retry later.
                             add = false;
-                            ++keyrefCount[0];
+                            pending.add(new PendingKeyDefinition(element,
+                                                                 keySpace));
                         }
                     }
                 } else {
@@ -388,8 +432,7 @@ import com.xmlmind.ditac.util.LoadDocument;
                 element.removeAttributeNS(null, "keys");
                 element.removeAttributeNS(null, "keyref");
 
-                if (!addKeys(keyList, element, loadedTopics,
-                             keySpaceStack.peek())) {
+                if (!addKeys(keyList, element, loadedTopics, keySpace)) {
                     return false;
                 }
             }
@@ -535,34 +578,18 @@ import com.xmlmind.ditac.util.LoadDocument;
 
         for (String key : keyItems) {
             if (!keySpace.contains(key)) {
+                // No need to add qualified copies of kd to the ancestors
+                // of keySpace: KeySpace.get looks up qualified keys 
+                // in descendant key spaces. The rank of kd allows
+                // to give precedence to the key definition added first.
+
                 KeyDefinition kd = 
-                    new KeyDefinition(key, topicref, /*fromChildKeySpace*/ 0);
+                    new KeyDefinition(key, topicref, /*fromChildKeySpace*/ 0,
+                                      keyDefinitionCount++);
                 keySpace.set(kd);
-                
-                addKeyDefinitionToAncestors(kd, keySpace);
             }
         }
 
         return true;
     }
-
-    private static void addKeyDefinitionToAncestors(KeyDefinition kd,
-                                                    KeySpace keySpace) {
-        KeySpace parent = keySpace.getParentKeySpace();
-        if (parent != null) {
-            for (String keyscopeName : keySpace.getKeyscopeNames()) {
-                String key2 = keyscopeName + "." + kd.key;
-                int fromChildKeySpace2 = kd.fromChildKeySpace + 1;
-
-                KeyDefinition kd2 = 
-                    new KeyDefinition(key2, kd.element, fromChildKeySpace2);
-
-                if (!parent.contains(key2)) {
-                    parent.set(kd2);
-                }
-
-                addKeyDefinitionToAncestors(kd2, parent);
-            }
-        }
-    }
 }
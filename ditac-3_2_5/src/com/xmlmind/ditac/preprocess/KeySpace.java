@@ -25,8 +25,9 @@ public final class KeySpace {
     private KeySpace parent;
     private KeySpace[] children;
 
+    private HashMap<String,KeySpace[]> scopedChildren;
+
     private HashMap<String,KeyDefinition> keyDefinitions;
-    private KeyDefinition[] allKeyDefinitions;
 
     private static final KeySpace[] EMPTY_LIST = new KeySpace[0];
 
@@ -38,6 +39,7 @@ public final class KeySpace {
         initKeyscopeNames(keyscope);
 
         children = EMPTY_LIST;
+        scopedChildren = new HashMap<String,KeySpace[]>();
 
         keyDefinitions = new HashMap<String,KeyDefinition>();
     }
@@ -65,6 +67,16 @@ public final class KeySpace {
     public void addChildKeySpace(KeySpace child) {
         if (ArrayUtil.find(children, child) < 0) {
             children = ArrayUtil.append(children, child);
+
+            for (String keyscopeName : child.keyscopeNames) {
+                KeySpace[] list = scopedChildren.get(keyscopeName);
+                if (list == null) {
+                    list = new KeySpace[] { child };
+                } else {
+                    list = ArrayUtil.append(list, child);
+                }
+                scopedChildren.put(keyscopeName, list);
+            }
         }
     }
 
@@ -72,26 +84,93 @@ public final class KeySpace {
         return children;
     }
 
+    /**
+     * Adds a key definition made in this key space. 
+     * Such key definition is implicitly available in all the ancestors 
+     * of this key space using its qualified forms 
+     * (e.g. <tt><i>keyscope_name</i>.<i>key</i></tt>).
+     */
     public void set(KeyDefinition kd) {
         keyDefinitions.put(kd.key, kd);
-        allKeyDefinitions = null;
     }
 
+    /**
+     * Returns the definition of specified key in this key space;
+     * <code>null</code> if there is no such definition.
+     * <p>Specified key may be defined in this key space or 
+     * it may be a qualified key defined in a descendant key space. 
+     * Note that the returned key definition is the original one. 
+     * That is, its <code>key</code> field is not qualified.
+     * <p>This method does not modify this key space. Therefore it may be 
+     * invoked by concurrent threads.
+     */
     public KeyDefinition get(String key) {
-        return keyDefinitions.get(key);
+        return lookup(key, 0);
+    }
+
+    private KeyDefinition lookup(String key, int start) {
+        KeyDefinition found = 
+            keyDefinitions.get((start == 0)? key : key.substring(start));
+
+        if (scopedChildren.size() > 0) {
+            int dot = key.indexOf('.', start);
+            while (dot > start) {
+                KeySpace[] scoped = 
+                    scopedChildren.get(key.substring(start, dot));
+                if (scoped != null) {
+                    for (KeySpace child : scoped) {
+                        KeyDefinition kd = child.lookup(key, dot+1);
+                        if (kd != null && 
+                            (found == null || kd.rank < found.rank)) {
+                            found = kd;
+                        }
+                    }
+                }
+
+                dot = key.indexOf('.', dot+1);
+            }
+        }
+
+        return found;
     }
 
     public boolean contains(String key) {
-        return keyDefinitions.containsKey(key);
+        return (get(key) != null);
     }
 
+    /**
+     * Returns all the keys which may be looked up in this key space,
+     * including the qualified ones. 
+     * <p>For debugging purposes only: the key definitions returned for
+     * qualified keys are created by this method.
+     */
     public KeyDefinition[] getAll() {
-        if (allKeyDefinitions == null) {
-            int count = keyDefinitions.size();
-            allKeyDefinitions = new KeyDefinition[count];
-            keyDefinitions.values().toArray(allKeyDefinitions);
+        HashMap<String,KeyDefinition> all = 
+            new HashMap<String,KeyDefinition>();
+        getAll(all);
+
+        KeyDefinition[] list = new KeyDefinition[all.size()];
+        return all.values().toArray(list);
+    }
+
+    private void getAll(HashMap<String,KeyDefinition> all) {
+        all.putAll(keyDefinitions);
+
+        for (KeySpace child : children) {
+            for (KeyDefinition kd : child.getAll()) {
+                for (String keyscopeName : child.keyscopeNames) {
+                    String key = keyscopeName + "." + kd.key;
+
+                    KeyDefinition found = all.get(key);
+                    if (found == null || kd.rank < found.rank) {
+                        all.put(key, 
+                                new KeyDefinition(key, kd.element,
+                                                  kd.fromChildKeySpace + 1,
+                                                  kd.rank));
+                    }
+                }
+            }
         }
-        return allKeyDefinitions;
     }
 
     @Override
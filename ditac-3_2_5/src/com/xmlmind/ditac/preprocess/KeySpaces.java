@@ -10,7 +10,6 @@ package com.xmlmind.ditac.preprocess;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Stack;
 import java.util.Map;
 import java.util.HashMap;
@@ -33,8 +32,6 @@ public final class KeySpaces implements Constants {
 
     /*package*/ HashMap<String,KeySpace> topicURIToKeySpace;
 
-    private ArrayList<KeySpace> keySpaceHierarchy;
-
     // -----------------------------------------------------------------------
 
     public KeySpaces() {
@@ -43,8 +40,6 @@ public final class KeySpaces implements Constants {
         keySpaces.put(rootKeySpace.id, rootKeySpace);
 
         topicURIToKeySpace = new HashMap<String,KeySpace>();
-
-        keySpaceHierarchy = new ArrayList<KeySpace>();
     }
 
     @Override
@@ -203,27 +198,18 @@ public final class KeySpaces implements Constants {
     }
 
     public KeyDefinition lookupKeyDefinition(KeySpace keySpace, String key) {
-        if (keySpace == rootKeySpace) {
-            return keySpace.get(key);
-        }
-
-        // ---
+        // Search from root to specified keySpace. Does not modify anything
+        // and hence, may be used by concurrent threads.
 
-        keySpaceHierarchy.clear();
-        while (keySpace != null) {
-            keySpaceHierarchy.add(keySpace);
-            keySpace = keySpace.getParentKeySpace();
-        }
-
-        // Search from root to specified keySpace.
-        for (int i = keySpaceHierarchy.size()-1; i >= 0; --i) {
-            KeyDefinition kd = keySpaceHierarchy.get(i).get(key);
+        KeySpace parent = keySpace.getParentKeySpace();
+        if (parent != null) {
+            KeyDefinition kd = lookupKeyDefinition(parent, key);
             if (kd != null) {
                 return kd;
             }
         }
 
-        return null;
+        return keySpace.get(key);
     }
 
     public String getHref(String key, Element context) {
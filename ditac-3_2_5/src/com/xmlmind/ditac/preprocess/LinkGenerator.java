@@ -13,12 +13,14 @@ import java.net.URL;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.IdentityHashMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
 import org.w3c.dom.Document;
-import com.xmlmind.util.ArrayUtil;
 import com.xmlmind.util.URIComponent;
 import com.xmlmind.util.URLUtil;
 import com.xmlmind.util.Console;
@@ -45,14 +47,17 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         public final Element linktext;
         public final Element shortdesc;
 
-        // Points to or inside this topic.
+        // Points to or inside this topic. The topic is identified by
+        // the URL of its document and by its ID (and not by its element)
+        // because this document may be spilled to disk.
         public final String topicId;
         public final String elementId;
-        public final Element topic;
+        public final URL topicDocURL;
+        public final String topicKey;
 
         public Entry(String href, String scope, String format,
                      Linking linking, Element linktext, Element shortdesc,
-                     String topicId, String elementId, Element topic) {
+                     String topicId, String elementId, URL topicDocURL) {
             this.href = href;
             this.scope = scope;
             this.format = format;
@@ -62,7 +67,14 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
             this.topicId = topicId;
             this.elementId = elementId;
-            this.topic = topic;
+            this.topicDocURL = topicDocURL;
+
+            if (topicDocURL == null) {
+                topicKey = null;
+            } else {
+                topicKey = topicDocURL.toExternalForm() + "#" + 
+                    URIComponent.quoteFragment(topicId);
+            }
         }
 
         @Override
@@ -74,6 +86,32 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         }
     }
 
+    /**
+     * The related links of a topic, that is, the edges leaving this topic
+     * in the graph built from the reltables.
+     * <p>Targets are de-duplicated using their normalized hrefs.
+     * The first entry added for a given href wins and the order
+     * in which targets have been added is preserved.
+     */
+    private static final class RelatedLinks {
+        public final Entry source;
+        public final LinkedHashMap<String,Entry> targets = 
+            new LinkedHashMap<String,Entry>();
+        public int duplicateCount;
+
+        public RelatedLinks(Entry source) {
+            this.source = source;
+        }
+
+        public void add(Entry target) {
+            if (targets.containsKey(target.href)) {
+                ++duplicateCount;
+            } else {
+                targets.put(target.href, target);
+            }
+        }
+    }
+
     // -----------------------------------------------------------------------
 
     private enum CollectionType {
@@ -115,7 +153,10 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
     private ConsoleHelper console;
 
+    private LoadedDocuments loadedDocs;
     private String mapHref;
+    private IdentityHashMap<Element,Entry[]> cellEntries;
+    private HashMap<String,HashSet<String>> linkpoolKeys;
 
     // -----------------------------------------------------------------------
 
@@ -143,15 +184,27 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                            LoadedDocuments loadedDocs) {
         // Process @collection-type (but not inside reltables) ---
 
+        this.loadedDocs = loadedDocs;
         mapHref = mapURL.toExternalForm();
         ArrayList<Entry> childList = new ArrayList<Entry>();
 
+        // The same topic may be referenced several times by the same kind
+        // of collection. Do not add the same linkpool twice to it.
+        linkpoolKeys = new HashMap<String,HashSet<String>>();
+
         processHierarchy(map, loadedDocs, childList);
 
+        linkpoolKeys = null;
+
         // Process reltables ---
 
-        IdentityHashMap<Element, Entry[]> collected = 
-            new IdentityHashMap<Element, Entry[]>();
+        // A relcell is processed once as part of its column and once
+        // as part of its row.
+        cellEntries = new IdentityHashMap<Element,Entry[]>();
+
+        // Keys are Entry.topicKeys.
+        LinkedHashMap<String,RelatedLinks> collected = 
+            new LinkedHashMap<String,RelatedLinks>();
 
         Node child = map.getFirstChild();
         while (child != null) {
@@ -168,16 +221,36 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             child = child.getNextSibling();
         }
 
-        Iterator<Map.Entry<Element, Entry[]>> iter = 
-            collected.entrySet().iterator();
+        cellEntries = null;
+
+        int linkCount = 0;
+        int duplicateCount = 0;
+
+        Iterator<RelatedLinks> iter = collected.values().iterator();
         while (iter.hasNext()) {
-            Map.Entry<Element, Entry[]> e = iter.next();
+            RelatedLinks links = iter.next();
 
-            Element topic = e.getKey();
-            Entry[] entries = e.getValue();
+            addRelatedLinks(getTopic(links.source), links);
+
+            linkCount += links.targets.size();
+            duplicateCount += links.duplicateCount;
+        }
 
-            addRelatedLinks(topic, entries);
+        if (console.isShowing(Console.MessageType.DEBUG)) {
+            console.debug(Msg.msg("relatedLinksGenerated", linkCount,
+                                  collected.size(), duplicateCount));
         }
+
+        this.loadedDocs = null;
+    }
+
+    /**
+     * Returns the topic pointed to by specified entry, which must point
+     * to a local topic.
+     */
+    private Element getTopic(Entry entry) {
+        LoadedDocument loadedDoc = loadedDocs.get(entry.topicDocURL);
+        return loadedDoc.findTopicById(entry.topicId).element;
     }
 
     // -----------------------------------------------------------------------
@@ -230,7 +303,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             DITAUtil.getNonEmptyAttribute(topicrefOrMap, null, "href");
         if (href != null) {
             parent = createEntry(topicrefOrMap, href, loadedDocs);
-            if (parent != null && parent.topic == null) {
+            if (parent != null && parent.topicDocURL == null) {
                 parent = null;
             }
         }
@@ -248,7 +321,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                                                    null, "href")) != null) {
                     Entry entry = createEntry(childElement, href, 
                                               loadedDocs);
-                    if (entry != null && entry.topic == null) {
+                    if (entry != null && entry.topicDocURL == null) {
                         entry = null;
                     }
                     if (entry != null) {
@@ -310,13 +383,21 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         case NORMAL:
         case SOURCE_ONLY:
             {
-                Element topic = parent.topic;
-                assert(topic != null);
+                Element topic = getTopic(parent);
 
                 Document doc = topic.getOwnerDocument();
                 assert(doc != null);
 
                 String linkpoolType = collectionType.toString() + "-parent";
+
+                StringBuilder key = new StringBuilder(linkpoolType);
+                for (int i = 0; i < childCount; ++i) {
+                    appendLinkKey(childList.get(i), "child", key);
+                }
+                if (!addLinkpoolKey(parent, key)) {
+                    break;
+                }
+
                 Element linkpool = 
                     addLinkpool(topic, /*prepend*/ true, linkpoolType, doc);
 
@@ -335,12 +416,24 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         case NORMAL:
         case SOURCE_ONLY:
             {
-                Element topic = from.topic;
-                assert(topic != null);
+                Element topic = getTopic(from);
 
                 Document doc = topic.getOwnerDocument();
                 assert(doc != null);
 
+                StringBuilder key = new StringBuilder("family-members");
+                if (parent != null) {
+                    appendLinkKey(parent, "parent", key);
+                }
+                for (int i = 0; i < siblingCount; ++i) {
+                    if (i != topicIndex) {
+                        appendLinkKey(siblingList.get(i), "sibling", key);
+                    }
+                }
+                if (!addLinkpoolKey(from, key)) {
+                    break;
+                }
+
                 Element linkpool = 
                     addLinkpool(topic, /*prepend*/ true, "family-members", 
                                 doc);
@@ -365,12 +458,25 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         case NORMAL:
         case SOURCE_ONLY:
             {
-                Element topic = from.topic;
-                assert(topic != null);
+                Element topic = getTopic(from);
 
                 Document doc = topic.getOwnerDocument();
                 assert(doc != null);
 
+                StringBuilder key = new StringBuilder("sequence-members");
+                if (parent != null) {
+                    appendLinkKey(parent, "parent", key);
+                }
+                if (previous != null) {
+                    appendLinkKey(previous, "previous", key);
+                }
+                if (next != null) {
+                    appendLinkKey(next, "next", key);
+                }
+                if (!addLinkpoolKey(from, key)) {
+                    break;
+                }
+
                 Element linkpool = 
                     addLinkpool(topic, /*prepend*/ true, "sequence-members", 
                                 doc);
@@ -402,14 +508,20 @@ import com.xmlmind.ditac.util.ConsoleHelper;
             case NORMAL:
             case SOURCE_ONLY:
                 {
-                    Element topic = from.topic;
-                    assert(topic != null);
+                    Element topic = getTopic(from);
 
                     Document doc = topic.getOwnerDocument();
                     assert(doc != null);
 
                     String linkpoolType = 
                         collectionType.toString() + "-members";
+
+                    StringBuilder key = new StringBuilder(linkpoolType);
+                    appendLinkKey(parent, "parent", key);
+                    if (!addLinkpoolKey(from, key)) {
+                        break;
+                    }
+
                     Element linkpool = 
                         addLinkpool(topic, /*prepend*/ true, linkpoolType, doc);
 
@@ -420,6 +532,33 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         }
     }
 
+    private static void appendLinkKey(Entry to, String role,
+                                      StringBuilder key) {
+        switch (to.linking) {
+        case NORMAL:
+        case TARGET_ONLY:
+            key.append('\n');
+            key.append(role);
+            key.append(' ');
+            key.append(to.href);
+            break;
+        }
+    }
+
+    /**
+     * Returns <code>false</code> if a linkpool having the same 
+     * type and the same links has already been added to specified topic;
+     * <code>true</code> otherwise.
+     */
+    private boolean addLinkpoolKey(Entry entry, StringBuilder key) {
+        HashSet<String> keys = linkpoolKeys.get(entry.topicKey);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            linkpoolKeys.put(entry.topicKey, keys);
+        }
+        return keys.add(key.toString());
+    }
+
     private static void addLink(Element linkpool, Entry to, String role,
                                 Document doc) {
         switch (to.linking) {
@@ -437,7 +576,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
     private void processColumns(Element reltable, 
                                 LoadedDocuments loadedDocs,
-                                Map<Element, Entry[]> collected) {
+                                Map<String,RelatedLinks> collected) {
         Element relheader = 
             DITAUtil.findChildByClass(reltable, "map/relheader");
         if (relheader == null) {
@@ -456,12 +595,9 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 if (DITAUtil.hasClass(childElement, "map/relcolspec")) {
                     cellList.clear();
 
-                    entryList.clear();
-                    processCell(childElement, loadedDocs, entryList);
-
-                    if (entryList.size() > 0) {
-                        Entry[] entries = new Entry[entryList.size()];
-                        entryList.toArray(entries);
+                    Entry[] entries = 
+                        getCellEntries(childElement, loadedDocs, entryList);
+                    if (entries.length > 0) {
                         cellList.add(entries);
 
                         processColumn(reltable, column, loadedDocs, 
@@ -493,12 +629,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                         DOMUtil.getNthChildElement(childElement, column);
                     if (relcell != null &&
                         DITAUtil.hasClass(relcell, "map/relcell")) {
-                        entryList.clear();
-                        processCell(relcell, loadedDocs, entryList);
-
-                        Entry[] entries = new Entry[entryList.size()];
-                        entryList.toArray(entries);
-                        cellList.add(entries);
+                        cellList.add(getCellEntries(relcell, loadedDocs, 
+                                                    entryList));
                     }
                 }
             }
@@ -508,7 +640,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     }
 
     private static void addColumn(List<Entry[]> cellList,
-                                  Map<Element, Entry[]> collected) {
+                                  Map<String,RelatedLinks> collected) {
         int cellCount = cellList.size();
         if (cellCount < 2) {
             return;
@@ -525,35 +657,34 @@ import com.xmlmind.ditac.util.ConsoleHelper;
     }            
 
     private static void addLinks(Entry[] sources, Entry[] targets,
-                                 Map<Element, Entry[]> collected) {
+                                 Map<String,RelatedLinks> collected) {
         for (int k = 0; k < sources.length; ++k) {
             Entry source = sources[k];
 
             switch (source.linking) {
             case NORMAL:
             case SOURCE_ONLY:
-                assert(source.topic != null);
+                assert(source.topicKey != null);
+                RelatedLinks links = null;
+
                 for (int l = 0; l < targets.length; ++l) {
                     Entry target = targets[l];
 
-                    if (target.topic == source.topic) {
+                    if (source.topicKey.equals(target.topicKey)) {
                         continue;
                     }
 
                     switch (target.linking) {
                     case NORMAL:
                     case TARGET_ONLY:
-                        {
-                            Entry[] entries = collected.get(source.topic);
-                            if (entries == null) {
-                                entries = new Entry[] { target };
-                            } else {
-                                if (ArrayUtil.indexOf(entries, target) < 0) {
-                                    entries = ArrayUtil.append(entries,target);
-                                }
+                        if (links == null) {
+                            links = collected.get(source.topicKey);
+                            if (links == null) {
+                                links = new RelatedLinks(source);
+                                collected.put(source.topicKey, links);
                             }
-                            collected.put(source.topic, entries);
                         }
+                        links.add(target);
                         break;
                     }
                 }
@@ -566,7 +697,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
     private void processRows(Element reltable, 
                              LoadedDocuments loadedDocs,
-                             Map<Element, Entry[]> collected) {
+                             Map<String,RelatedLinks> collected) {
         ArrayList<Entry[]> cellList = new ArrayList<Entry[]>();
 
         Node child = reltable.getFirstChild();
@@ -597,12 +728,8 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                 Element childElement = (Element) child;
 
                 if (DITAUtil.hasClass(childElement, "map/relcell")) {
-                    entryList.clear();
-                    processCell(childElement, loadedDocs, entryList);
-
-                    Entry[] entries = new Entry[entryList.size()];
-                    entryList.toArray(entries);
-                    cellList.add(entries);
+                    cellList.add(getCellEntries(childElement, loadedDocs, 
+                                                entryList));
                 }
             }
 
@@ -610,6 +737,22 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         }
     }
 
+    private Entry[] getCellEntries(Element relcell, 
+                                   LoadedDocuments loadedDocs, 
+                                   List<Entry> entryList) {
+        Entry[] entries = cellEntries.get(relcell);
+        if (entries == null) {
+            entryList.clear();
+            processCell(relcell, loadedDocs, entryList);
+
+            entries = new Entry[entryList.size()];
+            entryList.toArray(entries);
+
+            cellEntries.put(relcell, entries);
+        }
+        return entries;
+    }
+
     private void processCell(Element relcell, 
                              LoadedDocuments loadedDocs, 
                              List<Entry> entryList) {
@@ -689,11 +832,11 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                                                   "map/shortdesc");
         }
 
-        // topicId, elementId, topic ---
+        // topicId, elementId, topicDocURL ---
 
         String topicId = null;
         String elementId = null;
-        Element topic = null;
+        URL topicDocURL = null;
 
         if ("local".equals(scope) && "dita".equals(format)) {
             // Points to a local topic.
@@ -740,7 +883,7 @@ import com.xmlmind.ditac.util.ConsoleHelper;
                         return null;
                     } else {
                         topicId = loadedTopic.topicId;
-                        topic = loadedTopic.element;
+                        topicDocURL = loadedDoc.url;
 
                         // Normalize href ---
 
@@ -775,11 +918,11 @@ import com.xmlmind.ditac.util.ConsoleHelper;
         }
 
         return new Entry(href, scope, format, linking, linktext, shortdesc, 
-                         topicId, elementId, topic);
+                         topicId, elementId, topicDocURL);
     }
 
     private static void addRow(List<Entry[]> cellList,
-                               Map<Element, Entry[]> collected) {
+                               Map<String,RelatedLinks> collected) {
         int cellCount = cellList.size();
         for (int i = 0; i < cellCount; ++i) {
             Entry[] sources = cellList.get(i);
@@ -797,15 +940,15 @@ import com.xmlmind.ditac.util.ConsoleHelper;
 
     // -----------------------------------------------------------------------
 
-    private void addRelatedLinks(Element topic, Entry[] entries) {
+    private void addRelatedLinks(Element topic, RelatedLinks links) {
         Document doc = topic.getOwnerDocument();
         assert(doc != null);
 
         Element linkpool = addLinkpool(topic, /*prepend*/ false, "related",
                                        doc);
 
-        for (int i = 0; i < entries.length; ++i) {
-            addLink(linkpool, entries[i], doc);
+        for (Entry entry : links.targets.values()) {
+            addLink(linkpool, entry, doc);
         }
     }
 
@@ -127,6 +127,14 @@ public class LoadedDocument {
         return topics;
     }
 
+    /**
+     * Returns the topics if they have already been computed;
+     * <code>null</code> otherwise.
+     */
+    /*package*/ LoadedTopic[] peekTopics() {
+        return topics;
+    }
+
     public int getTopicCount() {
         LoadedTopic[] loadedTopics = getTopics();
         return (loadedTopics == null)? 0 : loadedTopics.length;
@@ -157,6 +165,28 @@ public class LoadedDocument {
         return singleTopic;
     }
 
+    /**
+     * Returns the topic having specified path; <code>null</code> if
+     * there is no such topic.
+     *
+     * @see LoadedTopic#getPath
+     */
+    public LoadedTopic getTopic(int[] path) {
+        LoadedTopic[] loadedTopics = getTopics();
+
+        LoadedTopic loadedTopic = null;
+        for (int i = 0; i < path.length; ++i) {
+            int index = path[i];
+            if (loadedTopics == null || index >= loadedTopics.length) {
+                return null;
+            }
+
+            loadedTopic = loadedTopics[index];
+            loadedTopics = loadedTopic.getNestedTopics();
+        }
+        return loadedTopic;
+    }
+
     public LoadedTopic findTopicById(String id) {
         LoadedTopic[] loadedTopics = getTopics();
         if (loadedTopics == null || loadedTopics.length == 0) {
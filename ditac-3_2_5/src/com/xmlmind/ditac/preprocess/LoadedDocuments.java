@@ -34,6 +34,7 @@ import com.xmlmind.ditac.util.LoadDocument;
 import com.xmlmind.ditac.util.DOMUtil;
 import com.xmlmind.ditac.util.DITAUtil;
 import com.xmlmind.ditac.util.Resolve;
+import com.xmlmind.ditac.util.PerfReport;
 import static com.xmlmind.ditac.preprocess.CascadeMeta.TOPICMETA_ELEMENTS;
 import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENTS;
 import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
@@ -42,9 +43,11 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
     private KeySpaces keySpaces;
     private ConsoleHelper console;
     private boolean validate;
-    private HashMap<URL,LoadedDocument> docs;
+    private DocumentStore docs;
     private HashMap<URL,LoadedDocument> preloadedDocs;
     private String[] cascadingAttributes;
+    private PerfReport perfReport;
+    private int resolvedKeyrefCount;
 
     // -----------------------------------------------------------------------
 
@@ -53,7 +56,7 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
     }
 
     public LoadedDocuments(KeySpaces keySpaces, Console console) {
-        docs = new HashMap<URL,LoadedDocument>();
+        docs = new MemoryDocumentStore();
         preloadedDocs = new HashMap<URL,LoadedDocument>();
         setKeySpaces(keySpaces);
         setConsole(console);
@@ -76,6 +79,37 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
         return keySpaces;
     }
 
+    /**
+     * Specifies where the loaded documents are to be stored.
+     * The documents already loaded, if any, are moved to specified store.
+     */
+    public void setDocumentStore(DocumentStore store) {
+        Iterator<LoadedDocument> iter = docs.iterator();
+        while (iter.hasNext()) {
+            LoadedDocument doc = iter.next();
+            store.put(doc.url, doc);
+        }
+        docs.dispose();
+
+        docs = store;
+    }
+
+    /**
+     * Returns the store containing the loaded documents.
+     */
+    public DocumentStore getDocumentStore() {
+        return docs;
+    }
+
+    /**
+     * Forgets all the loaded documents and releases the resources
+     * used by the document store.
+     */
+    public void dispose() {
+        docs.dispose();
+        preloadedDocs.clear();
+    }
+
     public void setConsole(Console c) {
         if (c == null) {
             c = new SimpleConsole();
@@ -88,6 +122,24 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
         return console;
     }
 
+    /**
+     * Specifies the report in which the parse time and the number of
+     * resolved keyrefs of each loaded document are to be recorded.
+     * May be <code>null</code>, which is the default.
+     */
+    public void setPerfReport(PerfReport report) {
+        perfReport = report;
+    }
+
+    /**
+     * Returns the report in which the parse time and the number of
+     * resolved keyrefs of each loaded document are recorded.
+     * May return <code>null</code>.
+     */
+    public PerfReport getPerfReport() {
+        return perfReport;
+    }
+
     public void setValidating(boolean validate) {
         this.validate = validate;
     }
@@ -117,19 +169,24 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
             url = URLUtil.setRawFragment(url, null);
         }
 
-        LoadedDocument doc = preload(url);
+        LoadedDocument doc;
+        try {
+            doc = preload(url);
 
-        if (preloadedDocs.containsKey(url)) {
-            preloadedDocs.remove(url);
+            if (preloadedDocs.containsKey(url)) {
+                preloadedDocs.remove(url);
 
-            docs.put(url, doc);
-        
-            if (process) {
-                process(doc.document, url);
-            }
+                docs.put(url, doc);
+
+                if (process) {
+                    processDocument(doc.document, url);
+                }
 
-            // Not a fatal error.
-            checkDITAVersion(doc);
+                // Not a fatal error.
+                checkDITAVersion(doc);
+            }
+        } catch (DocumentStore.StoreException e) {
+            throw e.getIOException();
         }
 
         return doc;
@@ -147,9 +204,19 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
         if (doc == null) {
             doc = preloadedDocs.get(url);
             if (doc == null) {
-                console.info(Msg.msg("loadingDoc", URLUtil.toLabel(url)));
+                if (console.isShowing(Console.MessageType.INFO)) {
+                    console.info(Msg.msg("loadingDoc", URLUtil.toLabel(url)));
+                }
+                long start = (perfReport == null)? 0 : System.nanoTime();
+
                 Document loaded = LoadDocument.load(url, validate, console);
 
+                if (perfReport != null) {
+                    perfReport.addTopicCost(URLUtil.toLabel(url),
+                                            PerfReport.PARSE_TIME,
+                                            System.nanoTime() - start);
+                }
+
                 doc = createLoadedDocument(url, loaded);
                 // Preload all topics.
                 doc.getTopics(console);
@@ -174,7 +241,7 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
         preloadedDocs.remove(url);
         
         if (process) {
-            process(loaded, url);
+            processDocument(loaded, url);
         }
 
         return doc;
@@ -203,7 +270,7 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
     }
 
     public Iterator<LoadedDocument> iterator() {
-        return docs.values().iterator();
+        return docs.iterator();
     }
 
     // -----------------------------------------------------------------------
@@ -262,6 +329,17 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
         }
     }
 
+    private final void processDocument(Document doc, URL url) {
+        resolvedKeyrefCount = 0;
+
+        process(doc, url);
+
+        if (perfReport != null && keySpaces != null) {
+            perfReport.addTopicCost(URLUtil.toLabel(url), PerfReport.KEYREFS,
+                                    resolvedKeyrefCount);
+        }
+    }
+
     private final void process(Node tree, URL baseURL) {
         Node child = tree.getFirstChild();
         while (child != null) {
@@ -896,6 +974,7 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
 
             // Add or replace conref.
             element.setAttributeNS(null, "conref", resolved);
+            ++resolvedKeyrefCount;
         } else {
             keyrefWarning(element, "conkeyref", attrValue, "conref");
         }
@@ -954,6 +1033,7 @@ import static com.xmlmind.ditac.preprocess.CascadeMeta.CASCADED_ELEMENT_SINGLE;
             keyrefWarning(element, "keyref", attrValue, "href");
             return;
         }
+        ++resolvedKeyrefCount;
 
         String href = processKeyref(kd, id, element);
 
@@ -49,6 +49,14 @@ public final class LoadedTopic {
         return nestedTopics;
     }
 
+    /**
+     * Returns the nested topics if they have already been computed;
+     * <code>null</code> otherwise.
+     */
+    /*package*/ LoadedTopic[] peekNestedTopics() {
+        return nestedTopics;
+    }
+
     public LoadedTopic[] nestedTopics(ConsoleHelper console) {
         ArrayList<LoadedTopic> list = new ArrayList<LoadedTopic>();
 
@@ -97,6 +105,41 @@ public final class LoadedTopic {
         return null;
     }
 
+    /**
+     * Returns the indices which lead from the top-level topics of
+     * the ancestor document down to this topic.
+     *
+     * @see LoadedDocument#getTopic
+     */
+    public int[] getPath() {
+        int depth = 0;
+        for (LoadedTopic topic = this; topic != null; 
+             topic = topic.getParentTopic()) {
+            ++depth;
+        }
+
+        int[] path = new int[depth];
+        LoadedTopic topic = this;
+        for (int i = depth-1; i >= 0; --i) {
+            LoadedTopic[] siblings;
+            if (topic.parent instanceof LoadedTopic) {
+                siblings = ((LoadedTopic) topic.parent).getNestedTopics();
+            } else {
+                siblings = ((LoadedDocument) topic.parent).getTopics();
+            }
+
+            int index = siblings.length-1;
+            while (index > 0 && siblings[index] != topic) {
+                --index;
+            }
+            path[i] = index;
+
+            topic = topic.getParentTopic();
+        }
+
+        return path;
+    }
+
     public String getHref() {
         String location = "???";
         LoadedDocument loadedDoc = getAncestorDocument();
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The default {@link DocumentStore}: all documents are kept in memory.
+ */
+/*package*/ final class MemoryDocumentStore implements DocumentStore {
+    private LinkedHashMap<URL,LoadedDocument> docs = 
+        new LinkedHashMap<URL,LoadedDocument>();
+
+    public void put(URL url, LoadedDocument doc) {
+        docs.put(url, doc);
+    }
+
+    public LoadedDocument get(URL url) {
+        return docs.get(url);
+    }
+
+    public LoadedDocument remove(URL url) {
+        return docs.remove(url);
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    public URL[] getURLs() {
+        URL[] urls = new URL[docs.size()];
+        return docs.keySet().toArray(urls);
+    }
+
+    public Iterator<LoadedDocument> iterator() {
+        return docs.values().iterator();
+    }
+
+    public LoadedDocument.Type getType(URL url) {
+        LoadedDocument doc = docs.get(url);
+        return (doc == null)? null : doc.type;
+    }
+
+    public void pin(URL url) {}
+
+    public void unpin(URL url) {}
+
+    public void dispose() {
+        docs.clear();
+    }
+}
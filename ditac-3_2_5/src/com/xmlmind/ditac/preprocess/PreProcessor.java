@@ -16,8 +16,9 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.HashSet;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Stack;
 import java.util.Comparator;
 import java.util.Arrays;
@@ -36,8 +37,10 @@ import com.xmlmind.ditac.util.NodeLocation;
 import com.xmlmind.ditac.util.DOMUtil;
 import com.xmlmind.ditac.util.DITAUtil;
 import com.xmlmind.ditac.util.SaveDocument;
+import com.xmlmind.ditac.util.NodeWriter;
 import com.xmlmind.ditac.util.SimpleConsole;
 import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.PerfReport;
 
 /**
  * Converts a DITA map file (or a list of topic files, in which case 
@@ -140,6 +143,9 @@ public class PreProcessor implements Constants {
     protected boolean partRestartsChapterNumber;
     protected boolean validate;
     protected boolean dryRun;
+    protected boolean streaming;
+    protected int maxLoadedDocuments;
+    protected PerfReport perfReport;
 
     protected Filters filters;
     protected String rootName;
@@ -454,6 +460,57 @@ public class PreProcessor implements Constants {
         return dryRun;
     }
 
+    /**
+     * If <code>true</code>, the <tt>.ditac</tt> files are written directly
+     * from the topics rather than from a copy of the topics and the topic
+     * documents are discarded as soon as the last <tt>.ditac</tt> file
+     * referencing them has been written. This keeps memory usage
+     * roughly bounded by the size of the largest chunk.
+     * <p>Initial value is <code>false</code>.
+     *
+     * @see #isStreaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Returns <code>true</code> if this preprocessor writes
+     * the <tt>.ditac</tt> files directly from the topics.
+     *
+     * @see #setStreaming
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Specifies the maximum number of topic documents kept in memory
+     * during preprocessing. The least recently used topic documents 
+     * are temporarily saved to disk when this limit is exceeded.
+     * <p>This limit is approximate: a processing step may keep 
+     * in memory a few more documents than this limit, for example, 
+     * the document containing a link and the one containing its target.
+     * The topics are transcluded by batches of at most this number 
+     * of topic documents.
+     * <p>Initial value is 0, which means: no limit.
+     *
+     * @see #getMaxLoadedDocuments
+     */
+    public void setMaxLoadedDocuments(int max) {
+        maxLoadedDocuments = max;
+    }
+
+    /**
+     * Returns the maximum number of topic documents kept in memory
+     * during preprocessing. 0 means: no limit.
+     *
+     * @see #setMaxLoadedDocuments
+     */
+    public int getMaxLoadedDocuments() {
+        return maxLoadedDocuments;
+    }
+
     /**
      * If <code>true</code>, validate all loaded DITA documents against
      * the DTDs specified in their <tt>DOCTYPE</tt>s.
@@ -476,6 +533,63 @@ public class PreProcessor implements Constants {
         return validate;
     }
 
+    /**
+     * Specifies the report in which the time and memory spent in each 
+     * phase of the preprocessing are to be recorded.
+     * <p>Initial value is <code>null</code>: nothing is recorded.
+     *
+     * @see #getPerfReport
+     */
+    public void setPerfReport(PerfReport report) {
+        perfReport = report;
+    }
+
+    /**
+     * Returns the report in which the time and memory spent in each 
+     * phase of the preprocessing are recorded. May return 
+     * <code>null</code>.
+     *
+     * @see #setPerfReport
+     */
+    public PerfReport getPerfReport() {
+        return perfReport;
+    }
+
+    protected PerfReport.Measure beginPhase(String name) {
+        return (perfReport == null)? null : perfReport.begin(name);
+    }
+
+    protected void endPhase(PerfReport.Measure measure) {
+        if (measure != null) {
+            measure.end();
+        }
+    }
+
+    protected void endPhase(PerfReport.Measure measure, URL[] docURLs) {
+        if (measure != null) {
+            long elements = 0;
+            for (URL url : docURLs) {
+                elements += 
+                    PerfReport.countElements(loadedDocs.get(url).document);
+            }
+            measure.end(docURLs.length, elements);
+        }
+    }
+
+    protected void endPhase(PerfReport.Measure measure, 
+                            LoadedDocuments docs) {
+        if (measure != null) {
+            long documents = 0;
+            long elements = 0;
+            Iterator<LoadedDocument> iter = docs.iterator();
+            while (iter.hasNext()) {
+                ++documents;
+                elements += PerfReport.countElements(iter.next().document);
+            }
+            measure.end(documents, elements);
+        }
+    }
+
     protected void saveInfo(String msg) {
         if (!dryRun) {
             console.info(msg);
@@ -535,6 +649,16 @@ public class PreProcessor implements Constants {
     }
 
     protected boolean process1(URL[] inFiles, File outDir, String baseName) 
+        throws IOException {
+        try {
+            return doProcess1(inFiles, outDir, baseName);
+        } catch (DocumentStore.StoreException e) {
+            // A spilled document could not be saved or reloaded.
+            throw e.getIOException();
+        }
+    }
+
+    private boolean doProcess1(URL[] inFiles, File outDir, String baseName) 
         throws IOException {
         // Check the output directory. Determine the rootname and extension of
         // the deliverable ---
@@ -588,9 +712,18 @@ public class PreProcessor implements Constants {
 
         // Preload all input files ---
 
+        PerfReport.Measure measure = beginPhase("load");
+
         mainMap = null;
         loadedDocs = new LoadedDocuments(/*keySpaces*/ null, console);
         loadedDocs.setValidating(validate);
+        loadedDocs.setPerfReport(perfReport);
+        if (maxLoadedDocuments > 0) {
+            // The topic documents are only accessed through loadedDocs
+            // (then loadedDocs2), so they may be spilled.
+            loadedDocs.setDocumentStore(
+                new SpillDocumentStore(loadedDocs, maxLoadedDocuments));
+        }
 
         for (int i = 0; i < inFiles.length; ++i) {
             // May throw an IOException.
@@ -607,6 +740,8 @@ public class PreProcessor implements Constants {
             }
         }
 
+        endPhase(measure);
+
         // Load keys from main map ---
 
         Document mapDoc;
@@ -638,6 +773,8 @@ public class PreProcessor implements Constants {
 
             console.info(Msg.msg("loadingKeys", URLUtil.toLabel(mainMap.url)));
 
+            measure = beginPhase("keys");
+
             KeyLoader keyLoader = new KeyLoader(console);
             // KeyLoader works on a private copy of mapDoc.
             if (!keyLoader.prepareMap(mapDoc, mainMap.url)) {
@@ -656,6 +793,8 @@ public class PreProcessor implements Constants {
                 return false;
             }
 
+            endPhase(measure);
+
             // Simplify main map.
             // This also apply LoadedDocuments' process=true to mapDoc.
 
@@ -676,6 +815,8 @@ public class PreProcessor implements Constants {
 
         // ---
 
+        measure = beginPhase("mapSimplify");
+
         if (!addFrontBackMatter()) {
             return false;
         }
@@ -696,16 +837,27 @@ public class PreProcessor implements Constants {
             return false;
         }
 
+        endPhase(measure);
+
         // ---
 
         // Process all preloaded input files ---
 
+        measure = beginPhase("load");
+
         LoadedDocuments loadedDocs2 = new LoadedDocuments(keySpaces, console);
         loadedDocs2.setValidating(validate);
+        loadedDocs2.setPerfReport(perfReport);
+        if (maxLoadedDocuments > 0) {
+            loadedDocs2.setDocumentStore(
+                new SpillDocumentStore(loadedDocs2, maxLoadedDocuments));
+        }
 
-        Iterator<LoadedDocument> iter = loadedDocs.iterator();
-        while (iter.hasNext()) {
-            LoadedDocument loadedDoc = iter.next();
+        // Removing the documents from loadedDocs (rather than iterating
+        // over them) reloads each spilled document just once.
+        URL[] docURLs = loadedDocs.getDocumentStore().getURLs();
+        for (URL docURL : docURLs) {
+            LoadedDocument loadedDoc = loadedDocs.remove(docURL);
 
             if (loadedDoc.document == mapDoc) {
                 if (!isAutoMap) {
@@ -722,6 +874,7 @@ public class PreProcessor implements Constants {
             }
         }
 
+        loadedDocs.dispose();
         loadedDocs = loadedDocs2;
 
         // Load all topics ---
@@ -730,6 +883,8 @@ public class PreProcessor implements Constants {
             return false;
         }
 
+        endPhase(measure, loadedDocs);
+
         return true;
     }
 
@@ -742,16 +897,46 @@ public class PreProcessor implements Constants {
     }
 
     protected File[] process2(File outDir, File[] tocFile) 
+        throws IOException {
+        File[] preprocessedFiles;
+        try {
+            preprocessedFiles = doProcess2(outDir, tocFile);
+        } catch (DocumentStore.StoreException e) {
+            // A spilled document could not be saved or reloaded.
+            throw e.getIOException();
+        }
+
+        // The flag images of the DITAVAL file are handled while writing
+        // the chunks.
+        PerfReport.Measure measure = 
+            (resourceHandler == null)? null : beginPhase("resources");
+        if (!finishResources()) {
+            preprocessedFiles = null;
+        }
+        endPhase(measure);
+
+        return preprocessedFiles;
+    }
+
+    private File[] doProcess2(File outDir, File[] tocFile) 
         throws IOException {
         console.info(Msg.msg("transcludingTopics"));
 
-        LoadedDocument[] loadedTopicDocs = getAllTopicDocuments();
-        if (!transcludeTopics1(loadedTopicDocs)) {
+        PerfReport.Measure measure = beginPhase("conrefPull");
+
+        // The following passes access the topic documents one at a time
+        // or pin the documents they need to keep while accessing other
+        // documents. Therefore the topic documents may still be spilled.
+        URL[] topicDocURLs = getAllTopicDocumentURLs();
+        if (!transcludeTopics1(topicDocURLs)) {
             return null;
         }
 
-        LoadedTopic[] loadedTopics = getAllTopics();
-        processRelatedLinks(loadedTopics);
+        endPhase(measure, topicDocURLs);
+
+        measure = beginPhase("filter");
+
+        processRelatedLinks(topicDocURLs);
 
         Element mapElement = mainMap.document.getDocumentElement();
         if (!isAutoMap) {
@@ -762,10 +947,27 @@ public class PreProcessor implements Constants {
 
         filterTopics(mapElement);
 
-        if (!transcludeTopics2(loadedTopicDocs)) {
+        endPhase(measure);
+
+        measure = beginPhase("conrefPush");
+
+        if (!transcludeTopics2(topicDocURLs)) {
             return null;
         }
 
+        endPhase(measure, topicDocURLs);
+
+        if (perfReport != null) {
+            for (URL url : topicDocURLs) {
+                Document doc = loadedDocs.get(url).document;
+                perfReport.addTopicCost(URLUtil.toLabel(url),
+                                        PerfReport.ELEMENTS,
+                                        PerfReport.countElements(doc));
+            }
+        }
+
+        measure = beginPhase("chunk");
+
         if (!isAutoMap) {
             wrapTopicrefTitles(mapElement);
 
@@ -781,32 +983,64 @@ public class PreProcessor implements Constants {
             tocFile[0] = getTOCFile(outDir, chunks);
         }
 
+        endPhase(measure);
+
+        measure = beginPhase("links");
+
         if (!processLinks(chunks)) {
             return null;
         }
 
+        endPhase(measure);
+
         // *** From this point, all id attributes are unique and flat. ***
 
         if (resourceHandler != null && 
-            !dryRun &&
-            !processResources(chunks, outDir)) {
-            return null;
+            !dryRun) {
+            measure = beginPhase("resources");
+
+            if (!processResources(chunks, outDir)) {
+                return null;
+            }
+
+            endPhase(measure);
         }
 
+        measure = beginPhase("lists");
+
         sortColspecs(chunks);
 
         numberEquations(chunks);
+        numberFootnotesAndLists(chunks);
+
+        annotateClasses(chunks);
 
         File listsFile = writeLists(chunks, outDir);
         if (listsFile == null) {
             return null;
         }
 
+        endPhase(measure);
+
+        measure = beginPhase("write");
+
         File[] chunkFiles = writeChunks(chunks, outDir);
         if (chunkFiles == null) {
             return null;
         }
 
+        if (measure != null) {
+            measure.end(chunkFiles.length, -1);
+
+            if (!dryRun) {
+                for (File chunkFile : chunkFiles) {
+                    perfReport.addChunkCost(chunkFile.getName(),
+                                            PerfReport.DITAC_BYTES,
+                                            chunkFile.length());
+                }
+            }
+        }
+
         File[] preprocessedFiles = new File[1+chunkFiles.length];
         preprocessedFiles[0] = listsFile;
         System.arraycopy(chunkFiles, 0, preprocessedFiles, 1,
@@ -1441,76 +1675,105 @@ public class PreProcessor implements Constants {
         return docs;
     }
 
-    protected boolean transcludeTopics1(LoadedDocument[] loadedTopicDocs) 
-        throws IOException {
-        console.verbose(Msg.msg("pullingTopicContent"));
+    /**
+     * Same as {@link #getAllTopicDocuments} except that the topic documents
+     * are not loaded, just their URLs are returned.
+     */
+    protected URL[] getAllTopicDocumentURLs() {
+        DocumentStore store = loadedDocs.getDocumentStore();
+        URL[] urls = store.getURLs();
+        int count = 0;
 
-        return (new ConrefIncluder(keySpaces,
-                                   console)).process(loadedTopicDocs);
-    }
+        for (URL url : urls) {
+            switch (store.getType(url)) {
+            case TOPIC:
+            case MULTI_TOPIC:
+                urls[count++] = url;
+                break;
+            }
+        }
 
-    protected boolean transcludeTopics2(LoadedDocument[] loadedTopicDocs) 
-        throws IOException { 
-        console.verbose(Msg.msg("pushingTopicContent"));
+        if (count != urls.length) {
+            urls = ArrayUtil.trimToSize(urls, count);
+        }
 
-        (new ConrefPusher(console)).process(loadedTopicDocs);
-        return true;
+        return urls;
     }
 
-    // ----------------------------------
-    // getAllTopics
-    // ----------------------------------
+    protected boolean transcludeTopics1(URL[] topicDocURLs) 
+        throws IOException {
+        console.verbose(Msg.msg("pullingTopicContent"));
 
-    protected LoadedTopic[] getAllTopics() {
-        ArrayList<LoadedTopic> topicList = new ArrayList<LoadedTopic>();
+        // When the number of loaded documents is limited, the topic documents
+        // are processed in batches. A conref to a topic document which is not
+        // in the current batch is resolved using a working copy of
+        // this document.
 
-        Iterator<LoadedDocument> iter = loadedDocs.iterator();
-        while (iter.hasNext()) {
-            LoadedDocument loadedDoc = iter.next();
+        int batchSize = topicDocURLs.length;
+        if (maxLoadedDocuments > 0 && maxLoadedDocuments < batchSize) {
+            batchSize = maxLoadedDocuments;
+        }
 
-            switch (loadedDoc.type) {
-            case TOPIC:
-            case MULTI_TOPIC:
-                {
-                    LoadedTopic[] loadedTopics = loadedDoc.getTopics();
-                    if (loadedTopics != null) {
-                        for (int i = 0; i < loadedTopics.length; ++i) {
-                            LoadedTopic loadedTopic = loadedTopics[i];
-
-                            topicList.add(loadedTopic);
-                            addNestedTopics(loadedTopic, topicList);
-                        }
-                    }
+        DocumentStore store = loadedDocs.getDocumentStore();
+        boolean done = true;
+
+        for (int start = 0; start < topicDocURLs.length; start += batchSize) {
+            int end = Math.min(start + batchSize, topicDocURLs.length);
+
+            LoadedDocument[] batch = new LoadedDocument[end - start];
+            try {
+                for (int i = start; i < end; ++i) {
+                    store.pin(topicDocURLs[i]);
+                    batch[i - start] = loadedDocs.get(topicDocURLs[i]);
+                }
+
+                ConrefIncluder includer =
+                    new ConrefIncluder(keySpaces, console);
+                includer.setPerfReport(perfReport);
+                includer.setSourceDocuments(loadedDocs);
+                if (!includer.process(batch)) {
+                    done = false;
+                }
+            } finally {
+                for (int i = start; i < end; ++i) {
+                    store.unpin(topicDocURLs[i]);
                 }
-                break;
             }
         }
 
-        LoadedTopic[] topics = new LoadedTopic[topicList.size()];
-        topicList.toArray(topics);
-        return topics;
+        return done;
     }
 
-    protected void addNestedTopics(LoadedTopic loadedTopic, 
-                                   List<LoadedTopic> topicList) {
-        LoadedTopic[] nestedTopics = loadedTopic.getNestedTopics(console);
-        for (int i = 0; i < nestedTopics.length; ++i) {
-            LoadedTopic nestedTopic = nestedTopics[i];
+    protected boolean transcludeTopics2(URL[] topicDocURLs) 
+        throws IOException { 
+        console.verbose(Msg.msg("pushingTopicContent"));
 
-            topicList.add(nestedTopic);
-            addNestedTopics(nestedTopic, topicList);
-        }
+        (new ConrefPusher(console)).process(topicDocURLs, loadedDocs);
+        return true;
     }
 
     // ----------------------------------
     // processRelatedLinks
     // ----------------------------------
 
-    protected void processRelatedLinks(LoadedTopic[] loadedTopics) {
+    protected void processRelatedLinks(URL[] topicDocURLs) {
         console.info(Msg.msg("processingRelatedLinks"));
 
-        for (LoadedTopic loadedTopic : loadedTopics) {
-            CascadeMeta.processTopic(loadedTopic.element);
+        for (URL url : topicDocURLs) {
+            LoadedTopic[] loadedTopics = loadedDocs.get(url).getTopics();
+            if (loadedTopics != null) {
+                for (LoadedTopic loadedTopic : loadedTopics) {
+                    processRelatedLinks(loadedTopic);
+                }
+            }
+        }
+    }
+
+    private void processRelatedLinks(LoadedTopic loadedTopic) {
+        CascadeMeta.processTopic(loadedTopic.element);
+
+        for (LoadedTopic nestedTopic : loadedTopic.getNestedTopics(console)) {
+            processRelatedLinks(nestedTopic);
         }
     }
 
@@ -1558,8 +1821,8 @@ public class PreProcessor implements Constants {
     protected void addRelatedLinks(Element mapElement) {
         console.info(Msg.msg("addingRelatedLinks"));
 
-        (new LinkGenerator()).processMap(mapElement, mainMap.url, 
-                                         loadedDocs);
+        (new LinkGenerator(console)).processMap(mapElement, mainMap.url, 
+                                                loadedDocs);
     }
 
     // ----------------------------------
@@ -1703,22 +1966,15 @@ public class PreProcessor implements Constants {
             new HashMap<URL,ChunkEntry>();
 
         // The same topic may be referenced in several ChunkEntries.
-        IdentityHashMap<Element,Element> processed = 
-            new IdentityHashMap<Element,Element>();
+        HashSet<String> processed = new HashSet<String>();
 
         for (Chunk chunk : chunks) {
             ChunkEntry[] entries = chunk.getEntries();
             for (ChunkEntry entry : entries) {
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
-
-                        URL url = targetURL(entry);
-                        if (url != null) {
-                            targetURLToChunkEntry.put(url, entry);
-                        }
-
-                        processed.put(element, element);
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
+                        targetURLToChunkEntry.put(targetURL(entry), entry);
                     }
                 }
             }
@@ -1727,28 +1983,29 @@ public class PreProcessor implements Constants {
         // Ensure that all preprocessed topics have a unique ID and that 
         // all non-topic element IDs are flat and unique ---
 
-        HashMap<String,Element> idToElement = new HashMap<String,Element>();
+        HashMap<String,IdTarget> idToTarget = new HashMap<String,IdTarget>();
 
         processed.clear();
 
         for (Chunk chunk : chunks) {
             ChunkEntry[] entries = chunk.getEntries();
             for (ChunkEntry entry : entries) {
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
+                        Element element = entry.getElement();
 
                         String topicId =
                             DITAUtil.getNonEmptyAttribute(element, null, "id");
                         assert(topicId != null);
 
-                        topicId = setUniqueId(element, topicId, idToElement);
+                        topicId = setUniqueId(element, topicId, entry,
+                                              idToTarget);
 
-                        if (!processIds(element, topicId, idToElement)) {
+                        if (!processIds(element, topicId, entry, 
+                                        idToTarget)) {
                             return false;
                         }
-
-                        processed.put(element, element);
                     }
                 }
             }
@@ -1760,58 +2017,80 @@ public class PreProcessor implements Constants {
 
         processed.clear();
 
-        IdentityHashMap<Element,Element> glossEntries = 
-            new IdentityHashMap<Element,Element>();
+        HashSet<String> glossEntries = new HashSet<String>();
+        DocumentStore store = loadedDocs.getDocumentStore();
+        idTargetTopic = null;
 
         for (Chunk chunk : chunks) {
             String chunkName = chunk.getRootName();
 
             ChunkEntry[] entries = chunk.getEntries();
             for (ChunkEntry entry : entries) {
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
-
-                        if (!processLinks(element, chunkName, 
-                                          targetURLToChunkEntry, idToElement,
-                                          glossEntries)) {
-                            return false;
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
+                        // Pinned because the targets of the links are 
+                        // found in other documents.
+                        URL docURL = entry.getTopicDocumentURL();
+                        store.pin(docURL);
+                        try {
+                            if (!processLinks(entry.getElement(), chunkName, 
+                                              targetURLToChunkEntry, 
+                                              idToTarget, glossEntries)) {
+                                return false;
+                            }
+                        } finally {
+                            store.unpin(docURL);
                         }
-
-                        processed.put(element, element);
                     }
                 }
             }
         }
 
+        idTargetTopic = null;
+        idTargetElements = null;
         return true;
     }
 
     protected static URL targetURL(ChunkEntry entry) {
-        URL url = null;
-
-        LoadedTopic loadedTopic = entry.loadedTopic;
-        assert(loadedTopic != null);
-
-        LoadedDocument loadedDoc = loadedTopic.getAncestorDocument();
-        if (loadedDoc != null) {
-            url = URLUtil.setFragment(loadedDoc.url, loadedTopic.topicId);
-        }
-
-        return url;
+        return URLUtil.setFragment(entry.getTopicDocumentURL(), 
+                                   entry.getTopicId());
     }
 
     // -----------
     // setUniqueId
     // -----------
 
+    /**
+     * An element having a flat and unique ID. Such element is found
+     * again, when needed, by looking for the ID in the topic of the entry,
+     * because the document containing this topic may have been spilled
+     * to disk in the meantime.
+     */
+    protected static final class IdTarget {
+        public final ChunkEntry entry;
+        public final NodeLocation location;
+
+        public IdTarget(ChunkEntry entry, NodeLocation location) {
+            this.entry = entry;
+            this.location = location;
+        }
+    }
+
+    /**
+     * The user data key used to mark the elements registered as 
+     * {@link IdTarget}s. Copies of these elements (for example, the text
+     * added to an xref) are not marked.
+     */
+    /*package*/ static final String ID_TARGET_KEY = "DITAC_ID_TARGET";
+
     protected static String setUniqueId(Element element, String id,
-                                        Map<String,Element> idToElement) {
+                                        ChunkEntry entry,
+                                        Map<String,IdTarget> idToTarget) {
         String id2 = id;
 
         int counter = 2;
-        Element e;
-        while ((e = idToElement.get(id2)) != null && e != element) {
+        while (idToTarget.containsKey(id2)) {
             if (counter >= 100) {
                 // Too much conflicts. Use a more radical approach
                 // (which gives rather long and unreadable IDs).
@@ -1829,16 +2108,27 @@ public class PreProcessor implements Constants {
 
         element.setAttributeNS(null, "id", id2);
 
-        idToElement.put(id2, element);
+        addIdTarget(id2, element, entry, idToTarget);
         return id2;
     }
 
+    private static void addIdTarget(String id, Element element, 
+                                    ChunkEntry entry,
+                                    Map<String,IdTarget> idToTarget) {
+        element.setUserData(ID_TARGET_KEY, Boolean.TRUE, null);
+
+        NodeLocation location = (NodeLocation) 
+            element.getUserData(NodeLocation.USER_DATA_KEY);
+        idToTarget.put(id, new IdTarget(entry, location));
+    }
+
     // ----------
     // processIds
     // ----------
 
     protected boolean processIds(Element element, String topicId, 
-                                 Map<String,Element> idToElement) {
+                                 ChunkEntry entry,
+                                 Map<String,IdTarget> idToTarget) {
         Node child = element.getFirstChild();
         while (child != null) {
             if (child.getNodeType() == Node.ELEMENT_NODE &&
@@ -1857,7 +2147,7 @@ public class PreProcessor implements Constants {
                 if (id != null) {
                     if (DITAUtil.hasClass(childElement, "topic/resourceid")) {
                         // Trust the author. Keep this id unchanged. 
-                        idToElement.put(id, childElement);
+                        addIdTarget(id, childElement, entry, idToTarget);
                     } else {
                         String flatId = topicId + ID_SEPARATOR + id;
 
@@ -1865,28 +2155,25 @@ public class PreProcessor implements Constants {
                         // The "id" attribute of non-topic elements is not
                         // an actual ID.
 
-                        Element anchor = idToElement.get(flatId);
+                        IdTarget anchor = idToTarget.get(flatId);
                         if (anchor != null) {
                             // flatId starts with the unique ID of the
                             // topic, hence anchor and childElement are
                             // found in the same topic.
 
                             String where = "???";
-                            NodeLocation location = 
-                                (NodeLocation) anchor.getUserData(
-                                    NodeLocation.USER_DATA_KEY);
-                            if (location != null) {
-                                where = location.toString();
+                            if (anchor.location != null) {
+                                where = anchor.location.toString();
                             }
                             console.warning(childElement,
                                             Msg.msg("duplicateId", id, where));
                         }
 
-                        setUniqueId(childElement, flatId, idToElement);
+                        setUniqueId(childElement, flatId, entry, idToTarget);
                     }
                 }
 
-                if (!processIds(childElement, topicId, idToElement)) {
+                if (!processIds(childElement, topicId, entry, idToTarget)) {
                     return false;
                 }
             }
@@ -1919,8 +2206,8 @@ public class PreProcessor implements Constants {
 
     protected boolean processLinks(Element element, String chunkName,
                                    Map<URL,ChunkEntry> targetURLToChunkEntry,
-                                   Map<String,Element> idToElement,
-                                   Map<Element,Element> glossEntries) {
+                                   Map<String,IdTarget> idToTarget,
+                                   Set<String> glossEntries) {
         Node child = element.getFirstChild();
         while (child != null) {
             if (child.getNodeType() == Node.ELEMENT_NODE) {
@@ -1949,7 +2236,7 @@ public class PreProcessor implements Constants {
                     if (chunkRef != null) {
                         childElement.setAttributeNS(null, "href", chunkRef);
                         
-                        Element target = findTarget(chunkRef, idToElement);
+                        Element target = findTarget(chunkRef, idToTarget);
                         if (target == null) {
                             // toDisplayForm preserves the fragment.
                             console.warning(childElement,
@@ -1993,7 +2280,7 @@ public class PreProcessor implements Constants {
 
                 if (deeper && 
                     !processLinks(childElement, chunkName, 
-                                  targetURLToChunkEntry, idToElement,
+                                  targetURLToChunkEntry, idToTarget,
                                   glossEntries)) {
                     return false;
                 }
@@ -2099,7 +2386,7 @@ public class PreProcessor implements Constants {
                     // Append the corresponding flat and unique ID.
 
                     String topicId = DITAUtil.getNonEmptyAttribute(
-                        targetChunkEntry.loadedTopic.element, null, "id");
+                        targetChunkEntry.getElement(), null, "id");
                     assert(topicId != null);
 
                     buffer.append('#');
@@ -2142,8 +2429,8 @@ public class PreProcessor implements Constants {
         return buffer.toString();
     }
 
-    protected static Element findTarget(String chunkRef, 
-                                        Map<String,Element> idToElement) {
+    protected Element findTarget(String chunkRef, 
+                                 Map<String,IdTarget> idToTarget) {
         int pos = chunkRef.lastIndexOf('#');
         if (pos < 0) {
             // Should not happen.
@@ -2152,7 +2439,44 @@ public class PreProcessor implements Constants {
 
         // Something like "foo" or "foo__bar".
         String targetId = chunkRef.substring(pos+1);
-        return idToElement.get(targetId);
+        IdTarget idTarget = idToTarget.get(targetId);
+        if (idTarget == null) {
+            return null;
+        }
+
+        Element topic = idTarget.entry.getElement();
+        if (topic != idTargetTopic) {
+            // Many links point to the same topic, typically the topic
+            // containing them.
+            idTargetTopic = topic;
+            idTargetElements = new HashMap<String,Element>();
+            collectIdTargets(topic, idTargetElements);
+        }
+        return idTargetElements.get(targetId);
+    }
+
+    private Element idTargetTopic;
+    private HashMap<String,Element> idTargetElements;
+
+    private static void collectIdTargets(Element element,
+                                         Map<String,Element> idTargets) {
+        if (element.getUserData(ID_TARGET_KEY) != null) {
+            idTargets.put(element.getAttributeNS(null, "id"), element);
+        }
+
+        Node child = element.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element childElement = (Element) child;
+
+                // The IDs of a nested topic are registered with this topic.
+                if (!DITAUtil.hasClass(childElement, "topic/topic")) {
+                    collectIdTargets(childElement, idTargets);
+                }
+            }
+
+            child = child.getNextSibling();
+        }
     }
 
     protected static boolean addLinkText(Element link, Element target) {
@@ -2235,13 +2559,12 @@ public class PreProcessor implements Constants {
     }
 
     protected boolean addAbbrev(Element abbrev, Element target,
-                                Map<Element,Element> glossEntries) {
+                                Set<String> glossEntries) {
         boolean done = false;
 
-        boolean useLongForm = !glossEntries.containsKey(target); // First occur.
-        if (useLongForm) {
-            glossEntries.put(target, target);
-        }
+        // First occurrence? Target has a flat and unique ID.
+        boolean useLongForm = 
+            glossEntries.add(target.getAttributeNS(null, "id"));
 
         Element longForm = 
             DITAUtil.findDescendantByClass(target,
@@ -2395,6 +2718,29 @@ public class PreProcessor implements Constants {
     protected boolean processResources(Chunk[] chunks, File outDir) {
         console.info(Msg.msg("processingResources"));
 
+        boolean done = doProcessResources(chunks, outDir);
+
+        if (!finishResources()) {
+            done = false;
+        }
+
+        return done;
+    }
+
+    private boolean finishResources() {
+        if (resourceHandler instanceof AsyncResourceHandler && !dryRun) {
+            try {
+                ((AsyncResourceHandler) resourceHandler).finish(console);
+            } catch (Throwable t) {
+                console.error(Msg.msg("cannotFinishProcessingResources",
+                                      ThrowableUtil.reason(t)));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean doProcessResources(Chunk[] chunks, File outDir) {
         Element map = mainMap.document.getDocumentElement();
 
         // bookmap/booktitle (which specializes topic/title) may contain
@@ -2413,21 +2759,17 @@ public class PreProcessor implements Constants {
         // ---
 
         // The same topic may be referenced in several ChunkEntries.
-        IdentityHashMap<Element, Element> processed = 
-            new IdentityHashMap<Element, Element>();
+        HashSet<String> processed = new HashSet<String>();
 
         for (Chunk chunk : chunks) {
             ChunkEntry[] entries = chunk.getEntries();
             for (ChunkEntry entry : entries) {
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
-
-                        if (!processResources(element, outDir)) {
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
+                        if (!processResources(entry.getElement(), outDir)) {
                             return false;
                         }
-
-                        processed.put(element, element);
                     }
                 }
             }
@@ -2761,8 +3103,7 @@ public class PreProcessor implements Constants {
             new FormalElementCounter("equation");
 
         // The same topic may be referenced in several ChunkEntries.
-        IdentityHashMap<Element,Element> processed = 
-            new IdentityHashMap<Element,Element>();
+        HashSet<String> processed = new HashSet<String>();
 
         for (int i = 0; i < chunks.length; ++i) {
             Chunk chunk = chunks[i];
@@ -2771,15 +3112,14 @@ public class PreProcessor implements Constants {
             for (int j = 0; j < entries.length; ++j) {
                 ChunkEntry entry = entries[j];
 
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
                         equationCounter.traversing(entry);
 
+                        Element element = entry.getElement();
                         Document doc = element.getOwnerDocument();
                         numberEquations(element, doc, equationCounter);
-
-                        processed.put(element, element);
                     }
                 }
             }
@@ -2825,6 +3165,291 @@ public class PreProcessor implements Constants {
         }
     }
 
+    // ----------------------------------
+    // numberFootnotesAndLists
+    // ----------------------------------
+
+    /**
+     * Adds a <tt>ditac:fnNumber</tt> attribute to all <tt>fn</tt>s and
+     * a <tt>ditac:olStart</tt> attribute to all <tt>ol</tt>s having
+     * <tt>outputclass="continue"</tt>.
+     * <p>Footnotes are numbered per chunk and a continued list
+     * continues the last list preceding it in its chunk, exactly like
+     * the XSLT stylesheets used to do by navigating the whole
+     * <tt>.ditac</tt> file, but this is done here once for all
+     * in a single pass.
+     * <p>An element found in several chunks is given no attribute
+     * if its ordinal differs from a chunk to the other. The stylesheets
+     * then fall back to computing it.
+     */
+    protected void numberFootnotesAndLists(Chunk[] chunks) {
+        console.verbose(Msg.msg("numberingFootnotesAndLists"));
+
+        // Value is null if the element cannot be given a single ordinal.
+        // Key is the topic key of the element followed by the rank of
+        // the element among the numbered elements of its topic.
+        HashMap<String,String> numbered = new HashMap<String,String>();
+
+        for (int i = 0; i < chunks.length; ++i) {
+            Chunk chunk = chunks[i];
+            OrdinalCounter counter = new OrdinalCounter();
+
+            ChunkEntry[] entries = chunk.getEntries();
+            for (int j = 0; j < entries.length; ++j) {
+                String topicKey = entries[j].getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    counter.topicKey = topicKey;
+                    counter.numberedCount = 0;
+
+                    numberFootnotesAndLists(entries[j].getElement(), counter,
+                                            numbered);
+                }
+            }
+        }
+    }
+
+    protected static final class OrdinalCounter {
+        public int fnCount = 0;
+        public int olCount = 0;
+
+        // The last ol (in document order) which has been fully traversed.
+        public int lastOlOrder = 0;
+        // -1 means: start of next continued list is unknown.
+        public int lastOlNext = 1;
+
+        // Used to identify the numbered elements of the topic being
+        // traversed.
+        public String topicKey;
+        public int numberedCount;
+    }
+
+    protected static void numberFootnotesAndLists(
+                                    Element element, OrdinalCounter counter,
+                                    Map<String,String> numbered) {
+        Node child = element.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element childElement = (Element) child;
+
+                if (DITAUtil.hasClass(childElement, "topic/topic")) {
+                    // Do not process nested topics.
+                    return;
+                }
+
+                if (DITAUtil.hasClass(childElement, "topic/fn")) {
+                    setOrdinal(childElement, FN_NUMBER_NAME, FN_NUMBER_QNAME,
+                               ++counter.fnCount, counter, numbered);
+
+                    numberFootnotesAndLists(childElement, counter, numbered);
+                } else if (DITAUtil.hasClass(childElement, "topic/ol")) {
+                    int order = ++counter.olCount;
+
+                    String outputclass = 
+                        DITAUtil.getNonEmptyAttribute(childElement,
+                                                      null, "outputclass");
+                    int start;
+                    if (outputclass != null &&
+                        outputclass.indexOf("start(") >= 0) {
+                        start = parseOlStart(outputclass);
+                    } else if (outputclass != null &&
+                               outputclass.indexOf("continue") >= 0) {
+                        start = counter.lastOlNext;
+                        setOrdinal(childElement, OL_START_NAME, OL_START_QNAME,
+                                   start, counter, numbered);
+                    } else {
+                        start = 1;
+                    }
+
+                    numberFootnotesAndLists(childElement, counter, numbered);
+
+                    // A list nested in this list precedes the following
+                    // lists in document order.
+                    if (order > counter.lastOlOrder) {
+                        counter.lastOlOrder = order;
+                        counter.lastOlNext = (start < 0)? -1 : 
+                            start + countListItems(childElement);
+                    }
+                } else {
+                    numberFootnotesAndLists(childElement, counter, numbered);
+                }
+            }
+            
+            child = child.getNextSibling();
+        }
+    }
+
+    private static void setOrdinal(Element element,
+                                   String localName, String qName, int value,
+                                   OrdinalCounter counter,
+                                   Map<String,String> numbered) {
+        String ordinal = (value < 0)? null : Integer.toString(value);
+
+        // A topic document may have been spilled to disk and reloaded
+        // since the previous traversal of its topic, so the element itself
+        // cannot be used as a key.
+        String key = counter.topicKey + "/" + (++counter.numberedCount);
+
+        if (numbered.containsKey(key)) {
+            String previous = numbered.get(key);
+            if (previous == null || !previous.equals(ordinal)) {
+                // Found in several chunks with different ordinals.
+                numbered.put(key, null);
+                element.removeAttributeNS(DITAC_NS_URI, localName);
+            }
+            return;
+        }
+
+        numbered.put(key, ordinal);
+        if (ordinal != null) {
+            element.setAttributeNS(DITAC_NS_URI, qName, ordinal);
+        }
+    }
+
+    /**
+     * Same as <tt>u:parseOlStart</tt> in <tt>common/commonUtil.xsl</tt>
+     * except that -1 is returned when the start number cannot be
+     * reliably parsed.
+     */
+    private static int parseOlStart(String outputclass) {
+        int pos = outputclass.indexOf("start(") + 6;
+        int end = outputclass.indexOf(')', pos);
+        if (end < 0) {
+            return 1;
+        }
+
+        String spec = outputclass.substring(pos, end).trim();
+        if (spec.length() == 0) {
+            return 1;
+        }
+
+        boolean hasDigits = false;
+        boolean onlyDigits = true;
+        for (int i = 0; i < spec.length(); ++i) {
+            char c = spec.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+            } else {
+                onlyDigits = false;
+            }
+        }
+
+        if (onlyDigits) {
+            try {
+                return Integer.parseInt(spec);
+            } catch (NumberFormatException ignored) {
+                return -1;
+            }
+        } else {
+            // Something like "-2" or "1.5": let the stylesheets decide.
+            return hasDigits? -1 : 1;
+        }
+    }
+
+    private static int countListItems(Element list) {
+        int count = 0;
+
+        Node child = list.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element childElement = (Element) child;
+
+                if (DITAUtil.hasClass(childElement, "topic/li")) {
+                    ++count;
+                } else if ("flags".equals(childElement.getLocalName()) &&
+                           DITAC_NS_URI.equals(
+                               childElement.getNamespaceURI())) {
+                    count += 
+                        DITAUtil.findChildrenByClass(childElement, 
+                                                     "topic/li").length;
+                }
+            }
+
+            child = child.getNextSibling();
+        }
+
+        return count;
+    }
+
+    // ----------------------------------
+    // annotateClasses
+    // ----------------------------------
+
+    /**
+     * Adds a <tt>ditac:cls</tt> attribute to all the DITA elements
+     * contained in the topics of specified chunks. The value of this
+     * attribute is the most specific token of the <tt>class</tt> attribute
+     * (e.g. <tt>"reference/property"</tt> for
+     * <tt>class="- topic/strow reference/property "</tt>).
+     * <p>This allows the XSLT stylesheets to dispatch the most frequently
+     * found elements using templates which are indexed by element name
+     * rather than by testing all the <tt>contains(@class, ...)</tt>
+     * patterns in turn.
+     */
+    protected void annotateClasses(Chunk[] chunks) {
+        console.verbose(Msg.msg("annotatingClasses"));
+
+        // The same topic may be referenced in several ChunkEntries.
+        HashSet<String> processed = new HashSet<String>();
+
+        for (int i = 0; i < chunks.length; ++i) {
+            ChunkEntry[] entries = chunks[i].getEntries();
+            for (int j = 0; j < entries.length; ++j) {
+                String topicKey = entries[j].getTopicKey();
+                if (topicKey != null && // That is, a topic.
+                    processed.add(topicKey)) {
+                    Element element = entries[j].getElement();
+                    annotateClass(element);
+                    annotateClasses(element);
+                }
+            }
+        }
+    }
+
+    protected static void annotateClasses(Element element) {
+        Node child = element.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element childElement = (Element) child;
+
+                if (DITAUtil.hasClass(childElement, "topic/topic")) {
+                    // Do not process nested topics.
+                    return;
+                }
+
+                annotateClass(childElement);
+                annotateClasses(childElement);
+            }
+            
+            child = child.getNextSibling();
+        }
+    }
+
+    private static void annotateClass(Element element) {
+        String cls = element.getAttributeNS(null, "class");
+
+        // Only DITA class attributes start with "- " or "+ ".
+        int length = cls.length();
+        if (length < 3 || 
+            (cls.charAt(0) != '-' && cls.charAt(0) != '+') ||
+            !Character.isWhitespace(cls.charAt(1))) {
+            return;
+        }
+
+        int end = length;
+        while (end > 2 && Character.isWhitespace(cls.charAt(end-1))) {
+            --end;
+        }
+        int start = end;
+        while (start > 2 && !Character.isWhitespace(cls.charAt(start-1))) {
+            --start;
+        }
+
+        if (start < end && cls.indexOf('/', start) > start) {
+            element.setAttributeNS(DITAC_NS_URI, CLS_QNAME, 
+                                   cls.substring(start, end));
+        }
+    }
+
     // ----------------------------------
     // writeLists
     // ----------------------------------
@@ -2854,7 +3479,7 @@ public class PreProcessor implements Constants {
             chunks[0].prependEntry(
                 new ChunkEntry(chunks[0], ChunkEntry.Type.TITLE_PAGE, 
                                StringUtil.EMPTY_LIST, null, null, TOCType.NONE, 
-                               null));
+                               null, null));
         }
 
         addChunks(chunks, doc, chunkList);
@@ -2927,8 +3552,7 @@ public class PreProcessor implements Constants {
         root.appendChild(indexList);
 
         // The same topic may be referenced in several ChunkEntries.
-        IdentityHashMap<Element,Element> processed = 
-            new IdentityHashMap<Element,Element>();
+        HashSet<String> processed = new HashSet<String>();
 
         for (int i = 0; i < chunks.length; ++i) {
             Chunk chunk = chunks[i];
@@ -2939,9 +3563,11 @@ public class PreProcessor implements Constants {
             for (int j = 0; j < entries.length; ++j) {
                 ChunkEntry entry = entries[j];
 
-                Element element = entry.getElement();
-                if (element != null) { // That is, a topic.
-                    if (!processed.containsKey(element)) {
+                String topicKey = entry.getTopicKey();
+                if (topicKey != null) { // That is, a topic.
+                    if (processed.add(topicKey)) {
+                        Element element = entry.getElement();
+
                         tableCounter.traversing(entry);
                         figureCounter.traversing(entry);
                         exampleCounter.traversing(entry);
@@ -2963,9 +3589,7 @@ public class PreProcessor implements Constants {
                                  figureCounter, figureList,
                                  exampleCounter, exampleList,
                                  equationCounter, equationList,
-                                 indexTerms2);
-
-                        processed.put(element, element);
+                                 indexTerms2, entry);
                     }
                 }
             }
@@ -3266,7 +3890,8 @@ public class PreProcessor implements Constants {
                                    Element exampleList,
                                    FormalElementCounter equationCounter, 
                                    Element equationList,
-                                   IndexTerms indexTerms) {
+                                   IndexTerms indexTerms,
+                                   ChunkEntry entry) {
         Node child = element.getFirstChild();
         while (child != null) {
             if (child.getNodeType() == Node.ELEMENT_NODE) {
@@ -3341,10 +3966,11 @@ public class PreProcessor implements Constants {
                              figureCounter, figureList,
                              exampleCounter, exampleList,
                              equationCounter, equationList,
-                             indexTerms);
+                             indexTerms, entry);
                 } else if (DITAUtil.hasClass(childElement,"topic/indexterm")) {
                     if (indexTerms != null) {
-                        indexTerms.collect(childElement, chunkBaseName);
+                        indexTerms.collect(childElement, chunkBaseName,
+                                           entry);
                     }
                 } else {
                     addLists(childElement, chunkBaseName, doc, 
@@ -3352,7 +3978,7 @@ public class PreProcessor implements Constants {
                              figureCounter, figureList,
                              exampleCounter, exampleList,
                              equationCounter, equationList,
-                             indexTerms);
+                             indexTerms, entry);
                 }
             }
             
@@ -3377,6 +4003,10 @@ public class PreProcessor implements Constants {
 
     protected File[] writeChunks(Chunk[] chunks, File outDir) 
         throws IOException {
+        if (streaming) {
+            return streamChunks(chunks, outDir);
+        }
+
         String language = getDocLang();
 
         int chunkCount = chunks.length;
@@ -3387,7 +4017,9 @@ public class PreProcessor implements Constants {
             Chunk chunk = chunks[i];
 
             File outFile = new File(outDir, chunk.getRootName() + ".ditac");
-            saveInfo(Msg.msg("writingChunk", outFile));
+            if (console.isShowing(Console.MessageType.INFO)) {
+                saveInfo(Msg.msg("writingChunk", outFile));
+            }
 
             Document doc = DOMUtil.newDocument();
 
@@ -3403,58 +4035,31 @@ public class PreProcessor implements Constants {
             for (int j = 0; j < entries.length; ++j) {
                 ChunkEntry entry = entries[j];
 
-                Element child = null;
-                String qName = null;
+                Element child;
 
-                switch (entry.type) {
-                case TITLE_PAGE:
-                    qName = "ditac:titlePage";
-                    break;
-                case TOC:
-                    qName = "ditac:toc";
-                    break;
-                case FIGURE_LIST:
-                    qName = "ditac:figureList";
-                    break;
-                case TABLE_LIST:
-                    qName = "ditac:tableList";
-                    break;
-                case EXAMPLE_LIST:
-                    qName = "ditac:exampleList";
-                    break;
-                case EQUATION_LIST:
-                    qName = "ditac:equationList";
-                    break;
-                case INDEX_LIST:
-                    qName = "ditac:indexList";
-                    break;
-                case TOPIC:
-                    {
-                        Element element = entry.getElement();
-
-                        Filter.Flags flags = (Filter.Flags)
-                            element.getUserData(Filters.FLAGS_KEY);
-                        if (flags != null) {
-                            element.setUserData(Filters.FLAGS_KEY, null, null);
-                        }
+                if (entry.type == ChunkEntry.Type.TOPIC) {
+                    Element element = entry.getElement();
 
-                        child = (Element) doc.importNode(element,/*deep*/ true);
-                        if (hasNestedTopics(element)) {
-                            removeNestedTopics(child);
-                        }
+                    Filter.Flags flags = (Filter.Flags)
+                        element.getUserData(Filters.FLAGS_KEY);
+                    if (flags != null) {
+                        element.setUserData(Filters.FLAGS_KEY, null, null);
+                    }
 
-                        if (flags != null) {
-                            // Wrap the topic into a ditac:flags element.
-                            Element wrapper = 
-                                filters.createFlagsElement(flags, doc);
-                            wrapper.appendChild(child);
-                            child = wrapper;
-                        }
+                    child = (Element) doc.importNode(element, /*deep*/ true);
+                    if (hasNestedTopics(element)) {
+                        removeNestedTopics(child);
                     }
-                    break;
-                }
 
-                if (child == null) {
+                    if (flags != null) {
+                        // Wrap the topic into a ditac:flags element.
+                        Element wrapper = 
+                            filters.createFlagsElement(flags, doc);
+                        wrapper.appendChild(child);
+                        child = wrapper;
+                    }
+                } else {
+                    String qName = getChunkEntryQName(entry);
                     assert(qName != null);
                     child = doc.createElementNS(DITAC_NS_URI, qName);
                 }
@@ -3469,6 +4074,168 @@ public class PreProcessor implements Constants {
         return outFiles;
     }
 
+    /**
+     * Variant of {@link #writeChunks} used in streaming mode.
+     * <p>Topics are serialized directly from the loaded documents.
+     * Once written, a chunk is removed from <tt>chunks</tt> and
+     * the topic documents which are not referenced by the following chunks
+     * are removed from <tt>loadedDocs</tt>. The topic documents which are
+     * not referenced by any chunk are removed before writing the first
+     * chunk.
+     */
+    protected File[] streamChunks(Chunk[] chunks, File outDir) 
+        throws IOException {
+        String language = getDocLang();
+
+        int chunkCount = chunks.length;
+        File[] outFiles = new File[chunkCount];
+        int outFileCount = 0;
+
+        // Index of the last chunk referencing a topic document.
+        HashMap<URL,Integer> lastUse = new HashMap<URL,Integer>();
+        for (int i = 0; i < chunkCount; ++i) {
+            for (ChunkEntry entry : chunks[i].getEntries()) {
+                URL url = entry.getTopicDocumentURL();
+                if (url != null && !url.equals(mainMap.url)) {
+                    lastUse.put(url, i);
+                }
+            }
+        }
+
+        // The topic documents to be released after writing each chunk.
+        int[] releaseCounts = new int[chunkCount];
+        for (Integer i : lastUse.values()) {
+            ++releaseCounts[i.intValue()];
+        }
+        URL[][] releases = new URL[chunkCount][];
+        for (int i = 0; i < chunkCount; ++i) {
+            releases[i] = new URL[releaseCounts[i]];
+            releaseCounts[i] = 0;
+        }
+        for (Map.Entry<URL,Integer> e : lastUse.entrySet()) {
+            int i = e.getValue().intValue();
+            releases[i][releaseCounts[i]++] = e.getKey();
+        }
+
+        // The topic documents which are not referenced by any chunk
+        // (e.g. the sources of conrefs) are not needed to write the chunks.
+        for (URL url : getAllTopicDocumentURLs()) {
+            if (!lastUse.containsKey(url)) {
+                loadedDocs.remove(url);
+            }
+        }
+        lastUse = null;
+
+        // Used to create ditac:chunk, ditac:toc, etc.
+        Document doc = DOMUtil.newDocument();
+
+        for (int i = 0; i < chunkCount; ++i) {
+            Chunk chunk = chunks[i];
+
+            File outFile = new File(outDir, chunk.getRootName() + ".ditac");
+            if (console.isShowing(Console.MessageType.INFO)) {
+                saveInfo(Msg.msg("writingChunk", outFile));
+            }
+
+            NodeWriter out = dryRun? null : new NodeWriter(outFile);
+            try {
+                Element root = doc.createElementNS(DITAC_NS_URI, 
+                                                   "ditac:chunk");
+                if (language != null) {
+                    DOMUtil.setXMLLang(root, language);
+                }
+                if (out != null) {
+                    out.startElement(root);
+                }
+
+                for (ChunkEntry entry : chunk.getEntries()) {
+                    if (entry.type != ChunkEntry.Type.TOPIC) {
+                        if (out != null) {
+                            out.writeNode(doc.createElementNS(
+                                DITAC_NS_URI, getChunkEntryQName(entry)));
+                        }
+                        continue;
+                    }
+
+                    Element element = entry.getElement();
+
+                    Filter.Flags flags = (Filter.Flags)
+                        element.getUserData(Filters.FLAGS_KEY);
+                    if (flags != null) {
+                        element.setUserData(Filters.FLAGS_KEY, null, null);
+                    }
+
+                    if (out == null) {
+                        continue;
+                    }
+
+                    if (flags != null) {
+                        out.startElement(filters.createFlagsElement(flags, 
+                                                                    doc));
+                    }
+
+                    out.startElement(element);
+                    Node child = element.getFirstChild();
+                    while (child != null) {
+                        if (child.getNodeType() != Node.ELEMENT_NODE ||
+                            !DITAUtil.hasClass((Element) child, 
+                                               "topic/topic")) {
+                            out.writeNode(child);
+                        }
+                        child = child.getNextSibling();
+                    }
+                    out.endElement();
+
+                    if (flags != null) {
+                        out.endElement();
+                    }
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+            }
+            outFiles[outFileCount++] = outFile;
+
+            // Release what is no longer needed ---
+
+            chunks[i] = null;
+
+            for (URL url : releases[i]) {
+                loadedDocs.remove(url);
+            }
+            releases[i] = null;
+        }
+
+        return outFiles;
+    }
+
+    /**
+     * Returns the qualified name of the <tt>ditac:*</tt> element
+     * corresponding to specified entry; <code>null</code> for a topic
+     * entry. Used by both {@link #writeChunks} and {@link #streamChunks}.
+     */
+    protected static String getChunkEntryQName(ChunkEntry entry) {
+        switch (entry.type) {
+        case TITLE_PAGE:
+            return "ditac:titlePage";
+        case TOC:
+            return "ditac:toc";
+        case FIGURE_LIST:
+            return "ditac:figureList";
+        case TABLE_LIST:
+            return "ditac:tableList";
+        case EXAMPLE_LIST:
+            return "ditac:exampleList";
+        case EQUATION_LIST:
+            return "ditac:equationList";
+        case INDEX_LIST:
+            return "ditac:indexList";
+        default:
+            return null;
+        }
+    }
+
     protected static boolean hasNestedTopics(Element element) {
         Node child = element.getFirstChild();
         while (child != null) {
@@ -0,0 +1,840 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.preprocess;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Element;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Document;
+import com.xmlmind.util.ThrowableUtil;
+import com.xmlmind.util.URLUtil;
+import com.xmlmind.ditac.util.ConsoleHelper;
+import com.xmlmind.ditac.util.NodeLocation;
+import com.xmlmind.ditac.util.DOMUtil;
+
+/**
+ * A {@link DocumentStore} which keeps in memory at most a given number of
+ * topic documents. The least recently used topic documents are spilled
+ * to a temporary file and transparently reloaded when accessed again.
+ * <p>Maps and DITAVAL documents are never spilled. Neither is
+ * the document most recently added to this store, because
+ * {@link LoadedDocuments} processes a document right after adding it.
+ * <p>A reloaded document is a copy of the spilled one. Therefore
+ * the callers must not keep references to the {@link LoadedDocument}s,
+ * {@link LoadedTopic}s or DOM nodes they have obtained from the store,
+ * unless they {@link #pin} the corresponding document for as long as
+ * they need these references.
+ * <p>Spilling a document preserves its DOCTYPE, the ID-ness of
+ * its attributes, the state of its {@link LoadedTopic}s and the user data
+ * which is attached to its elements by the preprocessing phases:
+ * {@link NodeLocation}s, {@link Filter.Flags} and ID target marks.
+ * <p>The spill file is not a log: a document spilled again is written
+ * over its previous record whenever it fits there and the records
+ * of the removed documents are reused.
+ */
+/*package*/ final class SpillDocumentStore implements DocumentStore {
+    private final LoadedDocuments owner;
+    private final int capacity;
+
+    /**
+     * All entries, in the order they were added.
+     */
+    private LinkedHashMap<URL,Entry> entries;
+    /**
+     * Entries of the topic documents currently in memory,
+     * least recently used first.
+     */
+    private LinkedHashMap<URL,Entry> hotEntries;
+    private URL lastAdded;
+
+    private File spillFile;
+    private RandomAccessFile spill;
+    private long spillSize;
+    private MappedByteBuffer mapped;
+    /**
+     * Records which are not used by any entry.
+     */
+    private ArrayList<Record> freeRecords;
+
+    private static final class Record {
+        public final long offset;
+        public final int capacity;
+
+        public Record(long offset, int capacity) {
+            this.offset = offset;
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Entry {
+        public LoadedDocument loadedDoc;
+
+        /**
+         * Kept after the document is reloaded, so that spilling it again
+         * overwrites the same record.
+         */
+        public Record record;
+        public int length;
+        public URL originalURL;
+        public boolean synthetic;
+
+        public LoadedDocument.Type type;
+        public int pinCount;
+    }
+
+    // -----------------------------------------------------------------------
+
+    public SpillDocumentStore(LoadedDocuments owner, int capacity) {
+        this.owner = owner;
+        this.capacity = Math.max(1, capacity);
+
+        entries = new LinkedHashMap<URL,Entry>();
+        hotEntries = new LinkedHashMap<URL,Entry>(16, 0.75f,
+                                                  /*accessOrder*/ true);
+        freeRecords = new ArrayList<Record>();
+    }
+
+    public void put(URL url, LoadedDocument doc) {
+        Entry entry = new Entry();
+        entry.loadedDoc = doc;
+        entry.type = doc.type;
+
+        Entry old = entries.put(url, entry);
+        if (old != null) {
+            freeRecord(old);
+            entry.pinCount = old.pinCount;
+        }
+        hotEntries.remove(url);
+
+        lastAdded = url;
+        makeHot(url, entry);
+    }
+
+    public LoadedDocument get(URL url) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.loadedDoc == null) {
+            entry.loadedDoc = reload(url, entry);
+            makeHot(url, entry);
+        } else {
+            // Mark it as recently used.
+            hotEntries.get(url);
+        }
+
+        return entry.loadedDoc;
+    }
+
+    public LoadedDocument remove(URL url) {
+        Entry entry = entries.remove(url);
+        if (entry == null) {
+            return null;
+        }
+
+        hotEntries.remove(url);
+        if (url.equals(lastAdded)) {
+            lastAdded = null;
+        }
+
+        if (entry.loadedDoc == null) {
+            // Not made hot: a removed document is not spilled again.
+            entry.loadedDoc = reload(url, entry);
+        }
+        freeRecord(entry);
+
+        return entry.loadedDoc;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public URL[] getURLs() {
+        URL[] urls = new URL[entries.size()];
+        return entries.keySet().toArray(urls);
+    }
+
+    public Iterator<LoadedDocument> iterator() {
+        final URL[] urls = getURLs();
+
+        return new Iterator<LoadedDocument>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return (index < urls.length);
+            }
+
+            public LoadedDocument next() {
+                if (index >= urls.length) {
+                    throw new NoSuchElementException();
+                }
+                return get(urls[index++]);
+            }
+
+            public void remove() {
+                if (index == 0) {
+                    throw new IllegalStateException();
+                }
+                SpillDocumentStore.this.remove(urls[index-1]);
+            }
+        };
+    }
+
+    public LoadedDocument.Type getType(URL url) {
+        Entry entry = entries.get(url);
+        return (entry == null)? null : entry.type;
+    }
+
+    public void pin(URL url) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.pinCount++ == 0) {
+            hotEntries.remove(url);
+            if (entry.loadedDoc == null) {
+                entry.loadedDoc = reload(url, entry);
+            }
+        }
+    }
+
+    public void unpin(URL url) {
+        Entry entry = entries.get(url);
+        if (entry == null || entry.pinCount == 0) {
+            return;
+        }
+
+        if (--entry.pinCount == 0) {
+            makeHot(url, entry);
+        }
+    }
+
+    public void dispose() {
+        entries.clear();
+        hotEntries.clear();
+        lastAdded = null;
+
+        closeSpill();
+    }
+
+    // -----------------------------------------------------------------------
+
+    private void makeHot(URL url, Entry entry) {
+        if (entry.pinCount > 0) {
+            return;
+        }
+
+        switch (entry.type) {
+        case MULTI_TOPIC:
+        case TOPIC:
+            break;
+        default:
+            // Never spilled.
+            return;
+        }
+
+        hotEntries.put(url, entry);
+
+        if (hotEntries.size() > capacity) {
+            Iterator<Map.Entry<URL,Entry>> iter =
+                hotEntries.entrySet().iterator();
+            while (iter.hasNext() && hotEntries.size() > capacity) {
+                Map.Entry<URL,Entry> eldest = iter.next();
+                URL eldestURL = eldest.getKey();
+                if (eldestURL.equals(url) || eldestURL.equals(lastAdded)) {
+                    // Being returned by get or probably being processed by
+                    // LoadedDocuments.
+                    continue;
+                }
+                iter.remove();
+
+                spill(eldestURL, eldest.getValue());
+            }
+        }
+    }
+
+    private void spill(URL url, Entry entry) {
+        LoadedDocument loadedDoc = entry.loadedDoc;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            (new Encoder(out)).encode(loadedDoc);
+            out.flush();
+
+            if (spill == null) {
+                spillFile = File.createTempFile("ditac", ".spill");
+                spillFile.deleteOnExit();
+                spill = new RandomAccessFile(spillFile, "rw");
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            int length = buffer.remaining();
+
+            if (entry.record != null && entry.record.capacity < length) {
+                freeRecord(entry);
+            }
+            if (entry.record == null) {
+                entry.record = allocateRecord(length);
+            }
+
+            FileChannel channel = spill.getChannel();
+            long position = entry.record.offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            entry.length = length;
+        } catch (IOException e) {
+            throw new StoreException(
+                Msg.msg("cannotSpillDoc", URLUtil.toLabel(url),
+                        ThrowableUtil.reason(e)), e);
+        }
+
+        entry.originalURL = loadedDoc.getOriginalURL();
+        entry.synthetic = loadedDoc.isSynthetic();
+        entry.loadedDoc = null;
+    }
+
+    private Record allocateRecord(int length) {
+        // Best fit.
+        int best = -1;
+        int count = freeRecords.size();
+        for (int i = 0; i < count; ++i) {
+            int recordCapacity = freeRecords.get(i).capacity;
+            if (recordCapacity >= length &&
+                (best < 0 || recordCapacity < freeRecords.get(best).capacity)) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            return freeRecords.remove(best);
+        }
+
+        Record record = new Record(spillSize, length);
+        spillSize += length;
+        return record;
+    }
+
+    private void freeRecord(Entry entry) {
+        if (entry.record != null) {
+            freeRecords.add(entry.record);
+            entry.record = null;
+        }
+    }
+
+    private LoadedDocument reload(URL url, Entry entry) {
+        Decoder decoder;
+        Document doc;
+        try {
+            FileChannel channel = spill.getChannel();
+            long offset = entry.record.offset;
+            long end = offset + entry.length;
+
+            ByteBuffer in;
+            if (spillSize > Integer.MAX_VALUE) {
+                // Too large to be mapped at once.
+                in = channel.map(FileChannel.MapMode.READ_ONLY,
+                                 offset, entry.length);
+            } else {
+                if (mapped == null || end > mapped.capacity()) {
+                    // The spill file has grown since it was last mapped.
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         0, spillSize);
+                }
+
+                in = mapped.duplicate();
+                in.position((int) offset);
+                in.limit((int) end);
+                in = in.slice();
+            }
+            decoder = new Decoder(in);
+            doc = decoder.decode();
+        } catch (IOException e) {
+            throw new StoreException(
+                Msg.msg("cannotReloadSpilledDoc", URLUtil.toLabel(url),
+                        ThrowableUtil.reason(e)), e);
+        }
+
+        LoadedDocument loadedDoc = owner.createLoadedDocument(url, doc);
+        if (entry.synthetic) {
+            loadedDoc.setSynthetic(entry.originalURL);
+        }
+        decoder.restoreTopics(loadedDoc.getTopics(owner.getConsole()),
+                              owner.getConsole());
+
+        return loadedDoc;
+    }
+
+    private void closeSpill() {
+        mapped = null;
+        freeRecords.clear();
+
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {}
+            spill = null;
+
+            spillFile.delete();
+            spillFile = null;
+        }
+        spillSize = 0;
+    }
+
+    // -----------------------------------------------------------------------
+    // Binary format
+    // -----------------------------------------------------------------------
+
+    private static final byte END = 0;
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA = 3;
+    private static final byte COMMENT = 4;
+    private static final byte PI = 5;
+    private static final byte DOCTYPE = 6;
+
+    private static final int NULL_STRING = -1;
+    private static final int NEW_STRING = -2;
+
+    // The user data of an element.
+    private static final byte LOCATION = 0x01;
+    private static final byte FLAGS = 0x02;
+    private static final byte ID_TARGET = 0x04;
+    private static final byte TOPIC = 0x08;
+
+    private static final class Encoder {
+        private final DataOutputStream out;
+        private HashMap<String,Integer> strings;
+        private IdentityHashMap<Element,LoadedTopic> topics;
+
+        public Encoder(DataOutputStream out) {
+            this.out = out;
+            strings = new HashMap<String,Integer>();
+            topics = new IdentityHashMap<Element,LoadedTopic>();
+        }
+
+        public void encode(LoadedDocument loadedDoc)
+            throws IOException {
+            collectTopics(loadedDoc.peekTopics());
+
+            Document doc = loadedDoc.document;
+            writeString(doc.getDocumentURI());
+            encodeChildren(doc);
+        }
+
+        private void collectTopics(LoadedTopic[] loadedTopics) {
+            if (loadedTopics != null) {
+                for (LoadedTopic loadedTopic : loadedTopics) {
+                    topics.put(loadedTopic.element, loadedTopic);
+                    collectTopics(loadedTopic.peekNestedTopics());
+                }
+            }
+        }
+
+        private void encodeChildren(Node parent)
+            throws IOException {
+            Node child = parent.getFirstChild();
+            while (child != null) {
+                encode(child);
+                child = child.getNextSibling();
+            }
+            out.writeByte(END);
+        }
+
+        private void encode(Node node)
+            throws IOException {
+            switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                {
+                    Element element = (Element) node;
+                    out.writeByte(ELEMENT);
+                    writeString(element.getNamespaceURI());
+                    writeString(element.getNodeName());
+
+                    NamedNodeMap attrs = element.getAttributes();
+                    int attrCount = attrs.getLength();
+                    out.writeInt(attrCount);
+                    for (int i = 0; i < attrCount; ++i) {
+                        Attr attr = (Attr) attrs.item(i);
+                        writeString(attr.getNamespaceURI());
+                        writeString(attr.getName());
+                        writeString(attr.getValue());
+                        out.writeBoolean(attr.isId());
+                    }
+
+                    encodeUserData(element);
+                    encodeChildren(element);
+                }
+                break;
+            case Node.TEXT_NODE:
+                out.writeByte(TEXT);
+                writeString(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                out.writeByte(CDATA);
+                writeString(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                out.writeByte(COMMENT);
+                writeString(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                {
+                    ProcessingInstruction pi = (ProcessingInstruction) node;
+                    out.writeByte(PI);
+                    writeString(pi.getTarget());
+                    writeString(pi.getData());
+                }
+                break;
+            case Node.DOCUMENT_TYPE_NODE:
+                {
+                    DocumentType docType = (DocumentType) node;
+                    out.writeByte(DOCTYPE);
+                    writeString(docType.getName());
+                    writeString(docType.getPublicId());
+                    writeString(docType.getSystemId());
+                }
+                break;
+            case Node.ENTITY_REFERENCE_NODE:
+                {
+                    Node child = node.getFirstChild();
+                    while (child != null) {
+                        encode(child);
+                        child = child.getNextSibling();
+                    }
+                }
+                break;
+            }
+        }
+
+        private void encodeUserData(Element element)
+            throws IOException {
+            NodeLocation location = (NodeLocation)
+                element.getUserData(NodeLocation.USER_DATA_KEY);
+            Filter.Flags flags = (Filter.Flags)
+                element.getUserData(Filters.FLAGS_KEY);
+            boolean idTarget =
+                (element.getUserData(PreProcessor.ID_TARGET_KEY) != null);
+            LoadedTopic loadedTopic = topics.get(element);
+
+            byte userData = 0;
+            if (location != null) {
+                userData |= LOCATION;
+            }
+            if (flags != null) {
+                userData |= FLAGS;
+            }
+            if (idTarget) {
+                userData |= ID_TARGET;
+            }
+            if (loadedTopic != null) {
+                userData |= TOPIC;
+            }
+            out.writeByte(userData);
+
+            if (location != null) {
+                writeString(location.systemId);
+                out.writeInt(location.lineNumber);
+                out.writeInt(location.columnNumber);
+                writeString(location.elementPointer);
+            }
+
+            if (flags != null) {
+                writeString(flags.color);
+                writeString(flags.backgroundColor);
+                writeString(flags.fontWeight);
+                writeString(flags.fontStyle);
+                writeString(flags.textDecoration);
+                writeStrings(flags.changeBarProps);
+                writeURL(flags.startImage);
+                out.writeBoolean(flags.isAbsoluteStartImageURL);
+                writeString(flags.startText);
+                writeURL(flags.endImage);
+                out.writeBoolean(flags.isAbsoluteEndImageURL);
+                writeString(flags.endText);
+            }
+
+            if (loadedTopic != null) {
+                writeString(loadedTopic.topicId);
+                out.writeBoolean(loadedTopic.isExcluded());
+                out.writeBoolean(loadedTopic.peekNestedTopics() != null);
+            }
+        }
+
+        private void writeURL(URL url)
+            throws IOException {
+            writeString((url == null)? null : url.toExternalForm());
+        }
+
+        private void writeStrings(String[] list)
+            throws IOException {
+            if (list == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            out.writeInt(list.length);
+            for (String s : list) {
+                writeString(s);
+            }
+        }
+
+        private void writeString(String s)
+            throws IOException {
+            if (s == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+
+            Integer index = strings.get(s);
+            if (index != null) {
+                out.writeInt(index.intValue());
+                return;
+            }
+            strings.put(s, strings.size());
+
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(NEW_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class TopicState {
+        public final String topicId;
+        public final boolean excluded;
+        public final boolean hasNestedTopics;
+
+        public TopicState(String topicId, boolean excluded,
+                          boolean hasNestedTopics) {
+            this.topicId = topicId;
+            this.excluded = excluded;
+            this.hasNestedTopics = hasNestedTopics;
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private ArrayList<String> strings;
+        private IdentityHashMap<Element,TopicState> topics;
+
+        public Decoder(ByteBuffer in) {
+            this.in = in;
+            strings = new ArrayList<String>();
+            topics = new IdentityHashMap<Element,TopicState>();
+        }
+
+        public Document decode()
+            throws IOException {
+            Document doc = DOMUtil.newDocument();
+            doc.setDocumentURI(readString());
+            decodeChildren(doc, doc);
+            return doc;
+        }
+
+        /**
+         * Gives the topics of the reloaded document the state they had
+         * when the document was spilled.
+         */
+        public void restoreTopics(LoadedTopic[] loadedTopics,
+                                  ConsoleHelper console) {
+            if (loadedTopics == null) {
+                return;
+            }
+
+            for (LoadedTopic loadedTopic : loadedTopics) {
+                TopicState state = topics.get(loadedTopic.element);
+                if (state != null) {
+                    loadedTopic.topicId = state.topicId;
+                    loadedTopic.setExcluded(state.excluded);
+
+                    if (state.hasNestedTopics) {
+                        restoreTopics(loadedTopic.getNestedTopics(console),
+                                      console);
+                    }
+                }
+            }
+        }
+
+        private void decodeChildren(Document doc, Node parent)
+            throws IOException {
+            for (;;) {
+                byte type = in.get();
+
+                Node node;
+                switch (type) {
+                case END:
+                    return;
+                case ELEMENT:
+                    {
+                        String ns = readString();
+                        Element element =
+                            doc.createElementNS(ns, readString());
+
+                        int attrCount = in.getInt();
+                        for (int i = 0; i < attrCount; ++i) {
+                            String attrNS = readString();
+                            String attrName = readString();
+                            element.setAttributeNS(attrNS, attrName,
+                                                   readString());
+                            if (in.get() != 0) {
+                                element.setIdAttributeNS(attrNS,
+                                                         localName(attrName),
+                                                         true);
+                            }
+                        }
+
+                        decodeUserData(element);
+                        decodeChildren(doc, element);
+                        node = element;
+                    }
+                    break;
+                case TEXT:
+                    node = doc.createTextNode(readString());
+                    break;
+                case CDATA:
+                    node = doc.createCDATASection(readString());
+                    break;
+                case COMMENT:
+                    node = doc.createComment(readString());
+                    break;
+                case PI:
+                    {
+                        String target = readString();
+                        node = doc.createProcessingInstruction(target,
+                                                               readString());
+                    }
+                    break;
+                case DOCTYPE:
+                    {
+                        String name = readString();
+                        String publicId = readString();
+                        node = doc.getImplementation().createDocumentType(
+                            name, publicId, readString());
+                    }
+                    break;
+                default:
+                    throw new IOException(Msg.msg("corruptSpillFile"));
+                }
+
+                parent.appendChild(node);
+            }
+        }
+
+        private static String localName(String qName) {
+            int colon = qName.indexOf(':');
+            return (colon < 0)? qName : qName.substring(colon+1);
+        }
+
+        private void decodeUserData(Element element)
+            throws IOException {
+            byte userData = in.get();
+
+            if ((userData & LOCATION) != 0) {
+                String systemId = readString();
+                int lineNumber = in.getInt();
+                int columnNumber = in.getInt();
+                NodeLocation location =
+                    new NodeLocation(systemId, lineNumber, columnNumber,
+                                     readString());
+                element.setUserData(NodeLocation.USER_DATA_KEY, location,
+                                    DOMUtil.COPY_USER_DATA);
+            }
+
+            if ((userData & FLAGS) != 0) {
+                Filter.Flags flags = new Filter.Flags();
+                flags.color = readString();
+                flags.backgroundColor = readString();
+                flags.fontWeight = readString();
+                flags.fontStyle = readString();
+                flags.textDecoration = readString();
+                flags.changeBarProps = readStrings();
+                flags.startImage = readURL();
+                flags.isAbsoluteStartImageURL = (in.get() != 0);
+                flags.startText = readString();
+                flags.endImage = readURL();
+                flags.isAbsoluteEndImageURL = (in.get() != 0);
+                flags.endText = readString();
+                element.setUserData(Filters.FLAGS_KEY, flags, null);
+            }
+
+            if ((userData & ID_TARGET) != 0) {
+                element.setUserData(PreProcessor.ID_TARGET_KEY, Boolean.TRUE,
+                                    null);
+            }
+
+            if ((userData & TOPIC) != 0) {
+                String topicId = readString();
+                boolean excluded = (in.get() != 0);
+                topics.put(element,
+                           new TopicState(topicId, excluded, (in.get() != 0)));
+            }
+        }
+
+        private URL readURL()
+            throws IOException {
+            String spec = readString();
+            return (spec == null)? null : new URL(spec);
+        }
+
+        private String[] readStrings()
+            throws IOException {
+            int count = in.getInt();
+            if (count < 0) {
+                return null;
+            }
+
+            String[] list = new String[count];
+            for (int i = 0; i < count; ++i) {
+                list[i] = readString();
+            }
+            return list;
+        }
+
+        private String readString()
+            throws IOException {
+            int index = in.getInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            if (index >= 0) {
+                return strings.get(index);
+            }
+
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            String s = new String(bytes, "UTF-8");
+            strings.add(s);
+            return s;
+        }
+    }
+}
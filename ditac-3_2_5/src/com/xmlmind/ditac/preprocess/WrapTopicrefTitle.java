@@ -44,14 +44,15 @@ import com.xmlmind.ditac.util.DITAUtil;
                     !isBooklistPlaceholder(childElement)) {
                     String href = childElement.getAttributeNS(null, "href");
                     if (href == null || href.length() == 0) {
-                        Document topicDoc = createTitleContainer(childElement);
+                        // Derived from the topicref in order to be the same
+                        // from one run to the other.
+                        String id = DITAUtil.generateID(childElement);
+
+                        Document topicDoc = 
+                            createTitleContainer(childElement, id);
                         if (topicDoc != null) {
                             Element topic = topicDoc.getDocumentElement();
 
-                            String id = 
-                              Integer.toString(System.identityHashCode(topic),
-                                               Character.MAX_RADIX);
-
                             URL url = null;
                             try {
                                 url = new URL(urlPrefix + id + ".dita");
@@ -88,7 +89,8 @@ import com.xmlmind.ditac.util.DITAUtil;
                 DITAUtil.findChildByClass(topicref, "map/topicref") == null);
     }
 
-    private static Document createTitleContainer(Element topicref) {
+    private static Document createTitleContainer(Element topicref,
+                                                 String id) {
         Element navtitle = null;
         String navtitleText = null;
 
@@ -133,7 +135,7 @@ import com.xmlmind.ditac.util.DITAUtil;
 
         Element topic = doc.createElementNS(null, "topic");
         topic.setAttributeNS(null, "class", "- topic/topic ");
-        topic.setAttributeNS(null, "id", DITAUtil.generateID(topic));
+        topic.setAttributeNS(null, "id", id);
 
         doc.appendChild(topic);
 
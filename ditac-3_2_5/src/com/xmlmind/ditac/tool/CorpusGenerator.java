@@ -0,0 +1,858 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.tool;
+
+import java.io.IOException;
+import java.io.File;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import com.xmlmind.util.ThrowableUtil;
+import com.xmlmind.util.StringList;
+import com.xmlmind.util.StringUtil;
+import com.xmlmind.util.FileUtil;
+
+/**
+ * Command-line tool generating a synthetic DITA corpus, typically used
+ * to test the scalability of ditac.
+ * <p>The generated corpus is entirely determined by its parameters and
+ * by a seed. That is, generating a corpus twice using the same
+ * parameters and the same seed gives identical files.
+ * <p>Layout of the generated corpus:
+ * <dl>
+ * <dt><tt>book.ditamap</tt>
+ * <dd>The root map, a bookmap (or a plain map, see <tt>-map</tt>).
+ * Defines the keys shared by all chapters. References one submap per
+ * chapter. Each submap is a key scope.
+ * <dt><tt>corpus.ditaval</tt>
+ * <dd>Excludes or flags the conditional elements found in the topics.
+ * <dt><tt>chapters/c<i>NNNN</i>.ditamap</tt>
+ * <dd>The topicref hierarchy, the scoped keys and the relationship table
+ * of a chapter.
+ * <dt><tt>topics/library.dita</tt>
+ * <dd>Contains the targets of the conrefs.
+ * <dt><tt>topics/c<i>NNNN</i>/t<i>NNNNNN</i>.dita</tt>
+ * <dd>The topics of a chapter.
+ * <dt><tt>images/img<i>NNN</i>.png</tt>
+ * <dd>The images referenced by the topics.
+ * </dl>
+ */
+public final class CorpusGenerator {
+    private static final String[] TOPIC_TYPES = {
+        "concept", "task", "reference", "topic"
+    };
+
+    private static final String[] SYLLABLES = {
+        "ba", "co", "di", "fu", "ga", "he", "ki", "lo", "ma", "ne",
+        "po", "qua", "ri", "sa", "te", "vu", "wo", "xe", "ya", "zo"
+    };
+
+    private long seed = 1;
+    private int topicCount = 100;
+    private int chapterCount = -1;
+    private String[] topicTypes = TOPIC_TYPES;
+    private int maxDepth = 3;
+    private double conrefDensity = 0.2;
+    private int conrefChainLength = 2;
+    private int conrefTargetCount = 100;
+    private int keyrefCount = 2;
+    private int xrefCount = 1;
+    private int reltableRowCount = 2;
+    private int indextermCount = 3;
+    private double conditionDensity = 0.1;
+    private int imageCount = 1;
+    private int imagePoolSize = 20;
+    private int tableCount = 1;
+    private int tableColumnCount = 4;
+    private boolean bookmap = true;
+    private boolean rng = false;
+
+    private Random random;
+    private String[] words;
+
+    // -----------------------------------------------------------------------
+
+    public static void main(String[] args) {
+        CorpusGenerator generator = new CorpusGenerator();
+        boolean keep = false;
+
+        int argCount = args.length;
+        int i = 0;
+        try {
+            for (; i < argCount; ++i) {
+                String arg = args[i];
+                if (!arg.startsWith("-")) {
+                    break;
+                }
+
+                if (i+1 >= argCount) {
+                    usage(null);
+                }
+
+                if ("-seed".equals(arg)) {
+                    generator.seed = Long.parseLong(args[++i]);
+                } else if ("-topics".equals(arg)) {
+                    generator.topicCount = parseCount(args[++i], 1);
+                } else if ("-chapters".equals(arg)) {
+                    generator.chapterCount = parseCount(args[++i], 1);
+                } else if ("-types".equals(arg)) {
+                    generator.topicTypes = parseTopicTypes(args[++i]);
+                } else if ("-depth".equals(arg)) {
+                    generator.maxDepth = parseCount(args[++i], 1);
+                } else if ("-conrefs".equals(arg)) {
+                    generator.conrefDensity = parseDensity(args[++i]);
+                } else if ("-conrefchain".equals(arg)) {
+                    generator.conrefChainLength = parseCount(args[++i], 1);
+                } else if ("-conreftargets".equals(arg)) {
+                    generator.conrefTargetCount = parseCount(args[++i], 1);
+                } else if ("-keyrefs".equals(arg)) {
+                    generator.keyrefCount = parseCount(args[++i], 0);
+                } else if ("-xrefs".equals(arg)) {
+                    generator.xrefCount = parseCount(args[++i], 0);
+                } else if ("-reltables".equals(arg)) {
+                    generator.reltableRowCount = parseCount(args[++i], 0);
+                } else if ("-indexterms".equals(arg)) {
+                    generator.indextermCount = parseCount(args[++i], 0);
+                } else if ("-conditions".equals(arg)) {
+                    generator.conditionDensity = parseDensity(args[++i]);
+                } else if ("-images".equals(arg)) {
+                    generator.imageCount = parseCount(args[++i], 0);
+                } else if ("-imagepool".equals(arg)) {
+                    generator.imagePoolSize = parseCount(args[++i], 1);
+                } else if ("-tables".equals(arg)) {
+                    generator.tableCount = parseCount(args[++i], 0);
+                } else if ("-tablecols".equals(arg)) {
+                    generator.tableColumnCount = parseCount(args[++i], 1);
+                } else if ("-map".equals(arg)) {
+                    generator.bookmap = false;
+                } else if ("-dtd".equals(arg)) {
+                    generator.rng = false;
+                } else if ("-rng".equals(arg)) {
+                    generator.rng = true;
+                } else if ("-keep".equals(arg)) {
+                    keep = true;
+                } else {
+                    usage("'" + arg + "', unknown option");
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage("'" + args[i] + "', invalid value for option " + args[i-1]);
+        }
+
+        if (i+1 != argCount) {
+            usage(null);
+        }
+        File outDir = new File(args[i]);
+
+        if (keep && new File(outDir, "book.ditamap").isFile()) {
+            System.out.println("'" + outDir + "' already contains a corpus.");
+            return;
+        }
+
+        try {
+            generator.generate(outDir);
+        } catch (IOException e) {
+            System.err.println("Cannot generate corpus in '" + outDir +
+                               "': " + ThrowableUtil.reason(e));
+            System.exit(2);
+        }
+    }
+
+    private static int parseCount(String value, int min) {
+        int count = Integer.parseInt(value);
+        if (count < min) {
+            throw new NumberFormatException(value);
+        }
+        return count;
+    }
+
+    private static double parseDensity(String value) {
+        double density = Double.parseDouble(value);
+        if (density < 0 || density > 1) {
+            throw new NumberFormatException(value);
+        }
+        return density;
+    }
+
+    private static String[] parseTopicTypes(String value) {
+        String[] types = StringUtil.split(value, ',');
+        for (String type : types) {
+            if (!StringList.contains(TOPIC_TYPES, type)) {
+                throw new NumberFormatException(value);
+            }
+        }
+        return types;
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println("*** error: " + error);
+        }
+
+        System.err.println(
+        "Usage: java -cp ditac.jar com.xmlmind.ditac.tool.CorpusGenerator\n" +
+        "  [ option ]* out_dir\n" +
+        "Generates a synthetic DITA corpus in out_dir. The same options\n" +
+        "and the same seed always give the same corpus.\n" +
+        "Options:\n" +
+        "-seed long Seed of the random generator. Default: 1.\n" +
+        "-topics count Number of topics. Default: 100.\n" +
+        "-chapters count Number of chapters. Default: topics/50,\n" +
+        "    at least 1.\n" +
+        "-types type[,type]* Topic types: concept, task, reference, topic.\n" +
+        "    Default: all of them.\n" +
+        "-depth count Depth of the topicref hierarchy of a chapter.\n" +
+        "    Default: 3.\n" +
+        "-conrefs density Probability (0-1) for a paragraph to be a conref.\n" +
+        "    Default: 0.2.\n" +
+        "-conrefchain count Length of conref chains. Default: 2.\n" +
+        "-conreftargets count Number of conref chains. Default: 100.\n" +
+        "-keyrefs count Number of keyrefs per topic. Default: 2.\n" +
+        "-xrefs count Number of cross-references per topic. Default: 1.\n" +
+        "-reltables count Number of reltable rows per chapter. Default: 2.\n" +
+        "-indexterms count Number of index terms per topic. Default: 3.\n" +
+        "-conditions density Probability (0-1) for a paragraph to be\n" +
+        "    conditional. Default: 0.1.\n" +
+        "-images count Number of images per topic. Default: 1.\n" +
+        "-imagepool count Number of distinct image files. Default: 20.\n" +
+        "-tables count Number of tables per topic. Default: 1.\n" +
+        "-tablecols count Number of columns of a table. Default: 4.\n" +
+        "-map Generate a plain map rather than a bookmap.\n" +
+        "-dtd Generate documents conforming to the DITA 1.3 DTDs.\n" +
+        "    The default.\n" +
+        "-rng Generate documents conforming to the DITA 1.3\n" +
+        "    RELAX NG schemas.\n" +
+        "-keep Do nothing if out_dir already contains a corpus.");
+
+        System.exit(1);
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Generates the corpus in specified directory.
+     * Created if it does not already exist.
+     */
+    public void generate(File outDir)
+        throws IOException {
+        random = new Random(seed);
+        words = createWords(500);
+
+        int chapters = chapterCount;
+        if (chapters <= 0) {
+            chapters = Math.max(1, topicCount/50);
+        }
+        chapters = Math.min(chapters, topicCount);
+
+        System.out.println("Generating " + topicCount + " topics in " +
+                           chapters + " chapters in '" + outDir + "'...");
+
+        File topicsDir = new File(outDir, "topics");
+        File chaptersDir = new File(outDir, "chapters");
+        File imagesDir = new File(outDir, "images");
+        FileUtil.checkedMkdirs(topicsDir);
+        FileUtil.checkedMkdirs(chaptersDir);
+        FileUtil.checkedMkdirs(imagesDir);
+
+        generateImages(imagesDir);
+        generateLibrary(new File(topicsDir, "library.dita"));
+        generateDitaval(new File(outDir, "corpus.ditaval"));
+
+        // Distribute the topics among the chapters.
+        int[] chapterStarts = new int[chapters+1];
+        for (int c = 0; c <= chapters; ++c) {
+            chapterStarts[c] = (int) (((long) topicCount * c) / chapters);
+        }
+
+        for (int c = 0; c < chapters; ++c) {
+            String chapterName = chapterName(c);
+            FileUtil.checkedMkdirs(new File(topicsDir, chapterName));
+
+            generateChapterMap(new File(chaptersDir, chapterName + ".ditamap"),
+                               c, chapters, chapterStarts);
+
+            for (int t = chapterStarts[c]; t < chapterStarts[c+1]; ++t) {
+                generateTopic(new File(topicsDir,
+                                       chapterName + "/" + topicName(t) +
+                                       ".dita"),
+                              t, c, chapters, chapterStarts);
+            }
+        }
+
+        generateRootMap(new File(outDir, "book.ditamap"), chapters,
+                        chapterStarts);
+    }
+
+    private String[] createWords(int count) {
+        String[] list = new String[count];
+        for (int i = 0; i < count; ++i) {
+            StringBuilder buffer = new StringBuilder();
+            int syllables = 1 + random.nextInt(4);
+            for (int j = 0; j < syllables; ++j) {
+                buffer.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            list[i] = buffer.toString();
+        }
+        return list;
+    }
+
+    private static String chapterName(int chapter) {
+        return "c" + pad(chapter+1, 4);
+    }
+
+    private static String topicName(int topic) {
+        return "t" + pad(topic+1, 6);
+    }
+
+    private static String topicPath(int topic, int chapter) {
+        return chapterName(chapter) + "/" + topicName(topic) + ".dita";
+    }
+
+    private static int chapterOf(int topic, int[] chapterStarts) {
+        int chapter = 0;
+        while (topic >= chapterStarts[chapter+1]) {
+            ++chapter;
+        }
+        return chapter;
+    }
+
+    private String topicType(int topic) {
+        return topicTypes[topic % topicTypes.length];
+    }
+
+    // -----------------------------------------------------------------------
+    // Maps
+    // -----------------------------------------------------------------------
+
+    private void generateRootMap(File file, int chapters,
+                                 int[] chapterStarts)
+        throws IOException {
+        String root = bookmap? "bookmap" : "map";
+        StringBuilder out = new StringBuilder();
+        header(root, out);
+
+        out.append("<").append(root).append(" id=\"book\">\n");
+        if (bookmap) {
+            out.append("  <booktitle>\n");
+            out.append("    <mainbooktitle>").append(sentence(3, false));
+            out.append("</mainbooktitle>\n");
+            out.append("  </booktitle>\n");
+            out.append("  <frontmatter>\n");
+            out.append("    <booklists>\n");
+            out.append("      <toc/>\n");
+            out.append("    </booklists>\n");
+            keydefs("    ", out);
+            out.append("  </frontmatter>\n");
+        } else {
+            out.append("  <title>").append(sentence(3, false));
+            out.append("</title>\n");
+            keydefs("  ", out);
+        }
+
+        for (int c = 0; c < chapters; ++c) {
+            String chapterName = chapterName(c);
+            String element = bookmap? "chapter" : "topicref";
+
+            // The key scope is specified on the mapref and not on the
+            // chapter because the reltable of the submap, which is moved
+            // to the end of the root map, must stay in this key scope.
+            out.append("  <").append(element).append(" href=\"topics/");
+            out.append(topicPath(chapterStarts[c], c)).append("\">\n");
+            out.append("    <mapref href=\"chapters/").append(chapterName);
+            out.append(".ditamap\" format=\"ditamap\" keyscope=\"");
+            out.append(chapterName).append("\"/>\n");
+            out.append("  </").append(element).append(">\n");
+        }
+
+        if (bookmap) {
+            out.append("  <backmatter>\n");
+            out.append("    <booklists>\n");
+            out.append("      <indexlist/>\n");
+            out.append("    </booklists>\n");
+            out.append("  </backmatter>\n");
+        }
+        out.append("</").append(root).append(">\n");
+
+        FileUtil.saveString(out.toString(), file, "UTF-8");
+    }
+
+    private void keydefs(String indent, StringBuilder out) {
+        String[] keys = { "product", "version", "company" };
+        for (String key : keys) {
+            out.append(indent);
+            out.append("<keydef keys=\"").append(key).append("\">\n");
+            out.append(indent);
+            out.append("  <topicmeta><keywords><keyword>");
+            out.append(sentence(2, false));
+            out.append("</keyword></keywords></topicmeta>\n");
+            out.append(indent).append("</keydef>\n");
+        }
+    }
+
+    private void generateChapterMap(File file, int chapter, int chapters,
+                                    int[] chapterStarts)
+        throws IOException {
+        int first = chapterStarts[chapter];
+        int end = chapterStarts[chapter+1];
+
+        StringBuilder out = new StringBuilder();
+        header("map", out);
+
+        out.append("<map id=\"").append(chapterName(chapter)).append("\">\n");
+        out.append("  <title>").append(sentence(4, false));
+        out.append("</title>\n");
+
+        // Scoped keys. Same key names in all chapters.
+        out.append("  <keydef keys=\"chapter-title\">\n");
+        out.append("    <topicmeta><keywords><keyword>");
+        out.append(sentence(3, false));
+        out.append("</keyword></keywords></topicmeta>\n");
+        out.append("  </keydef>\n");
+        out.append("  <keydef keys=\"chapter-intro\" href=\"../topics/");
+        out.append(topicPath(first, chapter)).append("\"/>\n");
+
+        // The first topic of the chapter is referenced by the root map.
+        // Build a random hierarchy containing the other topics.
+        int count = end - first - 1;
+        int[] parents = new int[count];
+        int[] depths = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int parent = -1;
+            if (i > 0 && random.nextInt(3) > 0) {
+                parent = random.nextInt(i);
+                if (depths[parent] + 1 >= maxDepth) {
+                    parent = parents[parent];
+                }
+            }
+            parents[i] = parent;
+            depths[i] = (parent < 0)? 0 : depths[parent]+1;
+        }
+
+        for (int i = 0; i < count; ++i) {
+            if (parents[i] < 0) {
+                topicref(i, first+1, chapter, parents, "  ", out);
+            }
+        }
+
+        if (reltableRowCount > 0 && end - first > 1) {
+            out.append("  <reltable>\n");
+            int rowSize = Math.min(4, end - first);
+            for (int r = 0; r < reltableRowCount; ++r) {
+                // The topics of a row are all different.
+                int[] rowTopics = new int[rowSize];
+                for (int j = 0; j < rowSize; ++j) {
+                    int topic;
+                    boolean found;
+                    do {
+                        topic = first + random.nextInt(end - first);
+                        found = false;
+                        for (int k = 0; k < j; ++k) {
+                            if (rowTopics[k] == topic) {
+                                found = true;
+                                break;
+                            }
+                        }
+                    } while (found);
+                    rowTopics[j] = topic;
+                }
+
+                out.append("    <relrow>\n");
+                int split = 1 + random.nextInt(rowSize - 1);
+                for (int cell = 0; cell < 2; ++cell) {
+                    out.append("      <relcell>");
+                    int from = (cell == 0)? 0 : split;
+                    int to = (cell == 0)? split : rowSize;
+                    for (int j = from; j < to; ++j) {
+                        int topic = rowTopics[j];
+                        out.append("<topicref href=\"../topics/");
+                        out.append(topicPath(topic, chapter));
+                        out.append("\"/>");
+                    }
+                    out.append("</relcell>\n");
+                }
+                out.append("    </relrow>\n");
+            }
+            out.append("  </reltable>\n");
+        }
+
+        out.append("</map>\n");
+
+        FileUtil.saveString(out.toString(), file, "UTF-8");
+    }
+
+    private void topicref(int index, int firstTopic, int chapter,
+                          int[] parents, String indent, StringBuilder out) {
+        out.append(indent).append("<topicref href=\"../topics/");
+        out.append(topicPath(firstTopic + index, chapter)).append("\"");
+
+        boolean hasChildren = false;
+        for (int i = index+1; i < parents.length; ++i) {
+            if (parents[i] == index) {
+                if (!hasChildren) {
+                    out.append(">\n");
+                    hasChildren = true;
+                }
+                topicref(i, firstTopic, chapter, parents, indent + "  ", out);
+            }
+        }
+
+        if (hasChildren) {
+            out.append(indent).append("</topicref>\n");
+        } else {
+            out.append("/>\n");
+        }
+    }
+
+    // -----------------------------------------------------------------------
+    // Topics
+    // -----------------------------------------------------------------------
+
+    private void generateLibrary(File file)
+        throws IOException {
+        StringBuilder out = new StringBuilder();
+        header("topic", out);
+
+        out.append("<topic id=\"library\">\n");
+        out.append("  <title>Library</title>\n");
+        out.append("  <body>\n");
+        for (int i = 0; i < conrefTargetCount; ++i) {
+            for (int j = 0; j < conrefChainLength; ++j) {
+                out.append("    <p id=\"p").append(i).append('_').append(j);
+                if (j+1 < conrefChainLength) {
+                    out.append("\" conref=\"#library/p").append(i);
+                    out.append('_').append(j+1).append("\"/>\n");
+                } else {
+                    out.append("\">").append(sentence(12, true));
+                    out.append("</p>\n");
+                }
+            }
+        }
+        out.append("  </body>\n");
+        out.append("</topic>\n");
+
+        FileUtil.saveString(out.toString(), file, "UTF-8");
+    }
+
+    private void generateDitaval(File file)
+        throws IOException {
+        StringBuilder out = new StringBuilder();
+        header("val", out);
+        out.append("<val>\n");
+        out.append("  <prop att=\"audience\" val=\"expert\"");
+        out.append(" action=\"exclude\"/>\n");
+        out.append("  <prop att=\"platform\" val=\"windows\"");
+        out.append(" action=\"exclude\"/>\n");
+        out.append("  <prop att=\"platform\" val=\"linux\"");
+        out.append(" action=\"flag\" backcolor=\"yellow\"/>\n");
+        out.append("</val>\n");
+
+        FileUtil.saveString(out.toString(), file, "UTF-8");
+    }
+
+    private void generateImages(File dir)
+        throws IOException {
+        for (int i = 0; i < imagePoolSize; ++i) {
+            int width = 32 + random.nextInt(320);
+            int height = 32 + random.nextInt(240);
+
+            BufferedImage image =
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(new Color(random.nextInt(0x1000000)));
+            g.fillRect(0, 0, width, height);
+            g.setColor(new Color(random.nextInt(0x1000000)));
+            g.fillOval(width/4, height/4, width/2, height/2);
+            g.dispose();
+
+            if (!ImageIO.write(image, "png", new File(dir, imageName(i)))) {
+                throw new IOException("no PNG image writer");
+            }
+        }
+    }
+
+    private static String imageName(int image) {
+        return "img" + pad(image+1, 3) + ".png";
+    }
+
+    private void generateTopic(File file, int topic, int chapter,
+                               int chapters, int[] chapterStarts)
+        throws IOException {
+        String type = topicType(topic);
+        StringBuilder out = new StringBuilder();
+        header(type, out);
+
+        out.append("<").append(type).append(" id=\"");
+        out.append(topicName(topic)).append("\">\n");
+        out.append("  <title>").append(sentence(5, false));
+        out.append("</title>\n");
+        out.append("  <shortdesc>").append(sentence(15, true));
+        out.append("</shortdesc>\n");
+
+        if (indextermCount > 0) {
+            out.append("  <prolog>\n");
+            out.append("    <metadata>\n");
+            out.append("      <keywords>\n");
+            for (int i = 0; i < indextermCount; ++i) {
+                out.append("        <indexterm>").append(word());
+                if (random.nextBoolean()) {
+                    out.append("<indexterm>").append(word());
+                    out.append("</indexterm>");
+                }
+                out.append("</indexterm>\n");
+            }
+            out.append("      </keywords>\n");
+            out.append("    </metadata>\n");
+            out.append("  </prolog>\n");
+        }
+
+        String body;
+        if ("concept".equals(type)) {
+            body = "conbody";
+        } else if ("task".equals(type)) {
+            body = "taskbody";
+        } else if ("reference".equals(type)) {
+            body = "refbody";
+        } else {
+            body = "body";
+        }
+        out.append("  <").append(body).append(">\n");
+
+        String indent = "    ";
+        if ("task".equals(type)) {
+            out.append("    <context>\n");
+            indent = "      ";
+        } else if ("reference".equals(type)) {
+            out.append("    <section>\n");
+            indent = "      ";
+        }
+
+        int paragraphs = 2 + random.nextInt(4);
+        for (int i = 0; i < paragraphs; ++i) {
+            paragraph(indent, out);
+        }
+
+        if (keyrefCount > 0) {
+            out.append(indent).append("<p>");
+            for (int i = 0; i < keyrefCount; ++i) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                // The first topic of a chapter is not in the key scope
+                // of the chapter.
+                keyref(topic > chapterStarts[chapter], chapters, out);
+            }
+            out.append("</p>\n");
+        }
+
+        if (xrefCount > 0) {
+            out.append(indent).append("<p>");
+            for (int i = 0; i < xrefCount; ++i) {
+                int target = random.nextInt(topicCount);
+                int targetChapter = chapterOf(target, chapterStarts);
+                out.append("See <xref href=\"../");
+                out.append(topicPath(target, targetChapter)).append("\"/>. ");
+            }
+            out.append("</p>\n");
+        }
+
+        out.append(indent).append("<ul>\n");
+        int items = 2 + random.nextInt(4);
+        for (int i = 0; i < items; ++i) {
+            out.append(indent).append("  <li>").append(sentence(6, true));
+            out.append("</li>\n");
+        }
+        out.append(indent).append("</ul>\n");
+
+        for (int i = 0; i < imageCount; ++i) {
+            out.append(indent).append("<fig>\n");
+            out.append(indent).append("  <title>").append(sentence(4, false));
+            out.append("</title>\n");
+            out.append(indent).append("  <image href=\"../../images/");
+            out.append(imageName(random.nextInt(imagePoolSize)));
+            out.append("\"/>\n");
+            out.append(indent).append("</fig>\n");
+        }
+
+        for (int i = 0; i < tableCount; ++i) {
+            table(indent, out);
+        }
+
+        if ("task".equals(type)) {
+            out.append("    </context>\n");
+            out.append("    <steps>\n");
+            int steps = 2 + random.nextInt(4);
+            for (int i = 0; i < steps; ++i) {
+                out.append("      <step><cmd>").append(sentence(6, true));
+                out.append("</cmd></step>\n");
+            }
+            out.append("    </steps>\n");
+        } else if ("reference".equals(type)) {
+            out.append("    </section>\n");
+        }
+
+        out.append("  </").append(body).append(">\n");
+        out.append("</").append(type).append(">\n");
+
+        FileUtil.saveString(out.toString(), file, "UTF-8");
+    }
+
+    private void paragraph(String indent, StringBuilder out) {
+        out.append(indent).append("<p");
+
+        if (random.nextDouble() < conditionDensity) {
+            switch (random.nextInt(4)) {
+            case 0:
+                out.append(" audience=\"expert\"");
+                break;
+            case 1:
+                out.append(" audience=\"novice\"");
+                break;
+            case 2:
+                out.append(" platform=\"windows\"");
+                break;
+            default:
+                out.append(" platform=\"linux\"");
+                break;
+            }
+        }
+
+        if (random.nextDouble() < conrefDensity) {
+            out.append(" conref=\"../library.dita#library/p");
+            out.append(random.nextInt(conrefTargetCount)).append("_0\"/>\n");
+        } else {
+            out.append(">").append(sentence(10 + random.nextInt(30), true));
+            out.append("</p>\n");
+        }
+    }
+
+    private void keyref(boolean scoped, int chapters, StringBuilder out) {
+        int kind = random.nextInt(4);
+        if (kind == 2 && !scoped) {
+            kind = 0;
+        }
+
+        switch (kind) {
+        case 0:
+            out.append("<keyword keyref=\"product\"/>");
+            break;
+        case 1:
+            out.append("<keyword keyref=\"version\"/>");
+            break;
+        case 2:
+            // Resolved in the key scope of the chapter.
+            out.append("<keyword keyref=\"chapter-title\"/>");
+            break;
+        default:
+            {
+                // Reference to a key of another key scope.
+                int other = random.nextInt(chapters);
+                out.append("<xref keyref=\"").append(chapterName(other));
+                out.append(".chapter-intro\"/>");
+            }
+            break;
+        }
+    }
+
+    private void table(String indent, StringBuilder out) {
+        out.append(indent).append("<table>\n");
+        out.append(indent).append("  <title>").append(sentence(4, false));
+        out.append("</title>\n");
+        out.append(indent).append("  <tgroup cols=\"");
+        out.append(tableColumnCount).append("\">\n");
+        for (int c = 0; c < tableColumnCount; ++c) {
+            out.append(indent).append("    <colspec colname=\"c");
+            out.append(c+1).append("\" colwidth=\"");
+            out.append(1 + random.nextInt(3)).append("*\"/>\n");
+        }
+
+        out.append(indent).append("    <thead>\n");
+        row(indent + "      ", 1, out);
+        out.append(indent).append("    </thead>\n");
+
+        out.append(indent).append("    <tbody>\n");
+        int rows = 2 + random.nextInt(8);
+        for (int r = 0; r < rows; ++r) {
+            row(indent + "      ", 3, out);
+        }
+        out.append(indent).append("    </tbody>\n");
+        out.append(indent).append("  </tgroup>\n");
+        out.append(indent).append("</table>\n");
+    }
+
+    private void row(String indent, int maxWords, StringBuilder out) {
+        out.append(indent).append("<row>");
+        for (int c = 0; c < tableColumnCount; ++c) {
+            out.append("<entry>");
+            out.append(sentence(1 + random.nextInt(maxWords), false));
+            out.append("</entry>");
+        }
+        out.append("</row>\n");
+    }
+
+    // -----------------------------------------------------------------------
+    // Utilities
+    // -----------------------------------------------------------------------
+
+    private void header(String root, StringBuilder out) {
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+        String schema = "val".equals(root)? "ditaval" : root;
+        if (rng) {
+            out.append("<?xml-model href=\"urn:oasis:names:tc:dita:rng:");
+            out.append(schema).append(".rng\"?>\n");
+        } else {
+            String publicId;
+            if ("bookmap".equals(root)) {
+                publicId = "BookMap";
+            } else if ("val".equals(root)) {
+                publicId = "DITAVAL";
+            } else {
+                publicId = Character.toUpperCase(root.charAt(0)) +
+                    root.substring(1);
+            }
+
+            out.append("<!DOCTYPE ").append(root);
+            out.append(" PUBLIC \"-//OASIS//DTD DITA ").append(publicId);
+            out.append("//EN\" \"").append(schema).append(".dtd\">\n");
+        }
+    }
+
+    private static String pad(int number, int digits) {
+        StringBuilder buffer = new StringBuilder(Integer.toString(number));
+        while (buffer.length() < digits) {
+            buffer.insert(0, '0');
+        }
+        return buffer.toString();
+    }
+
+    private String word() {
+        return words[random.nextInt(words.length)];
+    }
+
+    private String sentence(int wordCount, boolean period) {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < wordCount; ++i) {
+            if (i > 0) {
+                buffer.append(' ');
+            }
+            String word = word();
+            if (i == 0) {
+                word = Character.toUpperCase(word.charAt(0)) +
+                    word.substring(1);
+            }
+            buffer.append(word);
+        }
+        if (period) {
+            buffer.append('.');
+        }
+        return buffer.toString();
+    }
+}
@@ -16,15 +16,22 @@ public class ConsoleHelper implements Console {
 
     protected Console.MessageType verbosity;
 
+    /**
+     * Cached ordinal of the most verbose message type actually displayed.
+     * -1 if no message is displayed at all.
+     */
+    private int maxShownOrdinal;
+
     // -----------------------------------------------------------------------
 
     public ConsoleHelper(Console console) {
         this.console = console;
-        verbosity = Console.MessageType.WARNING;
+        setVerbosity(Console.MessageType.WARNING);
     }
 
     public void setVerbosity(Console.MessageType verbosity) {
         this.verbosity = verbosity;
+        maxShownOrdinal = (console == null)? -1 : verbosity.ordinal();
     }
 
     public Console.MessageType getVerbosity() {
@@ -35,6 +42,19 @@ public class ConsoleHelper implements Console {
         return (verbosity.compareTo(Console.MessageType.VERBOSE) >= 0);
     }
 
+    /**
+     * Returns <code>true</code> if messages having specified type are
+     * actually displayed.
+     * <p>Cheap: suitable for testing whether a message needs to be formatted
+     * at all. For example:
+     * <pre>if (console.isShowing(Console.MessageType.DEBUG)) {
+     *    console.debug(Msg.msg("processingDoc", doc.url, count));
+     *}</pre>
+     */
+    public boolean isShowing(Console.MessageType messageType) {
+        return (messageType.ordinal() <= maxShownOrdinal);
+    }
+
     // -----------------------------------------------------------------------
 
     public void error(String message) {
@@ -60,60 +80,107 @@ public class ConsoleHelper implements Console {
     // -----------------------------------------------------------------------
 
     public void error(Element element, String message) {
-        showMessage(prependLocation(element, message),
-                    Console.MessageType.ERROR);
+        showMessage(element, message, Console.MessageType.ERROR);
     }
 
     public void warning(Element element, String message) {
-        showMessage(prependLocation(element, message),
-                    Console.MessageType.WARNING);
+        showMessage(element, message, Console.MessageType.WARNING);
     }
 
     public void info(Element element,  String message) {
-        showMessage(prependLocation(element, message),
-                    Console.MessageType.INFO);
+        showMessage(element, message, Console.MessageType.INFO);
     }
 
     public void verbose(Element element, String message) {
-        showMessage(prependLocation(element, message),
-                    Console.MessageType.VERBOSE);
+        showMessage(element, message, Console.MessageType.VERBOSE);
     }
 
     public void debug(Element element, String message) {
-        showMessage(prependLocation(element, message),
-                    Console.MessageType.DEBUG);
+        showMessage(element, message, Console.MessageType.DEBUG);
+    }
+
+    private void showMessage(Element element, String message,
+                             Console.MessageType messageType) {
+        // Do not compute the location of the element for nothing.
+        if (isShowing(messageType)) {
+            console.showMessage(prependLocation(element, message),
+                                messageType);
+        }
     }
 
     protected String prependLocation(Element element, String message) {
-        return prependElementLocation(element, message);
+        if (element != null) {
+            message = prependLocation(getLocation(element), message);
+        }
+        return message;
     }
 
     public static String prependElementLocation(Element element,
                                                 String message) {
         if (element != null) {
-            NodeLocation location = 
-                (NodeLocation) element.getUserData(NodeLocation.USER_DATA_KEY);
+            message = prependNodeLocation(getLocation(element), message);
+        }
+        return message;
+    }
+
+    private static NodeLocation getLocation(Element element) {
+        NodeLocation location = 
+            (NodeLocation) element.getUserData(NodeLocation.USER_DATA_KEY);
+        if (location == null) {
+            location = NodeLocation.UNKNOWN_LOCATION;
+        }
+        return location;
+    }
+
+    // -----------------------------------------------------------------------
+
+    public void error(NodeLocation location, String message) {
+        showMessage(location, message, Console.MessageType.ERROR);
+    }
+
+    public void warning(NodeLocation location, String message) {
+        showMessage(location, message, Console.MessageType.WARNING);
+    }
+
+    public void info(NodeLocation location,  String message) {
+        showMessage(location, message, Console.MessageType.INFO);
+    }
+
+    public void verbose(NodeLocation location, String message) {
+        showMessage(location, message, Console.MessageType.VERBOSE);
+    }
+
+    public void debug(NodeLocation location, String message) {
+        showMessage(location, message, Console.MessageType.DEBUG);
+    }
+
+    private void showMessage(NodeLocation location, String message,
+                             Console.MessageType messageType) {
+        if (isShowing(messageType)) {
             if (location == null) {
                 location = NodeLocation.UNKNOWN_LOCATION;
             }
-
-            StringBuilder buffer = new StringBuilder();
-            location.toString(buffer);
-            buffer.append(": ");
-            buffer.append(message);
-
-            message = buffer.toString();
+            console.showMessage(prependLocation(location, message),
+                                messageType);
         }
-        return message;
     }
 
-    // -----------------------------------------------------------------------
+    protected String prependLocation(NodeLocation location, String message) {
+        return prependNodeLocation(location, message);
+    }
 
-    public boolean isShowing(Console.MessageType messageType) {
-        return (console != null &&
-                messageType.ordinal() <= verbosity.ordinal());
+    private static String prependNodeLocation(NodeLocation location,
+                                              String message) {
+        StringBuilder buffer = new StringBuilder();
+        location.toString(buffer);
+        buffer.append(": ");
+        buffer.append(message);
+
+        return buffer.toString();
     }
 
+    // -----------------------------------------------------------------------
+
     public void showMessage(String message, Console.MessageType messageType) {
         if (isShowing(messageType)) {
             console.showMessage(message, messageType);
@@ -8,7 +8,6 @@
  */
 package com.xmlmind.ditac.util;
 
-import org.w3c.dom.Element;
 import com.xmlmind.util.Console;
 
 /**
@@ -22,41 +21,30 @@ public class ConsoleHelper2 extends ConsoleHelper {
     }
 
     @Override
-    protected String prependLocation(Element element, String message) {
-        if (element != null) {
-            NodeLocation location = (NodeLocation)
-                element.getUserData(NodeLocation.USER_DATA_KEY);
-            if (location == null) {
-                location = NodeLocation.UNKNOWN_LOCATION;
-            }
-
-            StringBuilder buffer = new StringBuilder();
+    protected String prependLocation(NodeLocation location, String message) {
+        StringBuilder buffer = new StringBuilder();
 
-            if (location.systemId != null) {
-                buffer.append(location.systemId);
+        if (location.systemId != null) {
+            buffer.append(location.systemId);
 
-                if (location.elementPointer != null) {
-                    buffer.append("#element(");
-                    buffer.append(location.elementPointer);
-                    buffer.append(')');
-                }
-            }
-            buffer.append('\uEEEE'); // Private Use Area: U+E000 - U+F8FF.
-            if (location.lineNumber > 0) {
-                buffer.append(Integer.toString(location.lineNumber));
+            if (location.elementPointer != null) {
+                buffer.append("#element(");
+                buffer.append(location.elementPointer);
+                buffer.append(')');
             }
-            buffer.append(':');
-            if (location.columnNumber > 0) {
-                buffer.append(Integer.toString(location.columnNumber));
-            }
-
-            buffer.append(": ");
-            buffer.append(message);
-
-            message = buffer.toString();
+        }
+        buffer.append('\uEEEE'); // Private Use Area: U+E000 - U+F8FF.
+        if (location.lineNumber > 0) {
+            buffer.append(Integer.toString(location.lineNumber));
+        }
+        buffer.append(':');
+        if (location.columnNumber > 0) {
+            buffer.append(Integer.toString(location.columnNumber));
         }
 
-        return message;
+        buffer.append(": ");
+        buffer.append(message);
+
+        return buffer.toString();
     }
 }
-
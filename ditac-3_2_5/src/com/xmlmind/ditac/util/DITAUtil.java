@@ -12,6 +12,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import org.w3c.dom.Node;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import com.xmlmind.util.ArrayUtil;
 import com.xmlmind.util.StringList;
@@ -68,10 +69,101 @@ public final class DITAUtil implements Constants {
         return value;
     }
 
+    /**
+     * Generates an ID for specified object.
+     * 
+     * @deprecated Use {@link #generateID(Element)} or
+     * {@link #generateID(String)}. An object which is not an element gets
+     * an ID derived from its identity hash code, which changes from one
+     * run to the other.
+     */
+    @Deprecated
     public static String generateID(Object object) {
+        if (object instanceof Element) {
+            return generateID((Element) object);
+        }
+
+        return generateID(object.getClass().getName() + "@" +
+                          System.identityHashCode(object));
+    }
+
+    /**
+     * Generates an ID for specified element. This ID is derived from
+     * the URI of the document containing the element and from the path of
+     * the element in this document. Therefore it is the same from one run
+     * to the other, as long as the element does not move.
+     * <p>A document having no URI (e.g. a document created in memory) is
+     * given a serial number the first time this method is invoked on one
+     * of its elements. This serial number is used instead of the URI, so
+     * that two such documents do not give the same IDs.
+     */
+    public static String generateID(Element element) {
+        StringBuilder key = new StringBuilder();
+
+        Node node = element;
+        for (;;) {
+            Node parent = node.getParentNode();
+            if (parent == null || parent.getNodeType() != Node.ELEMENT_NODE) {
+                break;
+            }
+
+            int index = 1;
+            Node sibling = node.getPreviousSibling();
+            while (sibling != null) {
+                if (sibling.getNodeType() == Node.ELEMENT_NODE) {
+                    ++index;
+                }
+                sibling = sibling.getPreviousSibling();
+            }
+
+            key.insert(0, index);
+            key.insert(0, '/');
+            node = parent;
+        }
+
+        Document doc = element.getOwnerDocument();
+        String uri = doc.getDocumentURI();
+        if (uri == null) {
+            uri = getDocumentSerial(doc);
+        }
+        key.insert(0, uri);
+
+        return generateID(key.toString());
+    }
+
+    private static final String DOCUMENT_SERIAL_KEY = "DOCUMENT_SERIAL";
+    private static int documentSerial = 0;
+
+    private static synchronized String getDocumentSerial(Document doc) {
+        String serial = (String) doc.getUserData(DOCUMENT_SERIAL_KEY);
+        if (serial == null) {
+            // Not a URI. Cannot be confused with the URI of a document.
+            serial = "#" + (++documentSerial);
+
+            // No UserDataHandler: a copy of this document is another
+            // document and must get its own serial number.
+            doc.setUserData(DOCUMENT_SERIAL_KEY, serial, null);
+        }
+        return serial;
+    }
+
+    /**
+     * Generates an ID which is a hash of specified key.
+     * The same key always gives the same ID.
+     */
+    public static String generateID(String key) {
+        // 64-bit FNV-1a, truncated to 63 bits in order not to have
+        // a minus sign in the ID.
+        long hash = 0xcbf29ce484222325L;
+        int count = key.length();
+        for (int i = 0; i < count; ++i) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
         StringBuilder buffer = new StringBuilder("I_");
-        buffer.append(Integer.toString(System.identityHashCode(object),
-                                       Character.MAX_RADIX));
+        buffer.append(Long.toString(hash & Long.MAX_VALUE,
+                                    Character.MAX_RADIX));
         buffer.append('_');
         return buffer.toString();
     }
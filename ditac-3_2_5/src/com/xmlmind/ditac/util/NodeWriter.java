@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import org.w3c.dom.Node;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Element;
+import org.w3c.dom.ProcessingInstruction;
+import static javax.xml.XMLConstants.XML_NS_URI;
+import static javax.xml.XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+
+/**
+ * Serializes DOM nodes to a UTF-8 encoded XML file, without first having
+ * to gather these nodes into a single Document.
+ * <p>Unlike {@link SaveDocument}, this allows to serialize elements
+ * belonging to different documents (e.g. topics loaded from several files)
+ * to the same file. The namespace declarations needed to make the output
+ * well-formed are added on the fly.
+ */
+public final class NodeWriter {
+    private Writer out;
+
+    /**
+     * In-scope namespace declarations: prefix, URI, prefix, URI, etc.
+     * The empty string is used for the default namespace.
+     */
+    private ArrayList<String> bindings;
+    /**
+     * For each open element, the size of <code>bindings</code>
+     * before its start tag was written.
+     */
+    private ArrayList<Integer> scopes;
+    private ArrayList<String> openNames;
+    private boolean startTagOpen;
+
+    // -----------------------------------------------------------------------
+
+    public NodeWriter(File file)
+        throws IOException {
+        out = new OutputStreamWriter(
+            new BufferedOutputStream(new FileOutputStream(file)), "UTF-8");
+
+        bindings = new ArrayList<String>();
+        scopes = new ArrayList<Integer>();
+        openNames = new ArrayList<String>();
+
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+    /**
+     * Writes the start tag of specified element, but not its content.
+     * Each invocation of this method must be matched by
+     * an invocation of {@link #endElement}.
+     */
+    public void startElement(Element element)
+        throws IOException {
+        closeStartTag();
+
+        scopes.add(bindings.size());
+
+        String qName = element.getNodeName();
+        openNames.add(qName);
+
+        out.write('<');
+        out.write(qName);
+
+        NamedNodeMap attrs = element.getAttributes();
+        int attrCount = attrs.getLength();
+
+        // Explicit namespace declarations first.
+        for (int i = 0; i < attrCount; ++i) {
+            Attr attr = (Attr) attrs.item(i);
+            if (XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+                String prefix = attr.getName().equals("xmlns")?
+                    "" : attr.getLocalName();
+                String ns = attr.getValue();
+                if (!ns.equals(lookupNamespace(prefix))) {
+                    declare(prefix, ns);
+
+                    out.write(' ');
+                    out.write(attr.getName());
+                    out.write("=\"");
+                    escape(ns, /*inAttr*/ true);
+                    out.write('"');
+                }
+            }
+        }
+
+        // Namespace of the element itself.
+        ensureDeclared(element.getPrefix(), element.getNamespaceURI());
+
+        for (int i = 0; i < attrCount; ++i) {
+            Attr attr = (Attr) attrs.item(i);
+
+            String ns = attr.getNamespaceURI();
+            if (XMLNS_ATTRIBUTE_NS_URI.equals(ns)) {
+                continue;
+            }
+
+            String attrName = attr.getName();
+            if (ns != null && ns.length() > 0) {
+                String prefix = attr.getPrefix();
+                if (prefix == null || prefix.length() == 0) {
+                    // Cannot be in the default namespace.
+                    prefix = findPrefix(ns);
+                    if (prefix == null) {
+                        prefix = newPrefix();
+                    }
+                    attrName = prefix + ":" + attr.getLocalName();
+                }
+                ensureDeclared(prefix, ns);
+            }
+
+            out.write(' ');
+            out.write(attrName);
+            out.write("=\"");
+            escape(attr.getValue(), /*inAttr*/ true);
+            out.write('"');
+        }
+
+        startTagOpen = true;
+    }
+
+    /**
+     * Writes the end tag of the element passed to the last invocation
+     * of {@link #startElement}.
+     */
+    public void endElement()
+        throws IOException {
+        int last = openNames.size() - 1;
+        String qName = openNames.remove(last);
+
+        if (startTagOpen) {
+            out.write("/>");
+            startTagOpen = false;
+        } else {
+            out.write("</");
+            out.write(qName);
+            out.write('>');
+        }
+
+        int scope = scopes.remove(last);
+        for (int i = bindings.size() - 1; i >= scope; --i) {
+            bindings.remove(i);
+        }
+    }
+
+    /**
+     * Writes specified node and all its descendants.
+     */
+    public void writeNode(Node node)
+        throws IOException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            startElement((Element) node);
+            writeChildren(node);
+            endElement();
+            break;
+        case Node.TEXT_NODE:
+            closeStartTag();
+            escape(node.getNodeValue(), /*inAttr*/ false);
+            break;
+        case Node.CDATA_SECTION_NODE:
+            closeStartTag();
+            out.write("<![CDATA[");
+            out.write(node.getNodeValue().replace("]]>", "]]]]><![CDATA[>"));
+            out.write("]]>");
+            break;
+        case Node.COMMENT_NODE:
+            closeStartTag();
+            out.write("<!--");
+            out.write(node.getNodeValue());
+            out.write("-->");
+            break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            {
+                closeStartTag();
+                ProcessingInstruction pi = (ProcessingInstruction) node;
+                out.write("<?");
+                out.write(pi.getTarget());
+                String data = pi.getData();
+                if (data != null && data.length() > 0) {
+                    out.write(' ');
+                    out.write(data);
+                }
+                out.write("?>");
+            }
+            break;
+        case Node.ENTITY_REFERENCE_NODE:
+        case Node.DOCUMENT_FRAGMENT_NODE:
+            writeChildren(node);
+            break;
+        }
+    }
+
+    /**
+     * Writes all the child nodes of specified node.
+     */
+    public void writeChildren(Node node)
+        throws IOException {
+        Node child = node.getFirstChild();
+        while (child != null) {
+            writeNode(child);
+            child = child.getNextSibling();
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying file.
+     * Closes any element left open.
+     */
+    public void close()
+        throws IOException {
+        try {
+            while (openNames.size() > 0) {
+                endElement();
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    // -----------------------------------------------------------------------
+
+    private void closeStartTag()
+        throws IOException {
+        if (startTagOpen) {
+            out.write('>');
+            startTagOpen = false;
+        }
+    }
+
+    private String lookupNamespace(String prefix) {
+        if ("xml".equals(prefix)) {
+            return XML_NS_URI;
+        }
+
+        for (int i = bindings.size() - 2; i >= 0; i -= 2) {
+            if (bindings.get(i).equals(prefix)) {
+                return bindings.get(i+1);
+            }
+        }
+
+        return prefix.length() == 0? "" : null;
+    }
+
+    private String findPrefix(String ns) {
+        if (XML_NS_URI.equals(ns)) {
+            return "xml";
+        }
+
+        for (int i = bindings.size() - 1; i >= 1; i -= 2) {
+            String prefix = bindings.get(i-1);
+            if (bindings.get(i).equals(ns) &&
+                prefix.length() > 0 &&
+                ns.equals(lookupNamespace(prefix))) {
+                return prefix;
+            }
+        }
+
+        return null;
+    }
+
+    private String newPrefix() {
+        int i = 0;
+        String prefix;
+        do {
+            prefix = "ns" + i++;
+        } while (lookupNamespace(prefix) != null);
+        return prefix;
+    }
+
+    private void declare(String prefix, String ns) {
+        bindings.add(prefix);
+        bindings.add(ns);
+    }
+
+    private void ensureDeclared(String prefix, String ns)
+        throws IOException {
+        if (prefix == null) {
+            prefix = "";
+        }
+        if (ns == null) {
+            ns = "";
+        }
+
+        if ("xml".equals(prefix) || ns.equals(lookupNamespace(prefix))) {
+            return;
+        }
+
+        declare(prefix, ns);
+
+        if (prefix.length() == 0) {
+            out.write(" xmlns=\"");
+        } else {
+            out.write(" xmlns:");
+            out.write(prefix);
+            out.write("=\"");
+        }
+        escape(ns, /*inAttr*/ true);
+        out.write('"');
+    }
+
+    private void escape(String text, boolean inAttr)
+        throws IOException {
+        int length = text.length();
+        int start = 0;
+
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+
+            String ref;
+            switch (c) {
+            case '<':
+                ref = "&lt;";
+                break;
+            case '>':
+                ref = "&gt;";
+                break;
+            case '&':
+                ref = "&amp;";
+                break;
+            case '\r':
+                ref = "&#xD;";
+                break;
+            case '"':
+                ref = inAttr? "&quot;" : null;
+                break;
+            case '\n':
+                ref = inAttr? "&#xA;" : null;
+                break;
+            case '\t':
+                ref = inAttr? "&#x9;" : null;
+                break;
+            default:
+                ref = null;
+            }
+
+            if (ref != null) {
+                if (i > start) {
+                    out.write(text, start, i - start);
+                }
+                out.write(ref);
+                start = i + 1;
+            }
+        }
+
+        if (length > start) {
+            out.write(text, start, length - start);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.util;
+
+import java.io.IOException;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import org.w3c.dom.Node;
+import com.xmlmind.util.FileUtil;
+
+/**
+ * Records, for each named phase of a conversion, the elapsed time,
+ * the CPU time, the number of allocated bytes and the number of processed
+ * documents and elements.
+ * <p>A phase may be measured several times (e.g. once per transformed
+ * file), in which case its measures are summed.
+ * <p>In addition to the phases, a report records the cost of each source
+ * document (parse time, conrefs and keyrefs resolved, elements after
+ * transclusion) and of each chunk (size of the <tt>.ditac</tt> file,
+ * transform time, size of the output file). The items having the highest
+ * costs are listed in the saved report.
+ * <p>This class is thread-safe. However a {@link Measure} must be
+ * started and ended by the same thread.
+ */
+public final class PerfReport {
+    /**
+     * The totals of a named phase.
+     */
+    public static final class Phase {
+        /**
+         * The name of this phase.
+         */
+        public final String name;
+
+        /**
+         * The number of times this phase has been measured.
+         */
+        public int count;
+
+        /**
+         * The elapsed time in nanoseconds.
+         */
+        public long wallTime;
+
+        /**
+         * The CPU time in nanoseconds. -1 if not supported by the JVM.
+         */
+        public long cpuTime;
+
+        /**
+         * The number of bytes allocated on the heap.
+         * -1 if not supported by the JVM.
+         */
+        public long allocatedBytes;
+
+        /**
+         * The number of processed documents. -1 if unknown.
+         */
+        public long documents;
+
+        /**
+         * The number of processed elements. -1 if unknown.
+         */
+        public long elements;
+
+        private Phase(String name) {
+            this.name = name;
+            cpuTime = allocatedBytes = documents = elements = -1;
+        }
+
+        private static long add(long total, long value) {
+            if (value < 0) {
+                return total;
+            }
+            return (total < 0)? value : total + value;
+        }
+    }
+
+    /**
+     * The counters of a source document or of a chunk.
+     */
+    public static final class Cost {
+        /**
+         * The location of the source document or
+         * the basename of the <tt>.ditac</tt> file of the chunk.
+         */
+        public final String item;
+
+        /**
+         * The values of the counters, indexed by counter
+         * (e.g. {@link #PARSE_TIME}). -1 means: not recorded.
+         */
+        public final long[] counters;
+
+        private Cost(String item, int counterCount) {
+            this.item = item;
+            counters = new long[counterCount];
+            Arrays.fill(counters, -1);
+        }
+    }
+
+    /**
+     * A measure in progress. Obtained using {@link PerfReport#begin}.
+     */
+    public final class Measure {
+        private final String name;
+        private final long startWallTime;
+        private final long startCPUTime;
+        private final long startAllocatedBytes;
+
+        private Measure(String name) {
+            this.name = name;
+            startWallTime = System.nanoTime();
+            startCPUTime = getCPUTime();
+            startAllocatedBytes = getAllocatedBytes();
+        }
+
+        /**
+         * Ends this measure. Same as <code>end(-1, -1)</code>.
+         */
+        public void end() {
+            end(-1, -1);
+        }
+
+        /**
+         * Ends this measure.
+         *
+         * @param documents the number of documents processed during this
+         * measure. -1 if unknown.
+         * @param elements the number of elements processed during this
+         * measure. -1 if unknown.
+         */
+        public void end(long documents, long elements) {
+            long wallTime = System.nanoTime() - startWallTime;
+
+            long cpuTime = -1;
+            if (startCPUTime >= 0) {
+                cpuTime = getCPUTime() - startCPUTime;
+            }
+
+            long allocatedBytes = -1;
+            if (startAllocatedBytes >= 0) {
+                allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+            }
+
+            add(name, wallTime, cpuTime, allocatedBytes, documents, elements);
+        }
+    }
+
+    /**
+     * Topic counter: the time spent parsing a source document,
+     * in nanoseconds.
+     */
+    public static final int PARSE_TIME = 0;
+
+    /**
+     * Topic counter: the number of conrefs resolved in a source document.
+     */
+    public static final int CONREFS = 1;
+
+    /**
+     * Topic counter: the number of keyrefs and conkeyrefs resolved in
+     * a source document.
+     */
+    public static final int KEYREFS = 2;
+
+    /**
+     * Topic counter: the number of elements contained in a source document
+     * after transclusion.
+     */
+    public static final int ELEMENTS = 3;
+
+    /**
+     * The names of the topic counters, as found in the saved report.
+     */
+    public static final String[] TOPIC_COUNTERS = {
+        "parseTime", "conrefs", "keyrefs", "elements"
+    };
+
+    /**
+     * Chunk counter: the size in bytes of the <tt>.ditac</tt> file.
+     */
+    public static final int DITAC_BYTES = 0;
+
+    /**
+     * Chunk counter: the time spent transforming the <tt>.ditac</tt> file,
+     * in nanoseconds.
+     */
+    public static final int TRANSFORM_TIME = 1;
+
+    /**
+     * Chunk counter: the size in bytes of the file created by
+     * the transform.
+     */
+    public static final int OUTPUT_BYTES = 2;
+
+    /**
+     * The names of the chunk counters, as found in the saved report.
+     */
+    public static final String[] CHUNK_COUNTERS = {
+        "ditacBytes", "transformTime", "outputBytes"
+    };
+
+    private final long startTime;
+    private final ArrayList<Phase> phaseList;
+    private final HashMap<String,Phase> phaseMap;
+    private final HashMap<String,Cost> topicCosts;
+    private final HashMap<String,Cost> chunkCosts;
+    private int topCount;
+
+    private static final ThreadMXBean threadBean =
+        ManagementFactory.getThreadMXBean();
+    private static Method allocatedBytesMethod;
+    static {
+        try {
+            if (threadBean.isCurrentThreadCpuTimeSupported() &&
+                !threadBean.isThreadCpuTimeEnabled()) {
+                threadBean.setThreadCpuTimeEnabled(true);
+            }
+        } catch (Exception ignored) {}
+
+        // Specific to HotSpot and OpenJ9.
+        try {
+            Class<?> cls = Class.forName("com.sun.management.ThreadMXBean");
+            if (cls.isInstance(threadBean)) {
+                allocatedBytesMethod =
+                    cls.getMethod("getThreadAllocatedBytes", Long.TYPE);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Constructs an empty report. The total elapsed time of the report
+     * is measured from this point.
+     */
+    public PerfReport() {
+        startTime = System.nanoTime();
+        phaseList = new ArrayList<Phase>();
+        phaseMap = new HashMap<String,Phase>();
+        topicCosts = new HashMap<String,Cost>();
+        chunkCosts = new HashMap<String,Cost>();
+        topCount = 10;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Starts measuring the phase having specified name.
+     */
+    public Measure begin(String name) {
+        return new Measure(name);
+    }
+
+    private synchronized void add(String name, long wallTime, long cpuTime,
+                                  long allocatedBytes,
+                                  long documents, long elements) {
+        Phase phase = phaseMap.get(name);
+        if (phase == null) {
+            phase = new Phase(name);
+            phaseMap.put(name, phase);
+            phaseList.add(phase);
+        }
+
+        ++phase.count;
+        phase.wallTime += wallTime;
+        phase.cpuTime = Phase.add(phase.cpuTime, cpuTime);
+        phase.allocatedBytes = Phase.add(phase.allocatedBytes, allocatedBytes);
+        phase.documents = Phase.add(phase.documents, documents);
+        phase.elements = Phase.add(phase.elements, elements);
+    }
+
+    /**
+     * Returns a copy of all the phases measured so far, in the order of
+     * their first measure.
+     */
+    public synchronized Phase[] getPhases() {
+        Phase[] phases = new Phase[phaseList.size()];
+        for (int i = 0; i < phases.length; ++i) {
+            Phase phase = phaseList.get(i);
+
+            Phase copy = new Phase(phase.name);
+            copy.count = phase.count;
+            copy.wallTime = phase.wallTime;
+            copy.cpuTime = phase.cpuTime;
+            copy.allocatedBytes = phase.allocatedBytes;
+            copy.documents = phase.documents;
+            copy.elements = phase.elements;
+            phases[i] = copy;
+        }
+        return phases;
+    }
+
+    /**
+     * Specifies the number of items listed for each counter in
+     * the saved report. Default: 10.
+     */
+    public void setTopCount(int count) {
+        topCount = count;
+    }
+
+    /**
+     * Returns the number of items listed for each counter in
+     * the saved report.
+     */
+    public int getTopCount() {
+        return topCount;
+    }
+
+    /**
+     * Adds specified value to specified counter of specified source document.
+     *
+     * @param location the location of the source document
+     * (see {@link com.xmlmind.util.URLUtil#toLabel})
+     * @param counter one of {@link #PARSE_TIME}, {@link #CONREFS}, 
+     * {@link #KEYREFS}, {@link #ELEMENTS}
+     * @param value value to be added
+     */
+    public void addTopicCost(String location, int counter, long value) {
+        addCost(topicCosts, TOPIC_COUNTERS.length, location, counter, value);
+    }
+
+    /**
+     * Adds specified value to specified counter of specified chunk.
+     *
+     * @param ditacName the basename of the <tt>.ditac</tt> file of the chunk
+     * @param counter one of {@link #DITAC_BYTES}, {@link #TRANSFORM_TIME}, 
+     * {@link #OUTPUT_BYTES}
+     * @param value value to be added
+     */
+    public void addChunkCost(String ditacName, int counter, long value) {
+        addCost(chunkCosts, CHUNK_COUNTERS.length, ditacName, counter, value);
+    }
+
+    private synchronized void addCost(HashMap<String,Cost> costs, 
+                                      int counterCount,
+                                      String item, int counter, long value) {
+        Cost cost = costs.get(item);
+        if (cost == null) {
+            cost = new Cost(item, counterCount);
+            costs.put(item, cost);
+        }
+
+        cost.counters[counter] = Phase.add(cost.counters[counter], value);
+    }
+
+    /**
+     * Returns a copy of the source documents having the highest values for
+     * specified counter, highest first. At most {@link #getTopCount} 
+     * documents are returned.
+     */
+    public Cost[] getTopTopics(int counter) {
+        return getTopCosts(topicCosts, counter);
+    }
+
+    /**
+     * Returns a copy of the chunks having the highest values for
+     * specified counter, highest first. At most {@link #getTopCount} 
+     * chunks are returned.
+     */
+    public Cost[] getTopChunks(int counter) {
+        return getTopCosts(chunkCosts, counter);
+    }
+
+    private synchronized Cost[] getTopCosts(HashMap<String,Cost> costs,
+                                            final int counter) {
+        ArrayList<Cost> list = new ArrayList<Cost>();
+        for (Cost cost : costs.values()) {
+            if (cost.counters[counter] >= 0) {
+                list.add(cost);
+            }
+        }
+
+        Cost[] sorted = new Cost[list.size()];
+        list.toArray(sorted);
+        Arrays.sort(sorted, new Comparator<Cost>() {
+            public int compare(Cost cost1, Cost cost2) {
+                long value1 = cost1.counters[counter];
+                long value2 = cost2.counters[counter];
+                if (value1 != value2) {
+                    return (value1 > value2)? -1 : 1;
+                }
+                return cost1.item.compareTo(cost2.item);
+            }
+        });
+
+        int count = Math.min(sorted.length, Math.max(0, topCount));
+        Cost[] top = new Cost[count];
+        for (int i = 0; i < count; ++i) {
+            Cost cost = sorted[i];
+
+            Cost copy = new Cost(cost.item, cost.counters.length);
+            System.arraycopy(cost.counters, 0, copy.counters, 0, 
+                             cost.counters.length);
+            top[i] = copy;
+        }
+        return top;
+    }
+
+    private static long getCPUTime() {
+        try {
+            return threadBean.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException ignored) {
+            return -1;
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        if (allocatedBytesMethod == null) {
+            return -1;
+        }
+
+        try {
+            Object bytes = allocatedBytesMethod.invoke(
+                threadBean, Long.valueOf(Thread.currentThread().getId()));
+            return ((Long) bytes).longValue();
+        } catch (Exception ignored) {
+            return -1;
+        }
+    }
+
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the number of elements contained in specified node,
+     * including specified node itself if it is an element.
+     * <p>Convenience method used to fill the <tt>elements</tt> field
+     * of a phase.
+     */
+    public static long countElements(Node node) {
+        long count = 0;
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            ++count;
+        }
+
+        Node child = node.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                count += countElements(child);
+            }
+            child = child.getNextSibling();
+        }
+
+        return count;
+    }
+
+    // -----------------------------------------------------------------------
+    // Output
+    // -----------------------------------------------------------------------
+
+    /**
+     * Saves this report in JSON format to specified file.
+     *
+     * @exception IOException if an I/O problem occurs
+     */
+    public void save(File file)
+        throws IOException {
+        FileUtil.saveString(toJSON(), file, "UTF-8");
+    }
+
+    /**
+     * Returns this report in JSON format.
+     * Times are expressed in nanoseconds.
+     */
+    public String toJSON() {
+        long wallTime = System.nanoTime() - startTime;
+        Runtime runtime = Runtime.getRuntime();
+
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("{\n");
+        buffer.append("  \"wallTime\": ").append(wallTime).append(",\n");
+        buffer.append("  \"heap\": {\n");
+        buffer.append("    \"used\": ");
+        buffer.append(runtime.totalMemory() - runtime.freeMemory());
+        buffer.append(",\n");
+        buffer.append("    \"peak\": ").append(getPeakHeapUsage());
+        buffer.append(",\n");
+        buffer.append("    \"max\": ").append(runtime.maxMemory());
+        buffer.append("\n");
+        buffer.append("  },\n");
+        buffer.append("  \"phases\": [");
+
+        Phase[] phases = getPhases();
+        for (int i = 0; i < phases.length; ++i) {
+            Phase phase = phases[i];
+
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append("\n    {\n");
+            buffer.append("      \"name\": \"");
+            buffer.append(escapeJSON(phase.name)).append("\",\n");
+            buffer.append("      \"count\": ").append(phase.count);
+            buffer.append(",\n");
+            buffer.append("      \"wallTime\": ").append(phase.wallTime);
+            buffer.append(",\n");
+            buffer.append("      \"cpuTime\": ").append(phase.cpuTime);
+            buffer.append(",\n");
+            buffer.append("      \"allocatedBytes\": ");
+            buffer.append(phase.allocatedBytes).append(",\n");
+            buffer.append("      \"documents\": ").append(phase.documents);
+            buffer.append(",\n");
+            buffer.append("      \"elements\": ").append(phase.elements);
+            buffer.append("\n    }");
+        }
+
+        buffer.append("\n  ],\n");
+        buffer.append("  \"topTopics\": ");
+        appendTopCosts(TOPIC_COUNTERS, true, buffer);
+        buffer.append(",\n");
+        buffer.append("  \"topChunks\": ");
+        appendTopCosts(CHUNK_COUNTERS, false, buffer);
+        buffer.append("\n");
+        buffer.append("}\n");
+        return buffer.toString();
+    }
+
+    private void appendTopCosts(String[] counterNames, boolean topics,
+                                StringBuilder buffer) {
+        buffer.append('{');
+
+        for (int i = 0; i < counterNames.length; ++i) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append("\n    \"").append(counterNames[i]);
+            buffer.append("\": [");
+
+            Cost[] costs = topics? getTopTopics(i) : getTopChunks(i);
+            for (int j = 0; j < costs.length; ++j) {
+                Cost cost = costs[j];
+
+                if (j > 0) {
+                    buffer.append(',');
+                }
+                buffer.append("\n      { \"item\": \"");
+                buffer.append(escapeJSON(cost.item)).append('"');
+                for (int k = 0; k < counterNames.length; ++k) {
+                    buffer.append(", \"").append(counterNames[k]);
+                    buffer.append("\": ").append(cost.counters[k]);
+                }
+                buffer.append(" }");
+            }
+
+            buffer.append((costs.length > 0)? "\n    ]" : "]");
+        }
+
+        buffer.append("\n  }");
+    }
+
+    private static String escapeJSON(String s) {
+        StringBuilder buffer = new StringBuilder();
+
+        int count = s.length();
+        for (int i = 0; i < count; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                buffer.append('\\');
+                buffer.append(c);
+                break;
+            default:
+                if (c < ' ') {
+                    buffer.append(String.format("\\u%04x", (int) c));
+                } else {
+                    buffer.append(c);
+                }
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Returns a human-readable summary of this report.
+     */
+    public String toSummary() {
+        long wallTime = System.nanoTime() - startTime;
+
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format(
+            "%-28s %6s %10s %10s %10s %8s %10s\n",
+            "Phase", "Count", "Wall(ms)", "CPU(ms)", "Alloc(Mb)",
+            "Docs", "Elements"));
+
+        for (Phase phase : getPhases()) {
+            String name = phase.name;
+            if (name.length() > 28) {
+                name = name.substring(0, 25) + "...";
+            }
+
+            buffer.append(String.format(
+                "%-28s %6d %10s %10s %10s %8s %10s\n",
+                name, phase.count,
+                millis(phase.wallTime), millis(phase.cpuTime),
+                megabytes(phase.allocatedBytes),
+                count(phase.documents), count(phase.elements)));
+        }
+
+        appendTopCosts("topics", TOPIC_COUNTERS, true, buffer);
+        appendTopCosts("chunks", CHUNK_COUNTERS, false, buffer);
+
+        buffer.append(String.format(
+            "Total: %sms, peak heap: %sMb, max. heap: %sMb",
+            millis(wallTime), megabytes(getPeakHeapUsage()),
+            megabytes(Runtime.getRuntime().maxMemory())));
+        return buffer.toString();
+    }
+
+    private void appendTopCosts(String label, String[] counterNames,
+                                boolean topics, StringBuilder buffer) {
+        for (int i = 0; i < counterNames.length; ++i) {
+            Cost[] costs = topics? getTopTopics(i) : getTopChunks(i);
+            if (costs.length == 0) {
+                continue;
+            }
+
+            boolean isTime = counterNames[i].endsWith("Time");
+            buffer.append(String.format("Top %s by %s%s:\n", 
+                                        label, counterNames[i],
+                                        isTime? "(ms)" : ""));
+
+            for (Cost cost : costs) {
+                long value = cost.counters[i];
+                buffer.append(String.format(
+                    "%10s  %s\n",
+                    isTime? millis(value) : count(value), cost.item));
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return (nanos < 0)? "-" : Long.toString(nanos/1000000L);
+    }
+
+    private static String megabytes(long bytes) {
+        return (bytes < 0)? "-" : String.format("%.1f", bytes/1048576.0);
+    }
+
+    private static String count(long count) {
+        return (count < 0)? "-" : Long.toString(count);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.xslt;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.TransformerFactoryImpl;
+import net.sf.saxon.om.NodeInfo;
+import com.xmlmind.util.URLUtil;
+
+/**
+ * A pool of read-only documents, shared by all the Transformers created
+ * by a Saxon 9.7+ TransformerFactory.
+ * <p>Saxon caches the documents loaded using <tt>doc()</tt>
+ * and <tt>document()</tt> only during a single transformation.
+ * The URI resolvers returned by {@link #newURIResolver} allow
+ * to parse the documents which are local files (e.g. the message catalogs,
+ * the <tt>.ditac_lists</tt> file) only once, and not once per transformed
+ * <tt>.ditac</tt> file.
+ * <p>A pooled document is discarded when the last modification date or
+ * the size of its file changes.
+ * <p>This class is thread-safe.
+ */
+public final class DocumentPool {
+    private static final class PoolEntry {
+        public final NodeInfo document;
+        public final long fileDate;
+        public final long fileSize;
+
+        public PoolEntry(NodeInfo document, long fileDate, long fileSize) {
+            this.document = document;
+            this.fileDate = fileDate;
+            this.fileSize = fileSize;
+        }
+
+        public boolean isUpToDate(File file) {
+            return (file.lastModified() == fileDate &&
+                    file.length() == fileSize);
+        }
+    }
+
+    private final Configuration config;
+    private final LinkedHashMap<String,PoolEntry> pool;
+
+    /**
+     * Default maximum number of documents contained in a pool.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Equivalent to {@link #DocumentPool(TransformerFactory, int)
+     * DocumentPool(factory, DEFAULT_CAPACITY)}.
+     */
+    public DocumentPool(TransformerFactory factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty pool.
+     *
+     * @param factory the TransformerFactory creating the Transformers
+     * which are to use this pool.
+     * This object must be an instance of
+     * <tt>net.sf.saxon.TransformerFactoryImpl</tt>.
+     * @param capacity the maximum number of documents contained in this pool.
+     * When this number is exceeded, the least recently used document
+     * is discarded.
+     */
+    public DocumentPool(TransformerFactory factory, final int capacity) {
+        // Documents may only be shared by the Transformers using
+        // the same Configuration (and hence the same NamePool).
+        config = ((TransformerFactoryImpl) factory).getConfiguration();
+
+        pool = new LinkedHashMap<String,PoolEntry>(16, 0.75f,
+                                                   /*accessOrder*/ true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String,PoolEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns an URI resolver which uses specified resolver to resolve
+     * URIs, then returns the pooled document, if any, rather than
+     * a Source to be parsed.
+     * <p>Only local files, referenced by URIs not having a fragment,
+     * are pooled.
+     *
+     * @param resolver the URI resolver used to resolve URIs
+     * (e.g. a resolver using XML catalogs). May be <code>null</code>.
+     * @return a new URI resolver, to be set on a Transformer using
+     * <code>Transformer.setURIResolver</code>
+     */
+    public URIResolver newURIResolver(final URIResolver resolver) {
+        return new URIResolver() {
+            public Source resolve(String href, String base)
+                throws TransformerException {
+                Source source = null;
+                if (resolver != null) {
+                    source = resolver.resolve(href, base);
+                }
+
+                return getDocument(href, base, source);
+            }
+        };
+    }
+
+    /**
+     * Discards all the documents contained in this pool.
+     */
+    public synchronized void clear() {
+        pool.clear();
+    }
+
+    private Source getDocument(String href, String base, Source source)
+        throws TransformerException {
+        String location = (source == null)? null : source.getSystemId();
+        if (location == null) {
+            if (source != null) {
+                // Not a plain document reference. Do not pool it.
+                return source;
+            }
+
+            try {
+                URL baseURL = (base == null)? null : URLUtil.createURL(base);
+                location = URLUtil.createURL(baseURL, href).toExternalForm();
+            } catch (MalformedURLException ignored) {
+                // Let the XSLT engine report the error.
+                return null;
+            }
+        }
+
+        URL url;
+        try {
+            url = URLUtil.createURL(location);
+        } catch (MalformedURLException ignored) {
+            return source;
+        }
+
+        if (url.getRef() != null) {
+            return source;
+        }
+
+        File file = URLUtil.urlToFile(url);
+        if (file == null) {
+            return source;
+        }
+
+        synchronized (this) {
+            PoolEntry entry = pool.get(location);
+            if (entry != null) {
+                if (entry.isUpToDate(file)) {
+                    return entry.document;
+                }
+                pool.remove(location);
+            }
+        }
+
+        if (!file.isFile()) {
+            // Let the XSLT engine report the error.
+            return source;
+        }
+
+        if (source == null) {
+            source = new StreamSource(location);
+        }
+
+        // Get the date before parsing in order to detect a change made
+        // while parsing.
+        long fileDate = file.lastModified();
+        long fileSize = file.length();
+
+        // Parsed out of the lock. At worst, the same document is parsed
+        // twice by two concurrent transformations.
+        NodeInfo document = config.buildDocumentTree(source).getRootNode();
+        PoolEntry entry = new PoolEntry(document, fileDate, fileSize);
+
+        synchronized (this) {
+            pool.put(location, entry);
+        }
+        return entry.document;
+    }
+}
@@ -9,6 +9,8 @@
 package com.xmlmind.ditac.xslt;
 
 import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.xml.transform.TransformerFactory;
 import net.sf.saxon.trans.XPathException;
 import net.sf.saxon.value.SequenceType;
@@ -18,6 +20,9 @@ import net.sf.saxon.om.StructuredQName;
 import net.sf.saxon.om.SequenceIterator;
 import net.sf.saxon.om.Sequence;
 import net.sf.saxon.om.SequenceTool;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.type.Type;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.lib.ExtensionFunctionDefinition;
@@ -376,9 +381,14 @@ public final class ExtensionFunctions {
     public static final class HighlightDefinition 
                         extends ExtensionFunctionDefinition {
         private final Method highlightMethod;
+        private final HighlightCache cache;
 
         public HighlightDefinition(Method highlightMethod) {
             this.highlightMethod = highlightMethod;
+
+            // Shared by all the transforms using the same TransformerFactory,
+            // whatever the output format.
+            cache = new HighlightCache(HighlightCache.DEFAULT_CAPACITY);
         }
 
         public StructuredQName getFunctionQName() {
@@ -407,15 +417,96 @@ public final class ExtensionFunctions {
         }
 
         public ExtensionFunctionCall makeCallExpression() {
-            return new HighlightCall(highlightMethod);
+            return new HighlightCall(highlightMethod, cache);
+        }
+    }
+
+    /**
+     * The results of <tt>Highlight:highlight</tt>, keyed by their
+     * arguments. Only arguments consisting in nothing but text nodes
+     * (the common case) are cached.
+     * <p>A cached result, an immutable sequence of nodes, may be returned
+     * to any transform using the same Saxon Configuration.
+     */
+    public static final class HighlightCache {
+        public static final int DEFAULT_CAPACITY = 512;
+
+        /**
+         * Longer code blocks are not cached.
+         */
+        public static final int MAX_KEY_LENGTH = 65536;
+
+        private final LinkedHashMap<String,Sequence> cache;
+
+        public HighlightCache(final int capacity) {
+            cache = new LinkedHashMap<String,Sequence>(64, 0.75f,
+                                                       /*accessOrder*/ true) {
+                @Override
+                protected boolean removeEldestEntry(
+                                              Map.Entry<String,Sequence> e) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public synchronized Sequence get(String key) {
+            return cache.get(key);
+        }
+
+        public synchronized void put(String key, Sequence result) {
+            cache.put(key, result);
+        }
+
+        /**
+         * Returns the key corresponding to specified arguments;
+         * <code>null</code> if the result of <tt>Highlight:highlight</tt>
+         * is not to be cached.
+         */
+        public static String getKey(String hlCode, Sequence nodes, 
+                                    String configFilename)
+            throws XPathException {
+            StringBuilder key = new StringBuilder();
+            key.append(hlCode);
+            key.append('\u0000');
+            if (configFilename != null) {
+                key.append(configFilename);
+            }
+
+            SequenceIterator iter = nodes.iterate();
+            Item item;
+            while ((item = iter.next()) != null) {
+                if (!(item instanceof NodeInfo)) {
+                    return null;
+                }
+                NodeInfo node = (NodeInfo) item;
+
+                if (node.getNodeKind() != Type.TEXT) {
+                    // For example, a ph having an ID.
+                    return null;
+                }
+                key.append("\u0000#");
+                key.append(node.getStringValue());
+
+                if (key.length() > MAX_KEY_LENGTH) {
+                    return null;
+                }
+            }
+
+            return key.toString();
         }
     }
 
     public static final class HighlightCall extends ExtensionFunctionCall {
         private final Method highlightMethod;
+        private final HighlightCache cache;
 
         public HighlightCall(Method highlightMethod) {
+            this(highlightMethod, null);
+        }
+
+        public HighlightCall(Method highlightMethod, HighlightCache cache) {
             this.highlightMethod = highlightMethod;
+            this.cache = cache;
         }
 
         public Sequence call(XPathContext context, Sequence[] arguments)
@@ -423,7 +514,9 @@ public final class ExtensionFunctions {
             StringValue arg0 = (StringValue) arguments[0].iterate().next();
             String hlCode = arg0.getStringValue();
 
-            SequenceIterator nodes = arguments[1].iterate();
+            // Grounded because it may be iterated twice.
+            Sequence nodes = 
+                SequenceTool.toGroundedValue(arguments[1].iterate());
 
             String configFilename = null;
             if (arguments.length > 2) {
@@ -431,12 +524,27 @@ public final class ExtensionFunctions {
                 configFilename = arg2.getStringValue();
             }
 
+            String key = null;
+            if (cache != null) {
+                key = HighlightCache.getKey(hlCode, nodes, configFilename);
+                if (key != null) {
+                    Sequence cached = cache.get(key);
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+            }
+
             try {
                 SequenceIterator result = (SequenceIterator) 
-                    highlightMethod.invoke(null, context,
-                                           hlCode, nodes, configFilename);
+                    highlightMethod.invoke(null, context, hlCode, 
+                                           nodes.iterate(), configFilename);
 
-                return SequenceTool.toGroundedValue(result);
+                Sequence grounded = SequenceTool.toGroundedValue(result);
+                if (key != null) {
+                    cache.put(key, grounded);
+                }
+                return grounded;
             } catch (Exception shouldNotHappen) {
                 shouldNotHappen.printStackTrace();
 
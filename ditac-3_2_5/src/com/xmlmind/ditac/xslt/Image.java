@@ -16,6 +16,8 @@ import java.util.zip.GZIPInputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageIO;
 import javax.imageio.stream.FileCacheImageInputStream;
@@ -44,6 +46,85 @@ import javax.xml.parsers.SAXParserFactory;
     }
 
     public static int[] getSize(String location) {
+        long stamp = getStamp(location);
+        if (stamp != -1L) {
+            synchronized (sizeCache) {
+                CachedSize cached = sizeCache.get(location);
+                if (cached != null && cached.stamp == stamp) {
+                    return cached.size;
+                }
+            }
+        }
+
+        int[] size = doGetSize(location);
+
+        if (stamp != -1L) {
+            synchronized (sizeCache) {
+                sizeCache.put(location, new CachedSize(stamp, size));
+            }
+        }
+        return size;
+    }
+
+    // ------------------------------
+    // Cache
+    // ------------------------------
+
+    /**
+     * The sizes of the images, shared by all the conversions run 
+     * in the same Java VM. Getting the width then the height of 
+     * an image in the XSLT stylesheets means loading this image just once.
+     */
+    private static final int CACHE_CAPACITY = 1000;
+
+    private static final class CachedSize {
+        public final long stamp;
+        public final int[] size;
+
+        public CachedSize(long stamp, int[] size) {
+            this.stamp = stamp;
+            this.size = size;
+        }
+    }
+
+    private static final LinkedHashMap<String,CachedSize> sizeCache = 
+        new LinkedHashMap<String,CachedSize>(64, 0.75f, /*accessOrder*/ true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<String,CachedSize> eldest) {
+                return (size() > CACHE_CAPACITY);
+            }
+        };
+
+    /**
+     * Returns a number which changes each time the image file is modified;
+     * -1 if the image is not a file (sizes of remote images are not 
+     * cached).
+     */
+    private static long getStamp(String location) {
+        if (!location.startsWith("file:")) {
+            return -1L;
+        }
+
+        File file;
+        try {
+            file = new File(new URI(location));
+        } catch (Exception ignored) {
+            return -1L;
+        }
+
+        long lastModified = file.lastModified();
+        if (lastModified == 0L) {
+            // Does not exist.
+            return -1L;
+        }
+        return (31L * lastModified) + file.length();
+    }
+
+    // ------------------------------
+    // doGetSize
+    // ------------------------------
+
+    private static int[] doGetSize(String location) {
         int[] size = null;
 
         try {
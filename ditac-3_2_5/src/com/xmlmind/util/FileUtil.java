@@ -21,6 +21,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Locale;
 import java.text.DecimalFormatSymbols;
 import java.text.DecimalFormat;
@@ -997,7 +999,28 @@ public final class FileUtil {
         throws IOException {
         FileInputStream src = new FileInputStream(srcFile);
         try {
-            copyFile(src, dstFile);
+            FileOutputStream dst = new FileOutputStream(dstFile);
+            try {
+                // Let the OS copy the bytes (when it knows how to do that)
+                // rather than copying them through a Java buffer.
+                FileChannel srcChannel = src.getChannel();
+                FileChannel dstChannel = dst.getChannel();
+
+                long size = srcChannel.size();
+                long position = 0;
+                while (position < size) {
+                    long count = srcChannel.transferTo(position, 
+                                                       size - position,
+                                                       dstChannel);
+                    if (count <= 0) {
+                        // Should not happen. File truncated while copying it?
+                        break;
+                    }
+                    position += count;
+                }
+            } finally {
+                dst.close();
+            }
         } finally {
             src.close();
         }
@@ -1012,6 +1035,12 @@ public final class FileUtil {
      */
     public static void copyFile(URL url, File dstFile) 
         throws IOException {
+        File srcFile = URLUtil.urlToFile(url);
+        if (srcFile != null) {
+            copyFile(srcFile, dstFile);
+            return;
+        }
+
         InputStream src = url.openStream();
         try {
             copyFile(src, dstFile);
@@ -1074,6 +1103,68 @@ public final class FileUtil {
         out.flush();
     }
 
+    /**
+     * Returns <code>true</code> if specified files have exactly the same
+     * content; <code>false</code> otherwise.
+     * 
+     * @param file1 first file to be compared
+     * @param file2 second file to be compared
+     * @exception IOException if an I/O problem occurs
+     */
+    public static boolean contentEquals(File file1, File file2)
+        throws IOException {
+        if (file1.length() != file2.length()) {
+            return false;
+        }
+
+        FileInputStream in1 = new FileInputStream(file1);
+        try {
+            FileInputStream in2 = new FileInputStream(file2);
+            try {
+                byte[] buffer1 = new byte[65536];
+                byte[] buffer2 = new byte[65536];
+
+                for (;;) {
+                    int count1 = readFully(in1, buffer1);
+                    int count2 = readFully(in2, buffer2);
+                    if (count1 != count2) {
+                        return false;
+                    }
+                    if (count1 <= 0) {
+                        return true;
+                    }
+
+                    if (count1 < buffer1.length) {
+                        for (int i = 0; i < count1; ++i) {
+                            if (buffer1[i] != buffer2[i]) {
+                                return false;
+                            }
+                        }
+                    } else if (!Arrays.equals(buffer1, buffer2)) {
+                        return false;
+                    }
+                }
+            } finally {
+                in2.close();
+            }
+        } finally {
+            in1.close();
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer)
+        throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int count = in.read(buffer, total, buffer.length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
     // -----------------------------------------------------------------------
 
     /**
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.util;
+
+import java.io.IOException;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Creates a zip archive, compressing its entries in parallel.
+ * <p>Unlike {@link Zip.Archive}, which is based on
+ * <code>java.util.zip.ZipOutputStream</code>, the entries are deflated
+ * by worker threads, then the deflated data is written to the archive
+ * file in the order the entries have been added.
+ * <p>Limitations: no Zip64 support (archive must be less than 4GB and
+ * must contain less than 65535 entries); no extra fields; no comments.
+ * <p>An archive which cannot be completed must be discarded using
+ * {@link #abort}, which deletes the partially written archive file.
+ */
+public final class ZipWriter {
+    private File zipFile;
+    private OutputStream out;
+    private long offset;
+    private ExecutorService deflaters;
+    private int maxPending;
+    private LinkedList<Future<Entry>> pending;
+    private ArrayList<Entry> written;
+    private HashSet<String> zipDirs;
+
+    private static final class Entry {
+        public final byte[] name;
+        public final boolean isDirectory;
+        public final long dosTime;
+        public boolean stored;
+        public long crc;
+        public long size;
+        public byte[] data;
+        public long compressedSize;
+        public long localHeaderOffset;
+
+        public Entry(String path, boolean isDirectory, long time) {
+            try {
+                name = path.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException cannotHappen) {
+                throw new RuntimeException(cannotHappen);
+            }
+            this.isDirectory = isDirectory;
+            dosTime = toDOSTime(time);
+        }
+    }
+
+    // -----------------------------------------------------------------------
+
+    /**
+     * Constructs a ZipWriter which creates specified archive file.
+     *
+     * @param zipFile the archive file to be created
+     * @param threadCount the number of threads used to compress the entries.
+     * A value less than or equal to 0 means: the number of available
+     * processors.
+     * @exception IOException if <tt>zipFile</tt> cannot be created
+     */
+    public ZipWriter(File zipFile, int threadCount)
+        throws IOException {
+        if (threadCount <= 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+
+        this.zipFile = zipFile;
+        out = new BufferedOutputStream(new FileOutputStream(zipFile), 65536);
+        offset = 0;
+        deflaters = Executors.newFixedThreadPool(threadCount);
+        // Limits the number of deflated entries kept in memory.
+        maxPending = 2*threadCount;
+        pending = new LinkedList<Future<Entry>>();
+        written = new ArrayList<Entry>();
+        zipDirs = new HashSet<String>();
+    }
+
+    /**
+     * Adds specified file to the zip archive.
+     * <p>Will automatically add directory entries if needed to.
+     *
+     * @param srcFile file (not a directory) to be added
+     * @param path the path of the entry in the archive. Uses '/' as a
+     * separator.
+     * @param store if <code>true</code>, just store, that is do not
+     * compress, specified file.
+     * @exception IOException if there is an I/O problem during the
+     * creation of the zip archive
+     */
+    public void add(final File srcFile, String path, final boolean store)
+        throws IOException {
+        createZipDirs(path);
+
+        final Entry entry =
+            new Entry(path, /*isDirectory*/ false, srcFile.lastModified());
+        submit(new Callable<Entry>() {
+            public Entry call()
+                throws IOException {
+                compress(entry, FileUtil.loadBytes(srcFile), store);
+                return entry;
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #add(File, String, boolean)} except that
+     * the content of the entry is specified as an array of bytes.
+     */
+    public void add(final byte[] bytes, String path, final boolean store)
+        throws IOException {
+        createZipDirs(path);
+
+        final Entry entry = new Entry(path, /*isDirectory*/ false,
+                                      System.currentTimeMillis());
+        submit(new Callable<Entry>() {
+            public Entry call() {
+                compress(entry, bytes, store);
+                return entry;
+            }
+        });
+    }
+
+    /**
+     * Adds all files contained in specified directory to the zip archive.
+     *
+     * @param srcDir directory containing the files to be zipped. This
+     * directory is traversed recursively.
+     * @param baseDir ancestor directory of <tt>srcDir</tt>. Used to compute
+     * the paths used to access the files coming from <tt>srcDir</tt>
+     * in the zip archive.
+     * @exception IOException if there is an I/O problem during the
+     * creation of the zip archive
+     */
+    public void addAll(File srcDir, File baseDir)
+        throws IOException {
+        File[] files = FileUtil.checkedListFiles(srcDir);
+        for (int i = 0; i < files.length; ++i) {
+            File file = files[i];
+            String path = relativePath(file, baseDir);
+
+            if (file.isDirectory()) {
+                createZipDirs(path + '/');
+                addAll(file, baseDir);
+            } else {
+                add(file, path, /*store*/ false);
+            }
+        }
+    }
+
+    /**
+     * Returns the path of specified file relative to specified
+     * ancestor directory, using '/' as a separator.
+     */
+    public static String relativePath(File file, File baseDir) {
+        String pathStart = baseDir.getPath();
+        if (!pathStart.endsWith(File.separator)) {
+            pathStart += File.separatorChar;
+        }
+
+        String path = file.getPath();
+        if (!path.startsWith(pathStart)) {
+            throw new IllegalArgumentException(
+                "'" + baseDir + "' is not an ancestor directory of '" +
+                file + "'");
+        }
+
+        String relativePath = path.substring(pathStart.length());
+        if (File.separatorChar != '/') {
+            relativePath = relativePath.replace(File.separatorChar, '/');
+        }
+        return relativePath;
+    }
+
+    /**
+     * Waits until all entries have been written, then writes
+     * the central directory of the archive and closes the archive file.
+     * <p>If an entry cannot be written, the archive is {@link #abort
+     * aborted} before the exception is thrown.
+     *
+     * @exception IOException if there is an I/O problem during the
+     * creation of the zip archive
+     */
+    public void close()
+        throws IOException {
+        if (out == null) {
+            return;
+        }
+
+        boolean done = false;
+        try {
+            while (pending.size() > 0) {
+                writeFirstPending();
+            }
+
+            writeCentralDirectory();
+            out.flush();
+            done = true;
+        } finally {
+            if (done) {
+                deflaters.shutdownNow();
+                OutputStream out2 = out;
+                out = null;
+                out2.close();
+            } else {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Discards the archive being created: cancels the pending entries,
+     * closes the archive file without writing its central directory,
+     * then deletes this file.
+     * <p>Does not report errors. Does nothing if this ZipWriter has
+     * already been closed or aborted.
+     * <p>Typically invoked when an exception is thrown while adding
+     * entries, which allows the caller to rethrow the original exception.
+     */
+    public void abort() {
+        if (out == null) {
+            return;
+        }
+
+        deflaters.shutdownNow();
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        out = null;
+
+        zipFile.delete();
+    }
+
+    // -----------------------------------------------------------------------
+
+    private void createZipDirs(String path)
+        throws IOException {
+        int slash = path.indexOf('/');
+        while (slash > 0) {
+            String dirPath = path.substring(0, slash+1);
+            if (zipDirs.add(dirPath)) {
+                Entry entry = new Entry(dirPath, /*isDirectory*/ true,
+                                        System.currentTimeMillis());
+                entry.stored = true;
+                entry.data = new byte[0];
+                submitDone(entry);
+            }
+
+            slash = path.indexOf('/', slash+1);
+        }
+    }
+
+    private void submit(Callable<Entry> task)
+        throws IOException {
+        pending.add(deflaters.submit(task));
+
+        while (pending.size() > maxPending) {
+            writeFirstPending();
+        }
+    }
+
+    private void submitDone(final Entry entry)
+        throws IOException {
+        submit(new Callable<Entry>() {
+            public Entry call() {
+                return entry;
+            }
+        });
+    }
+
+    private void writeFirstPending()
+        throws IOException {
+        Future<Entry> first = pending.removeFirst();
+
+        Entry entry;
+        try {
+            entry = first.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(ThrowableUtil.reason(cause));
+        } catch (InterruptedException e) {
+            throw new IOException(ThrowableUtil.reason(e));
+        }
+
+        writeEntry(entry);
+    }
+
+    private static void compress(Entry entry, byte[] bytes, boolean store) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        entry.crc = crc.getValue();
+        entry.size = bytes.length;
+
+        if (!store) {
+            ByteArrayOutputStream deflated =
+                new ByteArrayOutputStream(bytes.length/2 + 64);
+            Deflater deflater =
+                new Deflater(Deflater.DEFAULT_COMPRESSION, /*nowrap*/ true);
+            try {
+                DeflaterOutputStream zip =
+                    new DeflaterOutputStream(deflated, deflater);
+                zip.write(bytes, 0, bytes.length);
+                zip.finish();
+            } catch (IOException cannotHappen) {
+                throw new RuntimeException(cannotHappen);
+            } finally {
+                deflater.end();
+            }
+
+            if (deflated.size() < bytes.length) {
+                entry.stored = false;
+                entry.data = deflated.toByteArray();
+                return;
+            }
+            // Otherwise, not worth it.
+        }
+
+        entry.stored = true;
+        entry.data = bytes;
+    }
+
+    // -----------------------------------------------------------------------
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int UTF8_FLAG = 0x0800;
+
+    private void writeEntry(Entry entry)
+        throws IOException {
+        if (written.size() >= 0xFFFF ||
+            offset + entry.data.length > 0xFFFFFFFFL) {
+            throw new IOException("zip archive too large");
+        }
+
+        entry.localHeaderOffset = offset;
+        entry.compressedSize = entry.data.length;
+
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(entry.stored? 10 : 20); // Version needed to extract.
+        writeShort(UTF8_FLAG);
+        writeShort(entry.stored? 0 : 8); // STORED or DEFLATED.
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(0); // Extra field length.
+        writeBytes(entry.name);
+
+        writeBytes(entry.data);
+        entry.data = null; // Help GC.
+
+        written.add(entry);
+    }
+
+    private void writeCentralDirectory()
+        throws IOException {
+        long start = offset;
+
+        for (Entry entry : written) {
+            writeInt(CENTRAL_HEADER_SIGNATURE);
+            writeShort(20); // Version made by.
+            writeShort(entry.stored? 10 : 20);
+            writeShort(UTF8_FLAG);
+            writeShort(entry.stored? 0 : 8);
+            writeInt(entry.dosTime);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(entry.name.length);
+            writeShort(0); // Extra field length.
+            writeShort(0); // Comment length.
+            writeShort(0); // Disk number start.
+            writeShort(0); // Internal attributes.
+            writeInt(entry.isDirectory? 0x10 : 0); // External attributes.
+            writeInt(entry.localHeaderOffset);
+            writeBytes(entry.name);
+        }
+
+        long size = offset - start;
+
+        writeInt(END_SIGNATURE);
+        writeShort(0); // Number of this disk.
+        writeShort(0); // Disk where central directory starts.
+        writeShort(written.size());
+        writeShort(written.size());
+        writeInt(size);
+        writeInt(start);
+        writeShort(0); // Comment length.
+    }
+
+    private void writeShort(int value)
+        throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        offset += 2;
+    }
+
+    private void writeInt(long value)
+        throws IOException {
+        out.write((int) (value & 0xFF));
+        out.write((int) ((value >>> 8) & 0xFF));
+        out.write((int) ((value >>> 16) & 0xFF));
+        out.write((int) ((value >>> 24) & 0xFF));
+        offset += 4;
+    }
+
+    private void writeBytes(byte[] bytes)
+        throws IOException {
+        out.write(bytes, 0, bytes.length);
+        offset += bytes.length;
+    }
+
+    private static long toDOSTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16); // 1980-01-01 00:00:00
+        }
+
+        return (((long) (year - 1980)) << 25) |
+            ((calendar.get(Calendar.MONTH) + 1) << 21) |
+            (calendar.get(Calendar.DAY_OF_MONTH) << 16) |
+            (calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+            (calendar.get(Calendar.MINUTE) << 5) |
+            (calendar.get(Calendar.SECOND) >> 1);
+    }
+}
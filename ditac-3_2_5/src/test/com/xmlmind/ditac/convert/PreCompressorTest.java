@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.convert;
+
+import java.io.File;
+import com.xmlmind.util.FileUtil;
+
+/**
+ * Checks that {@link PreCompressor} deletes the stale <tt>.gz</tt> files
+ * it has created, and only those.
+ * <p>Exits with status 1 if a check fails.
+ */
+public class PreCompressorTest {
+    private static final long MIN_SIZE = 100;
+
+    private static boolean passed = true;
+
+    public static void main(String[] args)
+        throws Exception {
+        File dir = FileUtil.createTempDirectory("ditac", null);
+        try {
+            test(dir);
+        } finally {
+            FileUtil.deleteDir(dir);
+        }
+
+        if (!passed) {
+            System.exit(1);
+        }
+        System.out.println("PreCompressorTest: OK");
+    }
+
+    private static void test(File dir)
+        throws Exception {
+        File subDir = new File(dir, "sub");
+        FileUtil.checkedMkdirs(subDir);
+
+        File page = new File(dir, "page.html");
+        File gone = new File(subDir, "gone.html");
+        File shrunk = new File(dir, "shrunk.css");
+        FileUtil.saveString(bigText(), page, "UTF-8");
+        FileUtil.saveString(bigText(), gone, "UTF-8");
+        FileUtil.saveString(bigText(), shrunk, "UTF-8");
+
+        // First run ---
+
+        int count = PreCompressor.compressAll(dir, MIN_SIZE, null);
+        check(count == 3, "3 files compressed by first run, got " + count);
+        check(gz(page).isFile(), "page.html.gz created");
+        check(gz(gone).isFile(), "sub/gone.html.gz created");
+        check(gz(shrunk).isFile(), "shrunk.css.gz created");
+
+        // User files ---
+
+        // Look exactly like .gz files left by a previous run.
+        File userOrphan = new File(subDir, "archive.html.gz");
+        File userSmall = new File(dir, "small.txt");
+        FileUtil.saveString("tiny", userSmall, "UTF-8");
+        File userSmallGz = gz(userSmall);
+        FileUtil.saveString("user data", userOrphan, "UTF-8");
+        FileUtil.saveString("user data", userSmallGz, "UTF-8");
+        File userArchive = new File(dir, "download.tar.gz");
+        FileUtil.saveString("user data", userArchive, "UTF-8");
+
+        // Second run ---
+
+        FileUtil.checkedDelete(gone);
+        FileUtil.saveString("tiny", shrunk, "UTF-8");
+
+        count = PreCompressor.compressAll(dir, MIN_SIZE, null);
+        check(count == 0, "no file compressed by second run, got " + count);
+        check(gz(page).isFile(), "page.html.gz kept");
+        check(!gz(gone).exists(), "sub/gone.html.gz deleted");
+        check(!gz(shrunk).exists(), "shrunk.css.gz deleted");
+
+        check(userOrphan.isFile(), "user file sub/archive.html.gz kept");
+        check(userSmallGz.isFile(), "user file small.txt.gz kept");
+        check(userArchive.isFile(), "user file download.tar.gz kept");
+
+        // Third run: the user files are still not ours ---
+
+        FileUtil.checkedDelete(page);
+
+        count = PreCompressor.compressAll(dir, MIN_SIZE, null);
+        check(count == 0, "no file compressed by third run, got " + count);
+        check(!gz(page).exists(), "page.html.gz deleted");
+        check(userOrphan.isFile(), "user file sub/archive.html.gz kept");
+        check(userSmallGz.isFile(), "user file small.txt.gz kept");
+        check(!new File(dir, PreCompressor.LIST_FILE_NAME).exists(),
+              PreCompressor.LIST_FILE_NAME + " deleted when empty");
+    }
+
+    private static String bigText() {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            buffer.append("<p>Paragraph #");
+            buffer.append(i);
+            buffer.append(".</p>\n");
+        }
+        return buffer.toString();
+    }
+
+    private static File gz(File file) {
+        return new File(file.getParentFile(), file.getName() + ".gz");
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            System.err.println("FAILED: " + description);
+            passed = false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.util;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that {@link DITAUtil#generateID(Element)} gives stable IDs and
+ * that two documents having no URI do not give the same IDs.
+ * <p>Exits with status 1 if a check fails.
+ */
+public class GenerateIDTest {
+    private static boolean passed = true;
+
+    public static void main(String[] args) {
+        // Two documents having the same structure and no URI ---
+
+        Document doc1 = newDocument(null);
+        Document doc2 = newDocument(null);
+        check(doc1.getDocumentURI() == null && doc2.getDocumentURI() == null,
+              "documents have no URI");
+
+        Element p1 = findP(doc1);
+        Element p2 = findP(doc2);
+        String id1 = DITAUtil.generateID(p1);
+        String id2 = DITAUtil.generateID(p2);
+        check(!id1.equals(id2),
+              "no URI: IDs " + id1 + " and " + id2 + " do not collide");
+        check(id1.equals(DITAUtil.generateID(p1)),
+              "no URI: same element, same ID");
+        check(!id1.equals(DITAUtil.generateID(doc1.getDocumentElement())),
+              "no URI: different elements, different IDs");
+
+        // Documents having a URI ---
+
+        Document doc3 = newDocument("file:/tmp/a.dita");
+        Document doc4 = newDocument("file:/tmp/a.dita");
+        Document doc5 = newDocument("file:/tmp/b.dita");
+        String id3 = DITAUtil.generateID(findP(doc3));
+        check(id3.equals(DITAUtil.generateID(findP(doc4))),
+              "same URI, same path: same ID");
+        check(!id3.equals(DITAUtil.generateID(findP(doc5))),
+              "different URIs: different IDs");
+        check(!id3.equals(id1) && !id3.equals(id2),
+              "URI-less and URI-bearing documents: different IDs");
+
+        // Deprecated overload ---
+
+        @SuppressWarnings("deprecation")
+        String id4 = DITAUtil.generateID((Object) findP(doc3));
+        check(id3.equals(id4), "generateID(Object) delegates");
+
+        if (!passed) {
+            System.exit(1);
+        }
+        System.out.println("GenerateIDTest: OK");
+    }
+
+    private static Document newDocument(String uri) {
+        Document doc = DOMUtil.newDocument();
+        if (uri != null) {
+            doc.setDocumentURI(uri);
+        }
+
+        Element topic = doc.createElementNS(null, "topic");
+        doc.appendChild(topic);
+        topic.appendChild(doc.createElementNS(null, "title"));
+        Element body = doc.createElementNS(null, "body");
+        topic.appendChild(body);
+        body.appendChild(doc.createElementNS(null, "p"));
+        return doc;
+    }
+
+    private static Element findP(Document doc) {
+        return (Element) doc.getElementsByTagName("p").item(0);
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            System.err.println("FAILED: " + description);
+            passed = false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.ditac.xslt;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.TransformerFactoryImpl;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.om.SequenceIterator;
+
+/**
+ * Runs <tt>Highlight:highlight</tt> through Saxon, with a stub
+ * highlighter which returns its input unchanged and counts its
+ * invocations, in order to check that only text-only arguments are
+ * served from the {@link ExtensionFunctions.HighlightCache}.
+ * <p>Exits with status 1 if a check fails.
+ */
+public class HighlightCacheTest {
+    private static int highlightCount;
+
+    /**
+     * The stub highlighter. Same signature as
+     * <tt>net.sf.xslthl.ConnectorSaxonHE.highlight</tt>.
+     */
+    public static SequenceIterator highlight(XPathContext context,
+                                             String hlCode,
+                                             SequenceIterator nodes,
+                                             String configFilename) {
+        ++highlightCount;
+        return nodes;
+    }
+
+    private static final String STYLESHEET =
+        "<xsl:stylesheet version='2.0'\n" +
+        " xmlns:xsl='http://www.w3.org/1999/XSL/Transform'\n" +
+        " xmlns:Highlight='java:com.xmlmind.ditac.xslt.Highlight'>\n" +
+        "  <xsl:output method='xml' omit-xml-declaration='yes'/>\n" +
+        "  <xsl:template match='/'>\n" +
+        "    <out>\n" +
+        "      <xsl:for-each select='//pre'>\n" +
+        "        <r><xsl:sequence\n" +
+        "             select=\"Highlight:highlight('java', node())\"/></r>\n" +
+        "      </xsl:for-each>\n" +
+        "    </out>\n" +
+        "  </xsl:template>\n" +
+        "</xsl:stylesheet>";
+
+    private static final String INPUT =
+        "<doc>" +
+        "<pre>int i = 0;</pre>" +
+        "<pre>int i = 0;</pre>" +
+        "<pre>int <ph id='p1'>j</ph> = 1;</pre>" +
+        "<pre>int <ph id='p1'>j</ph> = 1;</pre>" +
+        "<pre>int k = 2;</pre>" +
+        "</doc>";
+
+    private static final String EXPECTED =
+        "<out>" +
+        "<r>int i = 0;</r>" +
+        "<r>int i = 0;</r>" +
+        "<r>int <ph id=\"p1\">j</ph> = 1;</r>" +
+        "<r>int <ph id=\"p1\">j</ph> = 1;</r>" +
+        "<r>int k = 2;</r>" +
+        "</out>";
+
+    public static void main(String[] args)
+        throws Exception {
+        Method highlightMethod =
+            HighlightCacheTest.class.getMethod("highlight",
+                                               XPathContext.class,
+                                               String.class,
+                                               SequenceIterator.class,
+                                               String.class);
+
+        Configuration config = Configuration.newConfiguration();
+        config.registerExtensionFunction(
+            new ExtensionFunctions.HighlightDefinition(highlightMethod));
+
+        TransformerFactoryImpl factory = new TransformerFactoryImpl();
+        factory.setConfiguration(config);
+        Templates templates =
+            factory.newTemplates(new StreamSource(
+                                     new StringReader(STYLESHEET)));
+
+        boolean passed = true;
+
+        // The same Configuration, hence the same cache, is used by both
+        // transforms.
+        for (int run = 1; run <= 2; ++run) {
+            highlightCount = 0;
+            String output = transform(templates);
+
+            if (!EXPECTED.equals(output)) {
+                System.err.println("run #" + run + ": unexpected output:\n" +
+                                   output);
+                passed = false;
+            }
+
+            // run #1: "int i = 0;" once, the 2 pres containing a ph,
+            // "int k = 2;" once.
+            // run #2: only the 2 pres containing a ph.
+            int expectedCount = (run == 1)? 4 : 2;
+            if (highlightCount != expectedCount) {
+                System.err.println("run #" + run + ": highlighter invoked " +
+                                   highlightCount + " times, expected " +
+                                   expectedCount);
+                passed = false;
+            }
+        }
+
+        if (!passed) {
+            System.exit(1);
+        }
+        System.out.println("HighlightCacheTest: OK");
+    }
+
+    private static String transform(Templates templates)
+        throws Exception {
+        StringWriter out = new StringWriter();
+        templates.newTransformer().transform(
+            new StreamSource(new StringReader(INPUT)), new StreamResult(out));
+        return out.toString().trim();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 XMLmind Software. All rights reserved.
+ *
+ * Author: Hussein Shafie
+ *
+ * This file is part of the XMLmind DITA Converter project.
+ * For conditions of distribution and use, see the accompanying LEGAL.txt file.
+ */
+package com.xmlmind.util;
+
+import java.io.IOException;
+import java.io.File;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks that the archives created by {@link ZipWriter} can be read by
+ * <code>java.util.zip.ZipFile</code> and that a ZipWriter which fails
+ * deletes its partially written archive.
+ * <p>Exits with status 1 if a check fails.
+ */
+public class ZipWriterTest {
+    private static boolean passed = true;
+
+    public static void main(String[] args)
+        throws Exception {
+        File dir = FileUtil.createTempDirectory("ditac", null);
+        try {
+            testClose(dir);
+            testAbort(dir);
+        } finally {
+            FileUtil.deleteDir(dir);
+        }
+
+        if (!passed) {
+            System.exit(1);
+        }
+        System.out.println("ZipWriterTest: OK");
+    }
+
+    private static void testClose(File dir)
+        throws Exception {
+        File srcDir = new File(dir, "src");
+        File subDir = new File(srcDir, "sub");
+        FileUtil.checkedMkdirs(subDir);
+        FileUtil.saveString(bigText(), new File(srcDir, "a.html"), "UTF-8");
+        FileUtil.saveString("tiny", new File(subDir, "b.txt"), "UTF-8");
+
+        File zipFile = new File(dir, "ok.zip");
+        byte[] bytes = "application/epub+zip".getBytes("US-ASCII");
+
+        ZipWriter archive = new ZipWriter(zipFile, 2);
+        archive.add(bytes, "mimetype", /*store*/ true);
+        archive.addAll(srcDir, srcDir);
+        archive.close();
+        archive.abort(); // Does nothing.
+
+        check(zipFile.isFile(), "ok.zip created");
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            ZipEntry first = zip.entries().nextElement();
+            check("mimetype".equals(first.getName()) &&
+                  first.getMethod() == ZipEntry.STORED,
+                  "mimetype is the first, stored, entry");
+            check(Arrays.equals(bytes, read(zip, "mimetype")),
+                  "mimetype content");
+            check(bigText().equals(new String(read(zip, "a.html"), "UTF-8")),
+                  "a.html content");
+            check(zip.getEntry("a.html").getMethod() == ZipEntry.DEFLATED,
+                  "a.html deflated");
+            check(zip.getEntry("sub/") != null, "sub/ directory entry");
+            check("tiny".equals(new String(read(zip, "sub/b.txt"), "UTF-8")),
+                  "sub/b.txt content");
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void testAbort(File dir)
+        throws Exception {
+        File zipFile = new File(dir, "failed.zip");
+        File missingFile = new File(dir, "missing.html");
+
+        ZipWriter archive = new ZipWriter(zipFile, 2);
+        IOException error = null;
+        try {
+            archive.add(bigText().getBytes("UTF-8"), "a.html", false);
+            archive.add(missingFile, "missing.html", false);
+            archive.close();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        check(error != null, "close fails when a file cannot be loaded");
+        check(!zipFile.exists(), "failed.zip deleted by close");
+        archive.abort(); // Does nothing.
+
+        // Abort before close ---
+
+        archive = new ZipWriter(zipFile, 2);
+        archive.add(bigText().getBytes("UTF-8"), "a.html", false);
+        archive.abort();
+        check(!zipFile.exists(), "failed.zip deleted by abort");
+    }
+
+    private static byte[] read(ZipFile zip, String path)
+        throws IOException {
+        ZipEntry entry = zip.getEntry(path);
+        if (entry == null) {
+            return null;
+        }
+        return FileUtil.loadBytes(zip.getInputStream(entry));
+    }
+
+    private static String bigText() {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            buffer.append("<p>Paragraph #");
+            buffer.append(i);
+            buffer.append(".</p>\n");
+        }
+        return buffer.toString();
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            System.err.println("FAILED: " + description);
+            passed = false;
+        }
+    }
+}
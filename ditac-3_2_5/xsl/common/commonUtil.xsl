@@ -233,6 +233,12 @@
         <xsl:sequence select="u:parseOlStart(string(@outputclass))"/>
       </xsl:when>
 
+      <xsl:when test="contains(@outputclass, 'continue') and
+                      exists(@ditac:olStart)">
+        <!-- Computed by the preprocessor. -->
+        <xsl:sequence select="xs:integer(@ditac:olStart)"/>
+      </xsl:when>
+
       <xsl:when test="contains(@outputclass, 'continue')">
         <xsl:variable name="previousList"
           select="(preceding::*[contains(@class,' topic/ol ')])[last()]"/>
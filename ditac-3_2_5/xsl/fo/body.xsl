@@ -21,7 +21,8 @@
   <xsl:attribute-set name="p" use-attribute-sets="block-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/p ')]">
+  <xsl:template match="*[contains(@class,' topic/p ')]"
+                name="u:topic-p">
     <fo:block xsl:use-attribute-sets="p">
       <xsl:if test="$foProcessor eq 'XEP' and
                     parent::*[contains(@class,' topic/li ')] and
@@ -224,7 +225,8 @@
   <xsl:attribute-set name="ph">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/ph ')]">
+  <xsl:template match="*[contains(@class,' topic/ph ')]"
+                name="u:topic-ph">
     <fo:inline xsl:use-attribute-sets="ph">
       <xsl:call-template name="commonAttributes"/>
       <!-- ph, cite, keyword, dt and term: the preprocessor may have converted 
@@ -270,7 +272,8 @@
   <xsl:attribute-set name="keyword">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/keyword ')]">
+  <xsl:template match="*[contains(@class,' topic/keyword ')]"
+                name="u:topic-keyword">
     <fo:inline xsl:use-attribute-sets="keyword">
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="basicLink">
@@ -284,7 +287,8 @@
   <xsl:attribute-set name="xref" use-attribute-sets="link-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/xref ')]">
+  <xsl:template match="*[contains(@class,' topic/xref ')]"
+                name="u:topic-xref">
     <xsl:choose>
       <xsl:when test="@type eq 'fn'">
         <!-- Not an actual xref. An instance of a footnote. -->
@@ -389,6 +393,10 @@
         <xsl:when test="$footnote/@callout">
           <xsl:value-of select="$footnote/@callout"/>
         </xsl:when>
+        <xsl:when test="$footnote/@ditac:fnNumber">
+          <!-- Computed by the preprocessor. -->
+          <xsl:value-of select="concat('(', $footnote/@ditac:fnNumber, ')')"/>
+        </xsl:when>
         <xsl:otherwise>
           <xsl:number count="//*[contains(@class,' topic/fn ')]"
                       level="any" format="(1)" select="$footnote"/>
@@ -516,7 +524,8 @@
     <xsl:attribute name="provisional-label-separation">0.5em</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/ul ')]">
+  <xsl:template match="*[contains(@class,' topic/ul ')]"
+                name="u:topic-ul">
     <fo:list-block xsl:use-attribute-sets="ul">
       <xsl:call-template name="xfcULLabelFormat"/>
 
@@ -723,7 +732,8 @@
                      use-attribute-sets="sli compact-block-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/sli ')]">
+  <xsl:template match="*[contains(@class,' topic/sli ')]"
+                name="u:topic-sli">
     <xsl:choose>
       <xsl:when test="parent::*/@compact eq 'yes'">
         <fo:block xsl:use-attribute-sets="compact-sli">
@@ -854,7 +864,8 @@
                      use-attribute-sets="dlentry compact-block-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/dlentry ')]">
+  <xsl:template match="*[contains(@class,' topic/dlentry ')]"
+                name="u:topic-dlentry">
     <xsl:choose>
       <xsl:when test="parent::*/@compact eq 'yes'">
         <fo:block xsl:use-attribute-sets="compact-dlentry">
@@ -878,7 +889,8 @@
     <xsl:attribute name="keep-with-next.within-column">always</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/dt ')]">
+  <xsl:template match="*[contains(@class,' topic/dt ')]"
+                name="u:topic-dt">
     <fo:block xsl:use-attribute-sets="dt">
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="basicLink">
@@ -893,7 +905,8 @@
     <xsl:attribute name="margin-left">4em</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/dd ')]">
+  <xsl:template match="*[contains(@class,' topic/dd ')]"
+                name="u:topic-dd">
     <fo:block xsl:use-attribute-sets="dd">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
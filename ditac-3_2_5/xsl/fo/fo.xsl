@@ -64,6 +64,8 @@
   <xsl:import href="ditac_anchor.xsl"/>
   <xsl:import href="ditac_flags.xsl"/>
 
+  <xsl:import href="dispatch.xsl"/>
+
   <!-- ``System parameters'' automatically specified by the application hosting
        ditac. -->
   <xsl:param name="outputFormat" select="''"/>
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- markupname ======================================================== -->
@@ -86,7 +87,8 @@
   <xsl:attribute-set name="xmlelement" use-attribute-sets="markupname">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' xml-d/xmlelement ')]">
+  <xsl:template match="*[contains(@class,' xml-d/xmlelement ')]"
+                name="u:xml-d-xmlelement">
     <fo:inline xsl:use-attribute-sets="xmlelement">
       <xsl:call-template name="commonAttributes"/>
       <xsl:text>&lt;</xsl:text>
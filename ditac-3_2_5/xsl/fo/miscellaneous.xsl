@@ -11,7 +11,8 @@
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
                 xmlns:ditac="http://www.xmlmind.com/ditac/schema/ditac"
-                exclude-result-prefixes="xs ditac"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs ditac u"
                 version="2.0">
 
   <!-- dita ============================================================== -->
@@ -69,7 +70,8 @@
 
   <!-- indexterm ========================================================= -->
 
-  <xsl:template match="*[contains(@class,' topic/indexterm ')]">
+  <xsl:template match="*[contains(@class,' topic/indexterm ')]"
+                name="u:topic-indexterm">
     <fo:inline id="{@id}" hyphenate="false">
       <xsl:call-template name="addIndexAnchor">
         <xsl:with-param name="id" select="@id"/>
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- apiname =========================================================== -->
@@ -48,7 +49,8 @@
   <xsl:attribute-set name="codeph" use-attribute-sets="monospace-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' pr-d/codeph ')]">
+  <xsl:template match="*[contains(@class,' pr-d/codeph ')]"
+                name="u:pr-d-codeph">
     <fo:inline xsl:use-attribute-sets="codeph">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
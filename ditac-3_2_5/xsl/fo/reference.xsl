@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- reference LIKE topic -->
@@ -90,7 +91,8 @@
   <xsl:attribute-set name="property" use-attribute-sets="strow">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' reference/property ')]">
+  <xsl:template match="*[contains(@class,' reference/property ')]"
+                name="u:reference-property">
     <xsl:variable name="type"
                   select="./*[contains(@class,' reference/proptype ')]"/>
     <xsl:variable name="value"
@@ -162,7 +164,8 @@
   <xsl:attribute-set name="proptype" use-attribute-sets="stentry">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' reference/proptype ')]">
+  <xsl:template match="*[contains(@class,' reference/proptype ')]"
+                name="u:reference-proptype">
     <fo:table-cell  start-indent="0" xsl:use-attribute-sets="proptype">
       <xsl:call-template name="commonAttributes"/>
       <fo:block>
@@ -176,7 +179,8 @@
   <xsl:attribute-set name="propvalue" use-attribute-sets="stentry">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' reference/propvalue ')]">
+  <xsl:template match="*[contains(@class,' reference/propvalue ')]"
+                name="u:reference-propvalue">
     <fo:table-cell start-indent="0" xsl:use-attribute-sets="propvalue">
       <xsl:call-template name="commonAttributes"/>
       <fo:block>
@@ -190,7 +194,8 @@
   <xsl:attribute-set name="propdesc" use-attribute-sets="stentry">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' reference/propdesc ')]">
+  <xsl:template match="*[contains(@class,' reference/propdesc ')]"
+                name="u:reference-propdesc">
     <fo:table-cell start-indent="0" xsl:use-attribute-sets="propdesc">
       <xsl:call-template name="commonAttributes"/>
       <fo:block>
@@ -145,7 +145,8 @@
   <xsl:attribute-set name="strow">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/strow ')]">
+  <xsl:template match="*[contains(@class,' topic/strow ')]"
+                name="u:topic-strow">
     <fo:table-row xsl:use-attribute-sets="strow">
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="bgcolorAttribute"/>
@@ -160,7 +161,8 @@
     <xsl:attribute name="padding">0.33em</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/stentry ')]">
+  <xsl:template match="*[contains(@class,' topic/stentry ')]"
+                name="u:topic-stentry">
     <xsl:variable name="column" select="position()" />
 
     <xsl:choose>
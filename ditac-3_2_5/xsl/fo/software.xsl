@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- msgph ============================================================= -->
@@ -88,7 +89,8 @@
   <xsl:attribute-set name="filepath" use-attribute-sets="monospace-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' sw-d/filepath ')]">
+  <xsl:template match="*[contains(@class,' sw-d/filepath ')]"
+                name="u:sw-d-filepath">
     <fo:inline xsl:use-attribute-sets="filepath">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
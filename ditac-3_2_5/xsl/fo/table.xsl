@@ -303,7 +303,8 @@
   <xsl:attribute-set name="row">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' topic/row ')]">
+  <xsl:template match="*[contains(@class,' topic/row ')]"
+                name="u:topic-row">
     <xsl:param name="bodyLayout" select="()"/>
 
     <fo:table-row xsl:use-attribute-sets="row">
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:fo="http://www.w3.org/1999/XSL/Format"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
   
   <!-- b ================================================================= -->
@@ -19,7 +20,8 @@
     <xsl:attribute name="font-weight">bold</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' hi-d/b ')]">
+  <xsl:template match="*[contains(@class,' hi-d/b ')]"
+                name="u:hi-d-b">
     <fo:inline xsl:use-attribute-sets="b">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
@@ -32,7 +34,8 @@
     <xsl:attribute name="font-style">italic</xsl:attribute>
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' hi-d/i ')]">
+  <xsl:template match="*[contains(@class,' hi-d/i ')]"
+                name="u:hi-d-i">
     <fo:inline xsl:use-attribute-sets="i">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
@@ -83,7 +86,8 @@
   <xsl:attribute-set name="tt" use-attribute-sets="monospace-style">
   </xsl:attribute-set>
 
-  <xsl:template match="*[contains(@class,' hi-d/tt ')]">
+  <xsl:template match="*[contains(@class,' hi-d/tt ')]"
+                name="u:hi-d-tt">
     <fo:inline xsl:use-attribute-sets="tt">
       <xsl:call-template name="commonAttributes"/>
       <xsl:apply-templates/>
@@ -17,7 +17,8 @@
   
   <!-- p ================================================================= -->
 
-  <xsl:template match="*[contains(@class,' topic/p ')]">
+  <xsl:template match="*[contains(@class,' topic/p ')]"
+                name="u:topic-p">
     <!-- a p can contain elements such as ul! -->
     <div>
       <xsl:call-template name="commonAttributes"/>
@@ -114,7 +115,8 @@
 
   <!-- ph ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/ph ')]">
+  <xsl:template match="*[contains(@class,' topic/ph ')]"
+                name="u:topic-ph">
     <span>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -162,7 +164,8 @@
 
   <!-- keyword =========================================================== -->
 
-  <xsl:template match="*[contains(@class,' topic/keyword ')]">
+  <xsl:template match="*[contains(@class,' topic/keyword ')]"
+                name="u:topic-keyword">
     <span>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -182,7 +185,8 @@
 
   <!-- xref ============================================================== -->
 
-  <xsl:template match="*[contains(@class,' topic/xref ')]">
+  <xsl:template match="*[contains(@class,' topic/xref ')]"
+                name="u:topic-xref">
     <xsl:choose>
       <xsl:when test="@type eq 'fn'">
         <!-- Not an actual xref. An instance of a footnote. -->
@@ -275,6 +279,10 @@
         <xsl:when test="$footnote/@callout">
           <xsl:value-of select="$footnote/@callout"/>
         </xsl:when>
+        <xsl:when test="$footnote/@ditac:fnNumber">
+          <!-- Computed by the preprocessor. -->
+          <xsl:value-of select="concat('(', $footnote/@ditac:fnNumber, ')')"/>
+        </xsl:when>
         <xsl:otherwise>
           <xsl:number count="//*[contains(@class,' topic/fn ')]"
                       level="any" format="(1)" select="$footnote"/>
@@ -362,7 +370,8 @@
 
   <!-- ul ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/ul ')]">
+  <xsl:template match="*[contains(@class,' topic/ul ')]"
+                name="u:topic-ul">
     <xsl:call-template name="namedAnchor"/>
     <ul>
       <xsl:call-template name="listCommonAttributes">
@@ -374,7 +383,8 @@
 
   <!-- li ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/li ')]">
+  <xsl:template match="*[contains(@class,' topic/li ')]"
+                name="u:topic-li">
     <li>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -396,7 +406,8 @@
 
   <!-- sli ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/sli ')]">
+  <xsl:template match="*[contains(@class,' topic/sli ')]"
+                name="u:topic-sli">
     <li>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -471,13 +482,15 @@
 
   <!-- dlentry =========================================================== -->
 
-  <xsl:template match="*[contains(@class,' topic/dlentry ')]">
+  <xsl:template match="*[contains(@class,' topic/dlentry ')]"
+                name="u:topic-dlentry">
     <xsl:apply-templates/>
   </xsl:template>
 
   <!-- dt ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/dt ')]">
+  <xsl:template match="*[contains(@class,' topic/dt ')]"
+                name="u:topic-dt">
     <dt>
       <xsl:call-template name="copyEntryId"/>
       <xsl:call-template name="commonAttributes"/>
@@ -503,7 +516,8 @@
 
   <!-- dd ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' topic/dd ')]">
+  <xsl:template match="*[contains(@class,' topic/dd ')]"
+                name="u:topic-dd">
     <dd>
       <xsl:call-template name="copyEntryId"/>
       <xsl:call-template name="commonAttributes"/>
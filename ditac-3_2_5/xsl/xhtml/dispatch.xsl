@@ -0,0 +1,142 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+| Copyright (c) 2017 XMLmind Software. All rights reserved.
+|
+| Author: Hussein Shafie
+|
+| This file is part of the XMLmind DITA Converter project.
+| For conditions of distribution and use, see the accompanying LEGAL.txt file.
+-->
+<xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xs="http://www.w3.org/2001/XMLSchema"
+                xmlns="http://www.w3.org/1999/xhtml"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                xmlns:ditac="http://www.xmlmind.com/ditac/schema/ditac"
+                exclude-result-prefixes="xs u ditac"
+                version="2.0">
+
+  <!-- The preprocessor adds a ditac:cls attribute containing the most
+       specific token of the class attribute to all DITA elements.
+
+       The templates below match the most frequently found, unspecialized,
+       elements using patterns which are indexed by the XSLT engine
+       (element name) and which are then tested using a cheap string
+       comparison. Because of their high priority, they are selected
+       without testing the many *[contains(@class,' xxx/yyy ')] patterns
+       of the other modules.
+
+       Specialized elements and elements lacking a ditac:cls attribute
+       are not matched here, so they are processed as usual.
+       Stylesheets importing this one may still override the
+       *[contains(@class,' xxx/yyy ')] templates, as these have
+       a higher import precedence.
+
+       Must be imported after all the other modules: the import
+       precedence of a template rule matters more than its priority. -->
+
+  <xsl:template match="p[@ditac:cls eq 'topic/p']" priority="1">
+    <xsl:call-template name="u:topic-p"/>
+  </xsl:template>
+
+  <xsl:template match="ph[@ditac:cls eq 'topic/ph']" priority="1">
+    <xsl:call-template name="u:topic-ph"/>
+  </xsl:template>
+
+  <xsl:template match="keyword[@ditac:cls eq 'topic/keyword']" priority="1">
+    <xsl:call-template name="u:topic-keyword"/>
+  </xsl:template>
+
+  <xsl:template match="li[@ditac:cls eq 'topic/li']" priority="1">
+    <xsl:call-template name="u:topic-li"/>
+  </xsl:template>
+
+  <xsl:template match="sli[@ditac:cls eq 'topic/sli']" priority="1">
+    <xsl:call-template name="u:topic-sli"/>
+  </xsl:template>
+
+  <xsl:template match="dlentry[@ditac:cls eq 'topic/dlentry']" priority="1">
+    <xsl:call-template name="u:topic-dlentry"/>
+  </xsl:template>
+
+  <xsl:template match="dt[@ditac:cls eq 'topic/dt']" priority="1">
+    <xsl:call-template name="u:topic-dt"/>
+  </xsl:template>
+
+  <xsl:template match="dd[@ditac:cls eq 'topic/dd']" priority="1">
+    <xsl:call-template name="u:topic-dd"/>
+  </xsl:template>
+
+  <xsl:template match="row[@ditac:cls eq 'topic/row']" priority="1">
+    <xsl:param name="bodyLayout" select="()"/>
+
+    <xsl:call-template name="u:topic-row">
+      <xsl:with-param name="bodyLayout" select="$bodyLayout"/>
+    </xsl:call-template>
+  </xsl:template>
+
+  <xsl:template match="strow[@ditac:cls eq 'topic/strow']" priority="1">
+    <xsl:call-template name="u:topic-strow"/>
+  </xsl:template>
+
+  <xsl:template match="stentry[@ditac:cls eq 'topic/stentry']" priority="1">
+    <xsl:call-template name="u:topic-stentry"/>
+  </xsl:template>
+
+  <xsl:template match="property[@ditac:cls eq 'reference/property']"
+                priority="1">
+    <xsl:call-template name="u:reference-property"/>
+  </xsl:template>
+
+  <xsl:template match="proptype[@ditac:cls eq 'reference/proptype']"
+                priority="1">
+    <xsl:call-template name="u:reference-proptype"/>
+  </xsl:template>
+
+  <xsl:template match="propvalue[@ditac:cls eq 'reference/propvalue']"
+                priority="1">
+    <xsl:call-template name="u:reference-propvalue"/>
+  </xsl:template>
+
+  <xsl:template match="propdesc[@ditac:cls eq 'reference/propdesc']"
+                priority="1">
+    <xsl:call-template name="u:reference-propdesc"/>
+  </xsl:template>
+
+  <xsl:template match="b[@ditac:cls eq 'hi-d/b']" priority="1">
+    <xsl:call-template name="u:hi-d-b"/>
+  </xsl:template>
+
+  <xsl:template match="i[@ditac:cls eq 'hi-d/i']" priority="1">
+    <xsl:call-template name="u:hi-d-i"/>
+  </xsl:template>
+
+  <xsl:template match="codeph[@ditac:cls eq 'pr-d/codeph']" priority="1">
+    <xsl:call-template name="u:pr-d-codeph"/>
+  </xsl:template>
+
+  <xsl:template match="ul[@ditac:cls eq 'topic/ul']" priority="1">
+    <xsl:call-template name="u:topic-ul"/>
+  </xsl:template>
+
+  <xsl:template match="xref[@ditac:cls eq 'topic/xref']" priority="1">
+    <xsl:call-template name="u:topic-xref"/>
+  </xsl:template>
+
+  <xsl:template match="indexterm[@ditac:cls eq 'topic/indexterm']" priority="1">
+    <xsl:call-template name="u:topic-indexterm"/>
+  </xsl:template>
+
+  <xsl:template match="tt[@ditac:cls eq 'hi-d/tt']" priority="1">
+    <xsl:call-template name="u:hi-d-tt"/>
+  </xsl:template>
+
+  <xsl:template match="filepath[@ditac:cls eq 'sw-d/filepath']" priority="1">
+    <xsl:call-template name="u:sw-d-filepath"/>
+  </xsl:template>
+
+  <xsl:template match="xmlelement[@ditac:cls eq 'xml-d/xmlelement']"
+                priority="1">
+    <xsl:call-template name="u:xml-d-xmlelement"/>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns="http://www.w3.org/1999/xhtml"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- markupname ======================================================== -->
@@ -73,7 +74,8 @@
 
   <!-- xmlelement ======================================================== -->
 
-  <xsl:template match="*[contains(@class,' xml-d/xmlelement ')]">
+  <xsl:template match="*[contains(@class,' xml-d/xmlelement ')]"
+                name="u:xml-d-xmlelement">
     <code>
       <xsl:call-template name="commonAttributes"/>
       <xsl:text>&lt;</xsl:text>
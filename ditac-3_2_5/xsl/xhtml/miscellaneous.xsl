@@ -12,7 +12,8 @@
                 xmlns="http://www.w3.org/1999/xhtml"                
                 xmlns:mml="http://www.w3.org/1998/Math/MathML"
                 xmlns:svg="http://www.w3.org/2000/svg"
-                exclude-result-prefixes="xs mml svg"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs mml svg u"
                 version="2.0">
 
   <!-- dita ============================================================== -->
@@ -55,7 +56,8 @@
 
   <!-- indexterm ========================================================= -->
 
-  <xsl:template match="*[contains(@class,' topic/indexterm ')]">
+  <xsl:template match="*[contains(@class,' topic/indexterm ')]"
+                name="u:topic-indexterm">
     <a id="{@id}">
       <xsl:if test="$xhtmlVersion ne '1.1' and $xhtmlVersion ne '5.0'">
         <xsl:attribute name="name" select="string(@id)"/>
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns="http://www.w3.org/1999/xhtml"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- apiname =========================================================== -->
@@ -43,7 +44,8 @@
 
   <!-- codeph ============================================================ -->
 
-  <xsl:template match="*[contains(@class,' pr-d/codeph ')]">
+  <xsl:template match="*[contains(@class,' pr-d/codeph ')]"
+                name="u:pr-d-codeph">
     <code>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
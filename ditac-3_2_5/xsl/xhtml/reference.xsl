@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns="http://www.w3.org/1999/xhtml"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
   
   <!-- reference LIKE topic -->
@@ -64,7 +65,8 @@
 
   <!-- property ========================================================== -->
 
-  <xsl:template match="*[contains(@class,' reference/property ')]">
+  <xsl:template match="*[contains(@class,' reference/property ')]"
+                name="u:reference-property">
     <xsl:variable name="type"
                   select="./*[contains(@class,' reference/proptype ')]"/>
     <xsl:variable name="value"
@@ -127,7 +129,8 @@
 
   <!-- proptype ========================================================== -->
 
-  <xsl:template match="*[contains(@class,' reference/proptype ')]">
+  <xsl:template match="*[contains(@class,' reference/proptype ')]"
+                name="u:reference-proptype">
     <td>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -137,7 +140,8 @@
 
   <!-- propvalue ========================================================= -->
 
-  <xsl:template match="*[contains(@class,' reference/propvalue ')]">
+  <xsl:template match="*[contains(@class,' reference/propvalue ')]"
+                name="u:reference-propvalue">
     <td>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -147,7 +151,8 @@
 
   <!-- propdesc ========================================================== -->
 
-  <xsl:template match="*[contains(@class,' reference/propdesc ')]">
+  <xsl:template match="*[contains(@class,' reference/propdesc ')]"
+                name="u:reference-propdesc">
     <td>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -144,7 +144,8 @@
 
   <!-- strow ============================================================= -->
 
-  <xsl:template match="*[contains(@class,' topic/strow ')]">
+  <xsl:template match="*[contains(@class,' topic/strow ')]"
+                name="u:topic-strow">
     <tr>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="bgcolorStyleAttribute"/>
@@ -154,7 +155,8 @@
 
   <!-- stentry =========================================================== -->
 
-  <xsl:template match="*[contains(@class,' topic/stentry ')]">
+  <xsl:template match="*[contains(@class,' topic/stentry ')]"
+                name="u:topic-stentry">
     <xsl:variable name="isHeader1" 
       select="exists(parent::*[contains(@class,' topic/sthead ')])"/>
 
@@ -10,7 +10,8 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns="http://www.w3.org/1999/xhtml"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
 
   <!-- msgph ============================================================= -->
@@ -66,7 +67,8 @@
 
   <!-- filepath =========================================================== -->
 
-  <xsl:template match="*[contains(@class,' sw-d/filepath ')]">
+  <xsl:template match="*[contains(@class,' sw-d/filepath ')]"
+                name="u:sw-d-filepath">
     <code>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -507,7 +507,8 @@
 
   <!-- row =============================================================== -->
 
-  <xsl:template match="*[contains(@class,' topic/row ')]">
+  <xsl:template match="*[contains(@class,' topic/row ')]"
+                name="u:topic-row">
     <xsl:param name="bodyLayout" select="()"/>
 
     <tr>
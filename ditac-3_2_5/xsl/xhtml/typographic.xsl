@@ -10,12 +10,14 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns="http://www.w3.org/1999/xhtml"
-                exclude-result-prefixes="xs"
+                xmlns:u="http://www.xmlmind.com/namespace/ditac"
+                exclude-result-prefixes="xs u"
                 version="2.0">
   
   <!-- b ================================================================= -->
 
-  <xsl:template match="*[contains(@class,' hi-d/b ')]">
+  <xsl:template match="*[contains(@class,' hi-d/b ')]"
+                name="u:hi-d-b">
     <b>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -25,7 +27,8 @@
 
   <!-- i ================================================================= -->
 
-  <xsl:template match="*[contains(@class,' hi-d/i ')]">
+  <xsl:template match="*[contains(@class,' hi-d/i ')]"
+                name="u:hi-d-i">
     <i>
       <xsl:call-template name="commonAttributes"/>
       <xsl:call-template name="namedAnchor"/>
@@ -71,7 +74,8 @@
 
   <!-- tt ================================================================ -->
 
-  <xsl:template match="*[contains(@class,' hi-d/tt ')]">
+  <xsl:template match="*[contains(@class,' hi-d/tt ')]"
+                name="u:hi-d-tt">
     <!-- No tt element in HTML 5. -->
     <xsl:element name="{ if ($xhtmlVersion eq '5.0') then 'span' else 'tt' }">
       <xsl:call-template name="commonAttributes"/>
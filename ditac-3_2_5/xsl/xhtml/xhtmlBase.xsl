@@ -64,6 +64,8 @@
   <xsl:import href="ditac_anchor.xsl"/>
   <xsl:import href="ditac_flags.xsl"/>
 
+  <xsl:import href="dispatch.xsl"/>
+
   <!-- Output ============================================================ -->
 
   <!-- With method="html" and include-content-type="yes", the http-equiv